@@ -24,6 +24,7 @@ package org.apache.qpid.amqp_1_0.codec;
 import org.apache.qpid.amqp_1_0.framing.AMQFrame;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public class FrameWriter implements ValueWriter<AMQFrame>
 {
@@ -33,7 +34,8 @@ public class FrameWriter implements ValueWriter<AMQFrame>
     private ValueWriter _typeWriter;
     private int _size = -1;
     private static final byte[] EMPTY_BYTE_ARRAY = new byte[] {};
-    private ByteBuffer _payload;
+    private ByteBuffer[] _payload;
+    private int _payloadIndex;
 
     enum State
     {
@@ -77,7 +79,7 @@ public class FrameWriter implements ValueWriter<AMQFrame>
             {
                 case SIZE_0:
 
-                    int payloadLength = _payload == null ? 0 : _payload.remaining();
+                    int payloadLength = payloadRemaining();
 
                     if(_typeWriter!=null)
                     {
@@ -110,25 +112,14 @@ public class FrameWriter implements ValueWriter<AMQFrame>
                             else if(_size > remaining )
                             {
                                 buffer.position(buffer.position()+_size-8-payloadLength);
-                                if(payloadLength > 0)
-                                {
-
-                                    ByteBuffer dup = _payload.slice();
-                                    int payloadUsed = buffer.remaining();
-                                    dup.limit(payloadUsed);
-                                    buffer.put(dup);
-                                    _payload.position(_payload.position()+payloadUsed);
-                                }
+                                writePayload(buffer);
                                 _state = State.PAYLOAD;
                             }
                             else
                             {
 
                                 buffer.position(buffer.position()+_size-8-payloadLength);
-                                if(payloadLength > 0)
-                                {
-                                    buffer.put(_payload);
-                                }
+                                writePayload(buffer);
                                 _state = State.DONE;
                             }
 
@@ -208,10 +199,12 @@ public class FrameWriter implements ValueWriter<AMQFrame>
                     }
                     else
                     {
+                        // the body may have been reached by falling through from the preceding states
+                        _state = State.DELEGATE;
                         break;
                     }
                 case PAYLOAD:
-                    if(_payload == null || _payload.remaining() == 0)
+                    if(payloadRemaining() == 0)
                     {
                         _state = State.DONE;
                         _frame = null;
@@ -221,8 +214,8 @@ public class FrameWriter implements ValueWriter<AMQFrame>
                     }
                     else if(buffer.hasRemaining())
                     {
-                        buffer.put(_payload);
-                        if(_payload.remaining() == 0)
+                        writePayload(buffer);
+                        if(payloadRemaining() == 0)
                         {
                             _state = State.DONE;
                             _frame = null;
@@ -235,11 +228,45 @@ public class FrameWriter implements ValueWriter<AMQFrame>
         }
         if(_size == -1)
         {
-            _size =  _typeWriter.writeToBuffer(ByteBuffer.wrap(EMPTY_BYTE_ARRAY)) + 8 + (_payload == null ? 0 : _payload.remaining());
+            _size =  _typeWriter.writeToBuffer(ByteBuffer.wrap(EMPTY_BYTE_ARRAY)) + 8 + payloadRemaining();
         }
         return _size;
     }
 
+    private int payloadRemaining()
+    {
+        int remaining = 0;
+        if(_payload != null)
+        {
+            for(int i = _payloadIndex; i < _payload.length; i++)
+            {
+                remaining += _payload[i].remaining();
+            }
+        }
+        return remaining;
+    }
+
+    private void writePayload(ByteBuffer buffer)
+    {
+        while(_payload != null && _payloadIndex < _payload.length && buffer.hasRemaining())
+        {
+            ByteBuffer fragment = _payload[_payloadIndex];
+            if(fragment.remaining() <= buffer.remaining())
+            {
+                buffer.put(fragment);
+                _payloadIndex++;
+            }
+            else
+            {
+                int payloadUsed = buffer.remaining();
+                ByteBuffer dup = fragment.duplicate();
+                dup.limit(dup.position() + payloadUsed);
+                buffer.put(dup);
+                fragment.position(fragment.position() + payloadUsed);
+            }
+        }
+    }
+
     public void setValue(AMQFrame frame)
     {
         _frame = frame;
@@ -255,6 +282,15 @@ public class FrameWriter implements ValueWriter<AMQFrame>
         {
             _typeWriter = null;
         }
-        _payload = frame.getPayload() == null ? null : frame.getPayload().duplicate();
+        final List<ByteBuffer> payload = frame.getPayloadFragments();
+        _payloadIndex = 0;
+        if(payload != null)
+        {
+            _payload = new ByteBuffer[payload.size()];
+            for(int i = 0; i < _payload.length; i++)
+            {
+                _payload[i] = payload.get(i).duplicate();
+            }
+        }
     }
 }
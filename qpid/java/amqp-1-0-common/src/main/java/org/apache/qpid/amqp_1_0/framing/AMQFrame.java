@@ -25,11 +25,12 @@ import org.apache.qpid.amqp_1_0.type.Binary;
 import org.apache.qpid.amqp_1_0.type.FrameBody;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public abstract class AMQFrame<T>
 {
     private T _frameBody;
-    private ByteBuffer _payload;
+    private List<ByteBuffer> _payload;
 
     AMQFrame(T frameBody)
     {
@@ -37,19 +38,29 @@ public abstract class AMQFrame<T>
     }
 
     protected AMQFrame(T frameBody, ByteBuffer payload)
+    {
+        this(frameBody, PayloadFragments.asFragments(payload));
+    }
+
+    protected AMQFrame(T frameBody, List<ByteBuffer> payload)
     {
         _frameBody = frameBody;
         _payload = payload;
     }
 
     public ByteBuffer getPayload()
+    {
+        return PayloadFragments.concatenate(_payload);
+    }
+
+    public List<ByteBuffer> getPayloadFragments()
     {
         return _payload;
     }
 
     public static TransportFrame createAMQFrame(short channel, FrameBody frameBody)
     {
-        return createAMQFrame(channel, frameBody, null);
+        return createAMQFrame(channel, frameBody, (ByteBuffer) null);
     }
 
     public static TransportFrame createAMQFrame(short channel, FrameBody frameBody, ByteBuffer payload)
@@ -57,6 +68,11 @@ public abstract class AMQFrame<T>
         return new TransportFrame(channel, frameBody, payload);
     }
 
+    public static TransportFrame createAMQFrame(short channel, FrameBody frameBody, List<ByteBuffer> payload)
+    {
+        return new TransportFrame(channel, frameBody, payload);
+    }
+
     abstract public short getChannel();
 
     abstract public byte getFrameType();
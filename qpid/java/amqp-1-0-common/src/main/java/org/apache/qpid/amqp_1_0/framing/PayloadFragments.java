@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.framing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Operations on a frame payload held as a list of buffers, so that a payload assembled from several buffers may be
+ * divided between frames and written without first being copied into a single buffer.  The buffers of the list are
+ * never modified; where part of a buffer is required a duplicate is taken.
+ */
+public final class PayloadFragments
+{
+    private PayloadFragments()
+    {
+    }
+
+    public static int remaining(final List<ByteBuffer> fragments)
+    {
+        int remaining = 0;
+        if(fragments != null)
+        {
+            for(ByteBuffer fragment : fragments)
+            {
+                remaining += fragment.remaining();
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Returns the first <code>length</code> bytes of the payload.
+     */
+    public static List<ByteBuffer> head(final List<ByteBuffer> fragments, final int length)
+    {
+        List<ByteBuffer> head = new ArrayList<ByteBuffer>();
+        int required = length;
+        for(ByteBuffer fragment : fragments)
+        {
+            if(required == 0)
+            {
+                break;
+            }
+            else if(fragment.remaining() <= required)
+            {
+                head.add(fragment);
+                required -= fragment.remaining();
+            }
+            else
+            {
+                ByteBuffer dup = fragment.duplicate();
+                dup.limit(dup.position() + required);
+                head.add(dup);
+                required = 0;
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Returns the payload remaining after the first <code>offset</code> bytes.
+     */
+    public static List<ByteBuffer> tail(final List<ByteBuffer> fragments, final int offset)
+    {
+        List<ByteBuffer> tail = new ArrayList<ByteBuffer>(fragments.size());
+        int skip = offset;
+        for(ByteBuffer fragment : fragments)
+        {
+            if(skip >= fragment.remaining())
+            {
+                skip -= fragment.remaining();
+            }
+            else if(skip > 0)
+            {
+                ByteBuffer dup = fragment.duplicate();
+                dup.position(dup.position() + skip);
+                tail.add(dup);
+                skip = 0;
+            }
+            else
+            {
+                tail.add(fragment);
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Returns the payload as a single buffer, copying it only if it is held in more than one.
+     */
+    public static ByteBuffer concatenate(final List<ByteBuffer> fragments)
+    {
+        if(fragments == null)
+        {
+            return null;
+        }
+        else if(fragments.size() == 1)
+        {
+            return fragments.get(0);
+        }
+        else
+        {
+            ByteBuffer payload = ByteBuffer.allocate(remaining(fragments));
+            for(ByteBuffer fragment : fragments)
+            {
+                payload.put(fragment.duplicate());
+            }
+            payload.flip();
+            return payload;
+        }
+    }
+
+    static List<ByteBuffer> asFragments(final ByteBuffer payload)
+    {
+        return payload == null ? null : Collections.singletonList(payload);
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.qpid.amqp_1_0.framing;
 import org.apache.qpid.amqp_1_0.type.FrameBody;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public final class TransportFrame extends AMQFrame<FrameBody>
 {
@@ -39,6 +40,12 @@ public final class TransportFrame extends AMQFrame<FrameBody>
         _channel = channel;
     }
 
+    public TransportFrame(short channel, FrameBody frameBody, List<ByteBuffer> payload)
+    {
+        super(frameBody, payload);
+        _channel = channel;
+    }
+
     @Override public short getChannel()
     {
         return _channel;
@@ -0,0 +1,279 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.messaging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
+import org.apache.qpid.amqp_1_0.type.transport.AmqpError;
+
+/**
+ * Finds the extent of encoded message sections, and of the entries of encoded maps, from their format codes and
+ * sizes alone, without constructing the values they hold.
+ */
+public final class SectionScanner
+{
+    public static final int HEADER = 0x70;
+    public static final int DELIVERY_ANNOTATIONS = 0x71;
+    public static final int MESSAGE_ANNOTATIONS = 0x72;
+    public static final int PROPERTIES = 0x73;
+    public static final int APPLICATION_PROPERTIES = 0x74;
+    public static final int DATA = 0x75;
+    public static final int AMQP_SEQUENCE = 0x76;
+    public static final int AMQP_VALUE = 0x77;
+    public static final int FOOTER = 0x78;
+
+    /** Returned for a section whose descriptor is not that of a message section */
+    public static final int UNKNOWN = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte DESCRIBED_TYPE = (byte) 0x00;
+    private static final Map<String, Integer> SYMBOLIC_DESCRIPTORS = new HashMap<String, Integer>();
+
+    static
+    {
+        SYMBOLIC_DESCRIPTORS.put("amqp:header:list", HEADER);
+        SYMBOLIC_DESCRIPTORS.put("amqp:delivery-annotations:map", DELIVERY_ANNOTATIONS);
+        SYMBOLIC_DESCRIPTORS.put("amqp:message-annotations:map", MESSAGE_ANNOTATIONS);
+        SYMBOLIC_DESCRIPTORS.put("amqp:properties:list", PROPERTIES);
+        SYMBOLIC_DESCRIPTORS.put("amqp:application-properties:map", APPLICATION_PROPERTIES);
+        SYMBOLIC_DESCRIPTORS.put("amqp:data:binary", DATA);
+        SYMBOLIC_DESCRIPTORS.put("amqp:amqp-sequence:list", AMQP_SEQUENCE);
+        SYMBOLIC_DESCRIPTORS.put("amqp:amqp-value:*", AMQP_VALUE);
+        SYMBOLIC_DESCRIPTORS.put("amqp:footer:map", FOOTER);
+    }
+
+    private SectionScanner()
+    {
+    }
+
+    /**
+     * Reads the section at the position of the buffer, leaving the position after it.
+     *
+     * @return the descriptor code of the section, or {@link #UNKNOWN}
+     */
+    public static int skipSection(ByteBuffer in) throws AmqpErrorException
+    {
+        if(get(in) != DESCRIBED_TYPE)
+        {
+            throw new AmqpErrorException(AmqpError.DECODE_ERROR, "Section is not a described type");
+        }
+        int code = readDescriptor(in);
+        skipValue(in);
+        return code;
+    }
+
+    /**
+     * Reads the encoded value at the position of the buffer, leaving the position after it.
+     */
+    public static void skipValue(ByteBuffer in) throws AmqpErrorException
+    {
+        byte formatCode = get(in);
+        if(formatCode == DESCRIBED_TYPE)
+        {
+            skipValue(in);
+            skipValue(in);
+        }
+        else
+        {
+            skip(in, valueLength(formatCode, in));
+        }
+    }
+
+    /**
+     * Finds the entry with the given string key in the encoded map, optionally described, at the position of the
+     * buffer.  As with a lookup in the decoded map, keys of other types, symbols included, never match.  The position
+     * of the buffer is not changed.
+     *
+     * @return the position of the encoded value of the entry, or -1 if the map holds no such key or the value is not
+     * a map
+     */
+    public static int findMapEntry(ByteBuffer encoded, String key) throws AmqpErrorException
+    {
+        ByteBuffer in = encoded.duplicate();
+        byte formatCode = get(in);
+        if(formatCode == DESCRIBED_TYPE)
+        {
+            skipValue(in);
+            formatCode = get(in);
+        }
+
+        int count;
+        if(formatCode == (byte) 0xc1)
+        {
+            skip(in, 1);
+            count = get(in) & 0xff;
+        }
+        else if(formatCode == (byte) 0xd1)
+        {
+            skip(in, 4);
+            count = getInt(in);
+        }
+        else
+        {
+            return -1;
+        }
+
+        byte[] keyBytes = key.getBytes(UTF_8);
+        for(int i = 0; i < count / 2; i++)
+        {
+            boolean matches = keyMatches(in, keyBytes);
+            if(matches)
+            {
+                return in.position();
+            }
+            skipValue(in);
+        }
+        return -1;
+    }
+
+    private static boolean keyMatches(ByteBuffer in, byte[] keyBytes) throws AmqpErrorException
+    {
+        byte formatCode = get(in);
+        int length;
+        if(formatCode == (byte) 0xa1)
+        {
+            length = get(in) & 0xff;
+        }
+        else if(formatCode == (byte) 0xb1)
+        {
+            length = getInt(in);
+        }
+        else
+        {
+            skip(in, valueLength(formatCode, in));
+            return false;
+        }
+
+        boolean matches = length == keyBytes.length;
+        int start = in.position();
+        skip(in, length);
+        for(int i = 0; matches && i < length; i++)
+        {
+            matches = in.get(start + i) == keyBytes[i];
+        }
+        return matches;
+    }
+
+    private static int readDescriptor(ByteBuffer in) throws AmqpErrorException
+    {
+        byte formatCode = get(in);
+        switch(formatCode)
+        {
+            case (byte) 0x44:
+                return UNKNOWN;
+            case (byte) 0x53:
+                return sectionCode(get(in) & 0xff);
+            case (byte) 0x80:
+                return sectionCode(getLong(in));
+            case (byte) 0xa3:
+            case (byte) 0xb3:
+                int length = formatCode == (byte) 0xa3 ? get(in) & 0xff : getInt(in);
+                byte[] symbol = new byte[length];
+                get(in, symbol);
+                Integer symbolCode = SYMBOLIC_DESCRIPTORS.get(new String(symbol, UTF_8));
+                return symbolCode == null ? UNKNOWN : symbolCode;
+            default:
+                in.position(in.position() - 1);
+                skipValue(in);
+                return UNKNOWN;
+        }
+    }
+
+    private static int sectionCode(long code)
+    {
+        return code >= HEADER && code <= FOOTER ? (int) code : UNKNOWN;
+    }
+
+    /**
+     * Returns the number of bytes following the format code (and reads any size field).
+     */
+    private static int valueLength(byte formatCode, ByteBuffer in) throws AmqpErrorException
+    {
+        switch((formatCode >> 4) & 0x0f)
+        {
+            case 0x4:
+                return 0;
+            case 0x5:
+                return 1;
+            case 0x6:
+                return 2;
+            case 0x7:
+                return 4;
+            case 0x8:
+                return 8;
+            case 0x9:
+                return 16;
+            case 0xa:
+            case 0xc:
+            case 0xe:
+                return get(in) & 0xff;
+            case 0xb:
+            case 0xd:
+            case 0xf:
+                return getInt(in);
+            default:
+                throw new AmqpErrorException(AmqpError.DECODE_ERROR,
+                                             "Unknown type format-code 0x%02x", formatCode);
+        }
+    }
+
+    private static byte get(ByteBuffer in) throws AmqpErrorException
+    {
+        ensureRemaining(in, 1);
+        return in.get();
+    }
+
+    private static void get(ByteBuffer in, byte[] dest) throws AmqpErrorException
+    {
+        ensureRemaining(in, dest.length);
+        in.get(dest);
+    }
+
+    private static int getInt(ByteBuffer in) throws AmqpErrorException
+    {
+        ensureRemaining(in, 4);
+        return in.getInt();
+    }
+
+    private static long getLong(ByteBuffer in) throws AmqpErrorException
+    {
+        ensureRemaining(in, 8);
+        return in.getLong();
+    }
+
+    private static void skip(ByteBuffer in, int length) throws AmqpErrorException
+    {
+        ensureRemaining(in, length);
+        in.position(in.position() + length);
+    }
+
+    private static void ensureRemaining(ByteBuffer in, int length) throws AmqpErrorException
+    {
+        if(length < 0 || in.remaining() < length)
+        {
+            throw new AmqpErrorException(AmqpError.DECODE_ERROR, "Insufficient data");
+        }
+    }
+}
@@ -32,7 +32,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -49,6 +51,7 @@ import javax.xml.bind.DatatypeConverter;
 import org.apache.qpid.amqp_1_0.codec.DescribedTypeConstructorRegistry;
 import org.apache.qpid.amqp_1_0.codec.ValueWriter;
 import org.apache.qpid.amqp_1_0.framing.AMQFrame;
+import org.apache.qpid.amqp_1_0.framing.PayloadFragments;
 import org.apache.qpid.amqp_1_0.framing.SASLFrame;
 import org.apache.qpid.amqp_1_0.type.Binary;
 import org.apache.qpid.amqp_1_0.type.FrameBody;
@@ -675,19 +678,31 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
 
     public synchronized void send(short channel, FrameBody body)
     {
-        send(channel, body, null);
+        send(channel, body, (List<ByteBuffer>) null);
     }
 
 
     public synchronized int send(short channel, FrameBody body, ByteBuffer payload)
+    {
+        return send(channel, body, payload == null ? null : Collections.singletonList(payload));
+    }
+
+    /**
+     * Sends the frame with as much of the payload as will fit within the maximum frame size, marking a transfer as
+     * having more to follow if not all of it does.
+     *
+     * @return the number of bytes of the payload sent, or -1 if the connection is closed for output
+     */
+    public synchronized int send(short channel, FrameBody body, List<ByteBuffer> payload)
     {
         if (!_closedForOutput)
         {
             ValueWriter<FrameBody> writer = _describedTypeRegistry.getValueWriter(body);
             int size = writer.writeToBuffer(EMPTY_BYTE_BUFFER);
-            ByteBuffer payloadDup = payload == null ? null : payload.duplicate();
+            int payloadLength = PayloadFragments.remaining(payload);
             int payloadSent = getMaxFrameSize() - (size + 9);
-            if (payloadSent < (payload == null ? 0 : payload.remaining()))
+            List<ByteBuffer> framePayload = payload;
+            if (payloadSent < payloadLength)
             {
 
                 if (body instanceof Transfer)
@@ -699,20 +714,13 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
                 size = writer.writeToBuffer(EMPTY_BYTE_BUFFER);
                 payloadSent = getMaxFrameSize() - (size + 9);
 
-                try
-                {
-                    payloadDup.limit(payloadDup.position() + payloadSent);
-                }
-                catch (NullPointerException npe)
-                {
-                    throw npe;
-                }
+                framePayload = PayloadFragments.head(payload, payloadSent);
             }
             else
             {
-                payloadSent = payload == null ? 0 : payload.remaining();
+                payloadSent = payloadLength;
             }
-            _frameOutputHandler.send(AMQFrame.createAMQFrame(channel, body, payloadDup));
+            _frameOutputHandler.send(AMQFrame.createAMQFrame(channel, body, framePayload));
             return payloadSent;
         }
         else
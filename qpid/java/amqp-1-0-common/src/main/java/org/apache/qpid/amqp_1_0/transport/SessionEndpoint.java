@@ -26,10 +26,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.qpid.amqp_1_0.framing.OversizeFrameException;
+import org.apache.qpid.amqp_1_0.framing.PayloadFragments;
 import org.apache.qpid.amqp_1_0.type.Binary;
 import org.apache.qpid.amqp_1_0.type.DeliveryState;
 import org.apache.qpid.amqp_1_0.type.DistributionMode;
@@ -323,7 +325,7 @@ public class SessionEndpoint
     }
 
 
-    private int send(final FrameBody frameBody, ByteBuffer payload)
+    private int send(final FrameBody frameBody, List<ByteBuffer> payload)
     {
         return _connection.send(this.getSendingChannel(), frameBody, payload);
     }
@@ -627,13 +629,12 @@ public class SessionEndpoint
 
         try
         {
-            ByteBuffer payload = xfr.getPayload();
+            List<ByteBuffer> payload = xfr.getPayloadFragments();
             int payloadSent = send(xfr, payload);
 
-            if(payload != null && payloadSent < payload.remaining() && payloadSent >= 0)
+            if(payload != null && payloadSent < PayloadFragments.remaining(payload) && payloadSent >= 0)
             {
-                payload = payload.duplicate();
-                payload.position(payload.position()+payloadSent);
+                payload = PayloadFragments.tail(payload, payloadSent);
 
                 Transfer secondTransfer = new Transfer();
 
@@ -642,7 +643,7 @@ public class SessionEndpoint
                 secondTransfer.setSettled(xfr.getSettled());
                 secondTransfer.setState(xfr.getState());
                 secondTransfer.setMessageFormat(xfr.getMessageFormat());
-                secondTransfer.setPayload(payload);
+                secondTransfer.setPayloadFragments(payload);
 
                 sendTransfer(secondTransfer, endpoint, false);
 
@@ -28,6 +28,10 @@ import org.apache.qpid.amqp_1_0.transport.ConnectionEndpoint;
 
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.qpid.amqp_1_0.framing.PayloadFragments;
 
 
 import org.apache.qpid.amqp_1_0.type.*;
@@ -37,7 +41,7 @@ public class Transfer
   {
 
 
-    private ByteBuffer _payload;
+    private List<ByteBuffer> _payload;
 
     private UnsignedInteger _handle;
 
@@ -287,10 +291,23 @@ public class Transfer
 
     public void setPayload(ByteBuffer payload)
     {
-        _payload = payload;
+        _payload = payload == null ? null : Collections.singletonList(payload);
     }
 
     public ByteBuffer getPayload()
+    {
+        return PayloadFragments.concatenate(_payload);
+    }
+
+    /**
+     * Sets the payload as a sequence of buffers which are written in turn, without being copied into one
+     */
+    public void setPayloadFragments(List<ByteBuffer> payload)
+    {
+        _payload = payload;
+    }
+
+    public List<ByteBuffer> getPayloadFragments()
     {
         return _payload;
     }
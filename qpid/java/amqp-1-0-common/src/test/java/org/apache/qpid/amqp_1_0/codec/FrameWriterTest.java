@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.framing.AMQFrame;
+import org.apache.qpid.amqp_1_0.framing.PayloadFragments;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.transport.Transfer;
+
+public class FrameWriterTest extends TestCase
+{
+    private static final short CHANNEL = 3;
+
+    private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance()
+                                                                                      .registerTransportLayer()
+                                                                                      .registerMessagingLayer();
+    private final byte[] _content = new byte[100];
+    private List<ByteBuffer> _fragments;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        for (int i = 0; i < _content.length; i++)
+        {
+            _content[i] = (byte) i;
+        }
+        _fragments = new ArrayList<ByteBuffer>();
+        int offset = 0;
+        for (int size : new int[] { 30, 1, 45, 24 })
+        {
+            _fragments.add(ByteBuffer.wrap(_content, offset, size).slice());
+            offset += size;
+        }
+    }
+
+    public void testFragmentedPayloadWrittenAsContiguousPayload() throws Exception
+    {
+        byte[] expected = write(AMQFrame.createAMQFrame(CHANNEL, createTransfer(), ByteBuffer.wrap(_content)), 4096);
+
+        // the frame may be cut by the end of a buffer within its header, its body or its payload
+        for (int bufferSize = 1; bufferSize <= expected.length; bufferSize++)
+        {
+            byte[] written = write(AMQFrame.createAMQFrame(CHANNEL, createTransfer(), _fragments), bufferSize);
+            assertTrue("Unexpected frame written through buffers of " + bufferSize,
+                       Arrays.equals(expected, written));
+            assertFragmentsUnchanged();
+        }
+    }
+
+    public void testPayloadSplitIntoFramesAcrossFragmentBoundaries() throws Exception
+    {
+        for (int split = 1; split < _content.length; split++)
+        {
+            byte[] first = write(AMQFrame.createAMQFrame(CHANNEL, createTransfer(),
+                                                         PayloadFragments.head(_fragments, split)), 7);
+            byte[] second = write(AMQFrame.createAMQFrame(CHANNEL, createTransfer(),
+                                                          PayloadFragments.tail(_fragments, split)), 7);
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            payload.write(readPayload(first));
+            payload.write(readPayload(second));
+            assertTrue("Payload not reassembled when split at " + split,
+                       Arrays.equals(_content, payload.toByteArray()));
+            assertFragmentsUnchanged();
+        }
+    }
+
+    public void testFrameWithoutPayload() throws Exception
+    {
+        byte[] expected = write(AMQFrame.createAMQFrame(CHANNEL, createTransfer()), 4096);
+        assertEquals(0, readPayload(expected).length);
+
+        for (int bufferSize = 1; bufferSize < expected.length; bufferSize++)
+        {
+            byte[] written = write(AMQFrame.createAMQFrame(CHANNEL, createTransfer()), bufferSize);
+            assertTrue("Unexpected frame written through buffers of " + bufferSize,
+                       Arrays.equals(expected, written));
+        }
+    }
+
+    private Transfer createTransfer()
+    {
+        Transfer transfer = new Transfer();
+        transfer.setHandle(UnsignedInteger.ZERO);
+        transfer.setDeliveryId(UnsignedInteger.valueOf(42));
+        transfer.setDeliveryTag(new Binary(new byte[] { 1, 2, 3, 4 }));
+        return transfer;
+    }
+
+    /**
+     * Writes the frame through successive buffers of the given size, as a transport with limited space would.
+     */
+    private byte[] write(AMQFrame frame, int bufferSize)
+    {
+        FrameWriter writer = new FrameWriter(_typeRegistry);
+        writer.setValue(frame);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (!writer.isComplete())
+        {
+            buffer.clear();
+            writer.writeToBuffer(buffer);
+            buffer.flip();
+            written.write(buffer.array(), 0, buffer.limit());
+        }
+        return written.toByteArray();
+    }
+
+    /**
+     * Checks the framing of the given frame and returns its payload.
+     */
+    private byte[] readPayload(byte[] frame) throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        assertEquals("Unexpected frame size", frame.length, buffer.getInt());
+        int dataOffset = buffer.get() * 4;
+        assertEquals("Unexpected frame type", 0, buffer.get());
+        assertEquals("Unexpected channel", CHANNEL, buffer.getShort());
+        buffer.position(dataOffset);
+
+        Object body = new ValueHandler(_typeRegistry).parse(buffer);
+        assertTrue("Unexpected frame body " + body, body instanceof Transfer);
+        assertEquals(UnsignedInteger.valueOf(42), ((Transfer) body).getDeliveryId());
+
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return payload;
+    }
+
+    private void assertFragmentsUnchanged()
+    {
+        int offset = 0;
+        for (ByteBuffer fragment : _fragments)
+        {
+            assertEquals("Fragment position changed", 0, fragment.position());
+            assertEquals(ByteBuffer.wrap(_content, offset, fragment.limit()).slice(), fragment);
+            offset += fragment.limit();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.framing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class PayloadFragmentsTest extends TestCase
+{
+    private static final int[] FRAGMENT_SIZES = { 3, 5, 1, 7 };
+
+    private final byte[] _content = new byte[16];
+    private List<ByteBuffer> _fragments;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        for (int i = 0; i < _content.length; i++)
+        {
+            _content[i] = (byte) i;
+        }
+
+        // each fragment is a window onto a larger buffer, so that positions other than zero are exercised
+        _fragments = new ArrayList<ByteBuffer>();
+        int offset = 0;
+        for (int size : FRAGMENT_SIZES)
+        {
+            ByteBuffer backing = ByteBuffer.allocate(size + 4);
+            backing.position(2);
+            backing.put(_content, offset, size);
+            backing.position(2);
+            backing.limit(2 + size);
+            _fragments.add(backing);
+            offset += size;
+        }
+    }
+
+    public void testRemaining()
+    {
+        assertEquals(0, PayloadFragments.remaining(null));
+        assertEquals(0, PayloadFragments.remaining(Collections.<ByteBuffer>emptyList()));
+        assertEquals(_content.length, PayloadFragments.remaining(_fragments));
+    }
+
+    public void testHeadAndTailAtEveryOffset()
+    {
+        for (int offset = 0; offset <= _content.length; offset++)
+        {
+            List<ByteBuffer> head = PayloadFragments.head(_fragments, offset);
+            List<ByteBuffer> tail = PayloadFragments.tail(_fragments, offset);
+
+            assertEquals("Unexpected head length at " + offset, offset, PayloadFragments.remaining(head));
+            assertEquals("Unexpected tail length at " + offset,
+                         _content.length - offset, PayloadFragments.remaining(tail));
+            assertTrue("Unexpected head at " + offset,
+                       Arrays.equals(Arrays.copyOfRange(_content, 0, offset), toArray(head)));
+            assertTrue("Unexpected tail at " + offset,
+                       Arrays.equals(Arrays.copyOfRange(_content, offset, _content.length), toArray(tail)));
+            assertFragmentsUnchanged();
+        }
+    }
+
+    public void testWholeFragmentsReused()
+    {
+        List<ByteBuffer> head = PayloadFragments.head(_fragments, 8);
+        assertEquals(2, head.size());
+        assertSame(_fragments.get(0), head.get(0));
+        assertSame(_fragments.get(1), head.get(1));
+
+        List<ByteBuffer> tail = PayloadFragments.tail(_fragments, 4);
+        assertEquals(3, tail.size());
+        assertNotSame("Partly used fragment should be duplicated", _fragments.get(1), tail.get(0));
+        assertSame(_fragments.get(2), tail.get(1));
+        assertSame(_fragments.get(3), tail.get(2));
+    }
+
+    public void testRepeatedSplitting()
+    {
+        // divide the payload as a sender would between frames able to carry a few bytes each
+        List<ByteBuffer> remaining = _fragments;
+        ByteBuffer sent = ByteBuffer.allocate(_content.length);
+        while (PayloadFragments.remaining(remaining) > 0)
+        {
+            int frameSize = Math.min(4, PayloadFragments.remaining(remaining));
+            sent.put(toArray(PayloadFragments.head(remaining, frameSize)));
+            remaining = PayloadFragments.tail(remaining, frameSize);
+        }
+        assertTrue(Arrays.equals(_content, sent.array()));
+        assertFragmentsUnchanged();
+    }
+
+    public void testConcatenate()
+    {
+        assertNull(PayloadFragments.concatenate(null));
+
+        ByteBuffer single = ByteBuffer.wrap(_content);
+        assertSame("A single fragment should not be copied",
+                   single, PayloadFragments.concatenate(Collections.singletonList(single)));
+
+        ByteBuffer concatenated = PayloadFragments.concatenate(_fragments);
+        assertEquals(_content.length, concatenated.remaining());
+        assertEquals(ByteBuffer.wrap(_content), concatenated);
+        assertFragmentsUnchanged();
+    }
+
+    private void assertFragmentsUnchanged()
+    {
+        for (int i = 0; i < FRAGMENT_SIZES.length; i++)
+        {
+            ByteBuffer fragment = _fragments.get(i);
+            assertEquals("Fragment position changed", 2, fragment.position());
+            assertEquals("Fragment limit changed", 2 + FRAGMENT_SIZES[i], fragment.limit());
+        }
+    }
+
+    private static byte[] toArray(List<ByteBuffer> fragments)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(PayloadFragments.remaining(fragments));
+        for (ByteBuffer fragment : fragments)
+        {
+            buffer.put(fragment.duplicate());
+        }
+        return buffer.array();
+    }
+}
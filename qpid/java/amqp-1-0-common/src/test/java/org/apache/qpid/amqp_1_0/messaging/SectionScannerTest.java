@@ -0,0 +1,339 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.codec.ValueHandler;
+import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.AmqpValue;
+import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+
+public class SectionScannerTest extends TestCase
+{
+    private static final byte TRAILER = (byte) 0x7f;
+
+    private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance()
+                                                                                      .registerTransportLayer()
+                                                                                      .registerMessagingLayer();
+
+    public void testSkipFixedWidthValues() throws Exception
+    {
+        assertSkipped(bytes(0x40));
+        assertSkipped(bytes(0x41));
+        assertSkipped(bytes(0x50, 0x07));
+        assertSkipped(bytes(0x60, 0x01, 0x02));
+        assertSkipped(bytes(0x70, 0x01, 0x02, 0x03, 0x04));
+        assertSkipped(bytes(0x80, 1, 2, 3, 4, 5, 6, 7, 8));
+        assertSkipped(bytes(0x98, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16));
+    }
+
+    public void testSkipVariableWidthValues() throws Exception
+    {
+        assertSkipped(bytes(0xa1, 0x03, 'a', 'b', 'c'));
+        assertSkipped(bytes(0xa3, 0x00));
+        assertSkipped(bytes(0xb1, 0x00, 0x00, 0x00, 0x02, 'a', 'b'));
+        assertSkipped(bytes(0xb0, 0x00, 0x00, 0x00, 0x00));
+
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        byte[] longString = encode(new String(chars));
+        assertEquals("Long string should be encoded with a 32-bit size", (byte) 0xb1, longString[0]);
+        assertSkipped(longString);
+    }
+
+    public void testSkipCompoundValues() throws Exception
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("key", 1);
+        byte[] map8 = encode(map);
+        assertEquals("Small map should be encoded with an 8-bit size", (byte) 0xc1, map8[0]);
+        assertSkipped(map8);
+
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        map.put("long", new String(chars));
+        byte[] map32 = encode(map);
+        assertEquals("Large map should be encoded with a 32-bit size", (byte) 0xd1, map32[0]);
+        assertSkipped(map32);
+
+        assertSkipped(bytes(0xe0, 0x04, 0x02, 0x50, 0x01, 0x02));
+        assertSkipped(bytes(0xf0, 0x00, 0x00, 0x00, 0x05, 0x00, 0x00, 0x00, 0x00, 0x40));
+    }
+
+    public void testSkipDescribedValue() throws Exception
+    {
+        assertSkipped(bytes(0x00, 0xa3, 0x01, 'x', 0x00, 0x53, 0x01, 0x41));
+    }
+
+    public void testUnknownFormatCodeRejected() throws Exception
+    {
+        assertDecodeError(bytes(0x30));
+        assertDecodeError(bytes(0x10, 0x00));
+    }
+
+    public void testNumericDescriptors() throws Exception
+    {
+        assertEquals(SectionScanner.HEADER, skipSection(bytes(0x00, 0x53, 0x70, 0x45)));
+        assertEquals(SectionScanner.FOOTER, skipSection(bytes(0x00, 0x53, 0x78, 0xc1, 0x01, 0x00)));
+        assertEquals(SectionScanner.PROPERTIES, skipSection(bytes(0x00, 0x80, 0, 0, 0, 0, 0, 0, 0, 0x73, 0x45)));
+        assertEquals(SectionScanner.UNKNOWN, skipSection(bytes(0x00, 0x53, 0x10, 0x45)));
+        assertEquals(SectionScanner.UNKNOWN, skipSection(bytes(0x00, 0x80, 0, 0, 0, 1, 0, 0, 0, 0x73, 0x45)));
+        assertEquals(SectionScanner.UNKNOWN, skipSection(bytes(0x00, 0x44, 0x45)));
+    }
+
+    public void testSymbolicDescriptors() throws Exception
+    {
+        assertEquals(SectionScanner.PROPERTIES, skipSection(symbolicSection(0xa3, "amqp:properties:list")));
+        assertEquals(SectionScanner.APPLICATION_PROPERTIES,
+                     skipSection(symbolicSection(0xb3, "amqp:application-properties:map")));
+        assertEquals(SectionScanner.AMQP_VALUE, skipSection(symbolicSection(0xa3, "amqp:amqp-value:*")));
+        assertEquals(SectionScanner.UNKNOWN, skipSection(symbolicSection(0xa3, "amqp:unknown:list")));
+    }
+
+    public void testEncodedSections() throws Exception
+    {
+        Header header = new Header();
+        header.setDurable(true);
+        header.setPriority(UnsignedByte.valueOf((byte) 7));
+        Properties properties = new Properties();
+        properties.setMessageId("id");
+        properties.setSubject("subject");
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("key", "value");
+
+        assertEquals(SectionScanner.HEADER, skipSection(encode(header)));
+        assertEquals(SectionScanner.PROPERTIES, skipSection(encode(properties)));
+        assertEquals(SectionScanner.APPLICATION_PROPERTIES, skipSection(encode(new ApplicationProperties(map))));
+        assertEquals(SectionScanner.DATA, skipSection(encode(new Data(new Binary(new byte[1000])))));
+        assertEquals(SectionScanner.AMQP_VALUE, skipSection(encode(new AmqpValue("value"))));
+    }
+
+    public void testUndescribedSectionRejected() throws Exception
+    {
+        try
+        {
+            SectionScanner.skipSection(ByteBuffer.wrap(bytes(0x45)));
+            fail("Exception not thrown");
+        }
+        catch (AmqpErrorException e)
+        {
+            // pass
+        }
+    }
+
+    public void testTruncatedInputRejected() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setMessageId("id");
+        properties.setContentType(Symbol.valueOf("text/plain"));
+        byte[][] encodings = { encode(properties),
+                               symbolicSection(0xb3, "amqp:properties:list"),
+                               bytes(0x00, 0x80, 0, 0, 0, 0, 0, 0, 0, 0x73, 0x45),
+                               bytes(0x00, 0x53, 0x75, 0xb0, 0x00, 0x00, 0x00, 0x02, 0x01, 0x02) };
+        for (byte[] encoding : encodings)
+        {
+            for (int length = 0; length < encoding.length; length++)
+            {
+                try
+                {
+                    SectionScanner.skipSection(ByteBuffer.wrap(encoding, 0, length));
+                    fail("Exception not thrown for encoding truncated to " + length + " bytes");
+                }
+                catch (AmqpErrorException e)
+                {
+                    // pass
+                }
+            }
+        }
+    }
+
+    public void testNegativeSizeRejected() throws Exception
+    {
+        assertDecodeError(bytes(0xb1, 0xff, 0xff, 0xff, 0xff, 'a'));
+    }
+
+    public void testFindMapEntry() throws Exception
+    {
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put(1, "numeric key");
+        map.put("abc", "prefixed");
+        map.put("ab", 42);
+        map.put(Symbol.valueOf("symbol"), true);
+        byte[] encoding = encode(new ApplicationProperties(map));
+
+        assertEquals(42, findValue(encoding, "ab"));
+        assertEquals("prefixed", findValue(encoding, "abc"));
+        assertEquals("Symbol key should not match a string",
+                     -1, SectionScanner.findMapEntry(ByteBuffer.wrap(encoding), "symbol"));
+        assertEquals(-1, SectionScanner.findMapEntry(ByteBuffer.wrap(encoding), "a"));
+        assertEquals(-1, SectionScanner.findMapEntry(ByteBuffer.wrap(encoding), "1"));
+    }
+
+    public void testFindMapEntryInLargeMap() throws Exception
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < 100; i++)
+        {
+            map.put("key" + i, "value" + i);
+        }
+        byte[] encoding = encode(map);
+        assertEquals("Large map should be encoded with a 32-bit size", (byte) 0xd1, encoding[0]);
+
+        assertEquals("value0", findValue(encoding, "key0"));
+        assertEquals("value99", findValue(encoding, "key99"));
+        assertEquals(-1, SectionScanner.findMapEntry(ByteBuffer.wrap(encoding), "key100"));
+    }
+
+    public void testFindMapEntryLeavesPositionUnchanged() throws Exception
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("key", "value");
+        byte[] encoding = encode(map);
+        ByteBuffer buf = ByteBuffer.allocate(encoding.length + 2);
+        buf.put((byte) 0).put((byte) 0).put(encoding);
+        buf.position(2);
+
+        int position = SectionScanner.findMapEntry(buf, "key");
+        assertEquals("Buffer position changed", 2, buf.position());
+        ByteBuffer value = buf.duplicate();
+        value.position(position);
+        assertEquals("value", new ValueHandler(_typeRegistry).parse(value));
+    }
+
+    public void testFindMapEntryOfValueNotMap() throws Exception
+    {
+        assertEquals(-1, SectionScanner.findMapEntry(ByteBuffer.wrap(encode("key")), "key"));
+        assertEquals(-1, SectionScanner.findMapEntry(ByteBuffer.wrap(encode(new AmqpValue("key"))), "key"));
+    }
+
+    public void testFindMapEntryInTruncatedMapRejected() throws Exception
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("first", 1);
+        map.put("key", "value");
+        byte[] encoding = encode(map);
+        try
+        {
+            SectionScanner.findMapEntry(ByteBuffer.wrap(encoding, 0, encoding.length - 10), "key");
+            fail("Exception not thrown");
+        }
+        catch (AmqpErrorException e)
+        {
+            // pass
+        }
+    }
+
+    private Object findValue(byte[] encoding, String key) throws AmqpErrorException
+    {
+        int position = SectionScanner.findMapEntry(ByteBuffer.wrap(encoding), key);
+        assertTrue("Key " + key + " not found", position >= 0);
+        ByteBuffer value = ByteBuffer.wrap(encoding);
+        value.position(position);
+        return new ValueHandler(_typeRegistry).parse(value);
+    }
+
+    private void assertSkipped(byte[] encoding) throws AmqpErrorException
+    {
+        ByteBuffer buf = withTrailer(encoding);
+        SectionScanner.skipValue(buf);
+        assertEquals("Unexpected position after value", encoding.length, buf.position());
+        assertEquals("Value skipped beyond its end", TRAILER, buf.get());
+    }
+
+    private void assertDecodeError(byte[] encoding)
+    {
+        try
+        {
+            SectionScanner.skipValue(ByteBuffer.wrap(encoding));
+            fail("Exception not thrown");
+        }
+        catch (AmqpErrorException e)
+        {
+            // pass
+        }
+    }
+
+    private int skipSection(byte[] encoding) throws AmqpErrorException
+    {
+        ByteBuffer buf = withTrailer(encoding);
+        int code = SectionScanner.skipSection(buf);
+        assertEquals("Unexpected position after section", encoding.length, buf.position());
+        return code;
+    }
+
+    private ByteBuffer withTrailer(byte[] encoding)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(encoding.length + 1);
+        buf.put(encoding).put(TRAILER);
+        buf.flip();
+        return buf;
+    }
+
+    private byte[] symbolicSection(int symbolFormatCode, String descriptor)
+    {
+        byte[] symbol = descriptor.getBytes();
+        ByteBuffer buf = ByteBuffer.allocate(symbol.length + 8);
+        buf.put((byte) 0x00).put((byte) symbolFormatCode);
+        if (symbolFormatCode == 0xa3)
+        {
+            buf.put((byte) symbol.length);
+        }
+        else
+        {
+            buf.putInt(symbol.length);
+        }
+        buf.put(symbol).put((byte) 0x45);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    private byte[] encode(Object value)
+    {
+        SectionEncoder encoder = new SectionEncoderImpl(_typeRegistry);
+        encoder.encodeObject(value);
+        Binary encoding = encoder.getEncoding();
+        return Arrays.copyOfRange(encoding.getArray(),
+                                  encoding.getArrayOffset(),
+                                  encoding.getArrayOffset() + encoding.getLength());
+    }
+
+    private static byte[] bytes(int... values)
+    {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -66,6 +66,7 @@ import org.apache.qpid.server.store.berkeleydb.upgrade.Upgrader;
 import org.apache.qpid.server.store.handler.DistributedTransactionHandler;
 import org.apache.qpid.server.store.handler.MessageHandler;
 import org.apache.qpid.server.store.handler.MessageInstanceHandler;
+import org.apache.qpid.server.util.ByteBufferUtils;
 
 
 public abstract class AbstractBDBMessageStore implements MessageStore
@@ -677,9 +678,10 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     {
         DatabaseEntry key = new DatabaseEntry();
         LongBinding.longToEntry(messageId, key);
-        DatabaseEntry value = new DatabaseEntry();
-        ContentBinding messageBinding = ContentBinding.getInstance();
-        messageBinding.objectToEntry(contentBody.array(), value);
+        // the content is written as its raw bytes, so the entry can refer to the content without it being copied
+        DatabaseEntry value = new DatabaseEntry(contentBody.array(),
+                                                contentBody.arrayOffset() + contentBody.position(),
+                                                contentBody.remaining());
         try
         {
             OperationStatus status = getMessageContentDb().put(tx, key, value);
@@ -1072,127 +1074,21 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
     protected abstract Logger getLogger();
 
-    static interface MessageDataRef<T extends StorableMessageMetaData>
-    {
-        T getMetaData();
-        byte[] getData();
-        void setData(byte[] data);
-        boolean isHardRef();
-    }
-
-    private static final class MessageDataHardRef<T extends StorableMessageMetaData> implements MessageDataRef<T>
-    {
-        private final T _metaData;
-        private byte[] _data;
-
-        private MessageDataHardRef(final T metaData)
-        {
-            _metaData = metaData;
-        }
-
-        @Override
-        public T getMetaData()
-        {
-            return _metaData;
-        }
-
-        @Override
-        public byte[] getData()
-        {
-            return _data;
-        }
-
-        @Override
-        public void setData(final byte[] data)
-        {
-            _data = data;
-        }
-
-        @Override
-        public boolean isHardRef()
-        {
-            return true;
-        }
-    }
-
-    private static final class MessageData<T extends StorableMessageMetaData>
-    {
-        private T _metaData;
-        private SoftReference<byte[]> _data;
-
-        private MessageData(final T metaData, final byte[] data)
-        {
-            _metaData = metaData;
-
-            if(data != null)
-            {
-                _data = new SoftReference<>(data);
-            }
-        }
-
-        public T getMetaData()
-        {
-            return _metaData;
-        }
-
-        public byte[] getData()
-        {
-            return _data == null ? null : _data.get();
-        }
-
-        public void setData(final byte[] data)
-        {
-            _data = new SoftReference<>(data);
-        }
-
-
-    }
-    private static final class MessageDataSoftRef<T extends StorableMessageMetaData> extends SoftReference<MessageData<T>> implements MessageDataRef<T>
-    {
-
-        public MessageDataSoftRef(final T metadata, byte[] data)
-        {
-            super(new MessageData<T>(metadata, data));
-        }
-
-        @Override
-        public T getMetaData()
-        {
-            MessageData<T> ref = get();
-            return ref == null ? null : ref.getMetaData();
-        }
-
-        @Override
-        public byte[] getData()
-        {
-            MessageData<T> ref = get();
-
-            return ref == null ? null : ref.getData();
-        }
-
-        @Override
-        public void setData(final byte[] data)
-        {
-            MessageData<T> ref = get();
-            if(ref != null)
-            {
-                ref.setData(data);
-            }
-        }
-
-        @Override
-        public boolean isHardRef()
-        {
-            return false;
-        }
-    }
-
     final class StoredBDBMessage<T extends StorableMessageMetaData> implements StoredMessage<T>
     {
 
         private final long _messageId;
-
-        private volatile MessageDataRef<T> _messageDataRef;
+        private final int _contentSize;
+        /** The metadata while the message is not yet committed, after which it is held only softly */
+        private volatile T _metaData;
+        private volatile SoftReference<T> _metaDataRef;
+
+        /** The content held on the heap, or null if it has not yet been loaded or has been flowed to disk */
+        private volatile byte[] _data;
+        /** Content added but not yet copied into the content held on the heap, or null if there is none */
+        private volatile List<ByteBuffer> _addedContent;
+        private volatile boolean _stored;
+        private volatile boolean _committed;
 
         StoredBDBMessage(long messageId, T metaData)
         {
@@ -1202,82 +1098,120 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         StoredBDBMessage(long messageId, T metaData, boolean isRecovered)
         {
             _messageId = messageId;
-
-            if(!isRecovered)
+            _contentSize = metaData.getContentSize();
+            if(isRecovered)
             {
-                _messageDataRef = new MessageDataHardRef<>(metaData);
+                _metaDataRef = new SoftReference<>(metaData);
             }
             else
             {
-                _messageDataRef = new MessageDataSoftRef<>(metaData, null);
+                _metaData = metaData;
             }
+            _stored = isRecovered;
+            _committed = isRecovered;
         }
 
+        /**
+         * Returns the metadata, reading it back from the store should it have been reclaimed since the message was
+         * committed.
+         */
         @Override
         public T getMetaData()
         {
-            T metaData = _messageDataRef.getMetaData();
-
+            T metaData = _metaData;
             if(metaData == null)
             {
-                checkMessageStoreOpen();
-                metaData = (T) getMessageMetaData(_messageId);
-                _messageDataRef = new MessageDataSoftRef<>(metaData,null);
+                SoftReference<T> metaDataRef = _metaDataRef;
+                metaData = metaDataRef == null ? null : metaDataRef.get();
+                if(metaData == null)
+                {
+                    checkMessageStoreOpen();
+                    metaData = (T) getMessageMetaData(_messageId);
+                    _metaDataRef = new SoftReference<>(metaData);
+                }
             }
             return metaData;
         }
 
+        private void committed()
+        {
+            _committed = true;
+            T metaData = _metaData;
+            if(metaData != null)
+            {
+                _metaDataRef = new SoftReference<>(metaData);
+                _metaData = null;
+            }
+        }
+
         @Override
         public long getMessageNumber()
         {
             return _messageId;
         }
 
+        /**
+         * Holds on to the content given until it is first read or stored, and only then copies it, so that content
+         * added in many chunks is copied once.
+         */
         @Override
         public void addContent(int offsetInMessage, ByteBuffer src)
         {
-            src = src.slice();
-            byte[] data = _messageDataRef.getData();
-            if(data == null)
+            List<ByteBuffer> addedContent = _addedContent;
+            if(addedContent == null)
             {
-                data = new byte[src.remaining()];
-                src.duplicate().get(data);
-                _messageDataRef.setData(data);
+                addedContent = new ArrayList<ByteBuffer>();
             }
-            else
-            {
-                byte[] oldData = data;
-                data = new byte[oldData.length + src.remaining()];
+            addedContent.add(ByteBufferUtils.retainableSlice(src));
+            _addedContent = addedContent;
+        }
 
+        private byte[] getData()
+        {
+            return _addedContent == null ? _data : copyAddedContent();
+        }
 
-                System.arraycopy(oldData, 0, data, 0, oldData.length);
-                src.duplicate().get(data, oldData.length, src.remaining());
+        private synchronized byte[] copyAddedContent()
+        {
+            List<ByteBuffer> addedContent = _addedContent;
+            if(addedContent != null)
+            {
+                byte[] oldData = _data;
+                int length = oldData == null ? 0 : oldData.length;
+                for(ByteBuffer buf : addedContent)
+                {
+                    length += buf.remaining();
+                }
 
-                _messageDataRef.setData(data);
-            }
+                byte[] data = new byte[length];
+                int offset = 0;
+                if(oldData != null)
+                {
+                    System.arraycopy(oldData, 0, data, 0, oldData.length);
+                    offset = oldData.length;
+                }
+                for(ByteBuffer buf : addedContent)
+                {
+                    int remaining = buf.remaining();
+                    buf.duplicate().get(data, offset, remaining);
+                    offset += remaining;
+                }
 
+                _data = data;
+                _addedContent = null;
+            }
+            return _data;
         }
 
         @Override
         public int getContent(int offsetInMessage, ByteBuffer dst)
         {
-            byte[] data = _messageDataRef.getData();
+            byte[] data = getData();
             if(data == null)
             {
                 if(stored())
                 {
-                    checkMessageStoreOpen();
-                    data = AbstractBDBMessageStore.this.getAllContent(_messageId);
-                    T metaData = _messageDataRef.getMetaData();
-                    if (metaData == null)
-                    {
-                        metaData = (T) getMessageMetaData(_messageId);
-                        _messageDataRef = new MessageDataSoftRef<>(metaData, data);
-                    }
-                    else
-                    {
-                        _messageDataRef.setData(data);
-                    }
+                    data = loadContent();
                 }
                 else
                 {
@@ -1293,23 +1227,12 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         @Override
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
-            byte[] data = _messageDataRef.getData();
+            byte[] data = getData();
             if(data == null)
             {
                 if(stored())
                 {
-                    checkMessageStoreOpen();
-                    data = AbstractBDBMessageStore.this.getAllContent(_messageId);
-                    T metaData = _messageDataRef.getMetaData();
-                    if (metaData == null)
-                    {
-                        metaData = (T) getMessageMetaData(_messageId);
-                        _messageDataRef = new MessageDataSoftRef<>(metaData, data);
-                    }
-                    else
-                    {
-                        _messageDataRef.setData(data);
-                    }
+                    data = loadContent();
                 }
                 else
                 {
@@ -1332,46 +1255,35 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
         }
 
+        private byte[] loadContent()
+        {
+            checkMessageStoreOpen();
+            byte[] data = AbstractBDBMessageStore.this.getAllContent(_messageId);
+            _data = data;
+            return data;
+        }
+
+        /**
+         * Adds this message to the given transaction, returning an action to be run once it has been committed.
+         */
         synchronized Runnable store(Transaction txn)
         {
             if (!stored())
             {
-
-                AbstractBDBMessageStore.this.storeMetaData(txn, _messageId, _messageDataRef.getMetaData());
+                byte[] data = getData();
+                AbstractBDBMessageStore.this.storeMetaData(txn, _messageId, getMetaData());
                 AbstractBDBMessageStore.this.addContent(txn, _messageId, 0,
-                                                        _messageDataRef.getData() == null
-                                                                ? ByteBuffer.allocate(0)
-                                                                : ByteBuffer.wrap(_messageDataRef.getData()));
-
+                                                        data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(data));
 
-                MessageDataRef<T> hardRef = _messageDataRef;
-                MessageDataSoftRef<T> messageDataSoftRef;
-                MessageData<T> ref;
-                do
-                {
-                    messageDataSoftRef = new MessageDataSoftRef<>(hardRef.getMetaData(), hardRef.getData());
-                    ref = messageDataSoftRef.get();
-                }
-                while (ref == null);
-
-                _messageDataRef = messageDataSoftRef;
-
-                class Pointer implements Runnable
+                _stored = true;
+                return new Runnable()
                 {
-                    private MessageData<T> _ref;
-
-                    Pointer(final MessageData<T> ref)
-                    {
-                        _ref = ref;
-                    }
-
                     @Override
                     public void run()
                     {
-                        _ref = null;
+                        committed();
                     }
-                }
-                return new Pointer(ref);
+                };
             }
             else
             {
@@ -1402,10 +1314,11 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                 {
                     throw getEnvironmentFacade().handleDatabaseException("failed to begin transaction", e);
                 }
-                store(txn);
+                Runnable onCommit = store(txn);
                 getEnvironmentFacade().commit(txn, true);
+                onCommit.run();
 
-                storedSizeChangeOccurred(getMetaData().getContentSize());
+                storedSizeChangeOccurred(_contentSize);
             }
             return StoreFuture.IMMEDIATE_FUTURE;
         }
@@ -1415,7 +1328,9 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            int delta = getMetaData().getContentSize();
+            int delta = _contentSize;
+            _addedContent = null;
+            _data = null;
             removeMessage(_messageId, false);
             storedSizeChangeOccurred(-delta);
         }
@@ -1423,21 +1338,39 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         @Override
         public boolean isInMemory()
         {
-            return _messageDataRef.isHardRef();
+            return _data != null || !stored();
         }
 
         private boolean stored()
         {
-            return !_messageDataRef.isHardRef();
+            return _stored;
         }
 
+        /**
+         * Ensures that the message is stored and then releases its content from the heap.  Content belonging to a
+         * message whose storing transaction has not yet committed is retained, as it could not yet be read back.
+         */
         @Override
         public boolean flowToDisk()
         {
             flushToStore();
+            if(!_committed)
+            {
+                return false;
+            }
+            _data = null;
             return true;
         }
 
+        @Override
+        public void reloadContent()
+        {
+            if(_data == null && _committed)
+            {
+                loadContent();
+            }
+        }
+
         @Override
         public String toString()
         {
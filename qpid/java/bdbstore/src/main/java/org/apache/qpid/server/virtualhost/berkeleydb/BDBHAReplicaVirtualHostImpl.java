@@ -46,6 +46,7 @@ import org.apache.qpid.server.model.VirtualHostNode;
 import org.apache.qpid.server.protocol.AMQConnectionModel;
 import org.apache.qpid.server.protocol.LinkRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.queue.ExpiryIndex;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.store.DurableConfigurationStore;
 import org.apache.qpid.server.store.MessageStore;
@@ -391,6 +392,18 @@ public class BDBHAReplicaVirtualHostImpl extends AbstractConfiguredObject<BDBHAR
         return null;
     }
 
+    @Override
+    public ExpiryIndex getExpiryIndex()
+    {
+        return null;
+    }
+
+    @Override
+    public long getConversionCacheMaxMessageSize()
+    {
+        return 0l;
+    }
+
     @Override
     public LinkRegistry getLinkRegistry(final String remoteContainerId)
     {
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.qpid.codec.AMQDecoder;
+import org.apache.qpid.codec.ServerDecoder;
+import org.apache.qpid.framing.AMQFrame;
+import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.BasicPublishBody;
+import org.apache.qpid.framing.ContentBody;
+import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.framing.FrameCreatingMethodProcessor;
+import org.apache.qpid.framing.ProtocolVersion;
+import org.apache.qpid.util.BytesDataOutput;
+
+/**
+ * Decoding of an AMQP 0-9-1 publish (method, content header and content body frames) by the broker's decoder, with
+ * the frames arriving either in a single network read or split across reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AMQDecoderBenchmark
+{
+    @Param({"256", "4096", "65536"})
+    public int payloadSize;
+
+    /** Size of each network read the encoded frames are split into */
+    @Param({"65536", "1024"})
+    public int readSize;
+
+    private FrameCreatingMethodProcessor _methodProcessor;
+    private AMQDecoder<?> _decoder;
+    private byte[] _encoded;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _methodProcessor = new FrameCreatingMethodProcessor(ProtocolVersion.v0_91);
+        ServerDecoder decoder = new ServerDecoder(_methodProcessor);
+        decoder.setExpectProtocolInitiation(false);
+        decoder.setMaxFrameSize(payloadSize + 1024);
+        _decoder = decoder;
+
+        BasicContentHeaderProperties properties = new BasicContentHeaderProperties();
+        properties.setContentType("application/octet-stream");
+        properties.setDeliveryMode((byte) 2);
+        properties.setMessageId("ID:benchmark-message");
+
+        AMQFrame[] frames = new AMQFrame[] {
+                new BasicPublishBody(0, AMQShortString.valueOf("amq.direct"), AMQShortString.valueOf("queue"),
+                                     false, false).generateFrame(1),
+                ContentHeaderBody.createAMQFrame(1, properties, payloadSize),
+                new AMQFrame(1, new ContentBody(new byte[payloadSize]))
+        };
+
+        int size = 0;
+        for (AMQFrame frame : frames)
+        {
+            size += (int) frame.getSize();
+        }
+        _encoded = new byte[size];
+        BytesDataOutput output = new BytesDataOutput(_encoded);
+        for (AMQFrame frame : frames)
+        {
+            frame.writePayload(output);
+        }
+    }
+
+    @Benchmark
+    public int decodeBuffer() throws Exception
+    {
+        for (int offset = 0; offset < _encoded.length; offset += readSize)
+        {
+            _decoder.decodeBuffer(ByteBuffer.wrap(_encoded, offset, Math.min(readSize, _encoded.length - offset)));
+        }
+        int decoded = _methodProcessor.getProcessedMethods().size();
+        _methodProcessor.getProcessedMethods().clear();
+        return decoded;
+    }
+}
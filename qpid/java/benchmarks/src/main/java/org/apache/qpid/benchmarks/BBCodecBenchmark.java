@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.MessageDeliveryMode;
+import org.apache.qpid.transport.MessageDeliveryPriority;
+import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.ReplyTo;
+import org.apache.qpid.transport.codec.BBDecoder;
+import org.apache.qpid.transport.codec.BBEncoder;
+
+/**
+ * Encoding and decoding of AMQP 0-10 message headers, laid out as the broker stores them: the delivery and message
+ * properties structs, the latter carrying a map of application headers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BBCodecBenchmark
+{
+    @Param({"0", "10", "50"})
+    public int applicationHeaderCount;
+
+    private DeliveryProperties _deliveryProperties;
+    private MessageProperties _messageProperties;
+    private BBEncoder _encoder;
+    private BBDecoder _decoder;
+    private ByteBuffer _encoded;
+
+    @Setup
+    public void setUp()
+    {
+        _deliveryProperties = new DeliveryProperties();
+        _deliveryProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        _deliveryProperties.setPriority(MessageDeliveryPriority.MEDIUM);
+        _deliveryProperties.setExchange("amq.topic");
+        _deliveryProperties.setRoutingKey("stock.region1.symbol1");
+        _deliveryProperties.setTimestamp(System.currentTimeMillis());
+
+        Map<String, Object> applicationHeaders = new LinkedHashMap<>();
+        for (int i = 0; i < applicationHeaderCount; i++)
+        {
+            applicationHeaders.put("header" + i, i % 2 == 0 ? "value" + i : (Object) i);
+        }
+        _messageProperties = new MessageProperties();
+        _messageProperties.setMessageId(UUID.randomUUID());
+        _messageProperties.setContentType("text/plain");
+        _messageProperties.setContentLength(1024l);
+        _messageProperties.setReplyTo(new ReplyTo("amq.direct", "replies"));
+        _messageProperties.setApplicationHeaders(applicationHeaders);
+
+        _encoder = new BBEncoder(4096);
+        _decoder = new BBDecoder();
+        ByteBuffer encoded = encode();
+        _encoded = ByteBuffer.allocate(encoded.remaining());
+        _encoded.put(encoded);
+        _encoded.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encode()
+    {
+        _encoder.init();
+        _encoder.writeStruct32(_deliveryProperties);
+        _encoder.writeStruct32(_messageProperties);
+        return _encoder.buffer();
+    }
+
+    @Benchmark
+    public void decode(final Blackhole blackhole)
+    {
+        _decoder.init(_encoded.duplicate());
+        blackhole.consume(_decoder.readStruct32());
+        blackhole.consume(_decoder.readStruct32());
+    }
+}
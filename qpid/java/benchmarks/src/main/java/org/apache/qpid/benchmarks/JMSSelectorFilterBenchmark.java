@@ -0,0 +1,87 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.qpid.server.filter.Filterable;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.message.InstanceProperties;
+import org.apache.qpid.server.message.internal.InternalMessage;
+import org.apache.qpid.server.message.internal.InternalMessageHeader;
+
+/**
+ * Evaluation of JMS selectors of increasing complexity against a message with application headers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JMSSelectorFilterBenchmark
+{
+    @Param({"colour = 'red'",
+            "colour = 'red' AND size > 10",
+            "JMSPriority > 4 AND region LIKE 'eu%'",
+            "colour IN ('green', 'blue', 'red') AND (size BETWEEN 5 AND 15 OR region LIKE 'us%') AND NOT discounted"})
+    public String selector;
+
+    private JMSSelectorFilter _filter;
+    private Filterable _message;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _filter = new JMSSelectorFilter(selector);
+
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("colour", "red");
+        headers.put("size", 12);
+        headers.put("region", "eu-west");
+        headers.put("discounted", false);
+        InternalMessageHeader header = new InternalMessageHeader(headers, null, 0l, null, null, "ID:1", "text/plain",
+                                                                 null, (byte) 5, System.currentTimeMillis(), null,
+                                                                 null);
+        InternalMessage message = InternalMessage.convert(1l, false, header, "body");
+        _message = Filterable.Factory.newInstance(message, InstanceProperties.EMPTY);
+    }
+
+    @Benchmark
+    public boolean matches()
+    {
+        return _filter.matches(_message);
+    }
+}
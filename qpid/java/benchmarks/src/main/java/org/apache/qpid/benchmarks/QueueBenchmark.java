@@ -0,0 +1,174 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.benchmarks;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.qpid.server.consumer.ConsumerImpl;
+import org.apache.qpid.server.consumer.MockConsumer;
+import org.apache.qpid.server.message.MessageInstance;
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.internal.InternalMessage;
+import org.apache.qpid.server.message.internal.InternalMessageHeader;
+import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.util.Action;
+import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Enqueue to, and asynchronous delivery from, a standard queue of an in-memory virtual host.
+ * <p>
+ * <code>enqueue</code> measures a message passing through a queue without consumers, removed as soon as it has been
+ * enqueued.  <code>processQueue</code> measures a batch of messages enqueued whilst the only consumer is suspended
+ * and then delivered to it by the queue runner; the consumer discards each message as it is sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark
+{
+    private static final int BATCH_SIZE = 1000;
+
+    private VirtualHostImpl<?, ?, ?> _virtualHost;
+    private AMQQueue<?> _queue;
+    private AMQQueue<?> _consumedQueue;
+    private DiscardingConsumerTarget _consumerTarget;
+    private InternalMessage[] _messages;
+    private MessageReference<?>[] _messageReferences;
+
+    private final Action<MessageInstance> _removeAction = new Action<MessageInstance>()
+    {
+        @Override
+        public void performAction(final MessageInstance entry)
+        {
+            if (entry.acquire())
+            {
+                entry.delete();
+            }
+        }
+    };
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _virtualHost = BrokerTestHelper.createVirtualHost("benchmark");
+        _queue = BrokerTestHelper.createQueue("enqueue", _virtualHost);
+        _consumedQueue = BrokerTestHelper.createQueue("processQueue", _virtualHost);
+
+        _consumerTarget = new DiscardingConsumerTarget();
+        _consumedQueue.addConsumer(_consumerTarget, null, InternalMessage.class, "benchmark",
+                                   EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+
+        InternalMessageHeader header = new InternalMessageHeader(Collections.<String, Object>emptyMap(), null, 0l,
+                                                                 null, null, "ID:1", "text/plain", null, (byte) 4,
+                                                                 System.currentTimeMillis(), null, null);
+        // a message may be referenced only once by a queue, so each message of a batch is distinct
+        _messages = new InternalMessage[BATCH_SIZE];
+        _messageReferences = new MessageReference<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++)
+        {
+            _messages[i] = InternalMessage.convert(i, false, header, "body");
+            // hold a reference for the duration so the read-only message is never removed when its entries are
+            _messageReferences[i] = _messages[i].newReference();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        _virtualHost.close();
+    }
+
+    @Benchmark
+    public void enqueue()
+    {
+        _queue.enqueue(_messages[0], _removeAction);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int processQueue()
+    {
+        _consumerTarget.suspend();
+        for (int i = 0; i < BATCH_SIZE; i++)
+        {
+            _consumedQueue.enqueue(_messages[i], null);
+        }
+        return _consumerTarget.resumeAndAwait(BATCH_SIZE, _consumedQueue);
+    }
+
+    private static final class DiscardingConsumerTarget extends MockConsumer
+    {
+        private final AtomicInteger _delivered = new AtomicInteger();
+        private volatile boolean _suspended;
+
+        @Override
+        public boolean isSuspended()
+        {
+            return _suspended;
+        }
+
+        @Override
+        public long send(final ConsumerImpl consumer, final MessageInstance entry, final boolean batch)
+        {
+            long size = entry.getMessage().getSize();
+            entry.delete();
+            _delivered.incrementAndGet();
+            return size;
+        }
+
+        void suspend()
+        {
+            _delivered.set(0);
+            _suspended = true;
+        }
+
+        int resumeAndAwait(final int count, final AMQQueue<?> queue)
+        {
+            _suspended = false;
+            queue.deliverAsync();
+            while (_delivered.get() < count)
+            {
+                Thread.yield();
+            }
+            return _delivered.get();
+        }
+    }
+}
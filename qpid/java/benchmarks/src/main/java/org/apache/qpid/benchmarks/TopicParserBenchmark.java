@@ -0,0 +1,94 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.benchmarks;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.qpid.server.exchange.topic.TopicMatcherResult;
+import org.apache.qpid.server.exchange.topic.TopicParser;
+
+/**
+ * Routing key matching through the topic exchange state machine.
+ * <p>
+ * Bindings are of the form <code>stock.&lt;region&gt;.&lt;symbol&gt;</code>, one in ten using a <code>*</code> for
+ * the region, plus a single <code>stock.#</code> binding, so that every routing key matches at least one binding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicParserBenchmark
+{
+    private static final int REGIONS = 10;
+    private static final int ROUTING_KEYS = 1024;
+
+    @Param({"10", "100", "1000"})
+    public int bindingCount;
+
+    private TopicParser _parser;
+    private String[] _routingKeys;
+    private int _next;
+
+    @Setup
+    public void setUp()
+    {
+        _parser = new TopicParser();
+        for (int i = 0; i < bindingCount; i++)
+        {
+            String region = i % 10 == 0 ? "*" : "region" + (i % REGIONS);
+            _parser.addBinding("stock." + region + ".symbol" + i, new Result());
+        }
+        _parser.addBinding("stock.#", new Result());
+
+        Random random = new Random(0l);
+        _routingKeys = new String[ROUTING_KEYS];
+        for (int i = 0; i < ROUTING_KEYS; i++)
+        {
+            _routingKeys[i] = "stock.region" + random.nextInt(REGIONS) + ".symbol" + random.nextInt(bindingCount);
+        }
+    }
+
+    @Benchmark
+    public Collection<TopicMatcherResult> parse()
+    {
+        return _parser.parse(_routingKeys[_next++ & (ROUTING_KEYS - 1)]);
+    }
+
+    private static final class Result implements TopicMatcherResult
+    {
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.qpid.amqp_1_0.codec.ValueHandler;
+import org.apache.qpid.amqp_1_0.codec.ValueWriter;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+
+/**
+ * Encoding and decoding of the AMQP 1.0 header, properties and application properties sections of a message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueHandlerBenchmark
+{
+    @Param({"0", "10", "50"})
+    public int applicationPropertyCount;
+
+    private AMQPDescribedTypeRegistry _typeRegistry;
+    private ValueHandler _valueHandler;
+    private Object[] _sections;
+    private ByteBuffer _buffer;
+    private ByteBuffer _encoded;
+
+    @Setup
+    public void setUp()
+    {
+        _typeRegistry = AMQPDescribedTypeRegistry.newInstance().registerTransportLayer().registerMessagingLayer();
+        _valueHandler = new ValueHandler(_typeRegistry);
+
+        Header header = new Header();
+        header.setDurable(true);
+        header.setPriority(UnsignedByte.valueOf((byte) 4));
+        header.setTtl(UnsignedInteger.valueOf(60000));
+
+        Properties properties = new Properties();
+        properties.setMessageId("ID:benchmark-message");
+        properties.setTo("queue");
+        properties.setSubject("stock.region1.symbol1");
+        properties.setContentType(Symbol.valueOf("text/plain"));
+
+        Map<String, Object> applicationProperties = new LinkedHashMap<>();
+        for (int i = 0; i < applicationPropertyCount; i++)
+        {
+            applicationProperties.put("property" + i, i % 2 == 0 ? "value" + i : (Object) i);
+        }
+
+        _sections = new Object[] { header, properties, new ApplicationProperties(applicationProperties) };
+        _buffer = ByteBuffer.allocate(65536);
+        ByteBuffer encoded = encode();
+        _encoded = ByteBuffer.allocate(encoded.remaining());
+        _encoded.put(encoded);
+        _encoded.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encode()
+    {
+        _buffer.clear();
+        for (Object section : _sections)
+        {
+            ValueWriter<Object> writer = _typeRegistry.getValueWriter(section);
+            writer.writeToBuffer(_buffer);
+        }
+        _buffer.flip();
+        return _buffer;
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws Exception
+    {
+        ByteBuffer encoded = _encoded.duplicate();
+        while (encoded.hasRemaining())
+        {
+            blackhole.consume(_valueHandler.parse(encoded));
+        }
+    }
+}
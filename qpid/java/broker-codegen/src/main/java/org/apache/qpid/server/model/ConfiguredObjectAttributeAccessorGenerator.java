@@ -0,0 +1,200 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.model;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.apache.qpid.server.License;
+
+/**
+ * Generates, for each interface declaring managed attribute or statistic getters, an accessor calling the getters
+ * directly, so that the broker need not read the attributes of its configured objects through reflection.
+ */
+public class ConfiguredObjectAttributeAccessorGenerator extends AbstractProcessor
+{
+    private static final String MANAGED_ATTRIBUTE_CLASS_NAME = "org.apache.qpid.server.model.ManagedAttribute";
+    private static final String DERIVED_ATTRIBUTE_CLASS_NAME = "org.apache.qpid.server.model.DerivedAttribute";
+    private static final String MANAGED_STATISTIC_CLASS_NAME = "org.apache.qpid.server.model.ManagedStatistic";
+
+    private static final String ACCESSOR_CLASS_SUFFIX = "AttributeAccessor";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latest();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        return new HashSet<>(Arrays.asList(MANAGED_ATTRIBUTE_CLASS_NAME,
+                                           DERIVED_ATTRIBUTE_CLASS_NAME,
+                                           MANAGED_STATISTIC_CLASS_NAME));
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv)
+    {
+        if(roundEnv.processingOver())
+        {
+            return false;
+        }
+
+        Map<TypeElement, List<ExecutableElement>> gettersByInterface = new LinkedHashMap<>();
+        for(TypeElement annotation : annotations)
+        {
+            for(Element e : roundEnv.getElementsAnnotatedWith(annotation))
+            {
+                if(e.getKind() == ElementKind.METHOD
+                   && e.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                   && ((ExecutableElement) e).getParameters().isEmpty())
+                {
+                    TypeElement interfaceElement = (TypeElement) e.getEnclosingElement();
+                    List<ExecutableElement> getters = gettersByInterface.get(interfaceElement);
+                    if(getters == null)
+                    {
+                        getters = new ArrayList<>();
+                        gettersByInterface.put(interfaceElement, getters);
+                    }
+                    getters.add((ExecutableElement) e);
+                }
+            }
+        }
+
+        Filer filer = processingEnv.getFiler();
+        for(Map.Entry<TypeElement, List<ExecutableElement>> entry : gettersByInterface.entrySet())
+        {
+            generateAccessor(filer, entry.getKey(), entry.getValue());
+        }
+
+        // the annotations are also processed by the validators
+        return false;
+    }
+
+    private void generateAccessor(final Filer filer,
+                                  final TypeElement interfaceElement,
+                                  final List<ExecutableElement> getters)
+    {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(interfaceElement);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(interfaceElement).toString();
+        String accessorName = binaryName + ACCESSOR_CLASS_SUFFIX;
+        String accessorSimpleName = packageElement.isUnnamed()
+                ? accessorName
+                : accessorName.substring(packageElement.getQualifiedName().length() + 1);
+        String interfaceName = interfaceElement.getQualifiedName().toString();
+
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Generating attribute accessor file for " + interfaceName);
+
+        try
+        {
+            JavaFileObject accessorFile = filer.createSourceFile(accessorName, interfaceElement);
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(accessorFile.openOutputStream(), "UTF-8"));
+            pw.println("/*");
+            for(String headerLine : License.LICENSE)
+            {
+                pw.println(" *" + headerLine);
+            }
+            pw.println(" */");
+            pw.println();
+            if(!packageElement.isUnnamed())
+            {
+                pw.print("package ");
+                pw.print(packageElement.getQualifiedName());
+                pw.println(";");
+                pw.println();
+            }
+
+            pw.println("import org.apache.qpid.server.model.ConfiguredObject;");
+            pw.println("import org.apache.qpid.server.model.ManagedAttributeAccessor;");
+            pw.println();
+            pw.println("public final class " + accessorSimpleName + " implements ManagedAttributeAccessor");
+            pw.println("{");
+            pw.println("    private final int _index;");
+            pw.println();
+            pw.println("    private " + accessorSimpleName + "(final int index)");
+            pw.println("    {");
+            pw.println("        _index = index;");
+            pw.println("    }");
+            pw.println();
+            pw.println("    public static ManagedAttributeAccessor getAccessor(final String methodName)");
+            pw.println("    {");
+            pw.println("        switch(methodName)");
+            pw.println("        {");
+            for(int i = 0; i < getters.size(); i++)
+            {
+                pw.println("            case \"" + getters.get(i).getSimpleName() + "\":");
+                pw.println("                return new " + accessorSimpleName + "(" + i + ");");
+            }
+            pw.println("            default:");
+            pw.println("                return null;");
+            pw.println("        }");
+            pw.println("    }");
+            pw.println();
+            pw.println("    @Override");
+            pw.println("    public Object getValue(final ConfiguredObject<?> configuredObject)");
+            pw.println("    {");
+            pw.println("        final " + interfaceName + " object = (" + interfaceName + ") configuredObject;");
+            pw.println("        switch(_index)");
+            pw.println("        {");
+            for(int i = 0; i < getters.size(); i++)
+            {
+                pw.println("            case " + i + ":");
+                pw.println("                return object." + getters.get(i).getSimpleName() + "();");
+            }
+            pw.println("            default:");
+            pw.println("                throw new IllegalStateException(\"No getter with index \" + _index);");
+            pw.println("        }");
+            pw.println("    }");
+            pw.println("}");
+
+            pw.close();
+        }
+        catch (IOException e)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                                     "Failed to write attribute accessor file: "
+                                                     + accessorName
+                                                     + " - "
+                                                     + e.getLocalizedMessage());
+        }
+    }
+}
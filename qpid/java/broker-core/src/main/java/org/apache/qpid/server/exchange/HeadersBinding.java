@@ -125,6 +125,27 @@ class HeadersBinding
         return _binding;
     }
 
+    boolean isMatchAny()
+    {
+        return matchAny;
+    }
+
+    /**
+     * Returns the headers which must be present, with any value.
+     */
+    Set<String> getRequiredHeaders()
+    {
+        return required;
+    }
+
+    /**
+     * Returns the headers which must be present with the given values.
+     */
+    Map<String,Object> getRequiredValues()
+    {
+        return matches;
+    }
+
     /**
      * Checks whether the supplied headers match the requirements of this binding
      * @param headers the headers to check
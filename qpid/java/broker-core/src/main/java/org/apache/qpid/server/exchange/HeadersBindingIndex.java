@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.server.message.AMQMessageHeader;
+
+/**
+ * An immutable index of header bindings by the header values they require, used to find the bindings a message
+ * might match without testing every binding.
+ * <p>
+ * A binding with x-match=all which requires at least one header value can only match a message which has that value,
+ * so is indexed under one of the values it requires.  A binding with x-match=any which requires only header values
+ * can only match a message which has one of them, so is indexed under each.  Any other binding, one requiring only
+ * the presence of headers or mixing presence with values under x-match=any, is always a candidate.  The candidates
+ * must still be tested against the message.
+ */
+final class HeadersBindingIndex
+{
+    static final HeadersBindingIndex EMPTY = new HeadersBindingIndex(Collections.<HeadersBinding>emptyList());
+
+    private final Map<String, Map<Object, List<HeadersBinding>>> _bindingsByHeaderValue =
+            new HashMap<String, Map<Object, List<HeadersBinding>>>();
+    private final List<HeadersBinding> _unindexedBindings = new ArrayList<HeadersBinding>();
+    private final boolean _bindingsIndexedMoreThanOnce;
+
+    HeadersBindingIndex(final Collection<HeadersBinding> bindings)
+    {
+        boolean bindingsIndexedMoreThanOnce = false;
+        for(HeadersBinding binding : bindings)
+        {
+            Map<String, Object> requiredValues = binding.getRequiredValues();
+            if(requiredValues.isEmpty() || (binding.isMatchAny() && !binding.getRequiredHeaders().isEmpty()))
+            {
+                _unindexedBindings.add(binding);
+            }
+            else if(binding.isMatchAny())
+            {
+                for(Map.Entry<String, Object> requiredValue : requiredValues.entrySet())
+                {
+                    addIndexedBinding(requiredValue.getKey(), requiredValue.getValue(), binding);
+                }
+                bindingsIndexedMoreThanOnce |= requiredValues.size() > 1;
+            }
+            else
+            {
+                Map.Entry<String, Object> requiredValue = requiredValues.entrySet().iterator().next();
+                addIndexedBinding(requiredValue.getKey(), requiredValue.getValue(), binding);
+            }
+        }
+        _bindingsIndexedMoreThanOnce = bindingsIndexedMoreThanOnce;
+    }
+
+    private void addIndexedBinding(final String header, final Object value, final HeadersBinding binding)
+    {
+        Map<Object, List<HeadersBinding>> bindingsByValue = _bindingsByHeaderValue.get(header);
+        if(bindingsByValue == null)
+        {
+            bindingsByValue = new HashMap<Object, List<HeadersBinding>>();
+            _bindingsByHeaderValue.put(header, bindingsByValue);
+        }
+        List<HeadersBinding> headerBindings = bindingsByValue.get(value);
+        if(headerBindings == null)
+        {
+            headerBindings = new ArrayList<HeadersBinding>(1);
+            bindingsByValue.put(value, headerBindings);
+        }
+        headerBindings.add(binding);
+    }
+
+    /**
+     * Returns the bindings which might match a message with the given headers, each once.
+     */
+    Collection<HeadersBinding> getCandidates(final AMQMessageHeader headers)
+    {
+        if(headers == null || _bindingsByHeaderValue.isEmpty())
+        {
+            return _unindexedBindings;
+        }
+
+        List<HeadersBinding> candidates = null;
+        int matchedHeaders = 0;
+        for(Map.Entry<String, Map<Object, List<HeadersBinding>>> entry : _bindingsByHeaderValue.entrySet())
+        {
+            Object value = headers.getHeader(entry.getKey());
+            if(value != null)
+            {
+                List<HeadersBinding> bindings = entry.getValue().get(value);
+                if(bindings != null)
+                {
+                    if(candidates == null)
+                    {
+                        candidates = new ArrayList<HeadersBinding>(bindings.size() + _unindexedBindings.size());
+                    }
+                    candidates.addAll(bindings);
+                    matchedHeaders++;
+                }
+            }
+        }
+
+        if(candidates == null)
+        {
+            return _unindexedBindings;
+        }
+        candidates.addAll(_unindexedBindings);
+        if(_bindingsIndexedMoreThanOnce && matchedHeaders > 1)
+        {
+            return new LinkedHashSet<HeadersBinding>(candidates);
+        }
+        return candidates;
+    }
+}
@@ -21,9 +21,10 @@
 package org.apache.qpid.server.exchange;
 
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -81,6 +82,9 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
     private final CopyOnWriteArrayList<HeadersBinding> _bindingHeaderMatchers =
                             new CopyOnWriteArrayList<HeadersBinding>();
 
+    /** the bindings indexed by the header values they require, rebuilt whenever the bindings change */
+    private volatile HeadersBindingIndex _bindingIndex = HeadersBindingIndex.EMPTY;
+
     @ManagedObjectFactoryConstructor
     public HeadersExchange(final Map<String, Object> attributes, final VirtualHostImpl vhost)
     {
@@ -97,11 +101,13 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
             _logger.debug("Exchange " + getName() + ": routing message with headers " + payload.getMessageHeader());
         }
 
-        LinkedHashSet<BaseQueue> queues = new LinkedHashSet<BaseQueue>();
+        Filterable message = Filterable.Factory.newInstance(payload, instanceProperties);
+        ArrayList<BaseQueue> queues = new ArrayList<BaseQueue>();
+        Set<BaseQueue> queueSet = null;
 
-        for (HeadersBinding hb : _bindingHeaderMatchers)
+        for (HeadersBinding hb : _bindingIndex.getCandidates(payload.getMessageHeader()))
         {
-            if (hb.matches(Filterable.Factory.newInstance(payload,instanceProperties)))
+            if (hb.matches(message))
             {
                 BindingImpl b = hb.getBinding();
 
@@ -112,11 +118,21 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
                     _logger.debug("Exchange " + getName() + ": delivering message with headers " +
                                   payload.getMessageHeader() + " to " + b.getAMQQueue().getName());
                 }
-                queues.add(b.getAMQQueue());
+
+                // a queue may be bound more than once; most messages match few bindings, so only use a set for many
+                AMQQueue queue = b.getAMQQueue();
+                if (queueSet == null && queues.size() >= 8)
+                {
+                    queueSet = new HashSet<BaseQueue>(queues);
+                }
+                if (queueSet == null ? !queues.contains(queue) : queueSet.add(queue))
+                {
+                    queues.add(queue);
+                }
             }
         }
 
-        return new ArrayList<BaseQueue>(queues);
+        return queues;
     }
 
     protected void onBind(final BindingImpl binding)
@@ -147,6 +163,7 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
 
         _bindingHeaderMatchers.add(new HeadersBinding(binding));
         bindings.add(binding);
+        updateBindingIndex();
 
     }
 
@@ -162,6 +179,7 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
                 iter.set(headersBinding);
             }
         }
+        updateBindingIndex();
 
     }
 
@@ -176,10 +194,15 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
         }
 
         boolean removedBinding = _bindingHeaderMatchers.remove(new HeadersBinding(binding));
+        updateBindingIndex();
         if(_logger.isDebugEnabled())
         {
             _logger.debug("Removing Binding: " + removedBinding);
         }
     }
 
+    private synchronized void updateBindingIndex()
+    {
+        _bindingIndex = new HeadersBindingIndex(_bindingHeaderMatchers);
+    }
 }
@@ -41,6 +41,7 @@ import org.apache.qpid.server.filter.FilterSupport;
 import org.apache.qpid.server.filter.Filterable;
 import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.ManagedContextDefault;
 import org.apache.qpid.server.model.ManagedObject;
 import org.apache.qpid.server.model.ManagedObjectFactoryConstructor;
 import org.apache.qpid.server.queue.AMQQueue;
@@ -53,8 +54,24 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 {
     private static final Logger _logger = Logger.getLogger(TopicExchange.class);
 
+    public static final String TOPIC_EXCHANGE_ROUTING_CACHE_SIZE = "exchange.topic.routingCacheSize";
+
+    /**
+     * Maximum number of routing keys whose routes are cached by each topic exchange, 0 disabling the cache
+     */
+    @ManagedContextDefault(name = TOPIC_EXCHANGE_ROUTING_CACHE_SIZE)
+    public static final int DEFAULT_TOPIC_EXCHANGE_ROUTING_CACHE_SIZE = 1024;
+
     private final TopicParser _parser = new TopicParser();
 
+    /**
+     * Routes of recently routed keys.  The whole cache is replaced once the bindings have changed, so a route
+     * computed concurrently with a change is only ever added to the discarded cache.  Routes matching a binding
+     * with a selector depend on the message and are never cached.
+     */
+    private volatile ConcurrentHashMap<String, CachedRoute> _routeCache = new ConcurrentHashMap<>();
+    private volatile int _routeCacheSize = DEFAULT_TOPIC_EXCHANGE_ROUTING_CACHE_SIZE;
+
     private final Map<String, TopicExchangeResult> _topicExchangeResults =
             new ConcurrentHashMap<String, TopicExchangeResult>();
 
@@ -66,6 +83,13 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         super(attributes, vhost);
     }
 
+    @Override
+    protected void onOpen()
+    {
+        super.onOpen();
+        _routeCacheSize = getContextValue(Integer.class, TOPIC_EXCHANGE_ROUTING_CACHE_SIZE);
+    }
+
     @Override
     protected synchronized void onBindingUpdated(final BindingImpl binding, final Map<String, Object> oldArguments)
     {
@@ -126,8 +150,10 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         {
             throw new ConnectionScopedRuntimeException(e);
         }
-
-
+        finally
+        {
+            invalidateRouteCache();
+        }
     }
 
     protected synchronized void registerQueue(final BindingImpl binding) throws AMQInvalidArgumentException
@@ -228,22 +254,35 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                                           ? ""
                                           : routingAddress;
 
-        final Collection<AMQQueue> matchedQueues =
-                getMatchedQueues(Filterable.Factory.newInstance(payload,instanceProperties), routingKey);
+        final ConcurrentHashMap<String, CachedRoute> routeCache = _routeCache;
+        final CachedRoute cachedRoute = routeCache.get(routingKey);
 
         ArrayList<BaseQueue> queues;
 
-        if(matchedQueues.getClass() == ArrayList.class)
+        if(cachedRoute != null)
         {
-            queues = (ArrayList) matchedQueues;
+            queues = cachedRoute.getQueues();
         }
         else
         {
-            queues = new ArrayList<BaseQueue>();
-            queues.addAll(matchedQueues);
+            final Collection<TopicMatcherResult> results = _parser.parse(routingKey);
+            final Collection<AMQQueue> matchedQueues =
+                    getMatchedQueues(Filterable.Factory.newInstance(payload,instanceProperties), results);
+
+            if(matchedQueues.getClass() == ArrayList.class)
+            {
+                queues = (ArrayList) matchedQueues;
+            }
+            else
+            {
+                queues = new ArrayList<BaseQueue>();
+                queues.addAll(matchedQueues);
+            }
+
+            cacheRoute(routeCache, routingKey, results, queues);
         }
 
-        if(queues == null || queues.isEmpty())
+        if(queues.isEmpty())
         {
             _logger.info("Message routing key: " + routingAddress + " No routes.");
         }
@@ -252,6 +291,35 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 
     }
 
+    private void cacheRoute(final ConcurrentHashMap<String, CachedRoute> routeCache,
+                            final String routingKey,
+                            final Collection<TopicMatcherResult> results,
+                            final ArrayList<BaseQueue> queues)
+    {
+        final int routeCacheSize = _routeCacheSize;
+        if(routeCacheSize > 0)
+        {
+            for(TopicMatcherResult result : results)
+            {
+                if(((TopicExchangeResult)result).hasFilteredQueues())
+                {
+                    return;
+                }
+            }
+
+            if(routeCache.size() >= routeCacheSize)
+            {
+                routeCache.clear();
+            }
+            routeCache.put(routingKey, new CachedRoute(results, queues));
+        }
+    }
+
+    private void invalidateRouteCache()
+    {
+        _routeCache = new ConcurrentHashMap<>();
+    }
+
     private synchronized boolean deregisterQueue(final BindingImpl binding)
     {
         if(_bindings.containsKey(binding))
@@ -292,10 +360,8 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         }
     }
 
-    private Collection<AMQQueue> getMatchedQueues(Filterable message, String routingKey)
+    private Collection<AMQQueue> getMatchedQueues(Filterable message, Collection<TopicMatcherResult> results)
     {
-
-        Collection<TopicMatcherResult> results = _parser.parse(routingKey);
         switch(results.size())
         {
             case 0:
@@ -310,10 +376,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                 {
                     TopicExchangeResult res = (TopicExchangeResult)result;
 
-                    for(BindingImpl b : res.getBindings())
-                    {
-                        b.incrementMatches();
-                    }
+                    res.incrementMatches();
 
                     queues = res.processMessage(message, queues);
                 }
@@ -334,11 +397,47 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
             // TODO - this seems incorrect, handling of invalid bindings should be propagated more cleanly
             throw new ConnectionScopedRuntimeException(e);
         }
+        finally
+        {
+            invalidateRouteCache();
+        }
     }
 
     protected void onUnbind(final BindingImpl binding)
     {
-        deregisterQueue(binding);
+        try
+        {
+            deregisterQueue(binding);
+        }
+        finally
+        {
+            invalidateRouteCache();
+        }
+    }
+
+    private static final class CachedRoute
+    {
+        /** The results whose bindings are counted as matched, when the route is through more than one binding key */
+        private final TopicExchangeResult[] _results;
+        private final ArrayList<BaseQueue> _queues;
+
+        private CachedRoute(final Collection<TopicMatcherResult> results, final ArrayList<BaseQueue> queues)
+        {
+            _results = results.size() > 1 ? results.toArray(new TopicExchangeResult[results.size()]) : null;
+            _queues = queues;
+        }
+
+        private ArrayList<BaseQueue> getQueues()
+        {
+            if(_results != null)
+            {
+                for(TopicExchangeResult result : _results)
+                {
+                    result.incrementMatches();
+                }
+            }
+            return _queues;
+        }
     }
 
 }
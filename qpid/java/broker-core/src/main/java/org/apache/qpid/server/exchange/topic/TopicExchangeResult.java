@@ -96,6 +96,19 @@ public final class TopicExchangeResult implements TopicMatcherResult
         return new ArrayList<BindingImpl>(_bindings);
     }
 
+    public void incrementMatches()
+    {
+        for(BindingImpl binding : _bindings)
+        {
+            binding.incrementMatches();
+        }
+    }
+
+    public boolean hasFilteredQueues()
+    {
+        return !_filteredQueues.isEmpty();
+    }
+
     public void addFilteredQueue(AMQQueue queue, MessageFilter filter)
     {
         Map<MessageFilter,Integer> filters = _filteredQueues.get(queue);
@@ -28,6 +28,7 @@ import org.apache.log4j.Logger;
 
 import org.apache.qpid.common.AMQPFilterTypes;
 import org.apache.qpid.filter.BooleanExpression;
+import org.apache.qpid.filter.CompiledSelector;
 import org.apache.qpid.filter.FilterableMessage;
 import org.apache.qpid.filter.SelectorParsingException;
 import org.apache.qpid.filter.selector.ParseException;
@@ -43,11 +44,23 @@ public class JMSSelectorFilter implements MessageFilter
 
     private String _selector;
     private BooleanExpression _matcher;
+    private CompiledSelector _compiled;
 
     public JMSSelectorFilter(String selector) throws ParseException, TokenMgrError, SelectorParsingException
     {
         _selector = selector;
         _matcher = new SelectorParser().parse(selector);
+        _compiled = CompiledSelector.compile(_matcher);
+    }
+
+    /**
+     * Creates a filter sharing the selector and the parsed expression of the given filter.
+     */
+    protected JMSSelectorFilter(JMSSelectorFilter filter)
+    {
+        _selector = filter._selector;
+        _matcher = filter._matcher;
+        _compiled = filter._compiled;
     }
 
     @Override
@@ -59,7 +72,7 @@ public class JMSSelectorFilter implements MessageFilter
     public boolean matches(Filterable message)
     {
 
-        boolean match = _matcher.matches(wrap(message));
+        boolean match = _compiled.matches(wrap(message));
         if(_logger.isDebugEnabled())
         {
             _logger.debug(message + " match(" + match + ") selector(" + System.identityHashCode(_selector) + "):" + _selector);
@@ -128,6 +141,11 @@ public class JMSSelectorFilter implements MessageFilter
         return _selector;
     }
 
+    protected BooleanExpression getMatcher()
+    {
+        return _matcher;
+    }
+
     @Override
     public String toString()
     {
@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.server.message;
 
+import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -43,11 +44,15 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
     private static final AtomicReferenceFieldUpdater<AbstractServerMessageImpl, Collection> _resourcesUpdater =
             AtomicReferenceFieldUpdater.newUpdater(AbstractServerMessageImpl.class, Collection.class,"_resources");
 
+    private static final AtomicReferenceFieldUpdater<AbstractServerMessageImpl, Conversion> _conversionsUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractServerMessageImpl.class, Conversion.class, "_conversions");
+
 
     private volatile int _referenceCount = 0;
     private final StoredMessage<T> _handle;
     private final Object _connectionReference;
     private volatile Collection<UUID> _resources;
+    private volatile Conversion _conversions;
 
 
     public AbstractServerMessageImpl(StoredMessage<T> handle, Object connectionReference)
@@ -93,6 +98,7 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
             // this is to guard against the message being spontaneously recreated (from the mgmt console)
             // by copying from other queues at the same time as it is being removed.
             _refCountUpdater.set(this,Integer.MIN_VALUE/2);
+            _conversionsUpdater.set(this, null);
 
             // must check if the handle is null since there may be cases where we decide to throw away a message
             // and the handle has not yet been constructed
@@ -171,6 +177,55 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
         return getStoredMessage().getContent(offset, size);
     }
 
+    /**
+     * Returns the conversion of this message to the given message class previously recorded by
+     * {@link #setConvertedMessage(Class, ServerMessage)}, or null if there is none or it has since been discarded to
+     * free memory.
+     */
+    final public <N extends ServerMessage> N getConvertedMessage(Class<N> messageClass)
+    {
+        for(Conversion conversion = _conversions; conversion != null; conversion = conversion._next)
+        {
+            if(conversion._messageClass == messageClass)
+            {
+                return messageClass.cast(conversion._message.get());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the conversion of this message to the given message class, so that it may be shared by all the
+     * consumers to which the message is delivered in that form.  Conversions are held only whilst memory allows and
+     * are discarded once the message is no longer referenced.
+     */
+    final public <N extends ServerMessage> void setConvertedMessage(Class<N> messageClass, N convertedMessage)
+    {
+        final SoftReference<ServerMessage> reference = new SoftReference<ServerMessage>(convertedMessage);
+        Conversion currentValue;
+        Conversion newValue;
+        do
+        {
+            currentValue = _conversions;
+            newValue = new Conversion(messageClass, reference, null);
+            // keep the other conversions which have not been discarded, at most one per protocol
+            for(Conversion conversion = currentValue; conversion != null; conversion = conversion._next)
+            {
+                if(conversion._messageClass != messageClass && conversion._message.get() != null)
+                {
+                    newValue = new Conversion(conversion._messageClass, conversion._message, newValue);
+                }
+            }
+        }
+        while(!_conversionsUpdater.compareAndSet(this, currentValue, newValue));
+
+        if(_referenceCount < 0)
+        {
+            // the message was deleted concurrently
+            _conversionsUpdater.set(this, null);
+        }
+    }
+
     final public Object getConnectionReference()
     {
         return _connectionReference;
@@ -179,6 +234,22 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
         return "Message[" + debugIdentity() + "]";
     }
 
+    private static final class Conversion
+    {
+        private final Class<? extends ServerMessage> _messageClass;
+        private final SoftReference<ServerMessage> _message;
+        private final Conversion _next;
+
+        private Conversion(final Class<? extends ServerMessage> messageClass,
+                           final SoftReference<ServerMessage> message,
+                           final Conversion next)
+        {
+            _messageClass = messageClass;
+            _message = message;
+            _next = next;
+        }
+    }
+
     private static class Reference<X extends AbstractServerMessageImpl<X,T>, T extends StorableMessageMetaData>
             implements MessageReference<X>
     {
@@ -250,6 +250,11 @@ public class InternalMessage extends AbstractServerMessageImpl<InternalMessage,
                     {
                         return false;
                     }
+
+                    @Override
+                    public void reloadContent()
+                    {
+                    }
                 };
             }
         }
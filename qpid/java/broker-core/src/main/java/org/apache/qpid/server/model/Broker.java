@@ -153,6 +153,21 @@ public interface Broker<X extends Broker<X>> extends ConfiguredObject<X>, EventL
     @ManagedStatistic
     long getMessagesOut();
 
+    @ManagedStatistic
+    int getQueueDeliveryWorkerCount();
+
+    @ManagedStatistic
+    long getQueueDeliveryTasksExecuted();
+
+    @ManagedStatistic
+    long getQueueDeliveryTasksStolen();
+
+    @ManagedStatistic
+    int getQueueDeliveryWorkerMeanUtilisation();
+
+    @ManagedStatistic
+    int getQueueDeliveryWorkerMaxUtilisation();
+
 
     //children
     Collection<VirtualHostNode<?>> getVirtualHostNodes();
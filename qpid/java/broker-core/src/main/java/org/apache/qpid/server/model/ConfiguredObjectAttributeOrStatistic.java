@@ -32,6 +32,8 @@ abstract class ConfiguredObjectAttributeOrStatistic<C extends ConfiguredObject,
     private final Class<T> _type;
     private final AttributeValueConverter<T> _converter;
     private final Method _getter;
+    /** the generated accessor calling the getter directly, or null if the getter must be invoked reflectively */
+    private final ManagedAttributeAccessor _accessor;
 
     ConfiguredObjectAttributeOrStatistic(final Method getter)
     {
@@ -40,9 +42,28 @@ abstract class ConfiguredObjectAttributeOrStatistic<C extends ConfiguredObject,
         _type = (Class<T>) getTypeFromMethod(getter);
         _name = getNameFromMethod(getter, getType());
         _converter = AttributeValueConverter.getConverter(getType(), getter.getGenericReturnType());
+        _accessor = findAccessor(getter);
 
     }
 
+    private static ManagedAttributeAccessor findAccessor(final Method getter)
+    {
+        Class<?> declaringClass = getter.getDeclaringClass();
+        try
+        {
+            Class<?> accessorClass = Class.forName(declaringClass.getName() + ManagedAttributeAccessor.ACCESSOR_CLASS_SUFFIX,
+                                                   true,
+                                                   declaringClass.getClassLoader());
+            Method factoryMethod = accessorClass.getMethod(ManagedAttributeAccessor.ACCESSOR_FACTORY_METHOD, String.class);
+            return (ManagedAttributeAccessor) factoryMethod.invoke(null, getter.getName());
+        }
+        catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e)
+        {
+            // the interface was compiled without the annotation processor generating the accessor
+            return null;
+        }
+    }
+
     private static String getNameFromMethod(final Method m, final Class<?> type)
     {
         String methodName = m.getName();
@@ -133,6 +154,10 @@ abstract class ConfiguredObjectAttributeOrStatistic<C extends ConfiguredObject,
 
     public T getValue(C configuredObject)
     {
+        if(_accessor != null)
+        {
+            return (T) _accessor.getValue(configuredObject);
+        }
         try
         {
             return (T) getGetter().invoke(configuredObject);
@@ -0,0 +1,39 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.model;
+
+/**
+ * Reads an attribute or statistic of a configured object by calling its getter directly rather than through
+ * reflection.
+ * <p>
+ * For each interface declaring {@link ManagedAttribute}, {@link DerivedAttribute} or {@link ManagedStatistic}
+ * getters, the broker-codegen annotation processor generates a class named after the interface with the suffix
+ * {@link #ACCESSOR_CLASS_SUFFIX}, whose public static <code>getAccessor(String methodName)</code> returns the accessor
+ * for the getter with the given name.
+ */
+public interface ManagedAttributeAccessor
+{
+    String ACCESSOR_CLASS_SUFFIX = "AttributeAccessor";
+
+    String ACCESSOR_FACTORY_METHOD = "getAccessor";
+
+    Object getValue(ConfiguredObject<?> configuredObject);
+}
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.qpid.server.queue.QueueEntry;
 import org.apache.qpid.server.queue.QueueEntryVisitor;
 import org.apache.qpid.server.store.MessageDurability;
 
@@ -57,14 +58,35 @@ public interface Queue<X extends Queue<X>> extends ConfiguredObject<X>
     @ManagedContextDefault( name = QUEUE_MINIMUM_ESTIMATED_MEMORY_FOOTPRINT)
     long DEFAULT_MINIMUM_ESTIMATED_MEMORY_FOOTPRINT = 102400l;
 
+    /** Heap in bytes assumed to be used by each message in addition to its content; negative to measure it */
     String QUEUE_ESTIMATED_MESSAGE_MEMORY_OVERHEAD = "queue.estimatedMessageMemoryOverhead";
     @ManagedContextDefault( name = QUEUE_ESTIMATED_MESSAGE_MEMORY_OVERHEAD)
-    long DEFAULT_ESTIMATED_MESSAGE_MEMORY_OVERHEAD = 1024l;
+    long DEFAULT_ESTIMATED_MESSAGE_MEMORY_OVERHEAD = -1l;
 
     String MAX_ASYNCHRONOUS_DELIVERIES = "queue.maxAsynchronousDeliveries";
     @ManagedContextDefault(name = MAX_ASYNCHRONOUS_DELIVERIES )
     int DEFAULT_MAX_ASYNCHRONOUS_DELIVERIES = 80;
 
+    /** Maximum time in nanoseconds for one run of asynchronous delivery; 0 to bound by delivery count instead */
+    String DELIVERY_SLICE_TIME = "queue.deliverySliceTime";
+    @ManagedContextDefault(name = DELIVERY_SLICE_TIME)
+    long DEFAULT_DELIVERY_SLICE_TIME = 0l;
+
+    /** Maximum bytes delivered in one run of asynchronous delivery; 0 to bound by delivery count instead */
+    String DELIVERY_SLICE_BYTES = "queue.deliverySliceBytes";
+    @ManagedContextDefault(name = DELIVERY_SLICE_BYTES)
+    long DEFAULT_DELIVERY_SLICE_BYTES = 0l;
+
+    /** Bytes of message content nearest the head of the queue kept in, or reloaded into, memory when flowing to disk */
+    String FLOW_TO_DISK_READ_AHEAD_BYTES = "queue.flowToDiskReadAheadBytes";
+    @ManagedContextDefault(name = FLOW_TO_DISK_READ_AHEAD_BYTES)
+    long DEFAULT_FLOW_TO_DISK_READ_AHEAD_BYTES = 1024l * 1024l;
+
+    /** Whether to index the entries by message number, and by position, for management lookups and browsing */
+    String MESSAGE_INDEX = "queue.messageIndex";
+    @ManagedContextDefault(name = MESSAGE_INDEX)
+    boolean DEFAULT_MESSAGE_INDEX = false;
+
     @ManagedAttribute
     Exchange getAlternateExchange();
 
@@ -175,6 +197,32 @@ public interface Queue<X extends Queue<X>> extends ConfiguredObject<X>
 
     void visit(QueueEntryVisitor visitor);
 
+    /**
+     * @return the entry of the message with the given number, or null if the message is not on the queue
+     */
+    QueueEntry getMessageOnTheQueue(long messageId);
+
+    /**
+     * Returns the entries of the messages with numbers in the given range, inclusive.
+     */
+    List<? extends QueueEntry> getMessagesOnTheQueue(long fromMessageId, long toMessageId);
+
+    /**
+     * Returns the entries of the messages with the given numbers, in queue order where the queue indexes positions.
+     */
+    List<? extends QueueEntry> getMessagesOnTheQueue(Collection<Long> messageIds);
+
+    /**
+     * Returns a list of QueEntries from a given range of queue positions, eg messages 5 to 10 on the queue.
+     *
+     * The 'queue position' index starts from 1. Using 0 in 'from' will be ignored and continue from 1.
+     * Using 0 in the 'to' field will return an empty list regardless of the 'from' value.
+     * @param fromPosition first message position
+     * @param toPosition last message position
+     * @return list of messages
+     */
+    List<? extends QueueEntry> getMessagesRangeOnTheQueue(long fromPosition, long toPosition);
+
     int deleteAndReturnCount();
 
     void setNotificationListener(QueueNotificationListener listener);
@@ -227,5 +275,19 @@ public interface Queue<X extends Queue<X>> extends ConfiguredObject<X>
     @ManagedStatistic
     long getOldestMessageAge();
 
+    @ManagedStatistic
+    long getDeliverySlices();
+
+    @ManagedStatistic
+    long getDeliverySliceReschedules();
+
+    /** @return the mean time in nanoseconds spent in one run of asynchronous delivery */
+    @ManagedStatistic
+    long getDeliverySliceMeanTime();
+
+    /** @return the longest time in nanoseconds spent in one run of asynchronous delivery */
+    @ManagedStatistic
+    long getDeliverySliceMaxTime();
+
 
 }
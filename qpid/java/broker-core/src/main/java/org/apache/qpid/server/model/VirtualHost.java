@@ -103,6 +103,16 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     @ManagedAttribute( defaultValue = "${virtualhost.disabledConnectionValidators}")
     List<String> getDisabledConnectionValidators();
 
+    /** Bytes of direct memory in which the message store caches content flowed to disk; 0 to disable */
+    String OFF_HEAP_CONTENT_CACHE_SIZE = "virtualhost.offHeapContentCacheSize";
+    @ManagedContextDefault( name = OFF_HEAP_CONTENT_CACHE_SIZE)
+    long DEFAULT_OFF_HEAP_CONTENT_CACHE_SIZE = 0l;
+
+    /** Messages larger than this many bytes are converted afresh for each consumer rather than sharing conversions */
+    String CONVERSION_CACHE_MAX_MESSAGE_SIZE = "virtualhost.conversionCacheMaxMessageSize";
+    @ManagedContextDefault( name = CONVERSION_CACHE_MAX_MESSAGE_SIZE)
+    long DEFAULT_CONVERSION_CACHE_MAX_MESSAGE_SIZE = 1024l * 1024l;
+
     @ManagedStatistic
     long getQueueCount();
 
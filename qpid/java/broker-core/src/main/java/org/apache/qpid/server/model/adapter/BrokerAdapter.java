@@ -26,6 +26,7 @@ import java.security.AccessControlException;
 import java.security.PrivilegedAction;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
@@ -49,6 +50,7 @@ import org.apache.qpid.server.model.*;
 import org.apache.qpid.server.model.port.AbstractPortWithAuthProvider;
 import org.apache.qpid.server.plugin.ConfigurationSecretEncrypterFactory;
 import org.apache.qpid.server.plugin.PluggableFactoryLoader;
+import org.apache.qpid.server.queue.QueueDeliveryScheduler;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.SubjectCreator;
 import org.apache.qpid.server.security.access.Operation;
@@ -515,6 +517,66 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
         return getMessageDeliveryStatistics().getTotal();
     }
 
+    @Override
+    public int getQueueDeliveryWorkerCount()
+    {
+        return QueueDeliveryScheduler.getInstance().getWorkerCount();
+    }
+
+    @Override
+    public long getQueueDeliveryTasksExecuted()
+    {
+        long total = 0L;
+        for (QueueDeliveryScheduler.WorkerStatistics worker : getQueueDeliveryWorkerStatistics())
+        {
+            total += worker.getTasksExecuted();
+        }
+        return total;
+    }
+
+    @Override
+    public long getQueueDeliveryTasksStolen()
+    {
+        long total = 0L;
+        for (QueueDeliveryScheduler.WorkerStatistics worker : getQueueDeliveryWorkerStatistics())
+        {
+            total += worker.getTasksStolen();
+        }
+        return total;
+    }
+
+    @Override
+    public int getQueueDeliveryWorkerMeanUtilisation()
+    {
+        List<QueueDeliveryScheduler.WorkerStatistics> workers = getQueueDeliveryWorkerStatistics();
+        if (workers.isEmpty())
+        {
+            return 0;
+        }
+        int total = 0;
+        for (QueueDeliveryScheduler.WorkerStatistics worker : workers)
+        {
+            total += worker.getUtilisation();
+        }
+        return total / workers.size();
+    }
+
+    @Override
+    public int getQueueDeliveryWorkerMaxUtilisation()
+    {
+        int max = 0;
+        for (QueueDeliveryScheduler.WorkerStatistics worker : getQueueDeliveryWorkerStatistics())
+        {
+            max = Math.max(max, worker.getUtilisation());
+        }
+        return max;
+    }
+
+    private List<QueueDeliveryScheduler.WorkerStatistics> getQueueDeliveryWorkerStatistics()
+    {
+        return QueueDeliveryScheduler.getInstance().getWorkerStatistics();
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <C extends ConfiguredObject> C addChild(final Class<C> childClass, final Map<String, Object> attributes, final ConfiguredObject... otherParents)
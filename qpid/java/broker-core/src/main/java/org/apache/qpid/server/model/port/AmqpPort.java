@@ -71,6 +71,17 @@ public interface AmqpPort<X extends AmqpPort<X>> extends ClientAuthCapablePort<X
     int DEFAULT_OPEN_CONNECTIONS_WARN_PERCENT = 80;
 
 
+    String PORT_AMQP_NON_BLOCKING_IO = "qpid.port.amqp.nonBlockingIo";
+
+    @ManagedContextDefault(name = PORT_AMQP_NON_BLOCKING_IO)
+    boolean DEFAULT_AMQP_NON_BLOCKING_IO = false;
+
+    String PORT_AMQP_SELECTOR_THREAD_COUNT = "qpid.port.amqp.selectorThreadCount";
+
+    @ManagedContextDefault(name = PORT_AMQP_SELECTOR_THREAD_COUNT)
+    int DEFAULT_AMQP_SELECTOR_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+
     @ManagedAttribute(defaultValue = "*")
     String getBindingAddress();
 
@@ -23,9 +23,12 @@ package org.apache.qpid.server.protocol;
 
 import java.util.HashMap;
 import java.util.Map;
+
+import org.apache.qpid.server.message.AbstractServerMessageImpl;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.plugin.QpidServiceLoader;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 public class MessageConverterRegistry
 {
@@ -56,4 +59,41 @@ public class MessageConverterRegistry
         }
         return map == null ? null : map.get(to);
     }
+
+    /**
+     * Converts the message to the given message class.  Whilst the message remains referenced its conversion is
+     * retained, unless it is larger than the virtual host's
+     * {@link org.apache.qpid.server.model.VirtualHost#CONVERSION_CACHE_MAX_MESSAGE_SIZE}, so that delivering it to many
+     * consumers of the same protocol converts it only once.
+     */
+    public static <M extends ServerMessage, N extends ServerMessage> N convert(M message,
+                                                                             Class<N> to,
+                                                                             VirtualHostImpl vhost)
+    {
+        final MessageConverter<M, N> converter = getConverter((Class<M>) message.getClass(), to);
+        if(converter == null)
+        {
+            throw new IllegalArgumentException("No converter from " + message.getClass().getSimpleName()
+                                               + " to " + to.getSimpleName());
+        }
+
+        final boolean cacheable = message instanceof AbstractServerMessageImpl
+                                  && vhost != null
+                                  && message.getSize() <= vhost.getConversionCacheMaxMessageSize();
+        if(cacheable)
+        {
+            N converted = ((AbstractServerMessageImpl<?, ?>) message).getConvertedMessage(to);
+            if(converted != null)
+            {
+                return converted;
+            }
+        }
+
+        N converted = converter.convert(message, vhost);
+        if(cacheable)
+        {
+            ((AbstractServerMessageImpl<?, ?>) message).setConvertedMessage(to, converted);
+        }
+        return converted;
+    }
 }
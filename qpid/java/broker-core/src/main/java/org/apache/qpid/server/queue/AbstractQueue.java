@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,7 +45,6 @@ import javax.security.auth.Subject;
 
 import org.apache.log4j.Logger;
 
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.binding.BindingImpl;
 import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.connection.SessionPrincipal;
@@ -199,6 +199,29 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
 
     private int _maxAsyncDeliveries;
+    private long _deliverySliceTime;
+    private long _deliverySliceBytes;
+
+    private final AtomicLong _deliverySlices = new AtomicLong();
+    private final AtomicLong _deliverySliceReschedules = new AtomicLong();
+    private final AtomicLong _deliverySliceTotalTime = new AtomicLong();
+    private volatile long _deliverySliceMaxTime;
+
+    private long _flowToDiskReadAheadBytes;
+    private final AtomicBoolean _readAheadScheduled = new AtomicBoolean();
+    /** Whether content of this queue's messages may have been flowed to disk since last checked */
+    private volatile boolean _contentFlowedToDisk;
+
+    private ExpiryIndex _expiryIndex;
+    /** Index of the entries by message number and position, only if enabled by {@link Queue#MESSAGE_INDEX} */
+    private QueueEntryIndex _entryIndex;
+
+    /** Overhead assumed until one has been measured from an enqueued message */
+    private static final long UNMEASURED_MESSAGE_MEMORY_OVERHEAD = 1024l;
+    /** The overhead is re-measured from one in every this many enqueued messages */
+    private static final long MESSAGE_MEMORY_OVERHEAD_SAMPLE_INTERVAL = 1024l;
+    private boolean _measureMessageMemoryOverhead;
+    private volatile long _messageMemoryOverhead = UNMEASURED_MESSAGE_MEMORY_OVERHEAD;
 
 
     private final AtomicLong _stateChangeCount = new AtomicLong(Long.MIN_VALUE);
@@ -256,13 +279,14 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     private final QueueRunner _queueRunner = new QueueRunner(this);
     private boolean _closing;
     private final ConcurrentHashMap<String,MessageFilter> _defaultFiltersMap = new ConcurrentHashMap<>();
+    private final SharedSelectors _sharedSelectors = new SharedSelectors();
 
     protected AbstractQueue(Map<String, Object> attributes, VirtualHostImpl virtualHost)
     {
         super(parentsMap(virtualHost), attributes);
 
         _virtualHost = virtualHost;
-        _asyncDelivery = ReferenceCountingExecutorService.getInstance().acquireExecutorService();
+        _asyncDelivery = QueueDeliveryScheduler.getInstance().acquireExecutor();
 
     }
 
@@ -459,6 +483,21 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         }
 
         _maxAsyncDeliveries = getContextValue(Integer.class, Queue.MAX_ASYNCHRONOUS_DELIVERIES);
+        _deliverySliceTime = getContextValue(Long.class, Queue.DELIVERY_SLICE_TIME);
+        _deliverySliceBytes = getContextValue(Long.class, Queue.DELIVERY_SLICE_BYTES);
+        _flowToDiskReadAheadBytes = getContextValue(Long.class, Queue.FLOW_TO_DISK_READ_AHEAD_BYTES);
+        _expiryIndex = _virtualHost.getExpiryIndex();
+        if(getContextValue(Boolean.class, Queue.MESSAGE_INDEX))
+        {
+            _entryIndex = new QueueEntryIndex(hasEntriesInArrivalOrder());
+        }
+
+        long messageMemoryOverhead = getContextValue(Long.class, Queue.QUEUE_ESTIMATED_MESSAGE_MEMORY_OVERHEAD);
+        _measureMessageMemoryOverhead = messageMemoryOverhead < 0l;
+        if(!_measureMessageMemoryOverhead)
+        {
+            _messageMemoryOverhead = messageMemoryOverhead;
+        }
 
         if(_defaultFilters != null)
         {
@@ -777,50 +816,70 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             optionSet.removeAll(EnumSet.of(ConsumerImpl.Option.SEES_REQUEUES, ConsumerImpl.Option.ACQUIRES));
         }
 
-        QueueConsumerImpl consumer = new QueueConsumerImpl(this,
-                                                           target,
-                                                           consumerName,
-                                                           filters, 
-                                                           messageClass,
-                                                           optionSet);
-
-        _exclusiveOwner = exclusiveOwner;
-        target.consumerAdded(consumer);
-
-
-        if (exclusive && !isTransient)
+        if(filters != null)
         {
-            _exclusiveSubscriber = consumer;
+            _sharedSelectors.share(filters);
         }
 
-        if(consumer.isActive())
+        // the shared selector is released when the consumer is removed from the list, so must be released here if the
+        // consumer never reaches it
+        boolean listed = false;
+        QueueConsumerImpl consumer;
+        try
         {
-            _activeSubscriberCount.incrementAndGet();
-        }
+            consumer = new QueueConsumerImpl(this,
+                                             target,
+                                             consumerName,
+                                             filters,
+                                             messageClass,
+                                             optionSet);
 
-        consumer.setStateListener(this);
-        consumer.setQueueContext(new QueueContext(getEntries().getHead()));
+            _exclusiveOwner = exclusiveOwner;
+            target.consumerAdded(consumer);
 
-        if (!isDeleted())
-        {
-            synchronized (_consumerListeners)
+
+            if (exclusive && !isTransient)
             {
-                for(ConsumerRegistrationListener<? super MessageSource> listener : _consumerListeners)
+                _exclusiveSubscriber = consumer;
+            }
+
+            if(consumer.isActive())
+            {
+                _activeSubscriberCount.incrementAndGet();
+            }
+
+            consumer.setStateListener(this);
+            consumer.setQueueContext(new QueueContext(getEntries().getHead(), getEntries().getPriorities()));
+
+            if (!isDeleted())
+            {
+                synchronized (_consumerListeners)
                 {
-                    listener.consumerAdded(this, consumer);
+                    for(ConsumerRegistrationListener<? super MessageSource> listener : _consumerListeners)
+                    {
+                        listener.consumerAdded(this, consumer);
+                    }
                 }
-            }
 
-            _consumerList.add(consumer);
+                _consumerList.add(consumer);
+                listed = true;
 
-            if (isDeleted())
+                if (isDeleted())
+                {
+                    consumer.queueDeleted();
+                }
+            }
+            else
             {
-                consumer.queueDeleted();
+                // TODO
             }
         }
-        else
+        finally
         {
-            // TODO
+            if(!listed && filters != null)
+            {
+                _sharedSelectors.release(filters);
+            }
         }
 
         childAdded(consumer);
@@ -853,6 +912,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         if (removed)
         {
             consumer.close();
+            _sharedSelectors.release(consumer.getFilters());
             // No longer can the queue have an exclusive consumer
             setExclusiveSubscriber(null);
 
@@ -948,22 +1008,26 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
         if(entry != null)
         {
-            QueueConsumerList.ConsumerNodeIterator subscriberIter = _consumerList.iterator();
-            // iterate over all the subscribers, and if they are in advance of this queue entry then move them backwards
-            while (subscriberIter.advance())
-            {
-                QueueConsumer<?> sub = subscriberIter.getNode().getConsumer();
-
-                // we don't make browsers send the same stuff twice
-                if (sub.seesRequeues())
-                {
-                    updateSubRequeueEntry(sub, entry);
-                }
-            }
+            resetSubPointers(entry);
+        }
+    }
 
-            deliverAsync();
+    public void resetSubPointers(QueueEntry entry)
+    {
+        QueueConsumerList.ConsumerNodeIterator subscriberIter = _consumerList.iterator();
+        // iterate over all the subscribers, and if they are in advance of this queue entry then move them backwards
+        while (subscriberIter.advance())
+        {
+            QueueConsumer<?> sub = subscriberIter.getNode().getConsumer();
 
+            // we don't make browsers send the same stuff twice
+            if (sub.seesRequeues())
+            {
+                updateSubRequeueEntry(sub, entry);
+            }
         }
+
+        deliverAsync();
     }
 
     public void addBinding(final BindingImpl binding)
@@ -1009,8 +1073,9 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         incrementQueueCount();
         incrementQueueSize(message);
 
-        if((_atomicQueueSize.get() + _atomicQueueCount.get()*1024l) > _targetQueueSize.get() && message.getStoredMessage().isInMemory())
+        if((_atomicQueueSize.get() + _atomicQueueCount.get()*_messageMemoryOverhead) > _targetQueueSize.get() && message.getStoredMessage().isInMemory())
         {
+            _contentFlowedToDisk = true;
             message.getStoredMessage().flowToDisk();
         }
 
@@ -1076,6 +1141,27 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         final QueueEntry entry = getEntries().add(message);
         updateExpiration(entry);
 
+        if(_entryIndex != null && entry instanceof QueueEntryImpl)
+        {
+            _entryIndex.add((QueueEntryImpl) entry);
+        }
+
+        if(_expiryIndex != null && entry instanceof QueueEntryImpl)
+        {
+            long expiration = ((QueueEntryImpl) entry).getExpiration();
+            if(expiration != 0l)
+            {
+                _expiryIndex.add((QueueEntryImpl) entry, expiration);
+            }
+        }
+
+        if(_measureMessageMemoryOverhead
+           && _totalMessagesReceived.get() % MESSAGE_MEMORY_OVERHEAD_SAMPLE_INTERVAL == 1l
+           && entry instanceof QueueEntryImpl)
+        {
+            sampleMessageMemoryOverhead((QueueEntryImpl) entry);
+        }
+
         try
         {
             if (action != null || (exclusiveSub == null  && _queueRunner.isIdle()))
@@ -1270,8 +1356,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         {
             return true;
         }
-        QueueConsumer assigned = _messageGroupManager.getAssignedConsumer(entry);
-        return (assigned == null) || (assigned == sub);
+        return _messageGroupManager.mightAssign(sub, entry);
     }
 
     protected void checkConsumersNotAheadOfDelivery(final QueueEntry entry)
@@ -1384,6 +1469,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     @Override
     public void dequeue(QueueEntry entry)
     {
+        if(_entryIndex != null && entry instanceof QueueEntryImpl)
+        {
+            _entryIndex.remove((QueueEntryImpl) entry);
+        }
         decrementQueueCount();
         decrementQueueSize(entry);
         if (entry.acquiredByConsumer())
@@ -1538,6 +1627,31 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         return oldestMessageArrivalTime == 0 ? 0 : System.currentTimeMillis() - oldestMessageArrivalTime;
     }
 
+    @Override
+    public long getDeliverySlices()
+    {
+        return _deliverySlices.get();
+    }
+
+    @Override
+    public long getDeliverySliceReschedules()
+    {
+        return _deliverySliceReschedules.get();
+    }
+
+    @Override
+    public long getDeliverySliceMeanTime()
+    {
+        long slices = _deliverySlices.get();
+        return slices == 0L ? 0L : _deliverySliceTotalTime.get() / slices;
+    }
+
+    @Override
+    public long getDeliverySliceMaxTime()
+    {
+        return _deliverySliceMaxTime;
+    }
+
     public boolean isDeleted()
     {
         return _deleted.get();
@@ -1610,6 +1724,15 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     /** Used to track bindings to exchanges so that on deletion they can easily be cancelled. */
     abstract QueueEntryList getEntries();
 
+    /**
+     * Whether the entries are visited in the order they were added, so that their positions on the queue may be
+     * indexed.
+     */
+    boolean hasEntriesInArrivalOrder()
+    {
+        return false;
+    }
+
     protected QueueConsumerList getConsumerList()
     {
         return _consumerList;
@@ -1631,6 +1754,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public List<QueueEntry> getMessagesOnTheQueue(final long fromMessageId, final long toMessageId)
     {
+        if(_entryIndex != null)
+        {
+            return sortInQueueOrder(_entryIndex.getEntries(fromMessageId, toMessageId));
+        }
         return getMessagesOnTheQueue(new QueueEntryFilter()
         {
 
@@ -1649,6 +1776,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public QueueEntry getMessageOnTheQueue(final long messageId)
     {
+        if(_entryIndex != null)
+        {
+            return _entryIndex.getEntry(messageId);
+        }
         List<QueueEntry> entries = getMessagesOnTheQueue(new QueueEntryFilter()
         {
             private boolean _complete;
@@ -1667,6 +1798,46 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         return entries.isEmpty() ? null : entries.get(0);
     }
 
+    public List<QueueEntry> getMessagesOnTheQueue(final Collection<Long> messageIds)
+    {
+        if(_entryIndex != null)
+        {
+            List<QueueEntry> entries = new ArrayList<QueueEntry>(messageIds.size());
+            for(Long messageId : messageIds)
+            {
+                QueueEntry entry = _entryIndex.getEntry(messageId);
+                if(entry != null)
+                {
+                    entries.add(entry);
+                }
+            }
+            return sortInQueueOrder(entries);
+        }
+
+        final Set<Long> remaining = new HashSet<Long>(messageIds);
+        return getMessagesOnTheQueue(new QueueEntryFilter()
+        {
+            public boolean accept(QueueEntry entry)
+            {
+                return remaining.remove(entry.getMessage().getMessageNumber());
+            }
+
+            public boolean filterComplete()
+            {
+                return remaining.isEmpty();
+            }
+        });
+    }
+
+    private List<QueueEntry> sortInQueueOrder(List<QueueEntry> entries)
+    {
+        if(_entryIndex.isIndexingPositions())
+        {
+            Collections.sort(entries);
+        }
+        return entries;
+    }
+
     public List<QueueEntry> getMessagesOnTheQueue(QueueEntryFilter filter)
     {
         ArrayList<QueueEntry> entryList = new ArrayList<QueueEntry>();
@@ -1712,6 +1883,15 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
      */
     public List<QueueEntry> getMessagesRangeOnTheQueue(final long fromPosition, final long toPosition)
     {
+        if(_entryIndex != null && _entryIndex.isIndexingPositions())
+        {
+            long from = Math.max(fromPosition, 1l);
+            if(toPosition < from)
+            {
+                return new ArrayList<QueueEntry>();
+            }
+            return _entryIndex.getEntriesByPosition(from - 1l, (int) Math.min(toPosition - from + 1l, Integer.MAX_VALUE));
+        }
         return getMessagesOnTheQueue(new QueueEntryFilter()
                                         {
                                             private long position = 0;
@@ -1884,7 +2064,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         super.onClose();
         if (!_stopped.getAndSet(true))
         {
-            ReferenceCountingExecutorService.getInstance().releaseExecutorService();
+            QueueDeliveryScheduler.getInstance().releaseExecutor();
         }
         _closing = false;
     }
@@ -2035,6 +2215,11 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
      * @return true if we have completed all possible deliveries for this sub.
      */
     private boolean attemptDelivery(QueueConsumer<?> sub, boolean batch)
+    {
+        return attemptDelivery(sub, batch, null);
+    }
+
+    private boolean attemptDelivery(QueueConsumer<?> sub, boolean batch, DeliverySlice slice)
     {
         boolean atTail = false;
 
@@ -2066,11 +2251,19 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
                         }
                         else
                         {
+                            if(!node.getMessage().getStoredMessage().isInMemory())
+                            {
+                                scheduleReadAhead();
+                            }
                             deliverMessage(sub, node, batch);
                             if(sub.acquires())
                             {
                                 node.unlockAcquisition();
                             }
+                            if(slice != null)
+                            {
+                                slice.delivered(node.getSize());
+                            }
                         }
 
                     }
@@ -2115,8 +2308,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             QueueEntry lastSeen = context.getLastSeenEntry();
             QueueEntry releasedNode = context.getReleasedEntry();
 
-            QueueEntry node = (releasedNode != null && lastSeen.compareTo(releasedNode)>=0) ? releasedNode : getEntries()
-                    .next(lastSeen);
+            QueueEntry node = (releasedNode != null && lastSeen.compareTo(releasedNode)>=0) ? releasedNode : nextEntry(
+                    context, lastSeen);
 
             boolean expired = false;
             while (node != null && (!node.isAvailable() || (expired = node.expired()) || !sub.hasInterest(node) ||
@@ -2138,8 +2331,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
                 lastSeen = context.getLastSeenEntry();
                 releasedNode = context.getReleasedEntry();
-                node = (releasedNode != null && lastSeen.compareTo(releasedNode)>=0) ? releasedNode : getEntries().next(
-                        lastSeen);
+                node = (releasedNode != null && lastSeen.compareTo(releasedNode)>=0) ? releasedNode : nextEntry(
+                        context, lastSeen);
             }
             return node;
         }
@@ -2149,6 +2342,14 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         }
     }
 
+    /**
+     * Returns the entry following the given entry last seen by a consumer.
+     */
+    QueueEntry nextEntry(final QueueContext context, final QueueEntry lastSeen)
+    {
+        return getEntries().next(lastSeen);
+    }
+
     public boolean isEntryAheadOfConsumer(QueueEntry entry, QueueConsumer<?> sub)
     {
         QueueContext context = sub.getQueueContext();
@@ -2181,7 +2382,11 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
      * because all threads are working on clearing down large queues). To solve
      * this problem, after an arbitrary number of message deliveries the
      * processQueue job stops iterating, resubmits itself to the executor, and
-     * ends the current instance
+     * ends the current instance.
+     *
+     * If either of the {@link Queue#DELIVERY_SLICE_TIME} or {@link Queue#DELIVERY_SLICE_BYTES}
+     * context variables is set, the job is instead bounded by the time spent and bytes
+     * delivered, with each consumer given an equal share of the slice on every pass.
      *
      * @param runner the Runner to schedule
      */
@@ -2193,11 +2398,16 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         boolean deliveryIncomplete = true;
 
         boolean lastLoop = false;
-        int iterations = getMaxAsyncDeliveries();
 
         final int numSubs = _consumerList.size();
 
-        final int perSub = Math.max(iterations / Math.max(numSubs,1), 1);
+        final long sliceStartTime = System.nanoTime();
+        final DeliverySlice slice = _deliverySliceTime > 0L || _deliverySliceBytes > 0L
+                ? new DeliverySlice(_deliverySliceTime, _deliverySliceBytes, numSubs, sliceStartTime)
+                : null;
+
+        int iterations = slice == null ? getMaxAsyncDeliveries() : Integer.MAX_VALUE;
+        final int perSub = slice == null ? Math.max(iterations / Math.max(numSubs,1), 1) : Integer.MAX_VALUE;
 
         // For every message enqueue/requeue the we fire deliveryAsync() which
         // increases _stateChangeCount. If _sCC changes whilst we are in our loop
@@ -2231,10 +2441,14 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
                     try
                     {
+                        if(slice != null)
+                        {
+                            slice.startQuantum(System.nanoTime());
+                        }
                         for(int i = 0 ; i < perSub; i++)
                         {
                             //attempt delivery. returns true if no further delivery currently possible to this sub
-                            consumerDone = attemptDelivery(sub, true);
+                            consumerDone = attemptDelivery(sub, true, slice);
                             if (consumerDone)
                             {
                                 sub.flushBatched();
@@ -2255,6 +2469,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
                                     sub.flushBatched();
                                     break;
                                 }
+                                if(slice != null && slice.isQuantumUsed(System.nanoTime()))
+                                {
+                                    break;
+                                }
                             }
 
                         }
@@ -2288,14 +2506,27 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
                 //keep going if iteration count allows.
                 lastLoop = false;
                 deliveryIncomplete = true;
+                if(slice != null && slice.isExhausted(System.nanoTime()))
+                {
+                    iterations = 0;
+                }
             }
 
         }
 
+        final long sliceTime = System.nanoTime() - sliceStartTime;
+        _deliverySlices.incrementAndGet();
+        _deliverySliceTotalTime.addAndGet(sliceTime);
+        if(sliceTime > _deliverySliceMaxTime)
+        {
+            _deliverySliceMaxTime = sliceTime;
+        }
+
         // If iterations == 0 then the limiting factor was the time-slicing rather than available messages or credit
         // therefore we should schedule this runner again (unless someone beats us to it :-) ).
         if (iterations == 0)
         {
+            _deliverySliceReschedules.incrementAndGet();
             if (_logger.isDebugEnabled())
             {
                 _logger.debug("Rescheduling runner:" + runner);
@@ -2306,71 +2537,195 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     }
 
+    /**
+     * Checks the queue level alert thresholds and, when the queue exceeds its target size or content of its messages
+     * has been flowed to disk, walks the queue flowing content to disk beyond the target size and reloading it at
+     * the head.  Expired entries are not looked for here: they are expired by the virtual host's {@link ExpiryIndex}.
+     */
     public void checkMessageStatus()
     {
-        QueueEntryIterator queueListIterator = getEntries().iterator();
+        checkForNotification(null);
 
-        long totalSize = getContextValue(Long.class, QUEUE_ESTIMATED_MESSAGE_MEMORY_OVERHEAD) * getQueueDepthMessages();
         long targetSize = _targetQueueSize.get();
+        if(_contentFlowedToDisk
+           || (_atomicQueueSize.get() + _atomicQueueCount.get()*_messageMemoryOverhead) > targetSize)
+        {
+            checkMessageContent(targetSize);
+        }
+    }
+
+    private void checkMessageContent(final long targetSize)
+    {
+        QueueEntryIterator queueListIterator = getEntries().iterator();
+
+        long totalSize = _messageMemoryOverhead * getQueueDepthMessages();
+        long readAheadSize = Math.min(_flowToDiskReadAheadBytes, targetSize);
+        long headSize = 0l;
+        boolean contentFlowedToDisk = false;
+        _contentFlowedToDisk = false;
 
         while (queueListIterator.advance())
         {
             QueueEntry node = queueListIterator.getNode();
             // Only process nodes that are not currently deleted and not dequeued
-            if (!node.isDeleted())
+            if (!node.isDeleted() && !node.expired())
             {
-                // If the node has expired then acquire it
-                if (node.expired())
+                // There is a chance that the node could be deleted by
+                // the time the check actually occurs. So verify we
+                // can actually get the message to perform the check.
+                ServerMessage msg = node.getMessage();
+
+                if (msg != null)
                 {
-                    boolean acquiredForDequeueing = node.acquire();
-                    if(!acquiredForDequeueing && node.getDeliveredToConsumer())
+                    totalSize += msg.getSize();
+                    headSize += msg.getSize();
+                    StoredMessage storedMessage = msg.getStoredMessage();
+                    if(headSize <= readAheadSize)
                     {
-                        QueueConsumer consumer = (QueueConsumer) node.getDeliveredConsumer();
-                        acquiredForDequeueing = node.removeAcquisitionFromConsumer(consumer);
-                        if(acquiredForDequeueing)
+                        // the entries nearest the head will be wanted soonest, so keep them in memory
+                        if(!storedMessage.isInMemory())
                         {
-                            consumer.acquisitionRemoved(node);
+                            storedMessage.reloadContent();
                         }
                     }
-
-                    if(acquiredForDequeueing)
+                    else if(totalSize > targetSize && storedMessage.isInMemory())
                     {
-                        if (_logger.isDebugEnabled())
-                        {
-                            _logger.debug("Dequeuing expired node " + node);
-                        }
-                        // Then dequeue it.
-                        dequeueEntry(node);
+                        storedMessage.flowToDisk();
+                        contentFlowedToDisk = true;
+                    }
+                    else if(!storedMessage.isInMemory())
+                    {
+                        contentFlowedToDisk = true;
                     }
                 }
-                else
+            }
+        }
+
+        if(contentFlowedToDisk)
+        {
+            _contentFlowedToDisk = true;
+        }
+    }
+
+    /**
+     * Dequeues the given entry if it has expired, taking it from the consumer it has been delivered to if need be.
+     *
+     * @return true if the entry was expired
+     */
+    boolean expireEntry(final QueueEntry node)
+    {
+        if (!node.isDeleted() && node.expired())
+        {
+            boolean acquiredForDequeueing = node.acquire();
+            if(!acquiredForDequeueing && node.getDeliveredToConsumer())
+            {
+                QueueConsumer consumer = (QueueConsumer) node.getDeliveredConsumer();
+                acquiredForDequeueing = consumer != null && node.removeAcquisitionFromConsumer(consumer);
+                if(acquiredForDequeueing)
                 {
-                    // There is a chance that the node could be deleted by
-                    // the time the check actually occurs. So verify we
-                    // can actually get the message to perform the check.
-                    ServerMessage msg = node.getMessage();
+                    consumer.acquisitionRemoved(node);
+                }
+            }
 
-                    if (msg != null)
+            if(acquiredForDequeueing)
+            {
+                if (_logger.isDebugEnabled())
+                {
+                    _logger.debug("Dequeuing expired node " + node);
+                }
+                // Then dequeue it.
+                dequeueEntry(node);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleReadAhead()
+    {
+        if(_flowToDiskReadAheadBytes > 0l && _readAheadScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                _virtualHost.scheduleTask(0l, new Runnable()
+                {
+                    @Override
+                    public void run()
                     {
-                        totalSize += msg.getSize();
-                        StoredMessage storedMessage = msg.getStoredMessage();
-                        if(totalSize > targetSize && storedMessage.isInMemory())
+                        try
                         {
-                            storedMessage.flowToDisk();
+                            readAheadFlowedContent();
+                        }
+                        finally
+                        {
+                            _readAheadScheduled.set(false);
                         }
-                        checkForNotification(msg);
                     }
-                }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                _readAheadScheduled.set(false);
             }
         }
+    }
+
+    /**
+     * Reloads flowed to disk content of the available entries nearest the head of the queue, so that consumers
+     * working through a backlog do not each wait for their next message to be read from the store.
+     */
+    void readAheadFlowedContent()
+    {
+        long readAheadSize = Math.min(_flowToDiskReadAheadBytes, _targetQueueSize.get());
+        long headSize = 0l;
 
+        QueueEntryIterator queueListIterator = getEntries().iterator();
+        while (headSize < readAheadSize && queueListIterator.advance())
+        {
+            QueueEntry node = queueListIterator.getNode();
+            if (node.isAvailable())
+            {
+                ServerMessage msg = node.getMessage();
+                if (msg != null)
+                {
+                    headSize += msg.getSize();
+                    StoredMessage storedMessage = msg.getStoredMessage();
+                    if (!storedMessage.isInMemory())
+                    {
+                        storedMessage.reloadContent();
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public long getPotentialMemoryFootprint()
     {
         return Math.max(getContextValue(Long.class,QUEUE_MINIMUM_ESTIMATED_MEMORY_FOOTPRINT),
-                        getQueueDepthBytes() + getContextValue(Long.class, QUEUE_ESTIMATED_MESSAGE_MEMORY_OVERHEAD) * getQueueDepthMessages());
+                        getQueueDepthBytes() + _messageMemoryOverhead * getQueueDepthMessages());
+    }
+
+    long getMessageMemoryOverhead()
+    {
+        return _messageMemoryOverhead;
+    }
+
+    /**
+     * Folds the measured overhead of the given entry into a moving average, so that the estimate follows the
+     * messages actually passing through the queue.
+     */
+    private void sampleMessageMemoryOverhead(final QueueEntryImpl entry)
+    {
+        long sample = entry.estimateMemoryOverhead();
+        if(_totalMessagesReceived.get() <= MESSAGE_MEMORY_OVERHEAD_SAMPLE_INTERVAL)
+        {
+            _messageMemoryOverhead = sample;
+        }
+        else
+        {
+            _messageMemoryOverhead = (7l * _messageMemoryOverhead + sample) / 8l;
+        }
     }
 
     public long getAlertRepeatGap()
@@ -2588,7 +2943,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
             for (NotificationCheck check : notificationChecks)
             {
-                if (check.isMessageSpecific() || (_lastNotificationTimes[check.ordinal()] < thresholdTime))
+                // without a message only the queue level checks apply
+                if (check.isMessageSpecific() ? msg != null : _lastNotificationTimes[check.ordinal()] < thresholdTime)
                 {
                     if (check.notifyIfNecessary(msg, this, listener))
                     {
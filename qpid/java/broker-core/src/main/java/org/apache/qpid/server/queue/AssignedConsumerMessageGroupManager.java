@@ -59,6 +59,12 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
         return groupVal == null ? null : _groupMap.get(groupVal.hashCode() & _groupMask);
     }
 
+    public boolean mightAssign(final QueueConsumer<?> sub, final QueueEntry entry)
+    {
+        QueueConsumer<?> assigned = getAssignedConsumer(entry);
+        return (assigned == null) || (assigned == sub);
+    }
+
     public boolean acceptMessage(QueueConsumer<?> sub, QueueEntry entry)
     {
         return assignMessage(sub, entry) && entry.acquire(sub);
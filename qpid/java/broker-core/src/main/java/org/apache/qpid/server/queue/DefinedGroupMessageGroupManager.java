@@ -20,7 +20,6 @@
  */
 package org.apache.qpid.server.queue;
 
-import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.util.StateChangeListener;
 import org.slf4j.Logger;
@@ -29,23 +28,42 @@ import org.slf4j.LoggerFactory;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.ServerMessage;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Assigns each group of messages, identified by the value of a message header, to a single consumer for as long as
+ * that consumer has messages of the group acquired.
+ * <p>
+ * The group table is a concurrent map and each group is guarded by its own lock, so consumers of different groups
+ * do not contend.  Whilst a group is assigned, the entries of the group passed over by the other consumers are
+ * indexed, in queue order, by the group; when the group is released the consumers are reset to the earliest of these
+ * still available, rather than the queue being searched for it.  The groups are also indexed by the consumer they are
+ * assigned to, so that finding the earliest such entry of a consumer visits only the groups assigned to it.
+ */
 public class DefinedGroupMessageGroupManager implements MessageGroupManager
 {
     private static final Logger _logger = LoggerFactory.getLogger(DefinedGroupMessageGroupManager.class);
 
     private final String _groupId;
     private final String _defaultGroup;
-    private final Map<Object, Group> _groupMap = new HashMap<Object, Group>();
+    private final ConcurrentMap<Object, Group> _groupMap = new ConcurrentHashMap<Object, Group>();
+    private final ConcurrentMap<QueueConsumer<?>, Set<Group>> _groupsByConsumer =
+            new ConcurrentHashMap<QueueConsumer<?>, Set<Group>>();
     private final ConsumerResetHelper _resetHelper;
 
     private final class Group
     {
         private final Object _group;
-        private QueueConsumer<?> _consumer;
-        private int _activeCount;
+        private volatile QueueConsumer<?> _consumer;
+        private volatile int _activeCount;
+
+        /** Available entries of the group passed over by other consumers whilst the group has been assigned */
+        private final ConcurrentSkipListSet<QueueEntry> _passedOverEntries = new ConcurrentSkipListSet<QueueEntry>();
 
         private Group(final Object key, final QueueConsumer<?> consumer)
         {
@@ -53,11 +71,12 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             _consumer = consumer;
         }
         
-        public boolean add()
+        public synchronized boolean add()
         {
             if(_consumer != null)
             {
                 _activeCount++;
+                removeUnavailablePassedOverEntries();
                 return true;
             }
             else
@@ -66,13 +85,48 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             }
         }
         
-        public void subtract()
+        public synchronized void subtract()
         {
             if(--_activeCount == 0)
             {
-                _resetHelper.resetSubPointersForGroups(_consumer, false);
+                unindexGroup(this, _consumer);
                 _consumer = null;
-                _groupMap.remove(_group);
+                _groupMap.remove(_group, this);
+
+                QueueEntry entry = getEarliestPassedOverEntry();
+                if(entry != null)
+                {
+                    _resetHelper.resetSubPointers(entry);
+                }
+            }
+        }
+
+        /**
+         * Records that a consumer other than the assigned one has passed over the given entry of the group.
+         *
+         * @return false if the group has been released meanwhile, in which case the entry is not passed over
+         */
+        public boolean passOver(final QueueEntry entry)
+        {
+            _passedOverEntries.add(entry);
+            // the consumer is cleared before the passed over entries are read on release, so either the release
+            // sees this entry or we see the release
+            return _consumer != null;
+        }
+
+        public QueueEntry getEarliestPassedOverEntry()
+        {
+            removeUnavailablePassedOverEntries();
+            return _passedOverEntries.isEmpty() ? null : _passedOverEntries.first();
+        }
+
+        private void removeUnavailablePassedOverEntries()
+        {
+            // acquired entries may go, as they reset the consumers themselves should they be released
+            Iterator<QueueEntry> iterator = _passedOverEntries.iterator();
+            while(iterator.hasNext() && !iterator.next().isAvailable())
+            {
+                iterator.remove();
             }
         }
 
@@ -101,7 +155,8 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
 
         public boolean isValid()
         {
-            return !(_consumer == null || (_activeCount == 0 && _consumer.isClosed()));
+            QueueConsumer<?> consumer = _consumer;
+            return !(consumer == null || (_activeCount == 0 && consumer.isClosed()));
         }
 
         public QueueConsumer<?> getConsumer()
@@ -127,7 +182,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         _resetHelper = resetHelper;
     }
     
-    public synchronized QueueConsumer<?> getAssignedConsumer(final QueueEntry entry)
+    public QueueConsumer<?> getAssignedConsumer(final QueueEntry entry)
     {
         Object groupId = getKey(entry);
 
@@ -135,93 +190,130 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         return group == null || !group.isValid() ? null : group.getConsumer();
     }
 
-    public synchronized boolean acceptMessage(final QueueConsumer<?> sub, final QueueEntry entry)
+    public boolean mightAssign(final QueueConsumer<?> sub, final QueueEntry entry)
     {
-        return assignMessage(sub, entry) && entry.acquire(sub);
+        Object groupId = getKey(entry);
+
+        Group group = _groupMap.get(groupId);
+        if(group == null || !group.isValid())
+        {
+            return true;
+        }
+        QueueConsumer<?> assigned = group.getConsumer();
+        return assigned == sub || assigned == null || !group.passOver(entry);
     }
 
-    private boolean assignMessage(final QueueConsumer<?> sub, final QueueEntry entry)
+    public boolean acceptMessage(final QueueConsumer<?> sub, final QueueEntry entry)
     {
         Object groupId = getKey(entry);
-        Group group = _groupMap.get(groupId);
 
-        if(group == null || !group.isValid())
+        while(true)
         {
-            group = new Group(groupId, sub);
+            Group group = _groupMap.get(groupId);
 
-            _groupMap.put(groupId, group);
+            if(group == null || !group.isValid())
+            {
+                Group newGroup = new Group(groupId, sub);
+                if(group == null
+                   ? _groupMap.putIfAbsent(groupId, newGroup) != null
+                   : !_groupMap.replace(groupId, group, newGroup))
+                {
+                    // another consumer has changed the group meanwhile
+                    continue;
+                }
+                if(group != null)
+                {
+                    // the group replaced was invalid, so its consumer is either cleared or closed
+                    unindexGroup(group, group.getConsumer());
+                }
+                indexGroup(newGroup, sub);
+                group = newGroup;
 
-            // there's a small change that the group became empty between the point at which getNextAvailable() was
-            // called on the consumer, and when accept message is called... in that case we want to avoid delivering
-            // out of order
-            if(_resetHelper.isEntryAheadOfConsumer(entry, sub))
+                // there's a small change that the group became empty between the point at which getNextAvailable() was
+                // called on the consumer, and when accept message is called... in that case we want to avoid delivering
+                // out of order
+                if(_resetHelper.isEntryAheadOfConsumer(entry, sub))
+                {
+                    return false;
+                }
+            }
+
+            synchronized (group)
             {
-                return false;
+                QueueConsumer<?> assignedSub = group.getConsumer();
+                if(assignedSub == null)
+                {
+                    // the group was released whilst we waited for it
+                    continue;
+                }
+                else if(assignedSub == sub)
+                {
+                    entry.addStateChangeListener(new GroupStateChangeListener(group));
+                    return entry.acquire(sub);
+                }
+                else
+                {
+                    return false;
+                }
             }
         }
+    }
 
-        ConsumerImpl assignedSub = group.getConsumer();
-
-        if(assignedSub == sub)
+    public QueueEntry findEarliestAssignedAvailableEntry(final QueueConsumer<?> sub)
+    {
+        Set<Group> groups = _groupsByConsumer.get(sub);
+        if(groups == null)
         {
-            entry.addStateChangeListener(new GroupStateChangeListener(group));
-            return true;
+            return null;
         }
-        else
+
+        QueueEntry earliest = null;
+        for(Group group : groups)
         {
-            return false;            
+            // the group may have been released since it was indexed
+            if(group.getConsumer() == sub)
+            {
+                QueueEntry entry = group.getEarliestPassedOverEntry();
+                if(entry != null && (earliest == null || entry.compareTo(earliest) < 0))
+                {
+                    earliest = entry;
+                }
+            }
         }
+        return earliest;
     }
 
-    public synchronized QueueEntry findEarliestAssignedAvailableEntry(final QueueConsumer<?> sub)
+    
+    public void clearAssignments(final QueueConsumer<?> sub)
     {
-        EntryFinder visitor = new EntryFinder(sub);
-        sub.getQueue().visit(visitor);
-        return visitor.getEntry();
+        // the consumer has been removed, so its groups are no longer looked up by it
+        _groupsByConsumer.remove(sub);
     }
 
-    private class EntryFinder implements QueueEntryVisitor
+    private void indexGroup(final Group group, final QueueConsumer<?> consumer)
     {
-        private QueueEntry _entry;
-        private QueueConsumer _sub;
-
-        public EntryFinder(final QueueConsumer<?> sub)
-        {
-            _sub = sub;
-        }
-
-        public boolean visit(final QueueEntry entry)
+        Set<Group> groups = _groupsByConsumer.get(consumer);
+        if(groups == null)
         {
-            if(!entry.isAvailable())
-            {
-                return false;
-            }
-
-            Object groupId = getKey(entry);
-
-            Group group = _groupMap.get(groupId);
-            if(group != null && group.getConsumer() == _sub)
+            Set<Group> newGroups = Collections.newSetFromMap(new ConcurrentHashMap<Group, Boolean>());
+            groups = _groupsByConsumer.putIfAbsent(consumer, newGroups);
+            if(groups == null)
             {
-                _entry = entry;
-                return true;
-            }
-            else
-            {
-                return false;
+                groups = newGroups;
             }
         }
+        groups.add(group);
+    }
 
-        public QueueEntry getEntry()
+    private void unindexGroup(final Group group, final QueueConsumer<?> consumer)
+    {
+        Set<Group> groups = consumer == null ? null : _groupsByConsumer.get(consumer);
+        if(groups != null)
         {
-            return _entry;
+            groups.remove(group);
         }
     }
 
-    
-    public void clearAssignments(final QueueConsumer<?> sub)
-    {
-    }
-    
     private Object getKey(QueueEntry entry)
     {
         ServerMessage message = entry.getMessage();
@@ -247,7 +339,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
                                  final MessageInstance.State oldState,
                                  final MessageInstance.State newState)
         {
-            synchronized (DefinedGroupMessageGroupManager.this)
+            synchronized (_group)
             {
                 if(_group.isValid())
                 {
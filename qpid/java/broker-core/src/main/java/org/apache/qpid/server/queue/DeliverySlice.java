@@ -0,0 +1,82 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+/**
+ * Bounds a single run of {@link AbstractQueue#processQueue(QueueRunner)} by elapsed time and delivered bytes rather
+ * than by a count of deliveries.
+ * <p>
+ * The budget is divided into equal quanta for each consumer, so that within a slice a consumer of large messages
+ * gets the same share of the delivery thread as a consumer of small ones.  A limit of zero means unbounded.
+ */
+class DeliverySlice
+{
+    private final long _maxTime;
+    private final long _maxBytes;
+    private final long _quantumTime;
+    private final long _quantumBytes;
+    private final long _startTime;
+
+    private long _bytes;
+    private long _quantumStartTime;
+    private long _quantumStartBytes;
+
+    DeliverySlice(final long maxTime, final long maxBytes, final int consumerCount, final long startTime)
+    {
+        _maxTime = maxTime;
+        _maxBytes = maxBytes;
+        _quantumTime = maxTime / Math.max(consumerCount, 1);
+        _quantumBytes = maxBytes / Math.max(consumerCount, 1);
+        _startTime = startTime;
+        _quantumStartTime = startTime;
+    }
+
+    void startQuantum(final long currentTime)
+    {
+        _quantumStartTime = currentTime;
+        _quantumStartBytes = _bytes;
+    }
+
+    void delivered(final long size)
+    {
+        _bytes += size;
+    }
+
+    /**
+     * @return true if the consumer currently being served has used its share of the slice
+     */
+    boolean isQuantumUsed(final long currentTime)
+    {
+        return (_quantumTime > 0 && currentTime - _quantumStartTime >= _quantumTime)
+               || (_quantumBytes > 0 && _bytes - _quantumStartBytes >= _quantumBytes);
+    }
+
+    boolean isExhausted(final long currentTime)
+    {
+        return (_maxTime > 0 && currentTime - _startTime >= _maxTime)
+               || (_maxBytes > 0 && _bytes >= _maxBytes);
+    }
+
+    long getBytes()
+    {
+        return _bytes;
+    }
+}
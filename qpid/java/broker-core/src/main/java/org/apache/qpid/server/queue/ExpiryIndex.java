@@ -0,0 +1,215 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index of the queue entries of a virtual host that have an expiration time, ordered by that time, so that expired
+ * entries can be found without walking every queue.
+ * <p>
+ * Entries are held in buckets each covering <code>resolution</code> milliseconds of expiration time.  Once a bucket's
+ * time has entirely passed, {@link #expireEntries(long)} removes it and expires the entries it holds, so the cost of
+ * expiry is proportional to the number of entries expiring.  An entry deleted before it expires clears its node and
+ * unlinks it from its bucket, so that the index neither keeps the entry, its message, its neighbours or its queue
+ * reachable, nor grows with the entries deleted.  Buckets emptied this way are only discarded once their time has
+ * passed, so their number is bounded by the span of the expiration times indexed.
+ */
+public final class ExpiryIndex
+{
+    public static final long DEFAULT_RESOLUTION = 1000l;
+
+    private final long _resolution;
+    private final ConcurrentSkipListMap<Long, Bucket> _buckets = new ConcurrentSkipListMap<>();
+
+    public ExpiryIndex()
+    {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    public ExpiryIndex(final long resolution)
+    {
+        _resolution = resolution;
+    }
+
+    void add(final QueueEntryImpl entry, final long expiration)
+    {
+        final Node node = new Node(entry);
+        entry.setExpiryNode(node);
+        final Long slot = expiration / _resolution;
+        while (true)
+        {
+            Bucket bucket = _buckets.get(slot);
+            if (bucket == null)
+            {
+                bucket = new Bucket();
+                Bucket existing = _buckets.putIfAbsent(slot, bucket);
+                if (existing != null)
+                {
+                    bucket = existing;
+                }
+            }
+            node._bucket = bucket;
+            bucket.add(node);
+
+            // the entry may have been deleted before the node knew its bucket
+            if (node._entry == null)
+            {
+                bucket.remove(node);
+                return;
+            }
+
+            // the bucket may have been closed and drained whilst we were adding to it, in which case add the node
+            // again to a new bucket; should the node have been seen by the drain as well, it is expired only once
+            if (!bucket.isClosed())
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Expires the indexed entries of all buckets whose time has entirely passed.
+     *
+     * @return the number of entries expired
+     */
+    public int expireEntries(final long currentTime)
+    {
+        final ConcurrentNavigableMap<Long, Bucket> dueBuckets = _buckets.headMap(currentTime / _resolution);
+        int expired = 0;
+        Map.Entry<Long, Bucket> dueBucket;
+        while ((dueBucket = dueBuckets.pollFirstEntry()) != null)
+        {
+            Bucket bucket = dueBucket.getValue();
+            bucket.close();
+
+            for (Node node : bucket)
+            {
+                bucket.remove(node);
+                QueueEntryImpl entry = node.take();
+                if (entry != null)
+                {
+                    if (((AbstractQueue<?>) entry.getQueue()).expireEntry(entry))
+                    {
+                        expired++;
+                    }
+                    else if (!entry.isDeleted())
+                    {
+                        // the entry could not be taken from the consumer it was delivered to; try again next time
+                        add(entry, currentTime);
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of nodes currently indexed.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Bucket bucket : _buckets.values())
+        {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    static final class Node
+    {
+        private volatile QueueEntryImpl _entry;
+        /** the bucket the node was last added to */
+        private volatile Bucket _bucket;
+
+        private Node(final QueueEntryImpl entry)
+        {
+            _entry = entry;
+        }
+
+        /**
+         * Clears the node of its entry, which has been deleted, and unlinks it from its bucket.
+         */
+        void clear()
+        {
+            _entry = null;
+            Bucket bucket = _bucket;
+            if (bucket != null)
+            {
+                bucket.remove(this);
+            }
+        }
+
+        private QueueEntryImpl take()
+        {
+            QueueEntryImpl entry = _entry;
+            _entry = null;
+            return entry;
+        }
+    }
+
+    /**
+     * The nodes of a slot, held in a set so that a node may unlink itself in constant time.
+     */
+    private static final class Bucket implements Iterable<Node>
+    {
+        private final Set<Node> _nodes = Collections.newSetFromMap(new ConcurrentHashMap<Node, Boolean>());
+        private volatile boolean _closed;
+
+        void add(final Node node)
+        {
+            _nodes.add(node);
+        }
+
+        void remove(final Node node)
+        {
+            _nodes.remove(node);
+        }
+
+        int size()
+        {
+            return _nodes.size();
+        }
+
+        @Override
+        public Iterator<Node> iterator()
+        {
+            return _nodes.iterator();
+        }
+
+        boolean isClosed()
+        {
+            return _closed;
+        }
+
+        void close()
+        {
+            _closed = true;
+        }
+    }
+}
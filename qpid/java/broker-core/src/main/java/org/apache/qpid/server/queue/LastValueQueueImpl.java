@@ -53,6 +53,12 @@ public class LastValueQueueImpl extends AbstractQueue<LastValueQueueImpl> implem
         return _entries;
     }
 
+    @Override
+    boolean hasEntriesInArrivalOrder()
+    {
+        return true;
+    }
+
     @Override
     public String getLvqKey()
     {
@@ -26,11 +26,19 @@ public interface MessageGroupManager
     {
         public void resetSubPointersForGroups(QueueConsumer<?> consumer, boolean clearAssignments);
 
+        void resetSubPointers(QueueEntry entry);
+
         boolean isEntryAheadOfConsumer(QueueEntry entry, QueueConsumer<?> sub);
     }
 
     QueueConsumer getAssignedConsumer(QueueEntry entry);
 
+    /**
+     * Returns whether the given entry might be assigned to the given consumer, that is whether its group is not
+     * assigned to another consumer.
+     */
+    boolean mightAssign(QueueConsumer<?> sub, QueueEntry entry);
+
     boolean acceptMessage(QueueConsumer<?> sub, QueueEntry entry);
 
     QueueEntry findEarliestAssignedAvailableEntry(QueueConsumer<?> sub);
@@ -20,6 +20,9 @@
  */
 package org.apache.qpid.server.queue;
 
+import java.util.List;
+
+import org.apache.qpid.server.model.DerivedAttribute;
 import org.apache.qpid.server.model.ManagedAttribute;
 import org.apache.qpid.server.model.ManagedContextDefault;
 import org.apache.qpid.server.model.ManagedObject;
@@ -34,4 +37,10 @@ public interface PriorityQueue<X extends PriorityQueue<X>> extends AMQQueue<X>
 
     @ManagedAttribute( defaultValue = "${queue.priorities}")
     int getPriorities();
+
+    @DerivedAttribute( description = "The number of messages on the queue at each priority level, lowest first")
+    List<Integer> getQueueDepthMessagesByPriority();
+
+    @DerivedAttribute( description = "The size of the messages on the queue at each priority level, lowest first")
+    List<Long> getQueueDepthBytesByPriority();
 }
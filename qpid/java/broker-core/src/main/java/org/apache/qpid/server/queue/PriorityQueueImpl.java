@@ -20,6 +20,7 @@
 */
 package org.apache.qpid.server.queue;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.qpid.server.logging.LogMessage;
@@ -32,7 +33,7 @@ import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 public class PriorityQueueImpl extends OutOfOrderQueue<PriorityQueueImpl> implements PriorityQueue<PriorityQueueImpl>
 {
 
-    private PriorityQueueList _entries;
+    private PriorityQueueList.PriorityQueueMasterList _entries;
 
     @ManagedAttributeField
     private int _priorities;
@@ -62,6 +63,38 @@ public class PriorityQueueImpl extends OutOfOrderQueue<PriorityQueueImpl> implem
         return _entries;
     }
 
+    @Override
+    QueueEntry nextEntry(final QueueContext context, final QueueEntry lastSeen)
+    {
+        return _entries.next(lastSeen, context);
+    }
+
+    @Override
+    public void requeue(final QueueEntry entry)
+    {
+        _entries.entryAvailable(entry);
+        super.requeue(entry);
+    }
+
+    @Override
+    public void resetSubPointers(final QueueEntry entry)
+    {
+        _entries.entriesAvailableFrom(entry);
+        super.resetSubPointers(entry);
+    }
+
+    @Override
+    public List<Integer> getQueueDepthMessagesByPriority()
+    {
+        return _entries.getQueueDepthMessagesByPriority();
+    }
+
+    @Override
+    public List<Long> getQueueDepthBytesByPriority()
+    {
+        return _entries.getQueueDepthBytesByPriority();
+    }
+
     protected LogMessage getCreatedLogMessage()
     {
         String ownerString = getOwner();
@@ -20,13 +20,18 @@
 */
 package org.apache.qpid.server.queue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.qpid.server.message.ServerMessage;
 
 abstract public class PriorityQueueList extends OrderedQueueEntryList
 {
 
 
-    public static PriorityQueueList newInstance(PriorityQueueImpl queue)
+    public static PriorityQueueMasterList newInstance(PriorityQueueImpl queue)
     {
         return new PriorityQueueMasterList(queue, queue.getPriorities());
     }
@@ -106,12 +111,7 @@ abstract public class PriorityQueueList extends OrderedQueueEntryList
 
             if(next == null)
             {
-                final PriorityQueueList nodeEntryList = (PriorityQueueList) ((PriorityQueueEntry)node).getQueueEntryList();
-                int index;
-                for(index = _priorityLists.length-1; _priorityLists[index] != nodeEntryList; index--)
-                {
-                    // do nothing loop is just to find the index
-                }
+                int index = getListPriority(node);
 
                 while(next == null && index != 0)
                 {
@@ -123,6 +123,102 @@ abstract public class PriorityQueueList extends OrderedQueueEntryList
             return next;
         }
 
+        /**
+         * Returns the entry following the given entry last seen by a consumer.
+         * <p>
+         * On reaching the end of a priority level, the consumer resumes each lower level from the position it last
+         * reached in that level, rather than from its head, so that it does not walk again over entries acquired by
+         * other consumers.  A position is only used while no entry of the level has become available again since the
+         * consumer passed it; otherwise the level is scanned from its head.
+         */
+        public PriorityQueueEntry next(QueueEntry node, QueueContext context)
+        {
+            int index = getListPriority(node);
+            PriorityQueueEntry next = (PriorityQueueEntry) node.getNextValidEntry();
+            PriorityCursor cursor = context.getPriorityCursor(index);
+            if(cursor != null && cursor.getReturned() == node)
+            {
+                // the consumer has moved on to the entry returned, so has passed everything before it
+                context.compareAndSetPriorityCursor(index, cursor, new PriorityCursor(node, next, cursor.getVersion()));
+            }
+
+            while(next == null && index != 0)
+            {
+                index--;
+                PriorityQueueEntrySubList subList = _priorityLists[index];
+                long version = subList.getReleaseVersion();
+                cursor = context.getPriorityCursor(index);
+
+                QueueEntry passed;
+                if(cursor != null && cursor.getVersion() == version)
+                {
+                    passed = cursor.getPassed();
+                }
+                else
+                {
+                    passed = subList.getHead();
+                }
+                next = (PriorityQueueEntry) passed.getNextValidEntry();
+                if(next != null)
+                {
+                    context.compareAndSetPriorityCursor(index, cursor, new PriorityCursor(passed, next, version));
+                }
+            }
+            return next;
+        }
+
+        private int getListPriority(QueueEntry node)
+        {
+            return ((PriorityQueueEntrySubList) ((PriorityQueueEntry) node).getQueueEntryList()).getListPriority();
+        }
+
+        /**
+         * Returns the number of messages held at each priority level, from the lowest level to the highest.
+         */
+        public List<Integer> getQueueDepthMessagesByPriority()
+        {
+            List<Integer> depths = new ArrayList<Integer>(_priorities);
+            for(PriorityQueueEntrySubList subList : _priorityLists)
+            {
+                depths.add(subList.getQueueDepthMessages());
+            }
+            return depths;
+        }
+
+        /**
+         * Returns the size of the messages held at each priority level, from the lowest level to the highest.
+         */
+        public List<Long> getQueueDepthBytesByPriority()
+        {
+            List<Long> depths = new ArrayList<Long>(_priorities);
+            for(PriorityQueueEntrySubList subList : _priorityLists)
+            {
+                depths.add(subList.getQueueDepthBytes());
+            }
+            return depths;
+        }
+
+        /**
+         * Notes that the given entry has become available again, so that no consumer resumes its priority level from
+         * a position beyond it.
+         */
+        public void entryAvailable(QueueEntry entry)
+        {
+            ((PriorityQueueEntrySubList) ((PriorityQueueEntry) entry).getQueueEntryList()).entryAvailable();
+        }
+
+        /**
+         * Notes that entries at or below the priority of the given entry may have become available again, as when a
+         * message group is released, so that no consumer resumes any of those levels from a position beyond them.
+         */
+        public void entriesAvailableFrom(QueueEntry entry)
+        {
+            for(int index = getListPriority(entry); index >= 0; index--)
+            {
+                _priorityLists[index].entryAvailable();
+            }
+        }
+
         private final class PriorityQueueEntryListIterator implements QueueEntryIterator
         {
             private final QueueEntryIterator[] _iterators = new QueueEntryIterator[ _priorityLists.length ];
@@ -217,6 +313,9 @@ abstract public class PriorityQueueList extends OrderedQueueEntryList
             }
         };
         private int _listPriority;
+        private final AtomicLong _releaseVersion = new AtomicLong();
+        private final AtomicInteger _queueDepthMessages = new AtomicInteger();
+        private final AtomicLong _queueDepthBytes = new AtomicLong();
 
         public PriorityQueueEntrySubList(PriorityQueueImpl queue, int listPriority)
         {
@@ -230,10 +329,85 @@ abstract public class PriorityQueueList extends OrderedQueueEntryList
             return new PriorityQueueEntry(this, message);
         }
 
+        @Override
+        public QueueEntry add(final ServerMessage message)
+        {
+            QueueEntry entry = super.add(message);
+            _queueDepthMessages.incrementAndGet();
+            _queueDepthBytes.addAndGet(entry.getSize());
+            return entry;
+        }
+
+        @Override
+        public void entryDeleted(final QueueEntry queueEntry)
+        {
+            _queueDepthMessages.decrementAndGet();
+            _queueDepthBytes.addAndGet(-queueEntry.getSize());
+            super.entryDeleted(queueEntry);
+        }
+
         public int getListPriority()
         {
             return _listPriority;
         }
+
+        int getQueueDepthMessages()
+        {
+            return _queueDepthMessages.get();
+        }
+
+        long getQueueDepthBytes()
+        {
+            return _queueDepthBytes.get();
+        }
+
+        /**
+         * Returns a count of the entries of this list that have become available again, which changes whenever a
+         * consumer may have passed an entry it should now consider.
+         */
+        long getReleaseVersion()
+        {
+            return _releaseVersion.get();
+        }
+
+        void entryAvailable()
+        {
+            _releaseVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * The position a consumer has reached in a priority level: all entries up to and including the entry passed have
+     * been considered by the consumer since the release version of the level was as given.  The entry returned is the
+     * entry following it, which the consumer was last given.
+     */
+    static final class PriorityCursor
+    {
+        private final QueueEntry _passed;
+        private final QueueEntry _returned;
+        private final long _version;
+
+        PriorityCursor(final QueueEntry passed, final QueueEntry returned, final long version)
+        {
+            _passed = passed;
+            _returned = returned;
+            _version = version;
+        }
+
+        QueueEntry getPassed()
+        {
+            return _passed;
+        }
+
+        QueueEntry getReturned()
+        {
+            return _returned;
+        }
+
+        long getVersion()
+        {
+            return _version;
+        }
     }
 
     static class PriorityQueueEntry extends OrderedQueueEntry
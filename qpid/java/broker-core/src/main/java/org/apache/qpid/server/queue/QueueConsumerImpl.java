@@ -390,6 +390,11 @@ class QueueConsumerImpl
         return (_filters == null) || _filters.allAllow(entry.asFilterable());
     }
 
+    FilterManager getFilters()
+    {
+        return _filters;
+    }
+
     protected String getFilterLogString()
     {
         StringBuilder filterLogString = new StringBuilder();
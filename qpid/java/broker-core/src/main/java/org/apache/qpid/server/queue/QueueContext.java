@@ -21,6 +21,7 @@
 
 package org.apache.qpid.server.queue;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 final class QueueContext
@@ -37,9 +38,18 @@ final class QueueContext
         AtomicReferenceFieldUpdater.newUpdater
         (QueueContext.class, QueueEntry.class, "_releasedEntry");
 
+    /** the position reached in each priority level, or null if the queue has no priority levels */
+    private final AtomicReferenceArray<PriorityQueueList.PriorityCursor> _priorityCursors;
+
     public QueueContext(QueueEntry head)
+    {
+        this(head, 0);
+    }
+
+    public QueueContext(QueueEntry head, int priorities)
     {
         _lastSeenEntry = head;
+        _priorityCursors = priorities == 0 ? null : new AtomicReferenceArray<PriorityQueueList.PriorityCursor>(priorities);
     }
 
     public QueueEntry getLastSeenEntry()
@@ -53,6 +63,18 @@ final class QueueContext
         return _releasedEntry;
     }
 
+    PriorityQueueList.PriorityCursor getPriorityCursor(int priority)
+    {
+        return _priorityCursors.get(priority);
+    }
+
+    boolean compareAndSetPriorityCursor(int priority,
+                                        PriorityQueueList.PriorityCursor expected,
+                                        PriorityQueueList.PriorityCursor cursor)
+    {
+        return _priorityCursors.compareAndSet(priority, expected, cursor);
+    }
+
     @Override
     public String toString()
     {
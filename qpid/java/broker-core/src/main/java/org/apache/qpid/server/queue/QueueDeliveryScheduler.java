@@ -0,0 +1,443 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.pool.SuppressingInheritedAccessControlContextThreadFactory;
+
+/**
+ * Schedules asynchronous queue delivery onto a fixed set of worker threads.
+ * <p>
+ * Each queue acquires an {@link Executor} which is bound to one worker, so that successive runs of a queue (and the
+ * consumer flushes which are funnelled through it) stay on the same thread and find the queue state in a warm cache.
+ * Every worker has its own lock-free task deque.  A worker which runs out of work of its own steals waiting tasks from
+ * the tail of a busy worker's deque, so a small number of hot queues cannot leave the other workers idle.
+ * <p>
+ * Like {@link org.apache.qpid.pool.ReferenceCountingExecutorService}, which it replaces for queue delivery, the
+ * workers are started when the first executor is acquired and stopped when the last is released.  The pool size
+ * given to that service by {@value #LEGACY_POOL_SIZE_PROPERTY_NAME} is used as the worker count unless
+ * {@value #WORKER_COUNT_PROPERTY_NAME} is set.
+ */
+public class QueueDeliveryScheduler
+{
+    private static final Logger LOGGER = Logger.getLogger(QueueDeliveryScheduler.class);
+
+    public static final String WORKER_COUNT_PROPERTY_NAME = "qpid.broker.queueDeliveryWorkerCount";
+
+    /** The deprecated property which sized the pool previously used for queue delivery */
+    public static final String LEGACY_POOL_SIZE_PROPERTY_NAME = "amqj.read_write_pool_size";
+
+    /** Defines the smallest number of workers that will be started, irrespective of the number of processors. */
+    private static final int MINIMUM_WORKER_COUNT = 4;
+
+    private static final int DEFAULT_WORKER_COUNT = Math.max(Runtime.getRuntime().availableProcessors(),
+                                                             MINIMUM_WORKER_COUNT);
+
+    /** The period over which worker utilisation is measured. */
+    private static final long UTILISATION_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final QueueDeliveryScheduler _instance = new QueueDeliveryScheduler();
+
+    private final Object _lock = new Object();
+    private final AtomicInteger _nextAffinity = new AtomicInteger();
+    private final ThreadFactory _threadFactory = new SuppressingInheritedAccessControlContextThreadFactory();
+
+    private volatile Worker[] _workers = new Worker[0];
+    private int _refCount;
+
+    public static QueueDeliveryScheduler getInstance()
+    {
+        return _instance;
+    }
+
+    private QueueDeliveryScheduler()
+    {
+    }
+
+    /**
+     * Provides an executor pinned to one of the workers, starting the workers if this is the first reference.
+     *
+     * @return an executor for the asynchronous delivery of a single queue
+     */
+    public Executor acquireExecutor()
+    {
+        synchronized (_lock)
+        {
+            if (_refCount++ == 0)
+            {
+                int workerCount = Math.max(1, getConfiguredWorkerCount());
+                Worker[] workers = new Worker[workerCount];
+                for (int i = 0; i < workerCount; i++)
+                {
+                    workers[i] = new Worker(workers, i);
+                }
+                for (Worker worker : workers)
+                {
+                    worker.start(_threadFactory);
+                }
+                _workers = workers;
+            }
+            Worker[] workers = _workers;
+            int affinity = (_nextAffinity.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+            return workers[affinity];
+        }
+    }
+
+    /**
+     * Releases a reference acquired by {@link #acquireExecutor()}.  When the last reference is released the workers
+     * are stopped and any tasks not yet run are discarded.
+     */
+    public void releaseExecutor()
+    {
+        synchronized (_lock)
+        {
+            if (--_refCount == 0)
+            {
+                for (Worker worker : _workers)
+                {
+                    worker.stop();
+                }
+                _workers = new Worker[0];
+            }
+        }
+    }
+
+    private static int getConfiguredWorkerCount()
+    {
+        Integer workerCount = Integer.getInteger(WORKER_COUNT_PROPERTY_NAME);
+        if (workerCount == null)
+        {
+            workerCount = Integer.getInteger(LEGACY_POOL_SIZE_PROPERTY_NAME);
+            if (workerCount == null)
+            {
+                return DEFAULT_WORKER_COUNT;
+            }
+            LOGGER.warn("System property '" + LEGACY_POOL_SIZE_PROPERTY_NAME + "' is deprecated, use '"
+                        + WORKER_COUNT_PROPERTY_NAME + "' to set the number of queue delivery workers");
+        }
+        return workerCount;
+    }
+
+    public int getReferenceCount()
+    {
+        synchronized (_lock)
+        {
+            return _refCount;
+        }
+    }
+
+    public int getWorkerCount()
+    {
+        return _workers.length;
+    }
+
+    /**
+     * @return the activity of each worker, in worker order
+     */
+    public List<WorkerStatistics> getWorkerStatistics()
+    {
+        Worker[] workers = _workers;
+        List<WorkerStatistics> statistics = new ArrayList<>(workers.length);
+        for (Worker worker : workers)
+        {
+            statistics.add(new WorkerStatistics(worker));
+        }
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * A point in time view of the activity of a single worker.
+     */
+    public static final class WorkerStatistics
+    {
+        private final String _name;
+        private final long _tasksExecuted;
+        private final long _tasksStolen;
+        private final long _busyTimeNanos;
+        private final int _pendingTasks;
+        private final int _utilisation;
+
+        private WorkerStatistics(final Worker worker)
+        {
+            _name = worker.getName();
+            _tasksExecuted = worker._tasksExecuted;
+            _tasksStolen = worker._tasksStolen;
+            _busyTimeNanos = worker._busyTimeNanos;
+            _pendingTasks = worker._pending.get();
+            _utilisation = worker._utilisation;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public long getTasksExecuted()
+        {
+            return _tasksExecuted;
+        }
+
+        /** @return the number of tasks this worker has taken from the deques of other workers */
+        public long getTasksStolen()
+        {
+            return _tasksStolen;
+        }
+
+        public long getBusyTimeNanos()
+        {
+            return _busyTimeNanos;
+        }
+
+        public int getPendingTasks()
+        {
+            return _pendingTasks;
+        }
+
+        /** @return the percentage of the last measurement period which the worker spent running tasks */
+        public int getUtilisation()
+        {
+            return _utilisation;
+        }
+    }
+
+    private static final class Worker implements Executor, Runnable
+    {
+        private final Worker[] _peers;
+        private final int _index;
+        private final ConcurrentLinkedDeque<Runnable> _tasks = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger _pending = new AtomicInteger();
+
+        private volatile Thread _thread;
+        private volatile boolean _stopped;
+        private volatile boolean _parked;
+        private volatile boolean _running;
+
+        // written only by the worker thread
+        private volatile long _tasksExecuted;
+        private volatile long _tasksStolen;
+        private volatile long _busyTimeNanos;
+        private volatile int _utilisation;
+        private long _periodStartTime;
+        private long _periodStartBusyTime;
+
+        private Worker(final Worker[] peers, final int index)
+        {
+            _peers = peers;
+            _index = index;
+        }
+
+        private void start(final ThreadFactory threadFactory)
+        {
+            Thread thread = threadFactory.newThread(this);
+            thread.setName("QueueDelivery-" + _index);
+            _thread = thread;
+            thread.start();
+        }
+
+        private void stop()
+        {
+            _stopped = true;
+            LockSupport.unpark(_thread);
+        }
+
+        private String getName()
+        {
+            return _thread.getName();
+        }
+
+        @Override
+        public void execute(final Runnable task)
+        {
+            if (_stopped)
+            {
+                throw new RejectedExecutionException("Queue delivery worker " + _index + " has been stopped");
+            }
+            _tasks.offer(task);
+            if (_pending.incrementAndGet() > 1 || _running)
+            {
+                // this worker is already occupied, let an idle peer know there is work to steal
+                unparkIdlePeer();
+            }
+            if (_parked)
+            {
+                LockSupport.unpark(_thread);
+            }
+        }
+
+        private void unparkIdlePeer()
+        {
+            for (int i = 1; i < _peers.length; i++)
+            {
+                Worker peer = _peers[(_index + i) % _peers.length];
+                if (peer._parked)
+                {
+                    LockSupport.unpark(peer._thread);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            _periodStartTime = System.nanoTime();
+            while (!_stopped)
+            {
+                Runnable task = poll();
+                boolean stolen = false;
+                if (task == null)
+                {
+                    task = steal();
+                    stolen = task != null;
+                }
+
+                if (task != null)
+                {
+                    runTask(task, stolen);
+                }
+                else
+                {
+                    park();
+                }
+                updateUtilisation(System.nanoTime());
+            }
+            _tasks.clear();
+            _pending.set(0);
+        }
+
+        private Runnable poll()
+        {
+            Runnable task = _tasks.pollFirst();
+            if (task != null)
+            {
+                _pending.decrementAndGet();
+            }
+            return task;
+        }
+
+        private Runnable steal()
+        {
+            for (int i = 1; i < _peers.length; i++)
+            {
+                Worker victim = _peers[(_index + i) % _peers.length];
+                // leave the work with its owner unless the owner is busy with something else
+                if (victim._running && victim._pending.get() > 0)
+                {
+                    Runnable task = victim._tasks.pollLast();
+                    if (task != null)
+                    {
+                        victim._pending.decrementAndGet();
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void runTask(final Runnable task, final boolean stolen)
+        {
+            _running = true;
+            if (_pending.get() > 0)
+            {
+                // a task queued before this worker was seen to be running may otherwise wait for the task to finish
+                unparkIdlePeer();
+            }
+            long startTime = System.nanoTime();
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+            finally
+            {
+                _running = false;
+                _busyTimeNanos += System.nanoTime() - startTime;
+                _tasksExecuted++;
+                if (stolen)
+                {
+                    _tasksStolen++;
+                }
+            }
+        }
+
+        /**
+         * Parks the worker until work is queued for it or a peer finds work waiting behind a running task.  Work
+         * queued before the worker was seen to be parked is looked for again once it is, so that it is not left
+         * waiting for the park to time out.
+         */
+        private void park()
+        {
+            _parked = true;
+            try
+            {
+                if (_tasks.isEmpty() && !_stopped && !hasStealableWork())
+                {
+                    LockSupport.parkNanos(this, UTILISATION_PERIOD_NANOS);
+                }
+            }
+            finally
+            {
+                _parked = false;
+            }
+        }
+
+        private boolean hasStealableWork()
+        {
+            for (int i = 1; i < _peers.length; i++)
+            {
+                Worker peer = _peers[(_index + i) % _peers.length];
+                if (peer._running && peer._pending.get() > 0)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void updateUtilisation(final long currentTime)
+        {
+            long elapsed = currentTime - _periodStartTime;
+            if (elapsed >= UTILISATION_PERIOD_NANOS)
+            {
+                long busyTime = _busyTimeNanos;
+                _utilisation = (int) Math.min(100L, (100L * (busyTime - _periodStartBusyTime)) / elapsed);
+                _periodStartTime = currentTime;
+                _periodStartBusyTime = busyTime;
+            }
+        }
+    }
+}
@@ -31,18 +31,32 @@ import org.apache.log4j.Logger;
 
 import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.filter.Filterable;
+import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.Exchange;
+import org.apache.qpid.server.store.StorableMessageMetaData;
+import org.apache.qpid.server.store.StoredMessage;
 import org.apache.qpid.server.store.TransactionLogResource;
 import org.apache.qpid.server.txn.LocalTransaction;
 import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.util.Action;
+import org.apache.qpid.server.util.ObjectSizeEstimator;
 import org.apache.qpid.server.util.StateChangeListener;
 
-public abstract class QueueEntryImpl implements QueueEntry
+/**
+ * Base class for the entries of a queue.
+ * <p>
+ * A broker may hold millions of entries, so the per-entry footprint is kept small: state which is only needed for a
+ * minority of entries (consumers which rejected the entry, state change listeners, the node indexing an entry with an
+ * expiration time, the results of the selectors shared by the consumers of the queue) is held in a side object created
+ * on first use, the flags and the delivery count share a single
+ * int, and the entry acts as its own {@link InstanceProperties} and {@link Filterable} rather than allocating a view on
+ * each request.
+ */
+public abstract class QueueEntryImpl implements QueueEntry, InstanceProperties, Filterable
 {
     private static final Logger _log = Logger.getLogger(QueueEntryImpl.class);
 
@@ -50,8 +64,6 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     private final MessageReference _message;
 
-    private Set<Long> _rejectedBy = null;
-
     private volatile EntryState _state = AVAILABLE_STATE;
 
     private static final
@@ -61,13 +73,13 @@ public abstract class QueueEntryImpl implements QueueEntry
         (QueueEntryImpl.class, EntryState.class, "_state");
 
 
-    private volatile Set<StateChangeListener<? super QueueEntry, State>> _stateChangeListeners;
+    private volatile EntryExtras _extras;
 
     private static final
-        AtomicReferenceFieldUpdater<QueueEntryImpl, Set>
-                _listenersUpdater =
+        AtomicReferenceFieldUpdater<QueueEntryImpl, EntryExtras>
+                _extrasUpdater =
         AtomicReferenceFieldUpdater.newUpdater
-        (QueueEntryImpl.class, Set.class, "_stateChangeListeners");
+        (QueueEntryImpl.class, EntryExtras.class, "_extras");
 
 
     private static final
@@ -79,17 +91,17 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     private volatile long _entryId;
 
-    private static int REDELIVERED_FLAG = 1;
-    private static int PERSISTENT_FLAG = 2;
-    private static int MANDATORY_FLAG = 4;
-    private static int IMMEDIATE_FLAG = 8;
-    private int _flags;
     private long _expiration;
 
-    /** Number of times this message has been delivered */
-    private volatile int _deliveryCount = -1;
-    private static final AtomicIntegerFieldUpdater<QueueEntryImpl> _deliveryCountUpdater = AtomicIntegerFieldUpdater
-                    .newUpdater(QueueEntryImpl.class, "_deliveryCount");
+    private static final int REDELIVERED_FLAG = 1 << 30;
+    private static final int PERSISTENT_FLAG = 1 << 29;
+    private static final int DELIVERED_TO_CONSUMER_FLAG = 1 << 28;
+    private static final int DELIVERY_COUNT_MASK = DELIVERED_TO_CONSUMER_FLAG - 1;
+
+    /** Number of times this message has been delivered in the low bits, with the flags above */
+    private volatile int _deliveryState;
+    private static final AtomicIntegerFieldUpdater<QueueEntryImpl> _deliveryStateUpdater = AtomicIntegerFieldUpdater
+                    .newUpdater(QueueEntryImpl.class, "_deliveryState");
 
 
     public QueueEntryImpl(QueueEntryList queueEntryList)
@@ -122,7 +134,7 @@ public abstract class QueueEntryImpl implements QueueEntry
         {
             if(_message.getMessage().isPersistent())
             {
-                setPersistent();
+                _deliveryState = PERSISTENT_FLAG;
             }
             _expiration = _message.getMessage().getExpiration();
         }
@@ -133,9 +145,47 @@ public abstract class QueueEntryImpl implements QueueEntry
         _expiration = expiration;
     }
 
+    long getExpiration()
+    {
+        return _expiration;
+    }
+
+    /**
+     * Records the node indexing this entry by its expiration time, so that the node may be cleared when the entry is
+     * deleted.
+     */
+    void setExpiryNode(final ExpiryIndex.Node node)
+    {
+        getOrCreateExtras()._expiryNode = node;
+        if(isDeleted())
+        {
+            node.clear();
+        }
+    }
+
     public InstanceProperties getInstanceProperties()
     {
-        return new EntryInstanceProperties();
+        return this;
+    }
+
+    @Override
+    public Object getProperty(final Property prop)
+    {
+        switch(prop)
+        {
+
+            case REDELIVERED:
+                return isRedelivered();
+            case PERSISTENT:
+                return (_deliveryState & PERSISTENT_FLAG) != 0;
+            case MANDATORY:
+            case IMMEDIATE:
+                return false;
+            case EXPIRATION:
+                return _expiration;
+            default:
+                throw new IllegalArgumentException("Unknown property " + prop);
+        }
     }
 
     protected void setEntryId(long entryId)
@@ -163,9 +213,34 @@ public abstract class QueueEntryImpl implements QueueEntry
         return getMessage() == null ? 0 : getMessage().getSize();
     }
 
+    /**
+     * @return the estimated heap occupied by this entry and the message it refers to, excluding the message content
+     */
+    long estimateMemoryOverhead()
+    {
+        long overhead = ObjectSizeEstimator.shallowSize(getClass());
+        if(_message != null)
+        {
+            overhead += ObjectSizeEstimator.shallowSize(_message.getClass());
+            ServerMessage message = _message.getMessage();
+            overhead += ObjectSizeEstimator.shallowSize(message.getClass());
+            StoredMessage<?> storedMessage = message.getStoredMessage();
+            if(storedMessage != null)
+            {
+                overhead += ObjectSizeEstimator.shallowSize(storedMessage.getClass());
+                StorableMessageMetaData metaData = storedMessage.getMetaData();
+                if(metaData != null)
+                {
+                    overhead += ObjectSizeEstimator.shallowSize(metaData.getClass()) + metaData.getStorableSize();
+                }
+            }
+        }
+        return overhead;
+    }
+
     public boolean getDeliveredToConsumer()
     {
-        return _deliveryCountUpdater.get(this) != -1;
+        return (_deliveryState & DELIVERED_TO_CONSUMER_FLAG) != 0;
     }
 
     public boolean expired()
@@ -200,7 +275,7 @@ public abstract class QueueEntryImpl implements QueueEntry
     {
         boolean acquired = _stateUpdater.compareAndSet(this, AVAILABLE_STATE, state);
 
-        if(acquired && _stateChangeListeners != null)
+        if(acquired && _extras != null)
         {
             notifyStateChange(State.AVAILABLE, State.ACQUIRED);
         }
@@ -213,7 +288,7 @@ public abstract class QueueEntryImpl implements QueueEntry
         final boolean acquired = acquire(((QueueConsumer<?>)sub).getOwningState().getLockedState());
         if(acquired)
         {
-            _deliveryCountUpdater.compareAndSet(this,-1,0);
+            setDeliveryFlag(DELIVERED_TO_CONSUMER_FLAG);
             getQueue().incrementUnackedMsgCount(this);
         }
         return acquired;
@@ -307,7 +382,7 @@ public abstract class QueueEntryImpl implements QueueEntry
             if(!getQueue().isDeleted())
             {
                 getQueue().requeue(this);
-                if(_stateChangeListeners != null)
+                if(_extras != null)
                 {
                     notifyStateChange(QueueEntry.State.ACQUIRED, QueueEntry.State.AVAILABLE);
                 }
@@ -345,12 +420,13 @@ public abstract class QueueEntryImpl implements QueueEntry
 
         if (consumer != null)
         {
-            if (_rejectedBy == null)
+            EntryExtras extras = getOrCreateExtras();
+            if (extras._rejectedBy == null)
             {
-                _rejectedBy = new HashSet<Long>();
+                extras._rejectedBy = new HashSet<Long>();
             }
 
-            _rejectedBy.add(consumer.getConsumerNumber());
+            extras._rejectedBy.add(consumer.getConsumerNumber());
         }
         else
         {
@@ -361,9 +437,11 @@ public abstract class QueueEntryImpl implements QueueEntry
     public boolean isRejectedBy(ConsumerImpl consumer)
     {
 
-        if (_rejectedBy != null) // We have consumers that rejected this message
+        EntryExtras extras = _extras;
+        Set<Long> rejectedBy = extras == null ? null : extras._rejectedBy;
+        if (rejectedBy != null) // We have consumers that rejected this message
         {
-            return _rejectedBy.contains(consumer.getConsumerNumber());
+            return rejectedBy.contains(consumer.getConsumerNumber());
         }
         else // This message hasn't been rejected yet.
         {
@@ -383,7 +461,7 @@ public abstract class QueueEntryImpl implements QueueEntry
             }
 
             getQueue().dequeue(this);
-            if(_stateChangeListeners != null)
+            if(_extras != null)
             {
                 notifyStateChange(state.getState() , QueueEntry.State.DEQUEUED);
             }
@@ -394,9 +472,13 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     private void notifyStateChange(final State oldState, final State newState)
     {
-        for(StateChangeListener<? super QueueEntry, State> l : _stateChangeListeners)
+        Set<StateChangeListener<? super QueueEntry, State>> listeners = _extras._stateChangeListeners;
+        if(listeners != null)
         {
-            l.stateChanged(this, oldState, newState);
+            for(StateChangeListener<? super QueueEntry, State> l : listeners)
+            {
+                l.stateChanged(this, oldState, newState);
+            }
         }
     }
 
@@ -410,6 +492,12 @@ public abstract class QueueEntryImpl implements QueueEntry
             onDelete();
             _message.release();
 
+            EntryExtras extras = _extras;
+            if(extras != null && extras._expiryNode != null)
+            {
+                extras._expiryNode.clear();
+            }
+
             return true;
         }
         else
@@ -478,27 +566,31 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     public void addStateChangeListener(StateChangeListener<? super MessageInstance,State> listener)
     {
-        Set<StateChangeListener<? super QueueEntry, State>> listeners = _stateChangeListeners;
-        if(listeners == null)
-        {
-            _listenersUpdater.compareAndSet(this, null, new CopyOnWriteArraySet<StateChangeListener<? super QueueEntry, State>>());
-            listeners = _stateChangeListeners;
-        }
-
-        listeners.add(listener);
+        getOrCreateExtras().getOrCreateStateChangeListeners().add(listener);
     }
 
     public boolean removeStateChangeListener(StateChangeListener<? super MessageInstance, State> listener)
     {
-        Set<StateChangeListener<? super QueueEntry, State>> listeners = _stateChangeListeners;
-        if(listeners != null)
+        EntryExtras extras = _extras;
+        if(extras != null && extras._stateChangeListeners != null)
         {
-            return listeners.remove(listener);
+            return extras._stateChangeListeners.remove(listener);
         }
 
         return false;
     }
 
+    private EntryExtras getOrCreateExtras()
+    {
+        EntryExtras extras = _extras;
+        if(extras == null)
+        {
+            _extrasUpdater.compareAndSet(this, null, new EntryExtras());
+            extras = _extras;
+        }
+        return extras;
+    }
+
 
     public int compareTo(final QueueEntry o)
     {
@@ -522,7 +614,7 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     public int getDeliveryCount()
     {
-        return _deliveryCount == -1 ? 0 : _deliveryCount;
+        return _deliveryState & DELIVERY_COUNT_MASK;
     }
 
     @Override
@@ -533,19 +625,93 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     public void incrementDeliveryCount()
     {
-        _deliveryCountUpdater.compareAndSet(this,-1,0);
-        _deliveryCountUpdater.incrementAndGet(this);
+        int state;
+        int newState;
+        do
+        {
+            state = _deliveryState;
+            newState = state | DELIVERED_TO_CONSUMER_FLAG;
+            if((state & DELIVERY_COUNT_MASK) != DELIVERY_COUNT_MASK)
+            {
+                newState++;
+            }
+        }
+        while(!_deliveryStateUpdater.compareAndSet(this, state, newState));
     }
 
     public void decrementDeliveryCount()
     {
-        _deliveryCountUpdater.decrementAndGet(this);
+        int state;
+        do
+        {
+            state = _deliveryState;
+            if((state & DELIVERY_COUNT_MASK) == 0)
+            {
+                return;
+            }
+        }
+        while(!_deliveryStateUpdater.compareAndSet(this, state, state - 1));
+    }
+
+    private void setDeliveryFlag(final int flag)
+    {
+        int state;
+        do
+        {
+            state = _deliveryState;
+            if((state & flag) != 0)
+            {
+                return;
+            }
+        }
+        while(!_deliveryStateUpdater.compareAndSet(this, state, state | flag));
     }
 
     @Override
     public Filterable asFilterable()
     {
-        return Filterable.Factory.newInstance(getMessage(), getInstanceProperties());
+        return this;
+    }
+
+    @Override
+    public AMQMessageHeader getMessageHeader()
+    {
+        return getMessage().getMessageHeader();
+    }
+
+    @Override
+    public boolean isPersistent()
+    {
+        return (_deliveryState & PERSISTENT_FLAG) != 0;
+    }
+
+    @Override
+    public Object getConnectionReference()
+    {
+        return getMessage().getConnectionReference();
+    }
+
+    @Override
+    public long getMessageNumber()
+    {
+        return getMessage().getMessageNumber();
+    }
+
+    @Override
+    public long getArrivalTime()
+    {
+        return getMessage().getArrivalTime();
+    }
+
+    SharedSelectors.Results getSelectorResults()
+    {
+        EntryExtras extras = _extras;
+        return extras == null ? null : extras._selectorResults;
+    }
+
+    boolean compareAndSetSelectorResults(SharedSelectors.Results expected, SharedSelectors.Results results)
+    {
+        return EntryExtras._selectorResultsUpdater.compareAndSet(getOrCreateExtras(), expected, results);
     }
 
     public String toString()
@@ -575,43 +741,35 @@ public abstract class QueueEntryImpl implements QueueEntry
 
     public void setRedelivered()
     {
-        _flags |= REDELIVERED_FLAG;
-    }
-
-    private void setPersistent()
-    {
-        _flags |= PERSISTENT_FLAG;
+        setDeliveryFlag(REDELIVERED_FLAG);
     }
 
     public boolean isRedelivered()
     {
-        return (_flags & REDELIVERED_FLAG) != 0;
+        return (_deliveryState & REDELIVERED_FLAG) != 0;
     }
 
-    private class EntryInstanceProperties implements InstanceProperties
+    private static final class EntryExtras
     {
+        private volatile Set<StateChangeListener<? super QueueEntry, State>> _stateChangeListeners;
+
+        private Set<Long> _rejectedBy;
+
+        private volatile ExpiryIndex.Node _expiryNode;
 
-        @Override
-        public Object getProperty(final Property prop)
+        private volatile SharedSelectors.Results _selectorResults;
+
+        private static final AtomicReferenceFieldUpdater<EntryExtras, SharedSelectors.Results> _selectorResultsUpdater =
+                AtomicReferenceFieldUpdater.newUpdater(EntryExtras.class, SharedSelectors.Results.class,
+                                                       "_selectorResults");
+
+        private synchronized Set<StateChangeListener<? super QueueEntry, State>> getOrCreateStateChangeListeners()
         {
-            switch(prop)
+            if(_stateChangeListeners == null)
             {
-
-                case REDELIVERED:
-                    return (_flags & REDELIVERED_FLAG) != 0;
-                case PERSISTENT:
-                    return (_flags & PERSISTENT_FLAG) != 0;
-                case MANDATORY:
-                    return (_flags & MANDATORY_FLAG) != 0;
-                case IMMEDIATE:
-                    return (_flags & IMMEDIATE_FLAG) != 0;
-                case EXPIRATION:
-                    return _expiration;
-                default:
-                    throw new IllegalArgumentException("Unknown property " + prop);
+                _stateChangeListeners = new CopyOnWriteArraySet<StateChangeListener<? super QueueEntry, State>>();
             }
+            return _stateChangeListeners;
         }
-
     }
-
 }
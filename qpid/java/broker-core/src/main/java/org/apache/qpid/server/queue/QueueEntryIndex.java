@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An index of the entries of a queue by the number of their message and, for queues which deliver their entries in the
+ * order they were added, by their position on the queue.
+ * <p>
+ * Positions are held in blocks of {@value #BLOCK_SIZE} consecutive entry ids, each counting the entries it holds
+ * which are still on the queue.  The block holding a position is found by summing the counts of the blocks before it,
+ * so that finding a position walks one count per block rather than every entry before it.  A block is discarded once
+ * all of its ids have been added and all of its entries removed.
+ * <p>
+ * Entries are added after they have been added to the queue and removed when they are dequeued, so an entry found
+ * through the index may have been deleted in the meantime: lookups never return deleted entries.
+ */
+final class QueueEntryIndex
+{
+    private static final int BLOCK_SHIFT = 10;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private final ConcurrentNavigableMap<Long, QueueEntryImpl> _entriesByMessageNumber = new ConcurrentSkipListMap<>();
+
+    /** the blocks of entries by the entry id they start from, shifted; null if positions are not indexed */
+    private final ConcurrentNavigableMap<Long, Block> _blocks;
+
+    QueueEntryIndex(final boolean indexPositions)
+    {
+        _blocks = indexPositions ? new ConcurrentSkipListMap<Long, Block>() : null;
+    }
+
+    boolean isIndexingPositions()
+    {
+        return _blocks != null;
+    }
+
+    void add(QueueEntryImpl entry)
+    {
+        _entriesByMessageNumber.put(entry.getMessage().getMessageNumber(), entry);
+        if(_blocks != null)
+        {
+            Long blockNumber = entry.getEntryId() >>> BLOCK_SHIFT;
+            Block block = _blocks.get(blockNumber);
+            if(block == null)
+            {
+                Block created = new Block();
+                block = _blocks.putIfAbsent(blockNumber, created);
+                if(block == null)
+                {
+                    block = created;
+                }
+            }
+            if(block.add(entry))
+            {
+                _blocks.remove(blockNumber, block);
+            }
+        }
+
+        // the entry may have been dequeued before it was added
+        if(entry.isDeleted())
+        {
+            remove(entry);
+        }
+    }
+
+    void remove(QueueEntryImpl entry)
+    {
+        _entriesByMessageNumber.remove(entry.getMessage().getMessageNumber(), entry);
+        if(_blocks != null)
+        {
+            Long blockNumber = entry.getEntryId() >>> BLOCK_SHIFT;
+            Block block = _blocks.get(blockNumber);
+            if(block != null && block.remove(entry))
+            {
+                _blocks.remove(blockNumber, block);
+            }
+        }
+    }
+
+    QueueEntry getEntry(long messageNumber)
+    {
+        QueueEntryImpl entry = _entriesByMessageNumber.get(messageNumber);
+        return entry == null || entry.isDeleted() ? null : entry;
+    }
+
+    /**
+     * Returns the entries of the messages numbered from <code>fromMessageNumber</code> to <code>toMessageNumber</code>
+     * inclusive, in the order of their message numbers.
+     */
+    List<QueueEntry> getEntries(long fromMessageNumber, long toMessageNumber)
+    {
+        List<QueueEntry> entries = new ArrayList<QueueEntry>();
+        if(fromMessageNumber <= toMessageNumber)
+        {
+            for(QueueEntryImpl entry : _entriesByMessageNumber.subMap(fromMessageNumber, true,
+                                                                      toMessageNumber, true).values())
+            {
+                if(!entry.isDeleted())
+                {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns at most <code>count</code> entries in queue order, starting from the entry at the given position, the
+     * head of the queue being at position 0.  Only valid if positions are indexed.
+     */
+    List<QueueEntry> getEntriesByPosition(long fromPosition, int count)
+    {
+        List<QueueEntry> entries = new ArrayList<QueueEntry>();
+        long toSkip = fromPosition;
+        for(Block block : _blocks.values())
+        {
+            if(entries.isEmpty())
+            {
+                int blockCount = block.getCount();
+                if(toSkip >= blockCount)
+                {
+                    toSkip -= blockCount;
+                    continue;
+                }
+            }
+            for(int i = 0; i < BLOCK_SIZE && entries.size() < count; i++)
+            {
+                QueueEntryImpl entry = block.get(i);
+                if(entry != null && !entry.isDeleted())
+                {
+                    if(toSkip == 0)
+                    {
+                        entries.add(entry);
+                    }
+                    else
+                    {
+                        toSkip--;
+                    }
+                }
+            }
+            if(entries.size() >= count)
+            {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    int size()
+    {
+        return _entriesByMessageNumber.size();
+    }
+
+    /**
+     * The entries whose ids share all but the lowest {@link #BLOCK_SHIFT} bits.
+     */
+    private static final class Block
+    {
+        private final AtomicReferenceArray<QueueEntryImpl> _entries = new AtomicReferenceArray<>(BLOCK_SIZE);
+        /** the number of entries added and not removed */
+        private final AtomicInteger _count = new AtomicInteger();
+        /** the number of entries ever added, once it reaches the block size no entry can be added */
+        private final AtomicInteger _added = new AtomicInteger();
+
+        /**
+         * @return true if the block is now complete and empty, and so may be discarded
+         */
+        private boolean add(QueueEntryImpl entry)
+        {
+            _entries.set((int) (entry.getEntryId() & BLOCK_MASK), entry);
+            _count.incrementAndGet();
+            return _added.incrementAndGet() == BLOCK_SIZE && _count.get() == 0;
+        }
+
+        /**
+         * @return true if the block is now complete and empty, and so may be discarded
+         */
+        private boolean remove(QueueEntryImpl entry)
+        {
+            return _entries.compareAndSet((int) (entry.getEntryId() & BLOCK_MASK), entry, null)
+                   && _count.decrementAndGet() == 0
+                   && _added.get() == BLOCK_SIZE;
+        }
+
+        private QueueEntryImpl get(int index)
+        {
+            return _entries.get(index);
+        }
+
+        private int getCount()
+        {
+            return _count.get();
+        }
+    }
+}
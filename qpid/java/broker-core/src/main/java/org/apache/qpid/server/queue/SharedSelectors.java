@@ -0,0 +1,391 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.apache.qpid.filter.BooleanExpression;
+import org.apache.qpid.filter.ComparisonExpression;
+import org.apache.qpid.filter.ConstantExpression;
+import org.apache.qpid.filter.Expression;
+import org.apache.qpid.filter.PropertyExpression;
+import org.apache.qpid.server.filter.FilterManager;
+import org.apache.qpid.server.filter.Filterable;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.filter.MessageFilter;
+import org.apache.qpid.server.message.AMQMessageHeader;
+
+/**
+ * The JMS selectors of the consumers of a queue.
+ * <p>
+ * Consumers with the same selector share a single filter.  Each shared selector is given one of 64 slots, and the
+ * result of evaluating it against an entry is recorded in the entry as a bit of its {@link Results}, so that a selector
+ * is evaluated at most once per entry however many consumers use it.  Selectors testing <code>JMSRedelivered</code>
+ * are not given a slot, as their result may change while the entry is on the queue, nor are the selectors beyond the
+ * first 64.
+ * <p>
+ * Recording results costs an allocation per entry, so they are only recorded while they may be read again: while the
+ * selector is used by more than one consumer, or more than one selector holds a slot.  The entry itself is the
+ * {@link Filterable} the selectors are given, so evaluating a selector allocates nothing further.
+ * <p>
+ * Selectors which compare a property of the message with a string (<code>colour = 'red'</code>) are also indexed by the
+ * property and the value they require: the first time one of them is evaluated against an entry, the property is read
+ * once and the results of all the selectors testing it are recorded together.
+ * <p>
+ * The assignment of the slots is held in an immutable {@link Slots}, replaced when a selector is added or removed, and
+ * the results recorded for an entry refer to the assignment they were recorded under, so that a selector given a slot
+ * freed by another never reads the results of the previous owner.
+ */
+final class SharedSelectors
+{
+    private static final int SLOT_COUNT = Long.SIZE;
+
+    private static final String REDELIVERED_FIELD = "JMSRedelivered";
+
+    private final Map<String, SharedSelector> _selectors = new HashMap<>();
+
+    private volatile Slots _slots = new Slots(new SharedSelector[SLOT_COUNT]);
+
+    /**
+     * Replaces the JMS selector of the given filters, if any, by the selector shared by the consumers of the queue.
+     */
+    synchronized void share(FilterManager filters)
+    {
+        JMSSelectorFilter selector = findSelector(filters);
+        if(selector != null)
+        {
+            SharedSelector shared = _selectors.get(selector.getSelector());
+            if(shared == null)
+            {
+                shared = new SharedSelector(selector, selector.getSelector().contains(REDELIVERED_FIELD)
+                                                      ? -1
+                                                      : findFreeSlot());
+                _selectors.put(selector.getSelector(), shared);
+                if(shared._slot >= 0)
+                {
+                    updateSlots(shared._slot, shared);
+                }
+            }
+            shared._references++;
+            filters.add(selector.getName(), shared);
+        }
+    }
+
+    /**
+     * Releases the shared selector of the given filters, once the consumer holding them has been removed.
+     */
+    synchronized void release(FilterManager filters)
+    {
+        JMSSelectorFilter selector = findSelector(filters);
+        if(selector instanceof SharedSelector && ((SharedSelector) selector).getOwner() == this)
+        {
+            SharedSelector shared = (SharedSelector) selector;
+            if(--shared._references == 0)
+            {
+                _selectors.remove(shared.getSelector());
+                if(shared._slot >= 0)
+                {
+                    updateSlots(shared._slot, null);
+                }
+            }
+        }
+    }
+
+    synchronized int getSelectorCount()
+    {
+        return _selectors.size();
+    }
+
+    private JMSSelectorFilter findSelector(FilterManager filters)
+    {
+        if(filters != null)
+        {
+            Iterator<MessageFilter> iterator = filters.filters();
+            while(iterator.hasNext())
+            {
+                MessageFilter filter = iterator.next();
+                if(filter instanceof JMSSelectorFilter)
+                {
+                    return (JMSSelectorFilter) filter;
+                }
+            }
+        }
+        return null;
+    }
+
+    private int findFreeSlot()
+    {
+        SharedSelector[] selectors = _slots._selectors;
+        for(int slot = 0; slot < SLOT_COUNT; slot++)
+        {
+            if(selectors[slot] == null)
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void updateSlots(int slot, SharedSelector selector)
+    {
+        SharedSelector[] selectors = _slots._selectors.clone();
+        selectors[slot] = selector;
+        _slots = new Slots(selectors);
+    }
+
+    private final class SharedSelector extends JMSSelectorFilter
+    {
+        private final int _slot;
+        private final long _bit;
+
+        /** the property compared by a selector of the form <code>property = 'value'</code>, otherwise null */
+        private final String _property;
+        private final String _value;
+
+        /** the number of consumers using this selector, updated under the lock of the owner */
+        private volatile int _references;
+
+        private SharedSelector(JMSSelectorFilter filter, int slot)
+        {
+            super(filter);
+            _slot = slot;
+            _bit = slot < 0 ? 0L : 1L << slot;
+
+            PropertyExpression property = null;
+            Object value = null;
+            BooleanExpression matcher = getMatcher();
+            if(matcher instanceof ComparisonExpression && "=".equals(((ComparisonExpression) matcher).getExpressionSymbol()))
+            {
+                Expression left = ((ComparisonExpression) matcher).getLeft();
+                Expression right = ((ComparisonExpression) matcher).getRight();
+                if(left instanceof PropertyExpression && right instanceof ConstantExpression)
+                {
+                    property = (PropertyExpression) left;
+                    value = ((ConstantExpression) right).getValue();
+                }
+                else if(right instanceof PropertyExpression && left instanceof ConstantExpression)
+                {
+                    property = (PropertyExpression) right;
+                    value = ((ConstantExpression) left).getValue();
+                }
+            }
+
+            if(property != null && !property.isJMSHeaderField() && value instanceof String)
+            {
+                _property = property.getName();
+                _value = (String) value;
+            }
+            else
+            {
+                _property = null;
+                _value = null;
+            }
+        }
+
+        private SharedSelectors getOwner()
+        {
+            return SharedSelectors.this;
+        }
+
+        @Override
+        public boolean matches(final Filterable message)
+        {
+            if(_slot >= 0 && message instanceof QueueEntryImpl)
+            {
+                Results results = getResults((QueueEntryImpl) message);
+                if(results != null)
+                {
+                    if(!results.isEvaluated(_bit))
+                    {
+                        PropertyIndex index = results._slots._indexBySlot[_slot];
+                        if(index == null || !index.evaluate(message.getMessageHeader(), results))
+                        {
+                            boolean match = super.matches(message);
+                            results.record(_bit, match ? _bit : 0L);
+                            return match;
+                        }
+                    }
+                    return results.isMatched(_bit);
+                }
+            }
+            return super.matches(message);
+        }
+
+        /**
+         * Returns the results recorded for the entry under an assignment giving this selector its slot, creating them
+         * if necessary, or null if the results are not to be recorded (no other consumer or selector would read them,
+         * the selector has been released, or the entry's results were replaced concurrently).
+         */
+        private Results getResults(QueueEntryImpl entry)
+        {
+            Results results = entry.getSelectorResults();
+            if(results != null && results._slots._selectors[_slot] == this)
+            {
+                return results;
+            }
+
+            Slots slots = _slots;
+            if(slots._selectors[_slot] != this || (_references < 2 && slots._selectorCount < 2))
+            {
+                return null;
+            }
+            Results created = new Results(slots);
+            return entry.compareAndSetSelectorResults(results, created) ? created : null;
+        }
+    }
+
+    /**
+     * An assignment of the slots to the shared selectors, and the index of the selectors comparing a property with a
+     * string.
+     */
+    private static final class Slots
+    {
+        private final SharedSelector[] _selectors;
+        private final PropertyIndex[] _indexBySlot = new PropertyIndex[SLOT_COUNT];
+        private final int _selectorCount;
+
+        private Slots(final SharedSelector[] selectors)
+        {
+            _selectors = selectors;
+
+            int selectorCount = 0;
+            Map<String, PropertyIndex> indexes = new HashMap<>();
+            for(int slot = 0; slot < SLOT_COUNT; slot++)
+            {
+                SharedSelector selector = selectors[slot];
+                if(selector != null)
+                {
+                    selectorCount++;
+                }
+                if(selector != null && selector._property != null)
+                {
+                    PropertyIndex index = indexes.get(selector._property);
+                    if(index == null)
+                    {
+                        index = new PropertyIndex(selector._property);
+                        indexes.put(selector._property, index);
+                    }
+                    index.add(selector._value, selector._bit);
+                    _indexBySlot[slot] = index;
+                }
+            }
+            _selectorCount = selectorCount;
+        }
+    }
+
+    /**
+     * The selectors comparing one property with a string, by the string they require.
+     */
+    private static final class PropertyIndex
+    {
+        private final String _property;
+        private final Map<String, Long> _bitsByValue = new HashMap<>();
+        private long _bits;
+
+        private PropertyIndex(final String property)
+        {
+            _property = property;
+        }
+
+        private void add(String value, long bit)
+        {
+            Long bits = _bitsByValue.get(value);
+            _bitsByValue.put(value, bits == null ? bit : bits | bit);
+            _bits |= bit;
+        }
+
+        /**
+         * Records the results of all the selectors of this index for the given message, returning false if the value
+         * of the property is not a string, in which case the selectors must be evaluated individually.
+         */
+        private boolean evaluate(AMQMessageHeader header, Results results)
+        {
+            Object value = header.getHeader(_property);
+            if(value == null)
+            {
+                results.record(_bits, 0L);
+                return true;
+            }
+            else if(value instanceof String)
+            {
+                Long matched = _bitsByValue.get(value);
+                results.record(_bits, matched == null ? 0L : matched);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The results of the shared selectors for an entry: a bit per slot recording whether the selector has been
+     * evaluated, and a bit recording whether it matched.  The bits are only ever set, the match before the evaluation,
+     * so a reader seeing the evaluated bit also sees the result.
+     */
+    static final class Results
+    {
+        private static final AtomicLongFieldUpdater<Results> _evaluatedUpdater =
+                AtomicLongFieldUpdater.newUpdater(Results.class, "_evaluated");
+        private static final AtomicLongFieldUpdater<Results> _matchedUpdater =
+                AtomicLongFieldUpdater.newUpdater(Results.class, "_matched");
+
+        private final Slots _slots;
+        private volatile long _evaluated;
+        private volatile long _matched;
+
+        private Results(final Slots slots)
+        {
+            _slots = slots;
+        }
+
+        private boolean isEvaluated(long bit)
+        {
+            return (_evaluated & bit) != 0L;
+        }
+
+        private boolean isMatched(long bit)
+        {
+            return (_matched & bit) != 0L;
+        }
+
+        private void record(long evaluated, long matched)
+        {
+            set(_matchedUpdater, matched);
+            set(_evaluatedUpdater, evaluated);
+        }
+
+        private void set(AtomicLongFieldUpdater<Results> updater, long bits)
+        {
+            long current;
+            do
+            {
+                current = updater.get(this);
+                if((current & bits) == bits)
+                {
+                    return;
+                }
+            }
+            while(!updater.compareAndSet(this, current, current | bits));
+        }
+    }
+}
@@ -47,4 +47,10 @@ public class StandardQueueImpl extends AbstractQueue<StandardQueueImpl> implemen
     {
         return _entries;
     }
+
+    @Override
+    boolean hasEntriesInArrivalOrder()
+    {
+        return true;
+    }
 }
@@ -23,10 +23,20 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * This class collects statistics and counts the total, rate per second and
  * peak rate per second values for the events that are registered with it. 
+ * <p>
+ * Registering an event takes no lock: the total and the count for the current
+ * sample period are {@link StripedLong} sums, so that the connection, virtual
+ * host and broker counters shared by many threads are not a point of
+ * contention.  The thread that first registers an event in a later sample
+ * period replaces the current sample, retaining the completed one from which
+ * the rate is read, and updates the peak if it is exceeded.  An event racing
+ * with the start of a new sample period may be missed by the peak, but is
+ * always counted exactly once towards the total.
  */
 public class StatisticsCounter
 {
@@ -36,14 +46,15 @@ public class StatisticsCounter
 
     private static final String COUNTER = "counter";
     private static final AtomicLong _counterIds = new AtomicLong(0L);
-    
-    private long _peak = 0L;
-    private long _total = 0L;
-    private long _temp = 0L;
-    private long _last = 0L;
-    private long _rate = 0L;
 
-    private long _start;
+    private static final AtomicReferenceFieldUpdater<StatisticsCounter, Sample> SAMPLE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(StatisticsCounter.class, Sample.class, "_sample");
+
+    private final AtomicLong _peak = new AtomicLong();
+    private volatile StripedLong _total;
+    private volatile Sample _sample;
+
+    private volatile long _start;
     
     private final long _period;
     private final String _name;
@@ -78,22 +89,36 @@ public class StatisticsCounter
     public void registerEvent(long value, long timestamp)
     {
         long thisSample = (timestamp / _period);
-        synchronized (this)
+        Sample sample = _sample;
+        if (thisSample > sample._number)
         {
-            if (thisSample > _last)
+            sample = nextSample(sample, thisSample);
+        }
+        sample._count.add(value);
+        _total.add(value);
+    }
+
+    private Sample nextSample(Sample sample, final long thisSample)
+    {
+        Sample next = new Sample(thisSample, sample);
+        while (!SAMPLE_UPDATER.compareAndSet(this, sample, next))
+        {
+            sample = _sample;
+            if (thisSample <= sample._number)
             {
-                _last = thisSample;
-                _rate = _temp;
-                _temp = 0L;
-                if (_rate > _peak)
-                {
-                    _peak = _rate;
-                }
+                return sample;
             }
-            
-            _total += value;
-            _temp += value;
+            next = new Sample(thisSample, sample);
         }
+
+        // only the immediately preceding sample is retained, for the rate
+        sample._previous = null;
+        long rate = sample._count.sum();
+        long peak;
+        while (rate > (peak = _peak.get()) && !_peak.compareAndSet(peak, rate))
+        {
+        }
+        return next;
     }
     
     /**
@@ -111,28 +136,30 @@ public class StatisticsCounter
     public void reset()
     {
         _log.info("Resetting statistics for counter: " + _name);
-        _peak = 0L;
-        _rate = 0L;
-        _total = 0L;
-        _start = System.currentTimeMillis();
-        _last = _start / _period;
+        long start = System.currentTimeMillis();
+        _peak.set(0L);
+        _total = new StripedLong();
+        _sample = new Sample(start / _period, null);
+        _start = start;
     }
 
     public double getPeak()
     {
         update();
-        return (double) _peak / ((double) _period / 1000.0d);
+        return (double) _peak.get() / ((double) _period / 1000.0d);
     }
 
     public double getRate()
     {
         update();
-        return (double) _rate / ((double) _period / 1000.0d);
+        Sample previous = _sample._previous;
+        long rate = previous == null ? 0L : previous._count.sum();
+        return (double) rate / ((double) _period / 1000.0d);
     }
 
     public long getTotal()
     {
-        return _total;
+        return _total.sum();
     }
 
     public long getStart()
@@ -154,4 +181,18 @@ public class StatisticsCounter
     {
         return _period;
     }
+
+    private static final class Sample
+    {
+        private final long _number;
+        private final StripedLong _count;
+        private volatile Sample _previous;
+
+        private Sample(final long number, final Sample previous)
+        {
+            _number = number;
+            _count = new StripedLong(previous != null && previous._count.isStriped());
+            _previous = previous;
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A sum that may be added to concurrently by many threads without them contending on a single memory location.
+ * <p>
+ * Additions are made to a single base value until a thread fails to update it because of a concurrent addition, at
+ * which point the sum is spread across a number of cells, one per processor, each on its own cache line.  Threads
+ * are assigned to a cell by their thread id.  Counters that are never contended therefore cost no more than an
+ * {@link AtomicLong}.
+ */
+final class StripedLong
+{
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    /** Number of longs in a cache line, so that each cell in the array is on its own line */
+    private static final int PADDING = 8;
+
+    private static final AtomicReferenceFieldUpdater<StripedLong, AtomicLongArray> CELLS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(StripedLong.class, AtomicLongArray.class, "_cells");
+
+    private final AtomicLong _base = new AtomicLong();
+    private volatile AtomicLongArray _cells;
+
+    StripedLong()
+    {
+        this(false);
+    }
+
+    /**
+     * @param striped whether to spread additions across cells from the outset, rather than on the first contention,
+     *                as when replacing a sum that was contended
+     */
+    StripedLong(final boolean striped)
+    {
+        if (striped && STRIPES > 1)
+        {
+            _cells = new AtomicLongArray(STRIPES * PADDING);
+        }
+    }
+
+    void add(final long value)
+    {
+        AtomicLongArray cells = _cells;
+        if (cells == null)
+        {
+            long base = _base.get();
+            if (_base.compareAndSet(base, base + value))
+            {
+                return;
+            }
+            else if (STRIPES == 1)
+            {
+                _base.addAndGet(value);
+                return;
+            }
+            cells = inflate();
+        }
+        cells.getAndAdd(cellIndex(), value);
+    }
+
+    /**
+     * Returns the current sum.  Additions made concurrently with this call may or may not be included.
+     */
+    long sum()
+    {
+        long sum = _base.get();
+        AtomicLongArray cells = _cells;
+        if (cells != null)
+        {
+            for (int i = 0; i < cells.length(); i += PADDING)
+            {
+                sum += cells.get(i);
+            }
+        }
+        return sum;
+    }
+
+    boolean isStriped()
+    {
+        return _cells != null;
+    }
+
+    private AtomicLongArray inflate()
+    {
+        CELLS_UPDATER.compareAndSet(this, null, new AtomicLongArray(STRIPES * PADDING));
+        return _cells;
+    }
+
+    private static int cellIndex()
+    {
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int stripes(final int processors)
+    {
+        int stripes = 1;
+        while (stripes < processors)
+        {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
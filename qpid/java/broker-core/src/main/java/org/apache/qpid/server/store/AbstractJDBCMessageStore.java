@@ -21,7 +21,6 @@
 package org.apache.qpid.server.store;
 
 import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.sql.Connection;
@@ -41,10 +40,12 @@ import org.apache.log4j.Logger;
 
 import org.apache.qpid.server.message.EnqueueableMessage;
 import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.model.VirtualHost;
 import org.apache.qpid.server.plugin.MessageMetaDataType;
 import org.apache.qpid.server.store.handler.DistributedTransactionHandler;
 import org.apache.qpid.server.store.handler.MessageHandler;
 import org.apache.qpid.server.store.handler.MessageInstanceHandler;
+import org.apache.qpid.server.util.ByteBufferUtils;
 
 public abstract class AbstractJDBCMessageStore implements MessageStore
 {
@@ -107,8 +108,15 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
             "SELECT action_type, queue_id, message_id FROM " + XID_ACTIONS_TABLE_NAME +
             " WHERE format = ? and global_id = ? and branch_id = ?";
 
+    /** The maximum number of transactions that will be coalesced into a single database commit */
+    public static final String MAX_COMMIT_BATCH_SIZE_PROPERTY_NAME = "qpid.jdbcstore.maxCommitBatchSize";
+    private static final int DEFAULT_MAX_COMMIT_BATCH_SIZE = 256;
+
     protected final EventManager _eventManager = new EventManager();
 
+    private volatile JDBCCommitThread<JDBCTransaction> _commitThread;
+    private volatile OffHeapContentCache _offHeapContentCache;
+
     protected abstract boolean isMessageStoreOpen();
 
     protected abstract void checkMessageStoreOpen();
@@ -457,68 +465,86 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         return _messageId.incrementAndGet();
     }
 
-    private void removeMessage(long messageId)
+    /**
+     * Queues the removal of the message on the commit thread, behind any transactions already waiting to be committed,
+     * so that the removal cannot overtake the commit which stores the message.  The caller does not wait for the
+     * removal to be committed.
+     */
+    private void removeMessage(long messageId, int contentSize)
+    {
+        JDBCTransaction removal = new JDBCTransaction();
+        removal._removals.add(new MessageRemoval(messageId, contentSize));
+        getCommitThread().commit(removal, false);
+    }
+
+    protected void startCommitThread(final String name)
     {
-        try
+        final int maxBatchSize = Integer.getInteger(MAX_COMMIT_BATCH_SIZE_PROPERTY_NAME, DEFAULT_MAX_COMMIT_BATCH_SIZE);
+        _commitThread = new JDBCCommitThread<>("Commit-" + name,
+                                               new JDBCCommitThread.BatchCommitter<JDBCTransaction>()
+                                               {
+                                                   @Override
+                                                   public void commit(final List<JDBCTransaction> transactions)
+                                                   {
+                                                       commitTransactions(transactions);
+                                                   }
+                                               },
+                                               maxBatchSize);
+        _commitThread.start();
+    }
+
+    private JDBCCommitThread<JDBCTransaction> getCommitThread()
+    {
+        JDBCCommitThread<JDBCTransaction> commitThread = _commitThread;
+        if (commitThread == null)
         {
-            Connection conn = newConnection();
-            try
-            {
-                PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_META_DATA);
-                try
-                {
-                    stmt.setLong(1,messageId);
-                    int results = stmt.executeUpdate();
-                    stmt.close();
+            throw new IllegalStateException("Message store is not open");
+        }
+        return commitThread;
+    }
 
-                    if (results == 0)
-                    {
-                        if (getLogger().isDebugEnabled())
-                        {
-                            getLogger().debug("Message id " + messageId
-                                              + " not found (attempt to remove failed - probably application initiated rollback)");
-                        }
-                    }
+    /**
+     * Creates the direct memory cache for content flowed to disk if the parent's context gives it a size.
+     */
+    protected void createOffHeapContentCache(final ConfiguredObject<?> parent)
+    {
+        Long cacheSize = parent.getContextValue(Long.class, VirtualHost.OFF_HEAP_CONTENT_CACHE_SIZE);
+        _offHeapContentCache = cacheSize != null && cacheSize > 0l ? new OffHeapContentCache(cacheSize) : null;
+    }
 
-                    if (getLogger().isDebugEnabled())
-                    {
-                        getLogger().debug("Deleted metadata for message " + messageId);
-                    }
+    protected void destroyOffHeapContentCache()
+    {
+        OffHeapContentCache contentCache = _offHeapContentCache;
+        if (contentCache != null)
+        {
+            _offHeapContentCache = null;
+            contentCache.clear();
+        }
+    }
 
-                    stmt = conn.prepareStatement(DELETE_FROM_MESSAGE_CONTENT);
-                    stmt.setLong(1, messageId);
-                    results = stmt.executeUpdate();
-                }
-                finally
-                {
-                    stmt.close();
-                }
-                conn.commit();
+    public OffHeapContentCache getOffHeapContentCache()
+    {
+        return _offHeapContentCache;
+    }
+
+    protected void stopCommitThread()
+    {
+        if (_commitThread != null)
+        {
+            try
+            {
+                _commitThread.close();
             }
-            catch(SQLException e)
+            catch (InterruptedException e)
             {
-                try
-                {
-                    conn.rollback();
-                }
-                catch(SQLException t)
-                {
-                    // ignore - we are re-throwing underlying exception
-                }
-
-                throw e;
-
+                Thread.currentThread().interrupt();
+                throw new StoreException("Interrupted whilst stopping commit thread", e);
             }
             finally
             {
-                conn.close();
+                _commitThread = null;
             }
         }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error removing message with id " + messageId + " from database: " + e.getMessage(), e);
-        }
-
     }
 
     /**
@@ -584,329 +610,324 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         return new JDBCTransaction();
     }
 
-    private void enqueueMessage(ConnectionWrapper connWrapper, final TransactionLogResource queue, Long messageId) throws StoreException
+    /**
+     * Applies the work of the given transactions to the database in a single database transaction.  Statements of
+     * the same kind are sent to the database as JDBC batches: first the new messages, then the distributed
+     * transaction records, then the queue entry inserts and deletes, and finally the removal of messages.
+     */
+    private void commitTransactions(final List<JDBCTransaction> transactions) throws StoreException
     {
-        Connection conn = connWrapper.getConnection();
-
-
+        Connection conn = null;
+        List<StoredJDBCMessage<?>> messagesStored = new ArrayList<>();
+        boolean committed = false;
         try
         {
-            if (getLogger().isDebugEnabled())
+            conn = newConnection();
+
+            storeMessages(conn, transactions, messagesStored);
+
+            for (JDBCTransaction txn : transactions)
             {
-                getLogger().debug("Enqueuing message "
-                                  + messageId
-                                  + " on queue "
-                                  + queue.getName()
-                                  + " with id " + queue.getId()
-                                  + " [Connection"
-                                  + conn
-                                  + "]");
+                for (XidAction action : txn._xidActions)
+                {
+                    action.execute(conn);
+                }
             }
 
-            PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_QUEUE_ENTRY);
-            try
+            insertQueueEntries(conn, transactions);
+            deleteQueueEntries(conn, transactions);
+            removeMessages(conn, transactions);
+
+            conn.commit();
+            committed = true;
+
+            if (getLogger().isDebugEnabled())
             {
-                stmt.setString(1, queue.getId().toString());
-                stmt.setLong(2,messageId);
-                stmt.executeUpdate();
+                getLogger().debug("commit of " + transactions.size() + " transaction(s) completed");
             }
-            finally
+
+            conn.close();
+            conn = null;
+
+            int storeSizeChange = 0;
+            for (JDBCTransaction txn : transactions)
             {
-                stmt.close();
+                storeSizeChange += txn._storeSizeIncrease;
+                for (MessageRemoval removal : txn._removals)
+                {
+                    storeSizeChange -= removal.getContentSize();
+                }
             }
-
+            storedSizeChange(storeSizeChange);
         }
         catch (SQLException e)
         {
-            getLogger().error("Failed to enqueue: " + e.getMessage(), e);
-            throw new StoreException("Error writing enqueued message with id " + messageId + " for queue " + queue.getName() + " with id " + queue.getId()
-                                     + " to database", e);
+            throw new StoreException("Error commit tx: " + e.getMessage(), e);
         }
-
-    }
-
-    private void dequeueMessage(ConnectionWrapper connWrapper, final TransactionLogResource  queue, Long messageId) throws StoreException
-    {
-
-        Connection conn = connWrapper.getConnection();
-
-
-        try
+        finally
         {
-            PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_QUEUE_ENTRY);
-            try
+            for (StoredJDBCMessage<?> message : messagesStored)
             {
-                stmt.setString(1, queue.getId().toString());
-                stmt.setLong(2, messageId);
-                int results = stmt.executeUpdate();
-
-
+                message.storeCompleted(committed);
+            }
 
-                if(results != 1)
+            if (conn != null)
+            {
+                try
                 {
-                    throw new StoreException("Unable to find message with id " + messageId + " on queue " + queue.getName()
-                                             + " with id " + queue.getId());
+                    conn.rollback();
                 }
-
-                if (getLogger().isDebugEnabled())
+                catch (SQLException e)
                 {
-                    getLogger().debug("Dequeuing message " + messageId + " on queue " + queue.getName()
-                                      + " with id " + queue.getId());
+                    getLogger().debug("Exception rolling back failed commit", e);
                 }
+                JdbcUtils.closeConnection(conn, getLogger());
             }
-            finally
-            {
-                stmt.close();
-            }
-
-        }
-        catch (SQLException e)
-        {
-            getLogger().error("Failed to dequeue: " + e.getMessage(), e);
-            throw new StoreException("Error deleting enqueued message with id " + messageId + " for queue " + queue.getName()
-                                     + " with id " + queue.getId() + " from database", e);
         }
-
     }
 
-    private void removeXid(ConnectionWrapper connWrapper, long format, byte[] globalId, byte[] branchId)
-            throws StoreException
+    /**
+     * Batches the statements storing the messages of the given transactions not already stored, adding each message
+     * batched to the given list so that it may be told the outcome of the commit.
+     */
+    private void storeMessages(final Connection conn,
+                               final List<JDBCTransaction> transactions,
+                               final List<StoredJDBCMessage<?>> messagesStored) throws SQLException
     {
-        Connection conn = connWrapper.getConnection();
-
-
-        try
+        try (PreparedStatement metaDataStmt = conn.prepareStatement(INSERT_INTO_META_DATA);
+             PreparedStatement contentStmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT))
         {
-            PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_XIDS);
-            try
+            for (JDBCTransaction txn : transactions)
             {
-                stmt.setLong(1,format);
-                stmt.setBytes(2,globalId);
-                stmt.setBytes(3,branchId);
-                int results = stmt.executeUpdate();
-
-
-
-                if(results != 1)
+                for (StoredJDBCMessage<?> message : txn._messagesToStore)
                 {
-                    throw new StoreException("Unable to find message with xid");
+                    if (message.addStoreStatements(metaDataStmt, contentStmt))
+                    {
+                        messagesStored.add(message);
+                    }
                 }
             }
-            finally
-            {
-                stmt.close();
-            }
 
-            stmt = conn.prepareStatement(DELETE_FROM_XID_ACTIONS);
-            try
-            {
-                stmt.setLong(1,format);
-                stmt.setBytes(2,globalId);
-                stmt.setBytes(3,branchId);
-                int results = stmt.executeUpdate();
-
-            }
-            finally
+            if (!messagesStored.isEmpty())
             {
-                stmt.close();
+                checkBatchResults(metaDataStmt.executeBatch(), "Unable to add meta data for message");
+                contentStmt.executeBatch();
             }
-
-        }
-        catch (SQLException e)
-        {
-            getLogger().error("Failed to dequeue: " + e.getMessage(), e);
-            throw new StoreException("Error deleting enqueued message with xid", e);
         }
-
     }
 
-    private List<Runnable> recordXid(ConnectionWrapper connWrapper, long format, byte[] globalId, byte[] branchId,
-                                     Transaction.Record[] enqueues, Transaction.Record[] dequeues) throws StoreException
+    private void insertQueueEntries(final Connection conn, final List<JDBCTransaction> transactions)
+            throws SQLException
     {
-        Connection conn = connWrapper.getConnection();
-
-
-        try
+        List<QueueEntryRecord> enqueues = new ArrayList<>();
+        for (JDBCTransaction txn : transactions)
         {
+            enqueues.addAll(txn._enqueues);
+        }
 
-            PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_XIDS);
-            try
-            {
-                stmt.setLong(1,format);
-                stmt.setBytes(2, globalId);
-                stmt.setBytes(3, branchId);
-                stmt.executeUpdate();
-            }
-            finally
-            {
-                stmt.close();
-            }
-
-            List<Runnable> postActions = new ArrayList<>();
-            for(org.apache.qpid.server.store.Transaction.Record enqueue : enqueues)
+        if (!enqueues.isEmpty())
+        {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_QUEUE_ENTRY))
             {
-                StoredMessage storedMessage = enqueue.getMessage().getStoredMessage();
-                if(storedMessage instanceof StoredJDBCMessage)
+                for (QueueEntryRecord record : enqueues)
                 {
-                    postActions.add(((StoredJDBCMessage) storedMessage).store(conn));
+                    if (getLogger().isDebugEnabled())
+                    {
+                        getLogger().debug("Enqueuing message "
+                                          + record.getMessageId()
+                                          + " on queue "
+                                          + record.getQueue().getName()
+                                          + " with id " + record.getQueue().getId()
+                                          + " [Connection"
+                                          + conn
+                                          + "]");
+                    }
+
+                    stmt.setString(1, record.getQueue().getId().toString());
+                    stmt.setLong(2, record.getMessageId());
+                    stmt.addBatch();
                 }
+                stmt.executeBatch();
             }
+        }
+    }
 
+    private void deleteQueueEntries(final Connection conn, final List<JDBCTransaction> transactions)
+            throws SQLException
+    {
+        List<QueueEntryRecord> dequeues = new ArrayList<>();
+        for (JDBCTransaction txn : transactions)
+        {
+            dequeues.addAll(txn._dequeues);
+        }
 
-            stmt = conn.prepareStatement(INSERT_INTO_XID_ACTIONS);
-
-            try
+        if (!dequeues.isEmpty())
+        {
+            try (PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_QUEUE_ENTRY))
             {
-                stmt.setLong(1,format);
-                stmt.setBytes(2, globalId);
-                stmt.setBytes(3, branchId);
+                for (QueueEntryRecord record : dequeues)
+                {
+                    stmt.setString(1, record.getQueue().getId().toString());
+                    stmt.setLong(2, record.getMessageId());
+                    stmt.addBatch();
+                }
 
-                if(enqueues != null)
+                int[] results = stmt.executeBatch();
+                for (int i = 0; i < results.length; i++)
                 {
-                    stmt.setString(4, "E");
-                    for(Transaction.Record record : enqueues)
+                    QueueEntryRecord record = dequeues.get(i);
+                    if (results[i] != 1 && results[i] != Statement.SUCCESS_NO_INFO)
                     {
-                        stmt.setString(5, record.getResource().getId().toString());
-                        stmt.setLong(6, record.getMessage().getMessageNumber());
-                        stmt.executeUpdate();
+                        throw new StoreException("Unable to find message with id " + record.getMessageId()
+                                                 + " on queue " + record.getQueue().getName()
+                                                 + " with id " + record.getQueue().getId());
                     }
-                }
 
-                if(dequeues != null)
-                {
-                    stmt.setString(4, "D");
-                    for(Transaction.Record record : dequeues)
+                    if (getLogger().isDebugEnabled())
                     {
-                        stmt.setString(5, record.getResource().getId().toString());
-                        stmt.setLong(6, record.getMessage().getMessageNumber());
-                        stmt.executeUpdate();
+                        getLogger().debug("Dequeuing message " + record.getMessageId()
+                                          + " on queue " + record.getQueue().getName()
+                                          + " with id " + record.getQueue().getId());
                     }
                 }
-
-            }
-            finally
-            {
-                stmt.close();
             }
-            return postActions;
         }
-        catch (SQLException e)
-        {
-            getLogger().error("Failed to enqueue: " + e.getMessage(), e);
-            throw new StoreException("Error writing xid ", e);
-        }
-
     }
 
-    private static final class ConnectionWrapper
+    private void removeMessages(final Connection conn, final List<JDBCTransaction> transactions)
+            throws SQLException
     {
-        private final Connection _connection;
-
-        public ConnectionWrapper(Connection conn)
+        List<MessageRemoval> removals = new ArrayList<>();
+        for (JDBCTransaction txn : transactions)
         {
-            _connection = conn;
+            removals.addAll(txn._removals);
         }
 
-        public Connection getConnection()
+        if (!removals.isEmpty())
         {
-            return _connection;
+            try (PreparedStatement metaDataStmt = conn.prepareStatement(DELETE_FROM_META_DATA);
+                 PreparedStatement contentStmt = conn.prepareStatement(DELETE_FROM_MESSAGE_CONTENT))
+            {
+                for (MessageRemoval removal : removals)
+                {
+                    metaDataStmt.setLong(1, removal.getMessageId());
+                    metaDataStmt.addBatch();
+                    contentStmt.setLong(1, removal.getMessageId());
+                    contentStmt.addBatch();
+                }
+
+                int[] results = metaDataStmt.executeBatch();
+                contentStmt.executeBatch();
+
+                if (getLogger().isDebugEnabled())
+                {
+                    for (int i = 0; i < results.length; i++)
+                    {
+                        long messageId = removals.get(i).getMessageId();
+                        if (results[i] == 0)
+                        {
+                            getLogger().debug("Message id " + messageId
+                                              + " not found (attempt to remove failed - probably application initiated rollback)");
+                        }
+                        getLogger().debug("Deleted metadata for message " + messageId);
+                    }
+                }
+            }
         }
     }
 
-
-    private void commitTran(ConnectionWrapper connWrapper) throws StoreException
+    private void checkBatchResults(final int[] results, final String message)
     {
-        try
+        for (int result : results)
         {
-            Connection conn = connWrapper.getConnection();
-            conn.commit();
-
-            if (getLogger().isDebugEnabled())
+            if (result == 0)
             {
-                getLogger().debug("commit tran completed");
+                throw new StoreException(message);
             }
-
-            conn.close();
-        }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error commit tx: " + e.getMessage(), e);
         }
     }
 
-    private StoreFuture commitTranAsync(ConnectionWrapper connWrapper) throws StoreException
-    {
-        commitTran(connWrapper);
-        return StoreFuture.IMMEDIATE_FUTURE;
-    }
-
-    private void abortTran(ConnectionWrapper connWrapper) throws StoreException
+    private void removeXid(Connection conn, long format, byte[] globalId, byte[] branchId)
+            throws SQLException
     {
-        if (connWrapper == null)
+        PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_XIDS);
+        try
         {
-            throw new StoreException("Fatal internal error: transactional context is empty at abortTran");
-        }
+            stmt.setLong(1,format);
+            stmt.setBytes(2,globalId);
+            stmt.setBytes(3,branchId);
+            int results = stmt.executeUpdate();
+
 
-        if (getLogger().isDebugEnabled())
+
+            if(results != 1)
+            {
+                throw new StoreException("Unable to find message with xid");
+            }
+        }
+        finally
         {
-            getLogger().debug("abort tran called: " + connWrapper.getConnection());
+            stmt.close();
         }
 
+        stmt = conn.prepareStatement(DELETE_FROM_XID_ACTIONS);
         try
         {
-            Connection conn = connWrapper.getConnection();
-            conn.rollback();
-            conn.close();
+            stmt.setLong(1,format);
+            stmt.setBytes(2,globalId);
+            stmt.setBytes(3,branchId);
+            int results = stmt.executeUpdate();
+
         }
-        catch (SQLException e)
+        finally
         {
-            throw new StoreException("Error aborting transaction: " + e.getMessage(), e);
+            stmt.close();
         }
-
     }
 
-    private void storeMetaData(Connection conn, long messageId, StorableMessageMetaData metaData)
-            throws SQLException
+    private void recordXid(Connection conn, long format, byte[] globalId, byte[] branchId,
+                           Transaction.Record[] enqueues, Transaction.Record[] dequeues) throws SQLException
     {
-        if(getLogger().isDebugEnabled())
+        PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_XIDS);
+        try
         {
-            getLogger().debug("Adding metadata for message " + messageId);
+            stmt.setLong(1,format);
+            stmt.setBytes(2, globalId);
+            stmt.setBytes(3, branchId);
+            stmt.executeUpdate();
+        }
+        finally
+        {
+            stmt.close();
         }
 
-        PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_META_DATA);
+        stmt = conn.prepareStatement(INSERT_INTO_XID_ACTIONS);
+
         try
         {
-            stmt.setLong(1,messageId);
-
-            final int bodySize = 1 + metaData.getStorableSize();
-            byte[] underlying = new byte[bodySize];
-            underlying[0] = (byte) metaData.getType().ordinal();
-            ByteBuffer buf = ByteBuffer.wrap(underlying);
-            buf.position(1);
-            buf = buf.slice();
+            stmt.setLong(1,format);
+            stmt.setBytes(2, globalId);
+            stmt.setBytes(3, branchId);
 
-            metaData.writeToBuffer(buf);
-            ByteArrayInputStream bis = new ByteArrayInputStream(underlying);
-            try
+            if(enqueues != null)
             {
-                stmt.setBinaryStream(2,bis,underlying.length);
-                int result = stmt.executeUpdate();
-
-                if(result == 0)
+                stmt.setString(4, "E");
+                for(Transaction.Record record : enqueues)
                 {
-                    throw new StoreException("Unable to add meta data for message " +messageId);
+                    stmt.setString(5, record.getResource().getId().toString());
+                    stmt.setLong(6, record.getMessage().getMessageNumber());
+                    stmt.executeUpdate();
                 }
             }
-            finally
+
+            if(dequeues != null)
             {
-                try
-                {
-                    bis.close();
-                }
-                catch (IOException e)
+                stmt.setString(4, "D");
+                for(Transaction.Record record : dequeues)
                 {
-
-                    throw new SQLException(e);
+                    stmt.setString(5, record.getResource().getId().toString());
+                    stmt.setLong(6, record.getMessage().getMessageNumber());
+                    stmt.executeUpdate();
                 }
             }
 
@@ -915,17 +936,88 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             stmt.close();
         }
-
     }
 
-
-    private static class RecordImpl implements Transaction.Record, TransactionLogResource, EnqueueableMessage
+    private static final class QueueEntryRecord
     {
+        private final TransactionLogResource _queue;
+        private final long _messageId;
 
-        private long _messageNumber;
-        private UUID _queueId;
-
-        public RecordImpl(UUID queueId, long messageNumber)
+        private QueueEntryRecord(final TransactionLogResource queue, final long messageId)
+        {
+            _queue = queue;
+            _messageId = messageId;
+        }
+
+        public TransactionLogResource getQueue()
+        {
+            return _queue;
+        }
+
+        public long getMessageId()
+        {
+            return _messageId;
+        }
+    }
+
+    private static final class MessageRemoval
+    {
+        private final long _messageId;
+        private final int _contentSize;
+
+        private MessageRemoval(final long messageId, final int contentSize)
+        {
+            _messageId = messageId;
+            _contentSize = contentSize;
+        }
+
+        public long getMessageId()
+        {
+            return _messageId;
+        }
+
+        public int getContentSize()
+        {
+            return _contentSize;
+        }
+    }
+
+    private interface XidAction
+    {
+        void execute(Connection conn) throws SQLException;
+    }
+
+    private void storeMetaData(PreparedStatement stmt, long messageId, StorableMessageMetaData metaData)
+            throws SQLException
+    {
+        if(getLogger().isDebugEnabled())
+        {
+            getLogger().debug("Adding metadata for message " + messageId);
+        }
+
+        stmt.setLong(1,messageId);
+
+        final int bodySize = 1 + metaData.getStorableSize();
+        byte[] underlying = new byte[bodySize];
+        underlying[0] = (byte) metaData.getType().ordinal();
+        ByteBuffer buf = ByteBuffer.wrap(underlying);
+        buf.position(1);
+        buf = buf.slice();
+
+        metaData.writeToBuffer(buf);
+        stmt.setBinaryStream(2, new ByteArrayInputStream(underlying), underlying.length);
+
+        stmt.addBatch();
+    }
+
+
+    private static class RecordImpl implements Transaction.Record, TransactionLogResource, EnqueueableMessage
+    {
+
+        private long _messageNumber;
+        private UUID _queueId;
+
+        public RecordImpl(UUID queueId, long messageNumber)
         {
             _messageNumber = messageNumber;
             _queueId = queueId;
@@ -1028,37 +1120,35 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
     protected abstract byte[] getBlobAsBytes(ResultSet rs, int col) throws SQLException;
 
-    private void addContent(Connection conn, long messageId, ByteBuffer src)
+    private void addContent(PreparedStatement stmt, long messageId, ByteBuffer src)
     {
         if(getLogger().isDebugEnabled())
         {
             getLogger().debug("Adding content for message " + messageId);
         }
-        PreparedStatement stmt = null;
 
         try
         {
-            src = src.slice();
-
-            byte[] chunkData = new byte[src.limit()];
-            src.duplicate().get(chunkData);
+            ByteArrayInputStream bis;
+            if(src.hasArray())
+            {
+                bis = new ByteArrayInputStream(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            }
+            else
+            {
+                byte[] chunkData = new byte[src.remaining()];
+                src.duplicate().get(chunkData);
+                bis = new ByteArrayInputStream(chunkData);
+            }
 
-            stmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT);
             stmt.setLong(1,messageId);
-
-            ByteArrayInputStream bis = new ByteArrayInputStream(chunkData);
-            stmt.setBinaryStream(2, bis, chunkData.length);
-            stmt.executeUpdate();
+            stmt.setBinaryStream(2, bis, src.remaining());
+            stmt.addBatch();
         }
         catch (SQLException e)
         {
-            JdbcUtils.closeConnection(conn, getLogger());
             throw new StoreException("Error adding content for message " + messageId + ": " + e.getMessage(), e);
         }
-        finally
-        {
-            JdbcUtils.closePreparedStatement(stmt, getLogger());
-        }
 
     }
 
@@ -1163,23 +1253,21 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
     }
 
 
+    /**
+     * Records the work of a transaction so that it can be applied to the database, together with the work of other
+     * transactions, by the commit thread.
+     */
     protected class JDBCTransaction implements Transaction
     {
-        private final ConnectionWrapper _connWrapper;
+        private final List<StoredJDBCMessage<?>> _messagesToStore = new ArrayList<>();
+        private final List<QueueEntryRecord> _enqueues = new ArrayList<>();
+        private final List<QueueEntryRecord> _dequeues = new ArrayList<>();
+        private final List<XidAction> _xidActions = new ArrayList<>();
+        private final List<MessageRemoval> _removals = new ArrayList<>();
         private int _storeSizeIncrease;
-        private final List<Runnable> _preCommitActions = new ArrayList<>();
-        private final List<Runnable> _postCommitActions = new ArrayList<>();
 
         protected JDBCTransaction()
         {
-            try
-            {
-                _connWrapper = new ConnectionWrapper(newConnection());
-            }
-            catch (SQLException e)
-            {
-                throw new StoreException(e);
-            }
         }
 
         @Override
@@ -1190,26 +1278,10 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
             final StoredMessage storedMessage = message.getStoredMessage();
             if(storedMessage instanceof StoredJDBCMessage)
             {
-                _preCommitActions.add(new Runnable()
-                {
-                    @Override
-                    public void run()
-                    {
-                        try
-                        {
-                            _postCommitActions.add(((StoredJDBCMessage) storedMessage).store(_connWrapper.getConnection()));
-                            _storeSizeIncrease += storedMessage.getMetaData().getContentSize();
-                        }
-                        catch (SQLException e)
-                        {
-                            throw new StoreException("Exception on enqueuing message into message store" + _messageId,
-                                                     e);
-                        }
-                    }
-                });
+                _messagesToStore.add((StoredJDBCMessage<?>) storedMessage);
+                _storeSizeIncrease += storedMessage.getMetaData().getContentSize();
             }
-            AbstractJDBCMessageStore.this.enqueueMessage(_connWrapper, queue, message.getMessageNumber());
-
+            _enqueues.add(new QueueEntryRecord(queue, message.getMessageNumber()));
         }
 
         @Override
@@ -1217,186 +1289,77 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.dequeueMessage(_connWrapper, queue, message.getMessageNumber());
+            _dequeues.add(new QueueEntryRecord(queue, message.getMessageNumber()));
         }
 
         @Override
         public void commitTran()
         {
             checkMessageStoreOpen();
-            doPreCommitActions();
-            AbstractJDBCMessageStore.this.commitTran(_connWrapper);
-            storedSizeChange(_storeSizeIncrease);
-            doPostCommitActions();
+            getCommitThread().commit(this, true);
         }
 
         @Override
         public StoreFuture commitTranAsync()
         {
             checkMessageStoreOpen();
-            doPreCommitActions();
-            StoreFuture storeFuture = AbstractJDBCMessageStore.this.commitTranAsync(_connWrapper);
-            storedSizeChange(_storeSizeIncrease);
-            doPostCommitActions();
-            return storeFuture;
-        }
-
-        private void doPreCommitActions()
-        {
-            for(Runnable action : _preCommitActions)
-            {
-                action.run();
-            }
-            _preCommitActions.clear();
-        }
-
-        private void doPostCommitActions()
-        {
-            for(Runnable action : _postCommitActions)
-            {
-                action.run();
-            }
-            _postCommitActions.clear();
+            return getCommitThread().commit(this, false);
         }
 
         @Override
         public void abortTran()
         {
             checkMessageStoreOpen();
-            _preCommitActions.clear();
-            AbstractJDBCMessageStore.this.abortTran(_connWrapper);
+            _messagesToStore.clear();
+            _enqueues.clear();
+            _dequeues.clear();
+            _xidActions.clear();
+            _storeSizeIncrease = 0;
         }
 
         @Override
-        public void removeXid(long format, byte[] globalId, byte[] branchId)
+        public void removeXid(final long format, final byte[] globalId, final byte[] branchId)
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.removeXid(_connWrapper, format, globalId, branchId);
+            _xidActions.add(new XidAction()
+            {
+                @Override
+                public void execute(final Connection conn) throws SQLException
+                {
+                    AbstractJDBCMessageStore.this.removeXid(conn, format, globalId, branchId);
+                }
+            });
         }
 
         @Override
-        public void recordXid(long format, byte[] globalId, byte[] branchId, Record[] enqueues, Record[] dequeues)
+        public void recordXid(final long format,
+                              final byte[] globalId,
+                              final byte[] branchId,
+                              final Record[] enqueues,
+                              final Record[] dequeues)
         {
             checkMessageStoreOpen();
 
-            _postCommitActions.addAll(AbstractJDBCMessageStore.this.recordXid(_connWrapper, format, globalId, branchId, enqueues, dequeues));
-        }
-    }
-
-
-    static interface MessageDataRef<T extends StorableMessageMetaData>
-    {
-        T getMetaData();
-        byte[] getData();
-        void setData(byte[] data);
-        boolean isHardRef();
-    }
-
-    private static final class MessageDataHardRef<T extends StorableMessageMetaData> implements MessageDataRef<T>
-    {
-        private final T _metaData;
-        private byte[] _data;
-
-        private MessageDataHardRef(final T metaData)
-        {
-            _metaData = metaData;
-        }
-
-        @Override
-        public T getMetaData()
-        {
-            return _metaData;
-        }
-
-        @Override
-        public byte[] getData()
-        {
-            return _data;
-        }
-
-        @Override
-        public void setData(final byte[] data)
-        {
-            _data = data;
-        }
-
-        @Override
-        public boolean isHardRef()
-        {
-            return true;
-        }
-    }
-
-    private static final class MessageData<T extends StorableMessageMetaData>
-    {
-        private T _metaData;
-        private SoftReference<byte[]> _data;
-
-        private MessageData(final T metaData, final byte[] data)
-        {
-            _metaData = metaData;
-
-            if(data != null)
+            if(enqueues != null)
             {
-                _data = new SoftReference<>(data);
+                for(Record enqueue : enqueues)
+                {
+                    StoredMessage storedMessage = enqueue.getMessage().getStoredMessage();
+                    if(storedMessage instanceof StoredJDBCMessage)
+                    {
+                        _messagesToStore.add((StoredJDBCMessage<?>) storedMessage);
+                    }
+                }
             }
-        }
-
-        public T getMetaData()
-        {
-            return _metaData;
-        }
-
-        public byte[] getData()
-        {
-            return _data == null ? null : _data.get();
-        }
-
-        public void setData(final byte[] data)
-        {
-            _data = new SoftReference<>(data);
-        }
-
-
-    }
-    private static final class MessageDataSoftRef<T extends StorableMessageMetaData> extends SoftReference<MessageData<T>> implements MessageDataRef<T>
-    {
-
-        public MessageDataSoftRef(final T metadata, byte[] data)
-        {
-            super(new MessageData<T>(metadata, data));
-        }
-
-        @Override
-        public T getMetaData()
-        {
-            MessageData<T> ref = get();
-            return ref == null ? null : ref.getMetaData();
-        }
-
-        @Override
-        public byte[] getData()
-        {
-            MessageData<T> ref = get();
-
-            return ref == null ? null : ref.getData();
-        }
-
-        @Override
-        public void setData(final byte[] data)
-        {
-            MessageData<T> ref = get();
-            if(ref != null)
+            _xidActions.add(new XidAction()
             {
-                ref.setData(data);
-            }
-        }
-
-        @Override
-        public boolean isHardRef()
-        {
-            return false;
+                @Override
+                public void execute(final Connection conn) throws SQLException
+                {
+                    AbstractJDBCMessageStore.this.recordXid(conn, format, globalId, branchId, enqueues, dequeues);
+                }
+            });
         }
     }
 
@@ -1404,8 +1367,19 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
     {
 
         private final long _messageId;
+        private final int _contentSize;
+        /** The metadata while the message is not yet stored, after which it is held only softly */
+        private volatile T _metaData;
+        private volatile SoftReference<T> _metaDataRef;
 
-        private volatile MessageDataRef<T> _messageDataRef;
+        /** The content held on the heap, or null if it has not yet been loaded or has been flowed to disk */
+        private volatile byte[] _data;
+        /** Content added but not yet copied into the content held on the heap, or null if there is none */
+        private volatile List<ByteBuffer> _addedContent;
+        /** Whether the message has been committed to the database */
+        private volatile boolean _stored;
+        /** Whether statements storing the message are awaiting commit; guarded by this */
+        private boolean _storing;
 
 
         StoredJDBCMessage(long messageId, T metaData)
@@ -1418,35 +1392,44 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
                           T metaData, boolean isRecovered)
         {
             _messageId = messageId;
-
-            if(!isRecovered)
+            _contentSize = metaData.getContentSize();
+            if(isRecovered)
             {
-                _messageDataRef = new MessageDataHardRef<>(metaData);
+                _metaDataRef = new SoftReference<>(metaData);
             }
             else
             {
-                _messageDataRef = new MessageDataSoftRef<>(metaData, null);
+                _metaData = metaData;
             }
+            _stored = isRecovered;
         }
 
+        /**
+         * Returns the metadata, reading it back from the database should it have been reclaimed since the message was
+         * stored.
+         */
         @Override
         public T getMetaData()
         {
-            T metaData = _messageDataRef.getMetaData();
+            T metaData = _metaData;
             if(metaData == null)
             {
-                checkMessageStoreOpen();
-                try
+                SoftReference<T> metaDataRef = _metaDataRef;
+                metaData = metaDataRef == null ? null : metaDataRef.get();
+                if(metaData == null)
                 {
-                    metaData = (T) AbstractJDBCMessageStore.this.getMetaData(_messageId);
-                    _messageDataRef = new MessageDataSoftRef<>(metaData,null);
-                }
-                catch (SQLException e)
-                {
-                    throw new StoreException("Failed to get metadata for message id: " + _messageId, e);
+                    checkMessageStoreOpen();
+                    try
+                    {
+                        metaData = (T) AbstractJDBCMessageStore.this.getMetaData(_messageId);
+                        _metaDataRef = new SoftReference<>(metaData);
+                    }
+                    catch (SQLException e)
+                    {
+                        throw new StoreException("Failed to get metadata for message id: " + _messageId, e);
+                    }
                 }
             }
-
             return metaData;
         }
 
@@ -1456,68 +1439,70 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
             return _messageId;
         }
 
+        /**
+         * Holds on to the content given until it is first read or stored, and only then copies it, so that content
+         * added in many chunks is copied once.
+         */
         @Override
         public void addContent(int offsetInMessage, ByteBuffer src)
         {
-            src = src.slice();
-            byte[] data = _messageDataRef.getData();
-
-            if(data == null)
+            List<ByteBuffer> addedContent = _addedContent;
+            if(addedContent == null)
             {
-                data = new byte[src.remaining()];
-                src.duplicate().get(data);
-                _messageDataRef.setData(data);
+                addedContent = new ArrayList<ByteBuffer>();
             }
-            else
+            addedContent.add(ByteBufferUtils.retainableSlice(src));
+            _addedContent = addedContent;
+        }
+
+        private byte[] getData()
+        {
+            return _addedContent == null ? _data : copyAddedContent();
+        }
+
+        private synchronized byte[] copyAddedContent()
+        {
+            List<ByteBuffer> addedContent = _addedContent;
+            if(addedContent != null)
             {
-                byte[] oldData = data;
-                data = new byte[oldData.length + src.remaining()];
+                byte[] oldData = _data;
+                int length = oldData == null ? 0 : oldData.length;
+                for(ByteBuffer buf : addedContent)
+                {
+                    length += buf.remaining();
+                }
 
-                System.arraycopy(oldData,0,data,0,oldData.length);
-                src.duplicate().get(data, oldData.length, src.remaining());
+                byte[] data = new byte[length];
+                int offset = 0;
+                if(oldData != null)
+                {
+                    System.arraycopy(oldData, 0, data, 0, oldData.length);
+                    offset = oldData.length;
+                }
+                for(ByteBuffer buf : addedContent)
+                {
+                    int remaining = buf.remaining();
+                    buf.duplicate().get(data, offset, remaining);
+                    offset += remaining;
+                }
 
-                _messageDataRef.setData(data);
+                _data = data;
+                _addedContent = null;
             }
-
+            return _data;
         }
 
         @Override
         public int getContent(int offsetInMessage, ByteBuffer dst)
         {
-            byte[] data = _messageDataRef.getData();
-
-            if(data == null)
+            ByteBuffer content = getContent(offsetInMessage, dst.remaining());
+            if(content == null)
             {
-                if(stored())
-                {
-                    checkMessageStoreOpen();
-                    data = AbstractJDBCMessageStore.this.getAllContent(_messageId);
-                    T metaData = _messageDataRef.getMetaData();
-                    if (metaData == null)
-                    {
-                        try
-                        {
-                            metaData = (T) AbstractJDBCMessageStore.this.getMetaData(_messageId);
-                            _messageDataRef = new MessageDataSoftRef<>(metaData, data);
-                        }
-                        catch (SQLException e)
-                        {
-                            throw new StoreException("Failed to get content for message id " + _messageId, e);
-                        }
-                    }
-                    else
-                    {
-                        _messageDataRef.setData(data);
-                    }
-                }
-                else
-                {
-                    data = new byte[0];
-                }
+                return 0;
             }
 
-            int length = Math.min(dst.remaining(), data.length - offsetInMessage);
-            dst.put(data, offsetInMessage, length);
+            int length = content.remaining();
+            dst.put(content);
             return length;
 
         }
@@ -1526,41 +1511,66 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         @Override
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
-            byte[] data = _messageDataRef.getData();
+            byte[] data = getData();
+            if(data != null)
+            {
+                return ByteBuffer.wrap(data,offsetInMessage,Math.min(size,data.length-offsetInMessage));
+            }
 
-            if(data == null)
+            ByteBuffer content = getContentBuffer();
+            if(content != null)
             {
+                content.position(offsetInMessage);
+                content.limit(offsetInMessage + Math.min(size, content.capacity() - offsetInMessage));
+            }
+            return content;
+        }
 
-                if(stored())
+        /**
+         * Returns the whole of the content, taking it from the heap, then the off-heap cache, and only then from the
+         * database.  Content read from the cache or the database is held on the heap until the message is next flowed
+         * to disk, so that content read in chunks is copied off the heap once rather than once per chunk.
+         */
+        private ByteBuffer getContentBuffer()
+        {
+            byte[] data = getData();
+            if(data == null)
+            {
+                if(!_stored)
                 {
-                    checkMessageStoreOpen();
-
-                    data = AbstractJDBCMessageStore.this.getAllContent(_messageId);
-                    T metaData = _messageDataRef.getMetaData();
-                    if (metaData == null)
-                    {
-                        try
-                        {
-                            metaData = (T) AbstractJDBCMessageStore.this.getMetaData(_messageId);
-                            _messageDataRef = new MessageDataSoftRef<>(metaData, data);
-                        }
-                        catch (SQLException e)
-                        {
-                            throw new StoreException("Failed to get content for message id: " + _messageId, e);
-                        }
-                    }
-                    else
-                    {
-                        _messageDataRef.setData(data);
-                    }
+                    return null;
                 }
-                else
+                data = reload();
+            }
+            return ByteBuffer.wrap(data);
+        }
+
+        /**
+         * Moves the content from the off-heap cache onto the heap, or failing that reads it from the database.
+         */
+        private byte[] reload()
+        {
+            OffHeapContentCache contentCache = _offHeapContentCache;
+            if(contentCache != null)
+            {
+                ByteBuffer cached = contentCache.get(_messageId);
+                if(cached != null)
                 {
-                    return null;
+                    byte[] data = cached.array();
+                    _data = data;
+                    contentCache.remove(_messageId);
+                    return data;
                 }
             }
-            return ByteBuffer.wrap(data,offsetInMessage,Math.min(size,data.length-offsetInMessage));
+            return loadContent();
+        }
 
+        private byte[] loadContent()
+        {
+            checkMessageStoreOpen();
+            byte[] data = AbstractJDBCMessageStore.this.getAllContent(_messageId);
+            _data = data;
+            return data;
         }
 
         @Override
@@ -1572,93 +1582,117 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
             }
             checkMessageStoreOpen();
 
-            int delta = getMetaData().getContentSize();
-            AbstractJDBCMessageStore.this.removeMessage(_messageId);
-            storedSizeChange(-delta);
+            OffHeapContentCache contentCache = _offHeapContentCache;
+            if(contentCache != null)
+            {
+                contentCache.remove(_messageId);
+            }
+            _addedContent = null;
+            _data = null;
+            AbstractJDBCMessageStore.this.removeMessage(_messageId, _contentSize);
         }
 
         @Override
         public boolean isInMemory()
         {
-            return _messageDataRef.isHardRef();
+            return _data != null || !_stored;
         }
 
+        /**
+         * Ensures that the message is stored and then releases its content from the heap, moving it to the off-heap
+         * cache if one is configured.  Content belonging to a message whose storing transaction has not yet
+         * committed is retained, as it could not yet be read back.
+         */
         @Override
         public boolean flowToDisk()
         {
-            try(Connection conn = newConnection())
+            if(!_stored)
             {
-                store(conn);
-                conn.commit();
+                store();
             }
-            catch (SQLException e)
+
+            if(!_stored)
             {
-                throw new StoreException("Failed to flow to disk", e);
+                return false;
             }
-            return true;
-        }
 
-        private synchronized Runnable store(final Connection conn) throws SQLException
-        {
-            if (!stored())
+            byte[] data = _data;
+            if(data != null)
             {
-                storeMetaData(conn, _messageId, _messageDataRef.getMetaData());
-                AbstractJDBCMessageStore.this.addContent(conn, _messageId,
-                                                               _messageDataRef.getData() == null
-                                                                       ? ByteBuffer.allocate(0)
-                                                                       : ByteBuffer.wrap(_messageDataRef.getData()));
-
-
-                if(getLogger().isDebugEnabled())
+                OffHeapContentCache contentCache = _offHeapContentCache;
+                if(contentCache != null)
                 {
-                    getLogger().debug("Storing message " + _messageId + " to store");
+                    contentCache.put(_messageId, data);
                 }
+                _data = null;
+            }
+            return true;
+        }
 
-                MessageDataRef<T> hardRef = _messageDataRef;
-                MessageDataSoftRef<T> messageDataSoftRef;
-                MessageData<T> ref;
-                do
-                {
-                    messageDataSoftRef = new MessageDataSoftRef<>(hardRef.getMetaData(), hardRef.getData());
-                    ref = messageDataSoftRef.get();
-                }
-                while (ref == null);
+        @Override
+        public void reloadContent()
+        {
+            if(_data == null && _stored)
+            {
+                reload();
+            }
+        }
 
-                _messageDataRef = messageDataSoftRef;
+        /**
+         * Stores the message through the commit thread, waiting for it to be committed.  As every statement storing a
+         * message is committed by the commit thread, a batch which finds the message already being stored is
+         * committing the statements storing it itself, and never commits queue entries referring to a message whose
+         * storing may yet fail.
+         */
+        private void store()
+        {
+            JDBCTransaction txn = new JDBCTransaction();
+            txn._messagesToStore.add(this);
+            getCommitThread().commit(txn, true);
+        }
 
-                class Pointer implements Runnable
-                {
-                    private MessageData<T> _ref;
+        /**
+         * Adds the statements storing this message, unless it is already stored or awaiting the commit of other
+         * statements storing it.  The message is only considered stored once {@link #storeCompleted(boolean)} reports
+         * that the statements were committed.  Only called by the commit thread.
+         *
+         * @return true if the statements were added
+         */
+        private synchronized boolean addStoreStatements(final PreparedStatement metaDataStmt,
+                                                        final PreparedStatement contentStmt) throws SQLException
+        {
+            if (_stored || _storing)
+            {
+                return false;
+            }
 
-                    Pointer(final MessageData<T> ref)
-                    {
-                        _ref = ref;
-                    }
+            byte[] data = getData();
+            storeMetaData(metaDataStmt, _messageId, getMetaData());
+            AbstractJDBCMessageStore.this.addContent(contentStmt, _messageId,
+                                                     data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(data));
 
-                    @Override
-                    public void run()
-                    {
-                        _ref = null;
-                    }
-                }
-                return new Pointer(ref);
-            }
-            else
+            if(getLogger().isDebugEnabled())
             {
-                return new Runnable()
-                {
-
-                    @Override
-                    public void run()
-                    {
-                    }
-                };
+                getLogger().debug("Storing message " + _messageId + " to store");
             }
+
+            _storing = true;
+            return true;
         }
 
-        private boolean stored()
+        private synchronized void storeCompleted(final boolean committed)
         {
-            return !_messageDataRef.isHardRef();
+            _storing = false;
+            if (committed)
+            {
+                _stored = true;
+                T metaData = _metaData;
+                if (metaData != null)
+                {
+                    _metaDataRef = new SoftReference<>(metaData);
+                    _metaData = null;
+                }
+            }
         }
     }
 
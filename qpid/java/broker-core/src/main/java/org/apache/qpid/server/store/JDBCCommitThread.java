@@ -0,0 +1,259 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Implements a thread which coalesces the transactions queued on it into batches, handing each batch to a
+ * {@link BatchCommitter} so that many concurrent transactions cost a single database commit.  The futures of the
+ * transactions in a batch are completed together once the batch has been committed.  Should the batch fail, each of
+ * its transactions is committed again on its own, so that one bad transaction fails only itself.
+ *
+ * @param <T> the type of transaction committed by this thread
+ */
+class JDBCCommitThread<T> extends Thread
+{
+    private static final Logger LOGGER = Logger.getLogger(JDBCCommitThread.class);
+
+    interface BatchCommitter<T>
+    {
+        /**
+         * Commits all the given transactions in a single database transaction, throwing an exception if the
+         * database transaction could not be committed, in which case none of the work of the transactions may have
+         * been applied.
+         */
+        void commit(List<T> transactions);
+    }
+
+    private final Queue<CommitFuture<T>> _jobQueue = new ConcurrentLinkedQueue<>();
+    private final Object _lock = new Object();
+    private final BatchCommitter<T> _committer;
+    private final int _maxBatchSize;
+    private boolean _stopped;
+
+    JDBCCommitThread(final String name, final BatchCommitter<T> committer, final int maxBatchSize)
+    {
+        super(name);
+        _committer = committer;
+        _maxBatchSize = Math.max(1, maxBatchSize);
+        setDaemon(true);
+    }
+
+    StoreFuture commit(final T transaction, final boolean sync)
+    {
+        CommitFuture<T> future = new CommitFuture<>(transaction);
+        synchronized (_lock)
+        {
+            if (_stopped)
+            {
+                future.abort(new StoreException("Commit thread " + getName() + " has been stopped"));
+            }
+            else
+            {
+                _jobQueue.add(future);
+                _lock.notifyAll();
+            }
+        }
+
+        if (sync)
+        {
+            future.waitForCompletion();
+        }
+        return future;
+    }
+
+    /**
+     * Stops the thread once all transactions already queued have been committed.
+     */
+    void close() throws InterruptedException
+    {
+        synchronized (_lock)
+        {
+            _stopped = true;
+            _lock.notifyAll();
+        }
+        join();
+    }
+
+    @Override
+    public void run()
+    {
+        boolean stopped = false;
+        while (!stopped)
+        {
+            synchronized (_lock)
+            {
+                while (!_stopped && _jobQueue.isEmpty())
+                {
+                    try
+                    {
+                        _lock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        _stopped = true;
+                    }
+                }
+                stopped = _stopped;
+            }
+
+            while (!_jobQueue.isEmpty())
+            {
+                processJobs();
+            }
+        }
+    }
+
+    private void processJobs()
+    {
+        List<CommitFuture<T>> batch = new ArrayList<>();
+        List<T> transactions = new ArrayList<>();
+        CommitFuture<T> job;
+        while (batch.size() < _maxBatchSize && (job = _jobQueue.poll()) != null)
+        {
+            batch.add(job);
+            transactions.add(job.getTransaction());
+        }
+
+        try
+        {
+            long startTime = 0;
+            if (LOGGER.isDebugEnabled())
+            {
+                startTime = System.currentTimeMillis();
+            }
+
+            _committer.commit(transactions);
+
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Committed batch of " + batch.size() + " transaction(s) in "
+                             + (System.currentTimeMillis() - startTime) + " ms");
+            }
+
+            for (CommitFuture<T> commit : batch)
+            {
+                commit.complete();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            if (batch.size() == 1)
+            {
+                LOGGER.error("Failed to commit transaction", e);
+                batch.get(0).abort(toStoreException(e));
+            }
+            else
+            {
+                LOGGER.warn("Failed to commit batch of " + batch.size()
+                            + " transaction(s), committing each transaction individually", e);
+                for (CommitFuture<T> commit : batch)
+                {
+                    commitIndividually(commit);
+                }
+            }
+        }
+    }
+
+    private void commitIndividually(final CommitFuture<T> commit)
+    {
+        try
+        {
+            _committer.commit(Collections.singletonList(commit.getTransaction()));
+            commit.complete();
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("Failed to commit transaction", e);
+            commit.abort(toStoreException(e));
+        }
+    }
+
+    private static StoreException toStoreException(final RuntimeException e)
+    {
+        return e instanceof StoreException ? (StoreException) e : new StoreException(e);
+    }
+
+    private static final class CommitFuture<T> implements StoreFuture
+    {
+        private final T _transaction;
+        private boolean _complete;
+        private StoreException _exception;
+
+        private CommitFuture(final T transaction)
+        {
+            _transaction = transaction;
+        }
+
+        private T getTransaction()
+        {
+            return _transaction;
+        }
+
+        private synchronized void complete()
+        {
+            _complete = true;
+            notifyAll();
+        }
+
+        private synchronized void abort(final StoreException exception)
+        {
+            _complete = true;
+            _exception = exception;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized boolean isComplete()
+        {
+            return _complete;
+        }
+
+        @Override
+        public synchronized void waitForCompletion()
+        {
+            while (!_complete)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new StoreException(e);
+                }
+            }
+
+            if (_exception != null)
+            {
+                throw new StoreException("Commit failed: " + _exception.getMessage(), _exception);
+            }
+        }
+    }
+}
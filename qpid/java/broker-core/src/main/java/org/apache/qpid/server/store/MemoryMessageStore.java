@@ -60,6 +60,7 @@ public class MemoryMessageStore implements MessageStore
         @Override
         public StoreFuture commitTranAsync()
         {
+            commitTran();
             return StoreFuture.IMMEDIATE_FUTURE;
         }
 
@@ -0,0 +1,263 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of message content held in direct memory.
+ * <p>
+ * Content flowed to disk by a message store may be placed here so that, when it is needed again, it can be served
+ * without a read from the store and without occupying the heap.  When the cache is full the least recently used
+ * content is discarded; it remains available from the store.
+ * <p>
+ * The direct memory is allocated in slabs, up to the capacity of the cache, and divided into blocks which are reused
+ * once the content held in them is discarded, so that caching content allocates no direct memory once the cache has
+ * filled.  As the blocks are reused, content is copied out of the cache when read rather than shared.
+ */
+public class OffHeapContentCache
+{
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int BLOCKS_PER_SLAB = 256;
+
+    private final long _capacity;
+    private final int _blockSize;
+    private final int _maxBlocks;
+    private final LinkedHashMap<Long, CachedContent> _content = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<ByteBuffer> _slabs = new ArrayList<>();
+    /** the blocks allocated and not holding content; guarded by _content */
+    private int[] _freeBlocks = new int[0];
+    private int _freeBlockCount;
+    /** the number of blocks carved from the slabs so far */
+    private int _allocatedBlocks;
+    /** the number of bytes of content held */
+    private long _size;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+
+    public OffHeapContentCache(final long capacity)
+    {
+        this(capacity, DEFAULT_BLOCK_SIZE);
+    }
+
+    OffHeapContentCache(final long capacity, final int blockSize)
+    {
+        _capacity = capacity;
+        _blockSize = (int) Math.max(1l, Math.min(blockSize, capacity));
+        _maxBlocks = (int) Math.min(capacity / _blockSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Copies the given content into direct memory, discarding the least recently used content if required to make
+     * room.
+     *
+     * @return false if the content is too large to be cached
+     */
+    public boolean put(final long messageId, final byte[] content)
+    {
+        int blockCount = (content.length + _blockSize - 1) / _blockSize;
+        if (content.length > _capacity || blockCount > _maxBlocks)
+        {
+            return false;
+        }
+
+        synchronized (_content)
+        {
+            discard(_content.remove(messageId));
+
+            Iterator<CachedContent> iterator = _content.values().iterator();
+            while (_freeBlockCount + _maxBlocks - _allocatedBlocks < blockCount && iterator.hasNext())
+            {
+                CachedContent eldest = iterator.next();
+                iterator.remove();
+                discard(eldest);
+            }
+
+            int[] blocks = new int[blockCount];
+            for (int i = 0; i < blockCount; i++)
+            {
+                blocks[i] = allocateBlock();
+                int offset = i * _blockSize;
+                getBlock(blocks[i]).put(content, offset, Math.min(_blockSize, content.length - offset));
+            }
+            _content.put(messageId, new CachedContent(content.length, blocks));
+            _size += content.length;
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the cached content in a heap buffer whose backing array is exactly the content, or null if the
+     * content is not cached
+     */
+    public ByteBuffer get(final long messageId)
+    {
+        ByteBuffer copy = null;
+        synchronized (_content)
+        {
+            CachedContent cached = _content.get(messageId);
+            if (cached != null)
+            {
+                copy = ByteBuffer.allocate(cached._length);
+                for (int block : cached._blocks)
+                {
+                    ByteBuffer src = getBlock(block);
+                    src.limit(src.position() + Math.min(_blockSize, copy.remaining()));
+                    copy.put(src);
+                }
+                copy.flip();
+            }
+        }
+
+        if (copy == null)
+        {
+            _misses.incrementAndGet();
+            return null;
+        }
+        _hits.incrementAndGet();
+        return copy;
+    }
+
+    public void remove(final long messageId)
+    {
+        synchronized (_content)
+        {
+            discard(_content.remove(messageId));
+        }
+    }
+
+    /**
+     * Discards all content and releases the direct memory held, so that it may be reclaimed.
+     */
+    public void clear()
+    {
+        synchronized (_content)
+        {
+            _content.clear();
+            _slabs.clear();
+            _freeBlocks = new int[0];
+            _freeBlockCount = 0;
+            _allocatedBlocks = 0;
+            _size = 0;
+        }
+    }
+
+    private void discard(final CachedContent cached)
+    {
+        if (cached != null)
+        {
+            _size -= cached._length;
+            if (_freeBlocks.length < _freeBlockCount + cached._blocks.length)
+            {
+                int[] freeBlocks = new int[Math.max(_freeBlockCount + cached._blocks.length, _freeBlocks.length * 2)];
+                System.arraycopy(_freeBlocks, 0, freeBlocks, 0, _freeBlockCount);
+                _freeBlocks = freeBlocks;
+            }
+            System.arraycopy(cached._blocks, 0, _freeBlocks, _freeBlockCount, cached._blocks.length);
+            _freeBlockCount += cached._blocks.length;
+        }
+    }
+
+    private int allocateBlock()
+    {
+        if (_freeBlockCount > 0)
+        {
+            return _freeBlocks[--_freeBlockCount];
+        }
+        if (_allocatedBlocks % BLOCKS_PER_SLAB == 0)
+        {
+            int slabBlocks = Math.min(BLOCKS_PER_SLAB, _maxBlocks - _allocatedBlocks);
+            _slabs.add(ByteBuffer.allocateDirect(slabBlocks * _blockSize));
+        }
+        return _allocatedBlocks++;
+    }
+
+    /**
+     * @return a buffer positioned at the start of the given block and limited to its end
+     */
+    private ByteBuffer getBlock(final int block)
+    {
+        ByteBuffer buffer = _slabs.get(block / BLOCKS_PER_SLAB).duplicate();
+        int offset = (block % BLOCKS_PER_SLAB) * _blockSize;
+        buffer.limit(offset + _blockSize);
+        buffer.position(offset);
+        return buffer;
+    }
+
+    public long getCapacity()
+    {
+        return _capacity;
+    }
+
+    public long getSize()
+    {
+        synchronized (_content)
+        {
+            return _size;
+        }
+    }
+
+    public int getEntryCount()
+    {
+        synchronized (_content)
+        {
+            return _content.size();
+        }
+    }
+
+    public long getHitCount()
+    {
+        return _hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return _misses.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized (_content)
+        {
+            return getClass().getSimpleName() + "[entries=" + _content.size() + ", size=" + _size
+                   + ", capacity=" + _capacity + "]";
+        }
+    }
+
+    private static final class CachedContent
+    {
+        private final int _length;
+        private final int[] _blocks;
+
+        private CachedContent(final int length, final int[] blocks)
+        {
+            _length = length;
+            _blocks = blocks;
+        }
+    }
+}
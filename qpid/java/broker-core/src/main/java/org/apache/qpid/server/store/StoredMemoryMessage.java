@@ -22,13 +22,28 @@
 package org.apache.qpid.server.store;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import org.apache.qpid.server.util.ByteBufferUtils;
+
+/**
+ * A message held only in memory.
+ * <p>
+ * Content added in sequence is kept as the buffers it was received in rather than being copied into one buffer, so
+ * that a message published in several frames shares the buffers the frames were read into, unless the content is only
+ * a small part of such a buffer, when it is copied rather than keeping the whole buffer reachable.  Content that is read
+ * across more than one of those buffers is combined on first read, and held combined from then on.
+ */
 public class StoredMemoryMessage<T extends StorableMessageMetaData> implements StoredMessage<T>
 {
+    private static final ByteBuffer[] NO_CONTENT = new ByteBuffer[0];
+
     private final long _messageNumber;
-    private ByteBuffer _content;
     private final T _metaData;
 
+    /** the content, in order; replaced as a whole whenever it changes */
+    private volatile ByteBuffer[] _content = NO_CONTENT;
+
     public StoredMemoryMessage(long messageNumber, T metaData)
     {
         _messageNumber = messageNumber;
@@ -42,84 +57,113 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
 
     public void addContent(int offsetInMessage, ByteBuffer src)
     {
-        if(_content == null)
+        ByteBuffer[] content = _content;
+        if(offsetInMessage == length(content))
         {
-            if(offsetInMessage == 0)
+            if(src.hasRemaining())
             {
-                _content = src.slice();
-            }
-            else
-            {
-                final int contentSize = _metaData.getContentSize();
-                int size = (contentSize < offsetInMessage + src.remaining())
-                        ? offsetInMessage + src.remaining()
-                        : contentSize;
-                _content = ByteBuffer.allocate(size);
-                addContent(offsetInMessage, src);
+                content = Arrays.copyOf(content, content.length + 1);
+                content[content.length - 1] = ByteBufferUtils.retainableSlice(src);
+                _content = content;
             }
         }
         else
         {
-            if(_content.limit() >= offsetInMessage + src.remaining())
+            final int contentSize = _metaData.getContentSize();
+            int size = Math.max(Math.max(contentSize, offsetInMessage + src.remaining()), length(content));
+            ByteBuffer combined = ByteBuffer.allocate(size);
+            for(ByteBuffer buf : content)
             {
-                _content.position(offsetInMessage);
-                _content.put(src);
-                _content.position(0);
+                combined.put(buf.duplicate());
             }
-            else
-            {
-                final int contentSize = _metaData.getContentSize();
-                int size = (contentSize < offsetInMessage + src.remaining())
-                        ? offsetInMessage + src.remaining()
-                        : contentSize;
-                ByteBuffer oldContent = _content;
-                _content = ByteBuffer.allocate(size);
-                _content.put(oldContent);
-                _content.position(0);
-                addContent(offsetInMessage, src);
-            }
-
+            combined.position(offsetInMessage);
+            combined.put(src.duplicate());
+            combined.position(0);
+            _content = new ByteBuffer[] { combined };
         }
     }
 
     public int getContent(int offset, ByteBuffer dst)
     {
-        if(_content == null)
+        int length = 0;
+        for(ByteBuffer buf : _content)
         {
-            return 0;
+            if(!dst.hasRemaining())
+            {
+                break;
+            }
+            if(offset >= buf.remaining())
+            {
+                offset -= buf.remaining();
+            }
+            else
+            {
+                ByteBuffer src = buf.duplicate();
+                src.position(src.position() + offset);
+                if(src.remaining() > dst.remaining())
+                {
+                    src.limit(src.position() + dst.remaining());
+                }
+                length += src.remaining();
+                dst.put(src);
+                offset = 0;
+            }
         }
-        ByteBuffer src = _content.duplicate();
-
-        int oldPosition = src.position();
-
-        src.position(oldPosition + offset);
-
-        int length = dst.remaining() < src.remaining() ? dst.remaining() : src.remaining();
-        src.limit(oldPosition + length);
-
-        dst.put(src);
-
-
         return length;
     }
 
 
     public ByteBuffer getContent(int offsetInMessage, int size)
     {
-        if(_content == null)
+        ByteBuffer[] content = _content;
+        if(content.length == 0)
         {
             return null;
         }
-        ByteBuffer buf = _content.duplicate();
 
-        if(offsetInMessage != 0)
+        int offset = offsetInMessage;
+        for(ByteBuffer buf : content)
+        {
+            if(offset < buf.remaining())
+            {
+                if(size <= buf.remaining() - offset)
+                {
+                    ByteBuffer slice = buf.duplicate();
+                    slice.position(slice.position() + offset);
+                    slice = slice.slice();
+                    slice.limit(size);
+                    return slice;
+                }
+                break;
+            }
+            offset -= buf.remaining();
+        }
+
+        if(content.length == 1)
+        {
+            ByteBuffer slice = content[0].duplicate();
+            slice.position(Math.min(slice.limit(), slice.position() + offsetInMessage));
+            return slice.slice();
+        }
+
+        ByteBuffer combined = ByteBuffer.allocate(length(content));
+        for(ByteBuffer buf : content)
         {
-            buf.position(offsetInMessage);
-            buf = buf.slice();
+            combined.put(buf.duplicate());
         }
+        combined.flip();
+        _content = new ByteBuffer[] { combined };
+        return getContent(offsetInMessage, size);
+    }
 
-        buf.limit(size);
-        return buf;
+    private static int length(ByteBuffer[] content)
+    {
+        int length = 0;
+        for(ByteBuffer buf : content)
+        {
+            length += buf.remaining();
+        }
+        return length;
     }
 
     public T getMetaData()
@@ -142,4 +186,9 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
     {
         return false;
     }
+
+    @Override
+    public void reloadContent()
+    {
+    }
 }
@@ -39,4 +39,10 @@ public interface StoredMessage<M extends StorableMessageMetaData>
     boolean isInMemory();
 
     boolean flowToDisk();
+
+    /**
+     * Brings content which has been flowed to disk back into memory ahead of it being needed.  Has no effect if the
+     * content is already in memory.
+     */
+    void reloadContent();
 }
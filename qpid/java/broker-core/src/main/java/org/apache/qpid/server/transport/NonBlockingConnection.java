@@ -0,0 +1,634 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.SenderClosedException;
+import org.apache.qpid.transport.SenderException;
+import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.Ticker;
+import org.apache.qpid.transport.network.TransportActivity;
+import org.apache.qpid.transport.network.io.IdleTimeoutTicker;
+
+/**
+ * A network connection serviced by a {@link SelectorThread} rather than by dedicated reader and writer threads.
+ * <p>
+ * All socket I/O (and, for SSL connections, all {@link SSLEngine} wrapping and unwrapping) happens on the owning
+ * selector thread.  Other threads only enqueue outbound data via {@link #send(ByteBuffer)} and ask the selector
+ * thread to service the connection via {@link #flush()} or {@link #close()}.
+ * <p>
+ * As with the blocking transport's sender, the bytes sent and not yet written to the socket are limited: once the
+ * limit is reached other threads sending block until the selector thread has written enough, and the selector thread
+ * stops reading from the connection, so that a slow client cannot make the broker hold unbounded output for it.
+ */
+public class NonBlockingConnection implements NetworkConnection, Sender<ByteBuffer>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NonBlockingConnection.class);
+
+    private final SocketChannel _socketChannel;
+    private final ProtocolEngine _protocolEngine;
+    private final SSLEngine _sslEngine;
+    private final Ticker _ticker;
+    private final SelectorThread _selector;
+    private final int _receiveBufferSize;
+    private final SocketAddress _remoteSocketAddress;
+    private final SocketAddress _localSocketAddress;
+    private final int _capacity;
+    private final long _timeout;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> _buffers = new ConcurrentLinkedQueue<>();
+    /** the bytes sent, or produced by wrapping them, which have not yet been written to the socket */
+    private final AtomicLong _queuedBytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<Thread> _waitingSenders = new ConcurrentLinkedQueue<>();
+    private final List<ByteBuffer> _pendingAppData = new ArrayList<>();
+    private final List<ByteBuffer> _pendingNetData = new ArrayList<>();
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+    private final AtomicBoolean _scheduled = new AtomicBoolean(false);
+
+    private ByteBuffer _currentBuffer;
+    private ByteBuffer _netInputBuffer;
+    private boolean _engineNotifiedOfClose;
+    private volatile long _lastReadTime;
+
+    private volatile int _maxReadIdle;
+    private volatile int _maxWriteIdle;
+
+    private Principal _principal;
+    private boolean _principalChecked;
+    private final Object _lock = new Object();
+
+    public NonBlockingConnection(SocketChannel socketChannel,
+                                 ProtocolEngine protocolEngine,
+                                 SSLEngine sslEngine,
+                                 int receiveBufferSize,
+                                 int sendBufferSize,
+                                 int timeout,
+                                 SelectorThread selector)
+    {
+        _socketChannel = socketChannel;
+        _protocolEngine = protocolEngine;
+        _sslEngine = sslEngine;
+        _receiveBufferSize = receiveBufferSize;
+        _capacity = sendBufferSize;
+        _timeout = timeout;
+        _selector = selector;
+
+        final IdleTimeoutTicker ticker = new IdleTimeoutTicker(new ConnectionActivity(), timeout);
+        ticker.setConnection(this);
+        _ticker = ticker;
+        _lastReadTime = System.currentTimeMillis();
+        _remoteSocketAddress = socketChannel.socket().getRemoteSocketAddress();
+        _localSocketAddress = socketChannel.socket().getLocalSocketAddress();
+
+        if(_sslEngine != null)
+        {
+            _netInputBuffer = ByteBuffer.allocate(Math.max(_sslEngine.getSession().getPacketBufferSize(),
+                                                           receiveBufferSize));
+        }
+    }
+
+    @Override
+    public void start()
+    {
+        _selector.addConnection(this);
+    }
+
+    @Override
+    public Sender<ByteBuffer> getSender()
+    {
+        return this;
+    }
+
+    @Override
+    public void setIdleTimeout(final int i)
+    {
+        // Idle timeouts are handled by the ticker rather than the socket
+    }
+
+    @Override
+    public void send(final ByteBuffer msg)
+    {
+        if(_closed.get())
+        {
+            throw new SenderClosedException(String.format("sender for socket %s is closed", _remoteSocketAddress),
+                                            null);
+        }
+        final int remaining = msg.remaining();
+        if(remaining > 0)
+        {
+            // the selector thread cannot wait for itself to write, instead it stops reading until the output drains
+            if(_queuedBytes.get() >= _capacity && Thread.currentThread() != _selector)
+            {
+                awaitCapacity();
+            }
+            _queuedBytes.addAndGet(remaining);
+            _buffers.add(msg.duplicate());
+            msg.position(msg.limit());
+        }
+    }
+
+    private void awaitCapacity()
+    {
+        flush();
+
+        final Thread currentThread = Thread.currentThread();
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(_timeout);
+        _waitingSenders.add(currentThread);
+        try
+        {
+            long now = start;
+            while(!_closed.get() && _queuedBytes.get() >= _capacity && now < deadline)
+            {
+                LockSupport.parkNanos(this, deadline - now);
+                now = System.nanoTime();
+            }
+        }
+        finally
+        {
+            _waitingSenders.remove(currentThread);
+        }
+
+        if(_closed.get())
+        {
+            throw new SenderClosedException(String.format("sender for socket %s is closed", _remoteSocketAddress),
+                                            null);
+        }
+        if(_queuedBytes.get() >= _capacity)
+        {
+            LOGGER.error("Write timed out for socket {}: queued bytes {}", _remoteSocketAddress, _queuedBytes.get());
+            close();
+            throw new SenderException(String.format("write timed out for socket %s: queued bytes %d",
+                                                    _remoteSocketAddress, _queuedBytes.get()));
+        }
+    }
+
+    private void release(final long written)
+    {
+        if(_queuedBytes.addAndGet(-written) < _capacity && !_waitingSenders.isEmpty())
+        {
+            wakeWaitingSenders();
+        }
+    }
+
+    private void wakeWaitingSenders()
+    {
+        for(Thread waiter : _waitingSenders)
+        {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        schedule();
+    }
+
+    @Override
+    public void close()
+    {
+        if(!_closed.getAndSet(true))
+        {
+            LOGGER.debug("Closing connection {}", _remoteSocketAddress);
+            wakeWaitingSenders();
+            schedule();
+        }
+    }
+
+    private void schedule()
+    {
+        if(!_scheduled.getAndSet(true))
+        {
+            _selector.wakeup(this);
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress()
+    {
+        return _remoteSocketAddress;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress()
+    {
+        return _localSocketAddress;
+    }
+
+    @Override
+    public void setMaxWriteIdle(final int sec)
+    {
+        _maxWriteIdle = sec;
+    }
+
+    @Override
+    public void setMaxReadIdle(final int sec)
+    {
+        _maxReadIdle = sec;
+    }
+
+    @Override
+    public Principal getPeerPrincipal()
+    {
+        synchronized (_lock)
+        {
+            if(!_principalChecked)
+            {
+                if(_sslEngine != null)
+                {
+                    try
+                    {
+                        _principal = _sslEngine.getSession().getPeerPrincipal();
+                    }
+                    catch(SSLPeerUnverifiedException e)
+                    {
+                        _principal = null;
+                    }
+                }
+
+                _principalChecked = true;
+            }
+
+            return _principal;
+        }
+    }
+
+    @Override
+    public int getMaxReadIdle()
+    {
+        return _maxReadIdle;
+    }
+
+    @Override
+    public int getMaxWriteIdle()
+    {
+        return _maxWriteIdle;
+    }
+
+    SocketChannel getSocketChannel()
+    {
+        return _socketChannel;
+    }
+
+    boolean isClosed()
+    {
+        return _closed.get();
+    }
+
+    boolean isWritePending()
+    {
+        return !_buffers.isEmpty() || !_pendingAppData.isEmpty() || !_pendingNetData.isEmpty();
+    }
+
+    /**
+     * @return true if so much output awaits writing that no more should be read from the connection until it drains
+     */
+    boolean isOutputFull()
+    {
+        return _queuedBytes.get() >= _capacity;
+    }
+
+    int getTimeToNextTick(long currentTime)
+    {
+        return _ticker.getTimeToNextTick(currentTime);
+    }
+
+    int tick(long currentTime)
+    {
+        return _ticker.tick(currentTime);
+    }
+
+    /**
+     * Performs all outstanding work for this connection.  Must only be called from the owning selector thread.
+     *
+     * @return true if the connection remains open and should stay registered with the selector
+     */
+    boolean doWork()
+    {
+        _scheduled.set(false);
+        boolean fullyWritten = false;
+        try
+        {
+            if(!_closed.get() && !isOutputFull())
+            {
+                doRead();
+            }
+            fullyWritten = doWrite();
+
+            // servicing the handshake may allow buffered network input to be unwrapped without further reads
+            while(_sslEngine != null && !_closed.get() && _netInputBuffer.position() > 0 && processNetInput())
+            {
+                fullyWritten = doWrite();
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            if(!_closed.getAndSet(true))
+            {
+                LOGGER.debug("Exception performing I/O for connection {}", _remoteSocketAddress, e);
+                _protocolEngine.exception(e);
+            }
+            fullyWritten = true;
+        }
+
+        if(_closed.get() && fullyWritten)
+        {
+            shutdown();
+            return false;
+        }
+        return true;
+    }
+
+    void shutdown()
+    {
+        _closed.set(true);
+        wakeWaitingSenders();
+        try
+        {
+            _socketChannel.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.info("Exception closing socket {}", _remoteSocketAddress, e);
+        }
+        finally
+        {
+            if(!_engineNotifiedOfClose)
+            {
+                _engineNotifiedOfClose = true;
+                _protocolEngine.closed();
+            }
+        }
+    }
+
+    private void doRead() throws IOException
+    {
+        if(_sslEngine == null)
+        {
+            ByteBuffer buffer = getCurrentBuffer(_receiveBufferSize);
+            int read = _socketChannel.read(buffer);
+            if(read > 0)
+            {
+                _lastReadTime = System.currentTimeMillis();
+            }
+            if(read == -1)
+            {
+                _closed.set(true);
+            }
+            else if(read > 0)
+            {
+                deliver(read);
+            }
+        }
+        else
+        {
+            int read = _socketChannel.read(_netInputBuffer);
+            if(read > 0)
+            {
+                _lastReadTime = System.currentTimeMillis();
+            }
+            if(read == -1)
+            {
+                _closed.set(true);
+            }
+            else if(read > 0)
+            {
+                processNetInput();
+            }
+        }
+    }
+
+    private boolean processNetInput() throws SSLException
+    {
+        _netInputBuffer.flip();
+        final int initialRemaining = _netInputBuffer.remaining();
+        try
+        {
+            unwrapInput();
+        }
+        finally
+        {
+            _netInputBuffer.compact();
+        }
+        return _netInputBuffer.position() != initialRemaining;
+    }
+
+    private void unwrapInput() throws SSLException
+    {
+        final int appBufferSize = _sslEngine.getSession().getApplicationBufferSize();
+        while(_netInputBuffer.hasRemaining() && !_closed.get())
+        {
+            ByteBuffer appData = getCurrentBuffer(appBufferSize);
+            SSLEngineResult result = _sslEngine.unwrap(_netInputBuffer, appData);
+            runSSLEngineTasks();
+
+            if(result.bytesProduced() > 0)
+            {
+                deliver(result.bytesProduced());
+            }
+
+            switch(result.getStatus())
+            {
+                case CLOSED:
+                    _closed.set(true);
+                    return;
+                case BUFFER_OVERFLOW:
+                    _currentBuffer = null;
+                    break;
+                case BUFFER_UNDERFLOW:
+                    return;
+                default:
+                    if(result.bytesConsumed() == 0 && result.bytesProduced() == 0)
+                    {
+                        return;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Returns the buffer into which data should next be read.  As with the blocking transport, bytes handed to the
+     * protocol engine are never overwritten; once more than half of the buffer has been used a fresh one is
+     * allocated.
+     */
+    private ByteBuffer getCurrentBuffer(int minimumRemaining)
+    {
+        if(_currentBuffer == null
+           || _currentBuffer.remaining() < minimumRemaining
+           || _currentBuffer.position() > _currentBuffer.capacity() / 2)
+        {
+            _currentBuffer = ByteBuffer.allocate(Math.max(_receiveBufferSize, minimumRemaining));
+        }
+        return _currentBuffer;
+    }
+
+    private void deliver(int length)
+    {
+        ByteBuffer data = _currentBuffer.duplicate();
+        data.limit(_currentBuffer.position());
+        data.position(_currentBuffer.position() - length);
+        _protocolEngine.received(data);
+    }
+
+    private boolean doWrite() throws IOException
+    {
+        ByteBuffer buffer;
+        while((buffer = _buffers.poll()) != null)
+        {
+            _pendingAppData.add(buffer);
+        }
+
+        final List<ByteBuffer> output;
+        if(_sslEngine == null)
+        {
+            output = _pendingAppData;
+        }
+        else
+        {
+            wrapPendingData();
+            output = _pendingNetData;
+        }
+
+        if(!output.isEmpty())
+        {
+            long written = _socketChannel.write(output.toArray(new ByteBuffer[output.size()]));
+            removeWritten(output);
+            release(written);
+        }
+
+        return output.isEmpty() && _buffers.isEmpty();
+    }
+
+    private void wrapPendingData() throws SSLException
+    {
+        while(!_pendingAppData.isEmpty()
+              || _sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
+              || (_closed.get() && !_sslEngine.isOutboundDone()))
+        {
+            if(_closed.get() && _pendingAppData.isEmpty())
+            {
+                _sslEngine.closeOutbound();
+            }
+
+            ByteBuffer netData = ByteBuffer.allocate(_sslEngine.getSession().getPacketBufferSize());
+            SSLEngineResult result =
+                    _sslEngine.wrap(_pendingAppData.toArray(new ByteBuffer[_pendingAppData.size()]), netData);
+            runSSLEngineTasks();
+            removeWritten(_pendingAppData);
+            // the bytes awaiting the socket are now those of the network data rather than those it was wrapped from
+            release(result.bytesConsumed() - result.bytesProduced());
+
+            netData.flip();
+            if(netData.hasRemaining())
+            {
+                _pendingNetData.add(netData);
+            }
+
+            if(result.getStatus() == SSLEngineResult.Status.CLOSED
+               || (result.bytesConsumed() == 0 && result.bytesProduced() == 0))
+            {
+                break;
+            }
+        }
+    }
+
+    private void runSSLEngineTasks()
+    {
+        if(_sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK)
+        {
+            Runnable task;
+            while((task = _sslEngine.getDelegatedTask()) != null)
+            {
+                task.run();
+            }
+        }
+    }
+
+    private static void removeWritten(final List<ByteBuffer> buffers)
+    {
+        Iterator<ByteBuffer> iterator = buffers.iterator();
+        while(iterator.hasNext() && !iterator.next().hasRemaining())
+        {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Reports read activity at the network level as well as that seen by the protocol engine, so that neither
+     * an SSL handshake nor the interval before the protocol header arrives is mistaken for an idle connection.
+     */
+    private class ConnectionActivity implements TransportActivity
+    {
+        @Override
+        public long getLastReadTime()
+        {
+            return Math.max(_lastReadTime, _protocolEngine.getLastReadTime());
+        }
+
+        @Override
+        public long getLastWriteTime()
+        {
+            return _protocolEngine.getLastWriteTime();
+        }
+
+        @Override
+        public void writerIdle()
+        {
+            _protocolEngine.writerIdle();
+        }
+
+        @Override
+        public void readerIdle()
+        {
+            _protocolEngine.readerIdle();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NonBlockingConnection[" + _remoteSocketAddress + "]";
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.configuration.CommonProperties;
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.protocol.ProtocolEngineFactory;
+import org.apache.qpid.transport.NetworkTransportConfiguration;
+import org.apache.qpid.transport.TransportException;
+import org.apache.qpid.transport.network.IncomingNetworkTransport;
+import org.apache.qpid.transport.network.security.ssl.SSLUtil;
+
+/**
+ * An incoming network transport which services its connections using a fixed pool of {@link SelectorThread}s
+ * rather than a reader and a writer thread per connection.
+ */
+public class NonBlockingNetworkTransport implements IncomingNetworkTransport
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NonBlockingNetworkTransport.class);
+
+    private static final int TIMEOUT = Integer.getInteger(CommonProperties.IO_NETWORK_TRANSPORT_TIMEOUT_PROP_NAME,
+                                                          CommonProperties.IO_NETWORK_TRANSPORT_TIMEOUT_DEFAULT);
+    private static final int HANDSHAKE_TIMEOUT = Integer.getInteger(CommonProperties.HANDSHAKE_TIMEOUT_PROP_NAME ,
+                                                                    CommonProperties.HANDSHAKE_TIMEOUT_DEFAULT);
+
+    private final int _selectorThreadCount;
+    private AcceptingThread _acceptor;
+
+    public NonBlockingNetworkTransport(final int selectorThreadCount)
+    {
+        if(selectorThreadCount < 1)
+        {
+            throw new IllegalArgumentException("At least one selector thread is required, not " + selectorThreadCount);
+        }
+        _selectorThreadCount = selectorThreadCount;
+    }
+
+    @Override
+    public void accept(final NetworkTransportConfiguration config,
+                       final ProtocolEngineFactory factory,
+                       final SSLContext sslContext)
+    {
+        try
+        {
+            _acceptor = new AcceptingThread(config, factory, sslContext);
+            _acceptor.setName(String.format("NonBlockingNetworkAcceptor - %s", config.getAddress()));
+            _acceptor.setDaemon(false);
+            _acceptor.start();
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Failed to start AMQP on port : " + config, e);
+        }
+    }
+
+    @Override
+    public int getAcceptingPort()
+    {
+        return _acceptor == null ? -1 : _acceptor.getPort();
+    }
+
+    @Override
+    public void close()
+    {
+        if(_acceptor != null)
+        {
+            _acceptor.close();
+        }
+    }
+
+    private class AcceptingThread extends Thread
+    {
+        private volatile boolean _closed = false;
+        private final NetworkTransportConfiguration _config;
+        private final ProtocolEngineFactory _factory;
+        private final SSLContext _sslContext;
+        private final ServerSocketChannel _serverSocketChannel;
+        private final SelectorThread[] _selectorThreads;
+        private int _nextSelectorThread;
+
+        private AcceptingThread(NetworkTransportConfiguration config,
+                                ProtocolEngineFactory factory,
+                                SSLContext sslContext) throws IOException
+        {
+            _config = config;
+            _factory = factory;
+            _sslContext = sslContext;
+
+            _serverSocketChannel = ServerSocketChannel.open();
+            _serverSocketChannel.socket().setReuseAddress(true);
+            _serverSocketChannel.socket().bind(config.getAddress());
+
+            _selectorThreads = new SelectorThread[_selectorThreadCount];
+            for(int i = 0; i < _selectorThreadCount; i++)
+            {
+                _selectorThreads[i] = new SelectorThread(String.format("SelectorThread-%d - %s",
+                                                                       i, config.getAddress()));
+                _selectorThreads[i].start();
+            }
+        }
+
+        public void close()
+        {
+            LOGGER.debug("Shutting down the Acceptor");
+            _closed = true;
+
+            try
+            {
+                _serverSocketChannel.close();
+            }
+            catch (IOException e)
+            {
+                throw new TransportException(e);
+            }
+            finally
+            {
+                for(SelectorThread selectorThread : _selectorThreads)
+                {
+                    selectorThread.close();
+                }
+            }
+        }
+
+        private int getPort()
+        {
+            return _serverSocketChannel.socket().getLocalPort();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!_closed)
+                {
+                    SocketChannel socketChannel = null;
+                    try
+                    {
+                        socketChannel = _serverSocketChannel.accept();
+
+                        ProtocolEngine engine = _factory.newProtocolEngine(socketChannel.socket().getRemoteSocketAddress());
+
+                        if(engine != null)
+                        {
+                            socketChannel.socket().setTcpNoDelay(_config.getTcpNoDelay());
+                            socketChannel.socket().setSendBufferSize(_config.getSendBufferSize());
+                            socketChannel.socket().setReceiveBufferSize(_config.getReceiveBufferSize());
+                            socketChannel.configureBlocking(false);
+
+                            NonBlockingConnection connection =
+                                    new NonBlockingConnection(socketChannel,
+                                                              engine,
+                                                              createSSLEngine(),
+                                                              _config.getReceiveBufferSize(),
+                                                              _config.getSendBufferSize(),
+                                                              TIMEOUT,
+                                                              nextSelectorThread());
+
+                            connection.setMaxReadIdle(HANDSHAKE_TIMEOUT);
+
+                            engine.setNetworkConnection(connection, connection.getSender());
+
+                            connection.start();
+                        }
+                        else
+                        {
+                            socketChannel.close();
+                        }
+                    }
+                    catch(RuntimeException e)
+                    {
+                        LOGGER.error("Error in Acceptor thread on address " + _config.getAddress(), e);
+                        closeChannelIfNecessary(socketChannel);
+                    }
+                    catch(ClosedChannelException e)
+                    {
+                        LOGGER.debug("Server socket channel closed");
+                        _closed = true;
+                    }
+                    catch(IOException e)
+                    {
+                        if(!_closed)
+                        {
+                            LOGGER.error("Error in Acceptor thread on address " + _config.getAddress(), e);
+                            closeChannelIfNecessary(socketChannel);
+                            try
+                            {
+                                //Delay to avoid tight spinning the loop during issues such as too many open files
+                                Thread.sleep(1000);
+                            }
+                            catch (InterruptedException ie)
+                            {
+                                LOGGER.debug("Stopping acceptor due to interrupt request");
+                                _closed = true;
+                            }
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                if(LOGGER.isDebugEnabled())
+                {
+                    LOGGER.debug("Acceptor exiting, no new connections will be accepted on address "
+                                  + _config.getAddress());
+                }
+            }
+        }
+
+        private SelectorThread nextSelectorThread()
+        {
+            SelectorThread selectorThread = _selectorThreads[_nextSelectorThread];
+            _nextSelectorThread = (_nextSelectorThread + 1) % _selectorThreads.length;
+            return selectorThread;
+        }
+
+        private SSLEngine createSSLEngine()
+        {
+            if(_sslContext == null)
+            {
+                return null;
+            }
+
+            SSLEngine sslEngine = _sslContext.createSSLEngine();
+            sslEngine.setUseClientMode(false);
+            SSLUtil.removeSSLv3Support(sslEngine);
+            SSLUtil.updateEnabledCipherSuites(sslEngine,
+                                              _config.getEnabledCipherSuites(),
+                                              _config.getDisabledCipherSuites());
+
+            if(_config.needClientAuth())
+            {
+                sslEngine.setNeedClientAuth(true);
+            }
+            else if(_config.wantClientAuth())
+            {
+                sslEngine.setWantClientAuth(true);
+            }
+            return sslEngine;
+        }
+
+        private void closeChannelIfNecessary(final SocketChannel socketChannel)
+        {
+            if(socketChannel != null)
+            {
+                try
+                {
+                    socketChannel.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.debug("Exception while closing socket", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.transport;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.transport.TransportException;
+
+/**
+ * Multiplexes the I/O of many {@link NonBlockingConnection}s over a single thread.
+ */
+public class SelectorThread extends Thread
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorThread.class);
+
+    private final Selector _selector;
+    private final ConcurrentLinkedQueue<NonBlockingConnection> _unregisteredConnections = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<NonBlockingConnection> _scheduledConnections = new ConcurrentLinkedQueue<>();
+    private final Set<NonBlockingConnection> _activeConnections = new HashSet<>();
+    private final AtomicLong _connectionCount = new AtomicLong();
+
+    private volatile boolean _closed;
+    private long _nextTickTime;
+
+    public SelectorThread(final String name)
+    {
+        super(name);
+        setDaemon(true);
+        try
+        {
+            _selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Failed to open selector", e);
+        }
+    }
+
+    public void addConnection(final NonBlockingConnection connection)
+    {
+        _connectionCount.incrementAndGet();
+        _unregisteredConnections.add(connection);
+        _selector.wakeup();
+    }
+
+    public void wakeup(final NonBlockingConnection connection)
+    {
+        _scheduledConnections.add(connection);
+        _selector.wakeup();
+    }
+
+    public long getConnectionCount()
+    {
+        return _connectionCount.get();
+    }
+
+    public void close()
+    {
+        _closed = true;
+        _selector.wakeup();
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (!_closed)
+            {
+                long currentTime = System.currentTimeMillis();
+                long timeout = _nextTickTime == 0 ? 0 : Math.max(1L, _nextTickTime - currentTime);
+
+                _selector.select(timeout);
+
+                Set<NonBlockingConnection> toBeServiced = new LinkedHashSet<>();
+
+                Iterator<SelectionKey> iterator = _selector.selectedKeys().iterator();
+                while (iterator.hasNext())
+                {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    toBeServiced.add((NonBlockingConnection) key.attachment());
+                }
+
+                NonBlockingConnection connection;
+                while ((connection = _unregisteredConnections.poll()) != null)
+                {
+                    try
+                    {
+                        connection.getSocketChannel().register(_selector, SelectionKey.OP_READ, connection);
+                        _activeConnections.add(connection);
+                        toBeServiced.add(connection);
+                    }
+                    catch (ClosedChannelException e)
+                    {
+                        _connectionCount.decrementAndGet();
+                        connection.shutdown();
+                    }
+                }
+
+                while ((connection = _scheduledConnections.poll()) != null)
+                {
+                    if (_activeConnections.contains(connection))
+                    {
+                        toBeServiced.add(connection);
+                    }
+                }
+
+                currentTime = System.currentTimeMillis();
+                if (_nextTickTime != 0 && currentTime >= _nextTickTime)
+                {
+                    performTicks(currentTime);
+                }
+
+                for (NonBlockingConnection serviced : toBeServiced)
+                {
+                    service(serviced, currentTime);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Failed to select on " + getName(), e);
+        }
+        finally
+        {
+            closeAllConnections();
+        }
+    }
+
+    private void performTicks(final long currentTime)
+    {
+        _nextTickTime = 0;
+        List<NonBlockingConnection> connections = new ArrayList<>(_activeConnections);
+        for (NonBlockingConnection connection : connections)
+        {
+            int tick = connection.getTimeToNextTick(currentTime);
+            if (tick <= 0)
+            {
+                tick = connection.tick(currentTime);
+            }
+            updateNextTickTime(currentTime + Math.max(1, tick));
+        }
+    }
+
+    private void service(final NonBlockingConnection connection, final long currentTime)
+    {
+        SelectionKey key = connection.getSocketChannel().keyFor(_selector);
+        if (connection.doWork())
+        {
+            if (key != null && key.isValid())
+            {
+                int interestOps = connection.isClosed() || connection.isOutputFull() ? 0 : SelectionKey.OP_READ;
+                if (connection.isWritePending())
+                {
+                    interestOps |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(interestOps);
+            }
+            updateNextTickTime(currentTime + Math.max(1, connection.getTimeToNextTick(currentTime)));
+        }
+        else
+        {
+            if (key != null)
+            {
+                key.cancel();
+            }
+            if (_activeConnections.remove(connection))
+            {
+                _connectionCount.decrementAndGet();
+            }
+        }
+    }
+
+    private void updateNextTickTime(final long tickTime)
+    {
+        if (_nextTickTime == 0 || tickTime < _nextTickTime)
+        {
+            _nextTickTime = tickTime;
+        }
+    }
+
+    private void closeAllConnections()
+    {
+        NonBlockingConnection connection;
+        while ((connection = _unregisteredConnections.poll()) != null)
+        {
+            _activeConnections.add(connection);
+        }
+        for (NonBlockingConnection activeConnection : _activeConnections)
+        {
+            activeConnection.shutdown();
+        }
+        _activeConnections.clear();
+        _connectionCount.set(0);
+        try
+        {
+            _selector.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.debug("Exception closing selector", e);
+        }
+    }
+}
@@ -78,7 +78,7 @@ class TCPandSSLTransport implements AcceptingTransport
         }
 
         final NetworkTransportConfiguration settings = new ServerNetworkTransportConfiguration();
-        _networkTransport = org.apache.qpid.transport.network.Transport.getIncomingTransportInstance();
+        _networkTransport = createNetworkTransport();
         final MultiVersionProtocolEngineFactory protocolEngineFactory =
                 new MultiVersionProtocolEngineFactory(
                 _port.getParent(Broker.class), _transports.contains(Transport.TCP) ? _sslContext : null,
@@ -91,6 +91,21 @@ class TCPandSSLTransport implements AcceptingTransport
         _networkTransport.accept(settings, protocolEngineFactory, _transports.contains(Transport.TCP) ? null : _sslContext);
     }
 
+    private IncomingNetworkTransport createNetworkTransport()
+    {
+        if(Boolean.TRUE.equals(_port.getContextValue(Boolean.class, AmqpPort.PORT_AMQP_NON_BLOCKING_IO)))
+        {
+            Integer selectorThreadCount = _port.getContextValue(Integer.class, AmqpPort.PORT_AMQP_SELECTOR_THREAD_COUNT);
+            return new NonBlockingNetworkTransport(selectorThreadCount == null
+                                                           ? AmqpPort.DEFAULT_AMQP_SELECTOR_THREAD_COUNT
+                                                           : selectorThreadCount);
+        }
+        else
+        {
+            return org.apache.qpid.transport.network.Transport.getIncomingTransportInstance();
+        }
+    }
+
     public int getAcceptingPort()
     {
         return _networkTransport.getAcceptingPort();
@@ -0,0 +1,53 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.util;
+
+import java.nio.ByteBuffer;
+
+public final class ByteBufferUtils
+{
+    /**
+     * the smallest part of its backing buffer a slice may be and still be retained rather than copied, as the
+     * reciprocal of the fraction
+     */
+    private static final int MAX_RETAINED_SLICE_RATIO = 2;
+
+    private ByteBufferUtils()
+    {
+    }
+
+    /**
+     * Returns the remaining content of the given buffer in a form that may be held on to after the buffer is reused:
+     * a slice of it if the content is most of the buffer, otherwise a copy, so that a small message does not keep a
+     * much larger network buffer it was read into reachable.
+     */
+    public static ByteBuffer retainableSlice(ByteBuffer src)
+    {
+        if(src.remaining() * MAX_RETAINED_SLICE_RATIO >= src.capacity())
+        {
+            return src.slice();
+        }
+        ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+        copy.put(src.duplicate());
+        copy.flip();
+        return copy;
+    }
+}
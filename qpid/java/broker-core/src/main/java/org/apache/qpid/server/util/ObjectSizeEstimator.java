@@ -0,0 +1,110 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Estimates the heap occupied by instances of a class from the layout of its instance fields.
+ * <p>
+ * The estimate assumes a HotSpot style layout: an object header, fields packed at their natural size and the whole
+ * rounded up to eight bytes.  Compressed references are assumed on 64-bit JVMs with a heap below 32GB, matching the
+ * HotSpot default.
+ */
+public final class ObjectSizeEstimator
+{
+    private static final boolean IS_64_BIT = System.getProperty("os.arch", "").contains("64")
+                                             || "64".equals(System.getProperty("sun.arch.data.model"));
+    private static final boolean COMPRESSED_REFERENCES = IS_64_BIT
+                                                         && Runtime.getRuntime().maxMemory() < 32l * 1024l * 1024l * 1024l;
+
+    public static final int REFERENCE_SIZE = IS_64_BIT && !COMPRESSED_REFERENCES ? 8 : 4;
+    public static final int OBJECT_HEADER_SIZE = IS_64_BIT ? (COMPRESSED_REFERENCES ? 12 : 16) : 8;
+    private static final int OBJECT_ALIGNMENT = 8;
+
+    private static final ConcurrentMap<Class<?>, Long> SHALLOW_SIZES = new ConcurrentHashMap<>();
+
+    private ObjectSizeEstimator()
+    {
+    }
+
+    /**
+     * @return the estimated size in bytes of an instance of the given class, excluding any objects it refers to
+     */
+    public static long shallowSize(final Class<?> clazz)
+    {
+        Long size = SHALLOW_SIZES.get(clazz);
+        if (size == null)
+        {
+            size = align(OBJECT_HEADER_SIZE + fieldsSize(clazz));
+            SHALLOW_SIZES.putIfAbsent(clazz, size);
+        }
+        return size;
+    }
+
+    private static long fieldsSize(final Class<?> clazz)
+    {
+        long size = 0l;
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass())
+        {
+            for (Field field : c.getDeclaredFields())
+            {
+                if (!Modifier.isStatic(field.getModifiers()))
+                {
+                    size += fieldSize(field.getType());
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int fieldSize(final Class<?> type)
+    {
+        if (type == long.class || type == double.class)
+        {
+            return 8;
+        }
+        else if (type == int.class || type == float.class)
+        {
+            return 4;
+        }
+        else if (type == short.class || type == char.class)
+        {
+            return 2;
+        }
+        else if (type == byte.class || type == boolean.class)
+        {
+            return 1;
+        }
+        else
+        {
+            return REFERENCE_SIZE;
+        }
+    }
+
+    private static long align(final long size)
+    {
+        return (size + OBJECT_ALIGNMENT - 1) & ~(OBJECT_ALIGNMENT - 1);
+    }
+}
@@ -70,6 +70,7 @@ import org.apache.qpid.server.protocol.AMQConnectionModel;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.protocol.LinkRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.queue.ExpiryIndex;
 import org.apache.qpid.server.queue.QueueConsumer;
 import org.apache.qpid.server.queue.QueueEntry;
 import org.apache.qpid.server.security.SecurityManager;
@@ -139,6 +140,8 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
 
     private final AtomicLong _targetSize = new AtomicLong(1024*1024);
 
+    private final ExpiryIndex _expiryIndex = new ExpiryIndex();
+
     private MessageStoreLogSubject _messageStoreLogSubject;
 
     private final Set<BlockingType> _blockingReasons = Collections.synchronizedSet(EnumSet.noneOf(BlockingType.class));
@@ -180,6 +183,7 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     private MessageStoreRecoverer _messageStoreRecoverer;
     private final FileSystemSpaceChecker _fileSystemSpaceChecker = new FileSystemSpaceChecker();
     private int _fileSystemMaxUsagePercent;
+    private long _conversionCacheMaxMessageSize;
 
     public AbstractVirtualHost(final Map<String, Object> attributes, VirtualHostNode<?> virtualHostNode)
     {
@@ -306,6 +310,7 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
 
 
         _fileSystemMaxUsagePercent = getContextValue(Integer.class, Broker.STORE_FILESYSTEM_MAX_USAGE_PERCENT);
+        _conversionCacheMaxMessageSize = getContextValue(Long.class, CONVERSION_CACHE_MAX_MESSAGE_SIZE);
 
 
         QpidServiceLoader serviceLoader = new QpidServiceLoader();
@@ -460,6 +465,18 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         return _eventLogger;
     }
 
+    @Override
+    public ExpiryIndex getExpiryIndex()
+    {
+        return _expiryIndex;
+    }
+
+    @Override
+    public long getConversionCacheMaxMessageSize()
+    {
+        return _conversionCacheMaxMessageSize;
+    }
+
     @Override
     public boolean authoriseCreateConnection(final AMQConnectionModel<?, ?> connection)
     {
@@ -475,8 +492,9 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     }
 
     /**
-     * Initialise a housekeeping task to iterate over queues cleaning expired messages with no consumers
-     * and checking for idle or open transactions that have exceeded the permitted thresholds.
+     * Initialise a housekeeping task to expire messages whose expiration time has passed, check the queues'
+     * alert thresholds and flow to disk, and check for idle or open transactions that have exceeded the
+     * permitted thresholds.
      *
      * @param period
      */
@@ -947,6 +965,19 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
             Broker<?> broker = virtualHostNode.getParent(Broker.class);
             broker.assignTargetSizes();
 
+            try
+            {
+                int expired = _expiryIndex.expireEntries(System.currentTimeMillis());
+                if (_logger.isDebugEnabled())
+                {
+                    _logger.debug("Expired " + expired + " messages");
+                }
+            }
+            catch (Exception e)
+            {
+                _logger.error("Exception in housekeeping expiring messages", e);
+            }
+
             for (AMQQueue<?> q : getQueues())
             {
                 if (q.getState() == State.ACTIVE)
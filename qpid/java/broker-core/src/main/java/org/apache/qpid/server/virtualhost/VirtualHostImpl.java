@@ -36,6 +36,7 @@ import org.apache.qpid.server.model.VirtualHost;
 import org.apache.qpid.server.protocol.AMQConnectionModel;
 import org.apache.qpid.server.protocol.LinkRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.queue.ExpiryIndex;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.stats.StatisticsGatherer;
 import org.apache.qpid.server.store.DurableConfigurationStore;
@@ -110,4 +111,11 @@ public interface VirtualHostImpl< X extends VirtualHostImpl<X,Q,E>, Q extends AM
     EventLogger getEventLogger();
 
     boolean authoriseCreateConnection(AMQConnectionModel<?, ?> connection);
+
+    ExpiryIndex getExpiryIndex();
+
+    /**
+     * Returns the size above which the conversions of a message are not shared between its consumers.
+     */
+    long getConversionCacheMaxMessageSize();
 }
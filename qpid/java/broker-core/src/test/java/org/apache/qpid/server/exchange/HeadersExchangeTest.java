@@ -194,6 +194,20 @@ public class HeadersExchangeTest extends TestCase
         routeAndTest(mockMessage(getArgsMapFromStrings("F0002")));
     }
 
+    public void testMatchOnValuesOfSeveralHeaders() throws Exception
+    {
+        AMQQueue q1 = createAndBind("Q1", "F0000=Aardvark", "F0001=Bear");
+        AMQQueue q2 = createAndBind("Q2", "F0000=Aardvark", "F0001=Cat");
+        AMQQueue q3 = createAndBind("Q3", "F0000=Apple", "F0001=Bear", "X-match=any");
+        bind("Q3-again", getArgsMapFromStrings("F0001=Bear", "F0002=Dog", "X-match=any"), q3);
+
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=Aardvark")));
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0001=Bear")), q3);
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=Aardvark", "F0001=Bear")), q1, q3);
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=Aardvark", "F0001=Cat")), q2);
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=Apple", "F0001=Bear", "F0002=Dog")), q3);
+    }
+
     public void testOnUnbind() throws Exception
     {
         AMQQueue q1 = createAndBind("Q1", "F0000");
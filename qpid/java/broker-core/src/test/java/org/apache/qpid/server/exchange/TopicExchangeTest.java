@@ -467,6 +467,49 @@ public class TopicExchangeTest extends QpidTestCase
         _exchange.delete();
     }
 
+    public void testRouteCacheInvalidatedOnBindAndUnbind() throws Exception
+    {
+        AMQQueue<?> queue1 = createQueue("a*");
+        AMQQueue<?> queue2 = createQueue("ab");
+        createBinding(UUID.randomUUID(), "a.*", queue1, _exchange, null);
+
+        Assert.assertEquals(1, routeMessage("a.b", 0l));
+        Assert.assertEquals(0, routeMessage("b.b", 1l));
+
+        createBinding(UUID.randomUUID(), "a.b", queue2, _exchange, null);
+        createBinding(UUID.randomUUID(), "b.#", queue2, _exchange, null);
+
+        Assert.assertEquals(2, routeMessage("a.b", 2l));
+        Assert.assertEquals(1, routeMessage("b.b", 3l));
+        Assert.assertEquals(2, queue1.getQueueDepthMessages());
+        Assert.assertEquals(2, queue2.getQueueDepthMessages());
+
+        assertTrue(_exchange.deleteBinding("a.b", queue2));
+
+        Assert.assertEquals(1, routeMessage("a.b", 4l));
+        Assert.assertEquals(3, queue1.getQueueDepthMessages());
+        Assert.assertEquals(2, queue2.getQueueDepthMessages());
+    }
+
+    public void testRouteThroughSelectorBindingNotCached() throws Exception
+    {
+        AMQQueue<?> queue1 = createQueue("a*");
+        AMQQueue<?> queue2 = createQueue("ab");
+        createBinding(UUID.randomUUID(), "a.*", queue1, _exchange, null);
+        createBinding(UUID.randomUUID(), "a.b", queue2, _exchange,
+                      Collections.<String, Object>singletonMap(JMS_SELECTOR.toString(), "arg > 6"));
+
+        ServerMessage msg1 = mock(ServerMessage.class);
+        AMQMessageHeader header1 = createMessageHeader(Collections.<String, Object>singletonMap("arg", 7));
+        when(msg1.getMessageHeader()).thenReturn(header1);
+        Assert.assertEquals(2, routeMessage(msg1, "a.b", 0l));
+
+        ServerMessage msg2 = mock(ServerMessage.class);
+        AMQMessageHeader header2 = createMessageHeader(Collections.<String, Object>singletonMap("arg", 6));
+        when(msg2.getMessageHeader()).thenReturn(header2);
+        Assert.assertEquals(1, routeMessage(msg2, "a.b", 1l));
+    }
+
     private BindingImpl createBinding(UUID id,
                                       String bindingKey,
                                       AMQQueue queue,
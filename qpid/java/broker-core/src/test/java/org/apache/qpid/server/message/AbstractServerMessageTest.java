@@ -143,4 +143,25 @@ public class AbstractServerMessageTest extends QpidTestCase
         }
 
     }
+
+    public void testConvertedMessageDiscardedWhenMessageDeleted()
+    {
+        TestMessage<StorableMessageMetaData> msg = new TestMessage<StorableMessageMetaData>(mock(StoredMessage.class),this);
+        MessageReference<TestMessage<StorableMessageMetaData>> ref = msg.newReference();
+
+        assertNull(msg.getConvertedMessage(TestMessage.class));
+
+        TestMessage converted = new TestMessage<StorableMessageMetaData>(mock(StoredMessage.class), this);
+        msg.setConvertedMessage(TestMessage.class, converted);
+        assertSame(converted, msg.getConvertedMessage(TestMessage.class));
+        assertNull(msg.getConvertedMessage(ServerMessage.class));
+
+        TestMessage reconverted = new TestMessage<StorableMessageMetaData>(mock(StoredMessage.class), this);
+        msg.setConvertedMessage(TestMessage.class, reconverted);
+        assertSame(reconverted, msg.getConvertedMessage(TestMessage.class));
+
+        ref.release();
+        assertNull("Conversion should be discarded once the message is no longer referenced",
+                   msg.getConvertedMessage(TestMessage.class));
+    }
 }
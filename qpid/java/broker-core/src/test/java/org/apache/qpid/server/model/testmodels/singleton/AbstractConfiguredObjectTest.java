@@ -18,6 +18,7 @@
  */
 package org.apache.qpid.server.model.testmodels.singleton;
 
+import java.lang.reflect.Method;
 import java.security.PrivilegedAction;
 import java.util.Arrays;
 import java.util.Collections;
@@ -32,6 +33,7 @@ import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.model.AbstractConfiguredObject;
 import org.apache.qpid.server.model.ConfigurationChangeListener;
 import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.model.ManagedAttributeAccessor;
 import org.apache.qpid.server.model.Model;
 import org.apache.qpid.server.model.State;
 import org.apache.qpid.server.store.ConfiguredObjectRecord;
@@ -196,6 +198,28 @@ public class AbstractConfiguredObjectTest extends QpidTestCase
         assertEquals(5, object1.getIntValue());
     }
 
+    public void testAttributesReadThroughGeneratedAccessor() throws Exception
+    {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(TestSingleton.NAME, "myName");
+        attributes.put(TestSingleton.INT_VALUE, 5);
+
+        TestSingleton object = _model.getObjectFactory().create(TestSingleton.class, attributes);
+
+        Class<?> accessorClass = Class.forName(TestSingleton.class.getName()
+                                               + ManagedAttributeAccessor.ACCESSOR_CLASS_SUFFIX);
+        Method factoryMethod = accessorClass.getMethod(ManagedAttributeAccessor.ACCESSOR_FACTORY_METHOD, String.class);
+        ManagedAttributeAccessor intAccessor = (ManagedAttributeAccessor) factoryMethod.invoke(null, "getIntValue");
+        ManagedAttributeAccessor derivedAccessor = (ManagedAttributeAccessor) factoryMethod.invoke(null, "getDerivedValue");
+
+        assertEquals(5, intAccessor.getValue(object));
+        assertEquals((long) TestSingletonImpl.DERIVED_VALUE, derivedAccessor.getValue(object));
+        assertNull("Unknown getters should have no accessor", factoryMethod.invoke(null, "getUnknownValue"));
+
+        assertEquals(5, object.getAttribute(TestSingleton.INT_VALUE));
+        assertEquals((long) TestSingletonImpl.DERIVED_VALUE, object.getAttribute(TestSingleton.DERIVED_VALUE));
+    }
+
     public void testIntegerAttributeValueFromDouble()
     {
         final String objectName = "myName";
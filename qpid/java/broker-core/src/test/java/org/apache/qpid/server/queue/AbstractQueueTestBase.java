@@ -26,6 +26,7 @@ import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -61,6 +62,8 @@ import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.server.model.QueueNotificationListener;
 import org.apache.qpid.server.model.UUIDGenerator;
 import org.apache.qpid.server.queue.AbstractQueue.QueueEntryFilter;
+import org.apache.qpid.server.store.StorableMessageMetaData;
+import org.apache.qpid.server.store.StoredMessage;
 import org.apache.qpid.server.store.TransactionLogResource;
 import org.apache.qpid.server.util.Action;
 import org.apache.qpid.server.util.BrokerTestHelper;
@@ -792,6 +795,99 @@ abstract class AbstractQueueTestBase extends QpidTestCase
         verify(listener, atLeastOnce()).notifyClients(eq(NotificationCheck.MESSAGE_COUNT_ALERT), eq(_queue), contains("Maximum count on queue threshold"));
     }
 
+    public void testMessageMemoryOverheadMeasuredFromEnqueuedMessage() throws Exception
+    {
+        ServerMessage message = createMessage(24l);
+        StorableMessageMetaData metaData = mock(StorableMessageMetaData.class);
+        when(metaData.getStorableSize()).thenReturn(500);
+        when(message.getStoredMessage().getMetaData()).thenReturn(metaData);
+
+        _queue.enqueue(message, null);
+
+        QueueEntryImpl entry = (QueueEntryImpl) _queue.getMessagesOnTheQueue().get(0);
+        long overhead = ((AbstractQueue<?>) _queue).getMessageMemoryOverhead();
+        assertEquals("Unexpected overhead", entry.estimateMemoryOverhead(), overhead);
+        assertTrue("Overhead should include the size of the metadata", overhead > 500l);
+    }
+
+
+    public void testExpiredMessageDequeuedByExpiryIndex() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        ServerMessage message = createMessage(24l);
+        when(message.getExpiration()).thenReturn(now - 10l);
+        _queue.enqueue(message, null);
+        assertEquals("Unexpected queue depth", 1, _queue.getQueueDepthMessages());
+
+        ExpiryIndex expiryIndex = _virtualHost.getExpiryIndex();
+        assertEquals("Unexpected number of expired messages",
+                     1, expiryIndex.expireEntries(now + ExpiryIndex.DEFAULT_RESOLUTION));
+        assertEquals("Unexpected queue depth", 0, _queue.getQueueDepthMessages());
+        assertEquals("Unexpected expiry index size", 0, expiryIndex.size());
+    }
+
+    public void testDeletedEntryNotExpiredByExpiryIndex() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        ServerMessage message = createMessage(24l);
+        when(message.getExpiration()).thenReturn(now + 60000l);
+        _queue.enqueue(message, null);
+
+        QueueEntry entry = _queue.getMessagesOnTheQueue().get(0);
+        assertTrue("Could not acquire entry", entry.acquire());
+        entry.delete();
+
+        ExpiryIndex expiryIndex = _virtualHost.getExpiryIndex();
+        assertEquals("Deleted entry should be unlinked from the expiry index", 0, expiryIndex.size());
+        assertEquals("Unexpected number of expired messages", 0, expiryIndex.expireEntries(now + 120000l));
+        assertEquals("Unexpected expiry index size", 0, expiryIndex.size());
+    }
+
+    public void testCheckMessageStatusKeepsHeadInMemoryAndFlowsRemainderToDisk() throws Exception
+    {
+        List<StoredMessage> storedMessages = enqueueMessagesWithStoredContent(4, 100l);
+        // the message at the head was flowed to disk earlier
+        when(storedMessages.get(0).isInMemory()).thenReturn(false);
+
+        _queue.setTargetSize(150l);
+        _queue.checkMessageStatus();
+
+        verify(storedMessages.get(0)).reloadContent();
+        verify(storedMessages.get(0), never()).flowToDisk();
+        for (StoredMessage storedMessage : storedMessages.subList(1, storedMessages.size()))
+        {
+            verify(storedMessage).flowToDisk();
+        }
+    }
+
+    public void testReadAheadReloadsFlowedContentNearestHead() throws Exception
+    {
+        List<StoredMessage> storedMessages = enqueueMessagesWithStoredContent(3, 100l);
+        for (StoredMessage storedMessage : storedMessages)
+        {
+            when(storedMessage.isInMemory()).thenReturn(false);
+        }
+
+        _queue.setTargetSize(150l);
+        ((AbstractQueue<?>) _queue).readAheadFlowedContent();
+
+        verify(storedMessages.get(0)).reloadContent();
+        verify(storedMessages.get(1)).reloadContent();
+        verify(storedMessages.get(2), never()).reloadContent();
+    }
+
+    private List<StoredMessage> enqueueMessagesWithStoredContent(final int count, final long size)
+    {
+        List<StoredMessage> storedMessages = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            ServerMessage message = createMessage((long) i);
+            when(message.getSize()).thenReturn(size);
+            storedMessages.add(message.getStoredMessage());
+            _queue.enqueue(message, null);
+        }
+        return storedMessages;
+    }
 
     public void testMaximumMessageTtl() throws Exception
     {
@@ -1062,6 +1158,10 @@ abstract class AbstractQueueTestBase extends QpidTestCase
         when(message.getMessageNumber()).thenReturn(id);
         when(message.getMessageHeader()).thenReturn(header);
 
+        StoredMessage storedMessage = mock(StoredMessage.class);
+        when(storedMessage.isInMemory()).thenReturn(true);
+        when(message.getStoredMessage()).thenReturn(storedMessage);
+
         MessageReference ref = mock(MessageReference.class);
         when(ref.getMessage()).thenReturn(message);
 
@@ -0,0 +1,59 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class DeliverySliceTest extends QpidTestCase
+{
+    public void testSliceBoundedByBytes()
+    {
+        DeliverySlice slice = new DeliverySlice(0L, 1000L, 2, 0L);
+
+        slice.startQuantum(0L);
+        slice.delivered(400L);
+        assertFalse("Quantum should not be used", slice.isQuantumUsed(Long.MAX_VALUE / 2));
+        slice.delivered(100L);
+        assertTrue("Quantum should be used", slice.isQuantumUsed(0L));
+        assertFalse("Slice should not be exhausted", slice.isExhausted(0L));
+
+        slice.startQuantum(0L);
+        assertFalse("New quantum should not be used", slice.isQuantumUsed(0L));
+        slice.delivered(500L);
+        assertTrue("Slice should be exhausted", slice.isExhausted(0L));
+        assertEquals("Unexpected delivered bytes", 1000L, slice.getBytes());
+    }
+
+    public void testSliceBoundedByTime()
+    {
+        DeliverySlice slice = new DeliverySlice(1000L, 0L, 4, 100L);
+
+        slice.startQuantum(100L);
+        slice.delivered(Long.MAX_VALUE / 2);
+        assertFalse("Quantum should not be used", slice.isQuantumUsed(349L));
+        assertTrue("Quantum should be used", slice.isQuantumUsed(350L));
+
+        slice.startQuantum(350L);
+        assertFalse("New quantum should not be used", slice.isQuantumUsed(350L));
+        assertFalse("Slice should not be exhausted", slice.isExhausted(1099L));
+        assertTrue("Slice should be exhausted", slice.isExhausted(1100L));
+    }
+}
@@ -24,6 +24,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -158,4 +159,33 @@ public class PriorityQueueListTest extends QpidTestCase
         assertEquals("second message with priority 4 should be 'later' than second message of priority 5",
                 1, _priority4message2.compareTo(_priority5message2));
     }
+
+    public void testQueueDepthMessagesByPriority()
+    {
+        PriorityQueueList.PriorityQueueMasterList list = (PriorityQueueList.PriorityQueueMasterList) _list;
+        assertEquals(Arrays.asList(0, 0, 0, 0, 2, 2, 0, 0, 0, 0), list.getQueueDepthMessagesByPriority());
+
+        _priority5message1.acquire();
+        _priority5message1.delete();
+        assertEquals(Arrays.asList(0, 0, 0, 0, 2, 1, 0, 0, 0, 0), list.getQueueDepthMessagesByPriority());
+    }
+
+    public void testConsumerResumesLowerPriorityFromCursor()
+    {
+        PriorityQueueList.PriorityQueueMasterList list = (PriorityQueueList.PriorityQueueMasterList) _list;
+        QueueContext context = new QueueContext(list.getHead(), list.getPriorities());
+
+        assertSame(_priority5message1, list.next(list.getHead(), context));
+        assertSame(_priority5message2, list.next(_priority5message1, context));
+        assertSame(_priority4message1, list.next(_priority5message2, context));
+        _priority4message1.acquire();
+        assertSame(_priority4message2, list.next(_priority4message1, context));
+
+        assertSame("Lower priority should be resumed from the entry last reached",
+                   _priority4message2, list.next(_priority5message2, context));
+
+        _priority4message1.release();
+        assertSame("Lower priority should be scanned from its head once an entry has become available again",
+                   _priority4message1, list.next(_priority5message2, context));
+    }
 }
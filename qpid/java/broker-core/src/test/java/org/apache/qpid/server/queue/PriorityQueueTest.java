@@ -23,15 +23,23 @@ package org.apache.qpid.server.queue;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.AssertionFailedError;
 
 import org.apache.qpid.server.consumer.ConsumerImpl;
+import org.apache.qpid.server.consumer.MockConsumer;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.Queue;
 
 public class PriorityQueueTest extends AbstractQueueTestBase
 {
@@ -96,6 +104,74 @@ public class PriorityQueueTest extends AbstractQueueTestBase
 
     }
 
+    /**
+     * Tests that when a group is released, the messages of the group a consumer passed over are delivered to it from
+     * every priority level at or below the earliest of them, not only from the level of that message
+     */
+    public void testGroupPassedOverMessagesOfLowerPriorityDeliveredWhenGroupReleased() throws Exception
+    {
+        Map<String,Object> queueAttributes = new HashMap<String, Object>();
+        queueAttributes.put(Queue.ID, UUID.randomUUID());
+        queueAttributes.put(Queue.NAME, getTestName());
+        queueAttributes.put(Queue.MESSAGE_GROUP_KEY, "group");
+        queueAttributes.put(Queue.MESSAGE_GROUP_SHARED_GROUPS, true);
+        queueAttributes.put(PriorityQueue.PRIORITIES, 3);
+        PriorityQueueImpl queue = new PriorityQueueImpl(queueAttributes, getVirtualHost());
+        queue.create();
+
+        Map<String, Object> group1 = Collections.singletonMap("group", (Object) "g1");
+        ServerMessage messageA = createMessage(1l, (byte) 10, group1, 0l);
+        ServerMessage messageB = createMessage(2l, (byte) 10, group1, 0l);
+        ServerMessage messageC = createMessage(3l, (byte) 0, Collections.singletonMap("group", (Object) "g2"), 0l);
+        ServerMessage messageD = createMessage(4l, (byte) 0, group1, 0l);
+
+        final AtomicBoolean target1Suspended = new AtomicBoolean();
+        MockConsumer target1 = new MockConsumer()
+        {
+            @Override
+            public boolean isSuspended()
+            {
+                return target1Suspended.get();
+            }
+        };
+        MockConsumer target2 = new MockConsumer();
+
+        queue.addConsumer(target1, null, messageA.getClass(), "test1",
+                          EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+        queue.enqueue(messageA, null);
+
+        Thread.sleep(150);  // Work done by QueueRunner Thread
+        assertEquals("Message of group g1 not delivered to first consumer", 1, target1.getMessages().size());
+
+        target1Suspended.set(true);
+        queue.addConsumer(target2, null, messageA.getClass(), "test2",
+                          EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+        queue.enqueue(messageB, null);
+        queue.enqueue(messageD, null);
+        queue.enqueue(messageC, null);
+
+        Thread.sleep(150);  // Work done by QueueRunner Thread
+        assertEquals("Unexpected messages delivered to second consumer whilst group g1 is assigned",
+                     Collections.singletonList(messageC), getMessages(target2));
+
+        // acknowledging the only message the first consumer holds releases group g1
+        target1.getMessages().get(0).delete();
+
+        Thread.sleep(150);  // Work done by QueueRunner Thread
+        assertEquals("Passed over messages not delivered to second consumer when group g1 was released",
+                     Arrays.asList(messageC, messageB, messageD), getMessages(target2));
+    }
+
+    private List<ServerMessage> getMessages(final MockConsumer target)
+    {
+        List<ServerMessage> messages = new ArrayList<ServerMessage>();
+        for (MessageInstance instance : target.getMessages())
+        {
+            messages.add(instance.getMessage());
+        }
+        return messages;
+    }
+
     protected ServerMessage createMessage(Long id, byte i)
     {
 
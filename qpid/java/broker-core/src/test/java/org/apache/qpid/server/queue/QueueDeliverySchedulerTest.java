@@ -0,0 +1,207 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class QueueDeliverySchedulerTest extends QpidTestCase
+{
+    private final QueueDeliveryScheduler _scheduler = QueueDeliveryScheduler.getInstance();
+    private Executor _executor;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _executor = _scheduler.acquireExecutor();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            if (_executor != null)
+            {
+                _scheduler.releaseExecutor();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testTasksRunOnTheSameWorker() throws Exception
+    {
+        final Map<Thread, Integer> tasksByThread = new HashMap<Thread, Integer>();
+        final int taskCount = 100;
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+        long stolenBefore = getTasksStolen();
+        for (int i = 0; i < taskCount; i++)
+        {
+            _executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    synchronized (tasksByThread)
+                    {
+                        Integer count = tasksByThread.get(Thread.currentThread());
+                        tasksByThread.put(Thread.currentThread(), count == null ? 1 : count + 1);
+                    }
+                    latch.countDown();
+                }
+            });
+            // allow each task to complete so that there is rarely anything to steal
+            Thread.sleep(1);
+        }
+
+        assertTrue("Tasks did not complete", latch.await(5, TimeUnit.SECONDS));
+
+        // the scheduler is shared, so the pinned worker may be busy with other work and have a task stolen from it
+        long stolen = getTasksStolen() - stolenBefore;
+        int pinnedWorkerTasks;
+        synchronized (tasksByThread)
+        {
+            pinnedWorkerTasks = Collections.max(tasksByThread.values());
+        }
+        assertTrue("Tasks should have run on the worker the executor is pinned to unless stolen: " + tasksByThread,
+                   pinnedWorkerTasks + stolen >= taskCount);
+    }
+
+    public void testWaitingTaskStolenFromBusyWorker() throws Exception
+    {
+        if (_scheduler.getWorkerCount() < 2)
+        {
+            return;
+        }
+
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch blockerStarted = new CountDownLatch(1);
+        final CountDownLatch stolenTaskRan = new CountDownLatch(1);
+
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                blockerStarted.countDown();
+                try
+                {
+                    blocking.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue("Blocking task did not start", blockerStarted.await(5, TimeUnit.SECONDS));
+
+        long stolenBefore = getTasksStolen();
+        _executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                stolenTaskRan.countDown();
+            }
+        });
+
+        try
+        {
+            assertTrue("Task waiting behind a busy worker was not stolen",
+                       stolenTaskRan.await(5, TimeUnit.SECONDS));
+            // the stolen task is counted once it has run, so possibly after it has counted down the latch
+            long deadline = System.currentTimeMillis() + 5000l;
+            while (getTasksStolen() <= stolenBefore && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertTrue("Stolen task not counted", getTasksStolen() > stolenBefore);
+        }
+        finally
+        {
+            blocking.countDown();
+        }
+    }
+
+    public void testExecutorRejectsTasksOnceReleased() throws Exception
+    {
+        int references = _scheduler.getReferenceCount();
+        _scheduler.releaseExecutor();
+        Executor executor = _executor;
+        _executor = null;
+
+        if (references == 1)
+        {
+            assertEquals("Workers should be stopped with the last reference", 0, _scheduler.getWorkerCount());
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                    }
+                });
+                fail("Exception not thrown");
+            }
+            catch (RejectedExecutionException e)
+            {
+                // pass
+            }
+        }
+    }
+
+    public void testLegacyPoolSizeSetsWorkerCount() throws Exception
+    {
+        _scheduler.releaseExecutor();
+        _executor = null;
+
+        // the worker count is only read when the workers are started
+        if (_scheduler.getReferenceCount() == 0)
+        {
+            setTestSystemProperty(QueueDeliveryScheduler.LEGACY_POOL_SIZE_PROPERTY_NAME, "3");
+            _executor = _scheduler.acquireExecutor();
+            assertEquals("Unexpected worker count", 3, _scheduler.getWorkerCount());
+        }
+    }
+
+    private long getTasksStolen()
+    {
+        long stolen = 0;
+        for (QueueDeliveryScheduler.WorkerStatistics statistics : _scheduler.getWorkerStatistics())
+        {
+            stolen += statistics.getTasksStolen();
+        }
+        return stolen;
+    }
+}
@@ -23,7 +23,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -31,6 +34,7 @@ import junit.framework.TestCase;
 
 import org.apache.qpid.server.configuration.updater.CurrentThreadTaskExecutor;
 import org.apache.qpid.server.logging.EventLogger;
+import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.MessageInstance.EntryState;
 import org.apache.qpid.server.message.MessageReference;
@@ -40,6 +44,7 @@ import org.apache.qpid.server.model.ConfiguredObjectFactory;
 import org.apache.qpid.server.model.ConfiguredObjectFactoryImpl;
 import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.util.StateChangeListener;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 /**
@@ -227,6 +232,59 @@ public abstract class QueueEntryImplTestBase extends TestCase
         assertTrue("Queue entry should have been rejected by the consumer", _queueEntry.isRejectedBy(sub2));
     }
 
+    public void testDeliveryCountAndRedelivered()
+    {
+        assertFalse("Queue entry should not yet have been delivered", _queueEntry.getDeliveredToConsumer());
+        assertEquals("Unexpected delivery count", 0, _queueEntry.getDeliveryCount());
+
+        assertTrue("Queue entry should have been able to be acquired", _queueEntry.acquire(newConsumer()));
+        assertTrue("Queue entry should have been delivered", _queueEntry.getDeliveredToConsumer());
+        assertEquals("Unexpected delivery count", 0, _queueEntry.getDeliveryCount());
+
+        _queueEntry.incrementDeliveryCount();
+        _queueEntry.incrementDeliveryCount();
+        assertEquals("Unexpected delivery count", 2, _queueEntry.getDeliveryCount());
+
+        _queueEntry.decrementDeliveryCount();
+        _queueEntry.decrementDeliveryCount();
+        _queueEntry.decrementDeliveryCount();
+        assertEquals("Delivery count should not become negative", 0, _queueEntry.getDeliveryCount());
+        assertTrue("Queue entry should still be marked as delivered", _queueEntry.getDeliveredToConsumer());
+
+        assertFalse("Queue entry should not be redelivered", _queueEntry.isRedelivered());
+        assertEquals(Boolean.FALSE, _queueEntry.getInstanceProperties().getProperty(InstanceProperties.Property.REDELIVERED));
+        _queueEntry.setRedelivered();
+        assertTrue("Queue entry should be redelivered", _queueEntry.isRedelivered());
+        assertEquals(Boolean.TRUE, _queueEntry.getInstanceProperties().getProperty(InstanceProperties.Property.REDELIVERED));
+        assertEquals("Setting redelivered should not alter the delivery count", 0, _queueEntry.getDeliveryCount());
+    }
+
+    public void testStateChangeListener()
+    {
+        final List<MessageInstance.State> newStates = new ArrayList<MessageInstance.State>();
+        StateChangeListener<MessageInstance, MessageInstance.State> listener =
+                new StateChangeListener<MessageInstance, MessageInstance.State>()
+                {
+                    @Override
+                    public void stateChanged(final MessageInstance object,
+                                             final MessageInstance.State oldState,
+                                             final MessageInstance.State newState)
+                    {
+                        newStates.add(newState);
+                    }
+                };
+
+        assertFalse("Listener should not be removed before being added", _queueEntry.removeStateChangeListener(listener));
+
+        _queueEntry.addStateChangeListener(listener);
+        _queueEntry.acquire(newConsumer());
+        assertEquals("Unexpected state changes", Collections.singletonList(MessageInstance.State.ACQUIRED), newStates);
+
+        assertTrue("Listener should have been removed", _queueEntry.removeStateChangeListener(listener));
+        _queueEntry.release();
+        assertEquals("Removed listener should not be notified", 1, newStates.size());
+    }
+
     /**
      * Tests if entries in DEQUEUED or DELETED state are not returned by getNext method.
      */
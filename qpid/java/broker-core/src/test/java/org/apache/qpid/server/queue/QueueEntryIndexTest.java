@@ -0,0 +1,157 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.model.UUIDGenerator;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class QueueEntryIndexTest extends QpidTestCase
+{
+    private static final int MESSAGE_COUNT = 3000;
+
+    private VirtualHostImpl<?,?,?> _virtualHost;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        BrokerTestHelper.setUp();
+        _virtualHost = BrokerTestHelper.createVirtualHost(getClass().getName());
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _virtualHost.close();
+        }
+        finally
+        {
+            BrokerTestHelper.tearDown();
+            super.tearDown();
+        }
+    }
+
+    public void testIndexedLookupsMatchQueueOrder() throws Exception
+    {
+        AbstractQueue<?> queue = createQueue(getTestName(), Collections.<String, Object>emptyMap());
+        for(long i = 1; i <= MESSAGE_COUNT; i++)
+        {
+            queue.enqueue(createMessage(i, (byte) 4), null);
+        }
+        for(long i = 3; i <= MESSAGE_COUNT; i += 3)
+        {
+            QueueEntry entry = queue.getMessageOnTheQueue(i);
+            assertTrue(entry.acquire());
+            entry.delete();
+        }
+
+        assertNull("Deleted message should not be found", queue.getMessageOnTheQueue(3l));
+        assertEquals(1000l, queue.getMessageOnTheQueue(1000l).getMessage().getMessageNumber());
+
+        List<QueueEntry> entries = queue.getMessagesOnTheQueue();
+        assertEquals(MESSAGE_COUNT - MESSAGE_COUNT / 3, entries.size());
+
+        assertEquals(entries.subList(0, 10), queue.getMessagesRangeOnTheQueue(0, 10));
+        assertEquals(entries.subList(1000, 1500), queue.getMessagesRangeOnTheQueue(1001, 1500));
+        assertEquals(entries.subList(1990, 2000), queue.getMessagesRangeOnTheQueue(1991, 2010));
+        assertTrue(queue.getMessagesRangeOnTheQueue(2001, 2001).isEmpty());
+        assertTrue(queue.getMessagesRangeOnTheQueue(5, 4).isEmpty());
+
+        List<QueueEntry> byNumber = queue.getMessagesOnTheQueue(1020l, 1030l);
+        assertEquals(Arrays.asList(1021l, 1022l, 1024l, 1025l, 1027l, 1028l, 1030l), getMessageNumbers(byNumber));
+
+        List<QueueEntry> byNumbers = queue.getMessagesOnTheQueue(Arrays.asList(2000l, 3l, 5l, MESSAGE_COUNT + 1l));
+        assertEquals("Entries should be returned in queue order", Arrays.asList(5l, 2000l), getMessageNumbers(byNumbers));
+    }
+
+    public void testPositionsOfPriorityQueueAreNotIndexed() throws Exception
+    {
+        AbstractQueue<?> queue = createQueue(getTestName(),
+                                             Collections.<String, Object>singletonMap(PriorityQueue.PRIORITIES, 3));
+        queue.enqueue(createMessage(1l, (byte) 0), null);
+        queue.enqueue(createMessage(2l, (byte) 10), null);
+        queue.enqueue(createMessage(3l, (byte) 4), null);
+
+        assertEquals(3l, queue.getMessageOnTheQueue(3l).getMessage().getMessageNumber());
+        assertEquals("Positions should follow the priorities of the messages",
+                     Arrays.asList(2l, 3l, 1l), getMessageNumbers(queue.getMessagesRangeOnTheQueue(1, 3)));
+    }
+
+    private AbstractQueue<?> createQueue(String name, Map<String, Object> arguments)
+    {
+        Map<String,Object> attributes = new HashMap<String, Object>(arguments);
+        attributes.put(Queue.ID, UUIDGenerator.generateRandomUUID());
+        attributes.put(Queue.NAME, name);
+        attributes.put(ConfiguredObject.CONTEXT, Collections.singletonMap(Queue.MESSAGE_INDEX, "true"));
+        return (AbstractQueue<?>) _virtualHost.createQueue(attributes);
+    }
+
+    private List<Long> getMessageNumbers(List<? extends QueueEntry> entries)
+    {
+        List<Long> messageNumbers = new ArrayList<Long>();
+        for(QueueEntry entry : entries)
+        {
+            messageNumbers.add(entry.getMessage().getMessageNumber());
+        }
+        return messageNumbers;
+    }
+
+    private ServerMessage createMessage(long messageNumber, byte priority)
+    {
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getPriority()).thenReturn(priority);
+        ServerMessage message = mock(ServerMessage.class);
+        when(message.getMessageNumber()).thenReturn(messageNumber);
+        when(message.getMessageHeader()).thenReturn(header);
+
+        StoredMessage storedMessage = mock(StoredMessage.class);
+        when(storedMessage.isInMemory()).thenReturn(true);
+        when(message.getStoredMessage()).thenReturn(storedMessage);
+
+        MessageReference reference = mock(MessageReference.class);
+        when(reference.getMessage()).thenReturn(message);
+        when(message.newReference()).thenReturn(reference);
+        when(message.newReference(any(TransactionLogResource.class))).thenReturn(reference);
+        return message;
+    }
+}
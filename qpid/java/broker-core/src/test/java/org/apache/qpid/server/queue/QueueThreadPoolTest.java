@@ -23,7 +23,6 @@ package org.apache.qpid.server.queue;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.server.model.UUIDGenerator;
 import org.apache.qpid.server.util.BrokerTestHelper;
@@ -49,7 +48,8 @@ public class QueueThreadPoolTest extends QpidTestCase
 
     public void test() throws Exception
     {
-        int initialCount = ReferenceCountingExecutorService.getInstance().getReferenceCount();
+        QueueDeliveryScheduler scheduler = QueueDeliveryScheduler.getInstance();
+        int initialCount = scheduler.getReferenceCount();
         VirtualHostImpl test = BrokerTestHelper.createVirtualHost("test");
 
         try
@@ -59,13 +59,13 @@ public class QueueThreadPoolTest extends QpidTestCase
             attributes.put(Queue.NAME, "test");
             AMQQueue queue = test.createQueue(attributes);
 
-            assertFalse("Creation did not start Pool.", ReferenceCountingExecutorService.getInstance().getPool().isShutdown());
+            assertTrue("Creation did not start workers.", scheduler.getWorkerCount() > 0);
 
-            assertEquals("References not increased", initialCount + 1, ReferenceCountingExecutorService.getInstance().getReferenceCount());
+            assertEquals("References not increased", initialCount + 1, scheduler.getReferenceCount());
 
             queue.close();
 
-            assertEquals("References not decreased", initialCount , ReferenceCountingExecutorService.getInstance().getReferenceCount());
+            assertEquals("References not decreased", initialCount , scheduler.getReferenceCount());
         }
         finally
         {
@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.qpid.server.configuration.updater.CurrentThreadTaskExecutor;
+import org.apache.qpid.server.filter.FilterManager;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.filter.MessageFilter;
+import org.apache.qpid.server.logging.EventLogger;
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.BrokerModel;
+import org.apache.qpid.server.model.ConfiguredObjectFactory;
+import org.apache.qpid.server.model.ConfiguredObjectFactoryImpl;
+import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class SharedSelectorsTest extends QpidTestCase
+{
+    private final SharedSelectors _sharedSelectors = new SharedSelectors();
+    private OrderedQueueEntryList _queueEntryList;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        Map<String,Object> queueAttributes = new HashMap<String, Object>();
+        queueAttributes.put(Queue.ID, UUID.randomUUID());
+        queueAttributes.put(Queue.NAME, getTestName());
+        final VirtualHostImpl virtualHost = mock(VirtualHostImpl.class);
+        when(virtualHost.getSecurityManager()).thenReturn(mock(org.apache.qpid.server.security.SecurityManager.class));
+        when(virtualHost.getEventLogger()).thenReturn(new EventLogger());
+        ConfiguredObjectFactory factory = new ConfiguredObjectFactoryImpl(BrokerModel.getInstance());
+        when(virtualHost.getObjectFactory()).thenReturn(factory);
+        when(virtualHost.getModel()).thenReturn(factory.getModel());
+        when(virtualHost.getTaskExecutor()).thenReturn(CurrentThreadTaskExecutor.newStartedInstance());
+        StandardQueueImpl queue = new StandardQueueImpl(queueAttributes, virtualHost);
+        queue.open();
+        _queueEntryList = queue.getEntries();
+    }
+
+    public void testConsumersWithTheSameSelectorShareAFilter() throws Exception
+    {
+        FilterManager filters1 = createFilters("colour = 'red'");
+        FilterManager filters2 = createFilters("colour = 'red'");
+        FilterManager filters3 = createFilters("colour = 'blue'");
+
+        _sharedSelectors.share(filters1);
+        _sharedSelectors.share(filters2);
+        _sharedSelectors.share(filters3);
+
+        assertSame("Consumers with the same selector should share it", getSelector(filters1), getSelector(filters2));
+        assertNotSame(getSelector(filters1), getSelector(filters3));
+        assertEquals(2, _sharedSelectors.getSelectorCount());
+
+        _sharedSelectors.release(filters1);
+        assertEquals("Selector still used by a consumer should be retained", 2, _sharedSelectors.getSelectorCount());
+        _sharedSelectors.release(filters2);
+        _sharedSelectors.release(filters3);
+        assertEquals(0, _sharedSelectors.getSelectorCount());
+    }
+
+    public void testSelectorsOnTheSamePropertyEvaluatedOncePerEntry() throws Exception
+    {
+        MessageFilter red = share("colour = 'red'");
+        MessageFilter blue = share("colour = 'blue'");
+        MessageFilter redOrBlue = share("colour IN ('red', 'blue')");
+
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader("colour")).thenReturn("red");
+        QueueEntryImpl entry = createEntry(header);
+
+        for(int i = 0; i < 3; i++)
+        {
+            assertTrue(red.matches(entry.asFilterable()));
+            assertFalse(blue.matches(entry.asFilterable()));
+            assertTrue(redOrBlue.matches(entry.asFilterable()));
+        }
+
+        verify(header, times(2)).getHeader(anyString());
+    }
+
+    public void testPropertyWhichIsNotAString() throws Exception
+    {
+        MessageFilter red = share("colour = 'red'");
+
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader("colour")).thenReturn(3);
+        QueueEntryImpl entry = createEntry(header);
+
+        assertFalse(red.matches(entry.asFilterable()));
+        assertFalse(red.matches(entry.asFilterable()));
+    }
+
+    public void testSelectorOnRedeliveryIsNotCached() throws Exception
+    {
+        MessageFilter redelivered = share("JMSRedelivered = TRUE");
+        QueueEntryImpl entry = createEntry(mock(AMQMessageHeader.class));
+
+        assertFalse(redelivered.matches(entry.asFilterable()));
+        entry.setRedelivered();
+        assertTrue(redelivered.matches(entry.asFilterable()));
+    }
+
+    public void testReusedSlotDoesNotSeePreviousResults() throws Exception
+    {
+        // shared by two consumers, so that its results are recorded
+        FilterManager redFilters = createFilters("colour = 'red'");
+        FilterManager otherRedFilters = createFilters("colour = 'red'");
+        _sharedSelectors.share(redFilters);
+        _sharedSelectors.share(otherRedFilters);
+
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader("colour")).thenReturn("red");
+        QueueEntryImpl entry = createEntry(header);
+
+        assertTrue(getSelector(redFilters).matches(entry.asFilterable()));
+        assertNotNull(entry.getSelectorResults());
+        _sharedSelectors.release(redFilters);
+        _sharedSelectors.release(otherRedFilters);
+
+        MessageFilter blue = share("colour = 'blue'");
+        assertFalse(blue.matches(entry.asFilterable()));
+        assertTrue("Released selector should still evaluate correctly",
+                   getSelector(redFilters).matches(entry.asFilterable()));
+    }
+
+    public void testResultsNotRecordedForSelectorOfSingleConsumer() throws Exception
+    {
+        MessageFilter red = share("colour = 'red'");
+
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader("colour")).thenReturn("red");
+        QueueEntryImpl entry = createEntry(header);
+
+        assertSame("Entry should act as its own filterable", entry, entry.asFilterable());
+        assertTrue(red.matches(entry.asFilterable()));
+        assertNull("Results no other selector or consumer could read should not be recorded",
+                   entry.getSelectorResults());
+    }
+
+    public void testResultsRecordedForSelectorSharedByConsumers() throws Exception
+    {
+        FilterManager filters1 = createFilters("colour = 'red'");
+        FilterManager filters2 = createFilters("colour = 'red'");
+        _sharedSelectors.share(filters1);
+        _sharedSelectors.share(filters2);
+
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader("colour")).thenReturn("red");
+        QueueEntryImpl entry = createEntry(header);
+
+        assertTrue(getSelector(filters1).matches(entry.asFilterable()));
+        assertTrue(getSelector(filters2).matches(entry.asFilterable()));
+        assertNotNull(entry.getSelectorResults());
+        verify(header, times(1)).getHeader(anyString());
+    }
+
+    private MessageFilter share(String selector) throws Exception
+    {
+        FilterManager filters = createFilters(selector);
+        _sharedSelectors.share(filters);
+        return getSelector(filters);
+    }
+
+    private FilterManager createFilters(String selector) throws Exception
+    {
+        FilterManager filters = new FilterManager();
+        JMSSelectorFilter filter = new JMSSelectorFilter(selector);
+        filters.add(filter.getName(), filter);
+        return filters;
+    }
+
+    private MessageFilter getSelector(FilterManager filters)
+    {
+        return filters.filters().next();
+    }
+
+    private QueueEntryImpl createEntry(AMQMessageHeader header)
+    {
+        ServerMessage message = mock(ServerMessage.class);
+        when(message.getMessageHeader()).thenReturn(header);
+        final MessageReference reference = mock(MessageReference.class);
+        when(reference.getMessage()).thenReturn(message);
+        when(message.newReference()).thenReturn(reference);
+        when(message.newReference(any(TransactionLogResource.class))).thenReturn(reference);
+        return (QueueEntryImpl) _queueEntryList.add(message);
+    }
+}
@@ -20,7 +20,9 @@
  */
 package org.apache.qpid.server.queue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +30,7 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.consumer.ConsumerTarget;
@@ -241,6 +244,72 @@ public class StandardQueueTest extends AbstractQueueTestBase
     }
 
 
+    /**
+     * Tests that a message passed over by a consumer because its group was assigned to another consumer is delivered
+     * to it once the group is released, and that no message of the group is delivered to it before then
+     */
+    public void testSharedGroupPassedOverMessageDeliveredWhenGroupReleased() throws Exception
+    {
+        Map<String,Object> queueAttributes = new HashMap<String, Object>();
+        queueAttributes.put(Queue.ID, UUID.randomUUID());
+        queueAttributes.put(Queue.NAME, "testSharedGroups");
+        queueAttributes.put(Queue.MESSAGE_GROUP_KEY, "group");
+        queueAttributes.put(Queue.MESSAGE_GROUP_SHARED_GROUPS, true);
+        StandardQueueImpl queue = new StandardQueueImpl(queueAttributes, getVirtualHost());
+        queue.create();
+
+        ServerMessage messageA = createMessage(1l, (byte) 4, Collections.singletonMap("group", (Object) "g1"), 0l);
+        ServerMessage messageB = createMessage(2l, (byte) 4, Collections.singletonMap("group", (Object) "g1"), 0l);
+        ServerMessage messageC = createMessage(3l, (byte) 4, Collections.singletonMap("group", (Object) "g2"), 0l);
+
+        final AtomicBoolean target1Suspended = new AtomicBoolean();
+        MockConsumer target1 = new MockConsumer()
+        {
+            @Override
+            public boolean isSuspended()
+            {
+                return target1Suspended.get();
+            }
+        };
+        MockConsumer target2 = new MockConsumer();
+
+        queue.addConsumer(target1, null, messageA.getClass(), "test1",
+                          EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+
+        queue.enqueue(messageA, null);
+
+        Thread.sleep(150);  // Work done by QueueRunner Thread
+        assertEquals("Message of group g1 not delivered to first consumer", 1, target1.getMessages().size());
+
+        target1Suspended.set(true);
+        queue.addConsumer(target2, null, messageA.getClass(), "test2",
+                          EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+        queue.enqueue(messageB, null);
+        queue.enqueue(messageC, null);
+
+        Thread.sleep(150);  // Work done by QueueRunner Thread
+        assertEquals("Unexpected messages delivered to second consumer whilst group g1 is assigned",
+                     Collections.singletonList(messageC), getMessages(target2));
+
+        // acknowledging the only message the first consumer holds releases group g1
+        target1.getMessages().get(0).delete();
+
+        Thread.sleep(150);  // Work done by QueueRunner Thread
+        assertEquals("Passed over message not delivered to second consumer when group g1 was released",
+                     Arrays.asList(messageC, messageB), getMessages(target2));
+        assertEquals("Unexpected messages delivered to first consumer", 1, target1.getMessages().size());
+    }
+
+    private List<ServerMessage> getMessages(final MockConsumer target)
+    {
+        List<ServerMessage> messages = new ArrayList<ServerMessage>();
+        for (MessageInstance instance : target.getMessages())
+        {
+            messages.add(instance.getMessage());
+        }
+        return messages;
+    }
+
     private static class DequeuedQueue extends AbstractQueue
     {
 
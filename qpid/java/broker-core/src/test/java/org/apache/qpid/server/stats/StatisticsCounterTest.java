@@ -146,4 +146,37 @@ public class StatisticsCounterTest extends TestCase
         Thread.sleep(1000);
         assertEquals(0.0, counter.getRate());
     }
+
+    /**
+     * Test that totals add up correctly when events are registered by
+     * many threads at once, across sample periods.
+     */
+    public void testTotalConcurrent() throws Exception
+    {
+        final StatisticsCounter counter = new StatisticsCounter("test", 10L);
+        final long start = counter.getStart();
+        final int eventsPerThread = 100000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < eventsPerThread; j++)
+                    {
+                        counter.registerEvent(2L, start + (j / 1000));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(2L * eventsPerThread * threads.length, counter.getTotal());
+        assertTrue(counter.getPeak() > 0.0);
+    }
 }
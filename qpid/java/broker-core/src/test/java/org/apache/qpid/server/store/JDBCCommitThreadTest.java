@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class JDBCCommitThreadTest extends QpidTestCase
+{
+    private final List<List<String>> _batches = new ArrayList<>();
+    private final CountDownLatch _firstBatchStarted = new CountDownLatch(1);
+    private final CountDownLatch _releaseFirstBatch = new CountDownLatch(1);
+    private JDBCCommitThread<String> _commitThread;
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _releaseFirstBatch.countDown();
+            if (_commitThread != null)
+            {
+                _commitThread.close();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testTransactionsQueuedDuringCommitAreCoalesced() throws Exception
+    {
+        _commitThread = new JDBCCommitThread<>("test", new BlockingCommitter(null), 100);
+        _commitThread.start();
+
+        StoreFuture first = _commitThread.commit("first", false);
+        assertTrue("First batch not started", _firstBatchStarted.await(5, TimeUnit.SECONDS));
+
+        List<StoreFuture> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            futures.add(_commitThread.commit("txn" + i, false));
+        }
+        assertFalse("Transaction should not be complete whilst the previous batch is committing",
+                    futures.get(0).isComplete());
+
+        _releaseFirstBatch.countDown();
+        first.waitForCompletion();
+        for (StoreFuture future : futures)
+        {
+            future.waitForCompletion();
+            assertTrue("Future should be complete", future.isComplete());
+        }
+
+        synchronized (_batches)
+        {
+            assertEquals("Unexpected number of batches", 2, _batches.size());
+            assertEquals("Unexpected size of second batch", 10, _batches.get(1).size());
+        }
+    }
+
+    public void testMaxBatchSize() throws Exception
+    {
+        _commitThread = new JDBCCommitThread<>("test", new BlockingCommitter(null), 4);
+        _commitThread.start();
+
+        _commitThread.commit("first", false);
+        assertTrue("First batch not started", _firstBatchStarted.await(5, TimeUnit.SECONDS));
+
+        StoreFuture last = null;
+        for (int i = 0; i < 10; i++)
+        {
+            last = _commitThread.commit("txn" + i, false);
+        }
+        _releaseFirstBatch.countDown();
+        last.waitForCompletion();
+
+        synchronized (_batches)
+        {
+            assertEquals("Unexpected number of batches", 4, _batches.size());
+            for (List<String> batch : _batches)
+            {
+                assertTrue("Batch exceeds maximum size: " + batch, batch.size() <= 4);
+            }
+        }
+    }
+
+    public void testFailedBatchRetriesTransactionsIndividually() throws Exception
+    {
+        _commitThread = new JDBCCommitThread<>("test", new BlockingCommitter("bad"), 100);
+        _commitThread.start();
+
+        StoreFuture first = _commitThread.commit("first", false);
+        assertTrue("First batch not started", _firstBatchStarted.await(5, TimeUnit.SECONDS));
+
+        StoreFuture good = _commitThread.commit("good", false);
+        StoreFuture bad = _commitThread.commit("bad", false);
+        _releaseFirstBatch.countDown();
+
+        first.waitForCompletion();
+        good.waitForCompletion();
+        assertCommitFails(bad);
+
+        synchronized (_batches)
+        {
+            assertEquals("Unexpected batches", 4, _batches.size());
+            assertEquals("Unexpected size of failed batch", 2, _batches.get(1).size());
+            assertEquals("Transactions should be retried individually", 1, _batches.get(2).size());
+            assertEquals("Transactions should be retried individually", 1, _batches.get(3).size());
+        }
+
+        _commitThread.commit("after", true);
+    }
+
+    public void testCommitAfterCloseFails() throws Exception
+    {
+        _commitThread = new JDBCCommitThread<>("test", new BlockingCommitter(null), 100);
+        _commitThread.start();
+        _releaseFirstBatch.countDown();
+
+        StoreFuture future = _commitThread.commit("txn", false);
+        _commitThread.close();
+        assertTrue("Transaction queued before close should be committed", future.isComplete());
+        future.waitForCompletion();
+
+        assertCommitFails(_commitThread.commit("late", false));
+    }
+
+    private void assertCommitFails(final StoreFuture future)
+    {
+        try
+        {
+            future.waitForCompletion();
+            fail("Exception not thrown");
+        }
+        catch (StoreException e)
+        {
+            // pass
+        }
+        assertTrue("Failed future should be complete", future.isComplete());
+    }
+
+    private class BlockingCommitter implements JDBCCommitThread.BatchCommitter<String>
+    {
+        private final String _failingTransaction;
+
+        private BlockingCommitter(final String failingTransaction)
+        {
+            _failingTransaction = failingTransaction;
+        }
+
+        @Override
+        public void commit(final List<String> transactions)
+        {
+            if (_firstBatchStarted.getCount() > 0)
+            {
+                _firstBatchStarted.countDown();
+                try
+                {
+                    _releaseFirstBatch.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            synchronized (_batches)
+            {
+                _batches.add(new ArrayList<>(transactions));
+            }
+
+            if (_failingTransaction != null && transactions.contains(_failingTransaction))
+            {
+                throw new StoreException("Failed to commit " + _failingTransaction);
+            }
+        }
+    }
+}
@@ -106,6 +106,8 @@ public abstract class MessageStoreQuotaEventsTestBase extends QpidTestCase imple
         {
             m.getStoredMessage().remove();
         }
+        // the store may queue the removals behind its transactions
+        _store.newTransaction().commitTran();
 
         assertEvent(2, Event.PERSISTENT_MESSAGE_SIZE_UNDERFULL);
     }
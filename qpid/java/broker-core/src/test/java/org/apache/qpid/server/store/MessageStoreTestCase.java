@@ -28,6 +28,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
@@ -275,6 +277,44 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         assertTrue("Message with id " + messageId2 + " is not found", enqueuedIds.contains(messageId2));
     }
 
+    public void testCommitTransactionsAsynchronously() throws Exception
+    {
+        final UUID mockQueueId = UUIDGenerator.generateRandomUUID();
+        TransactionLogResource mockQueue = createTransactionLogResource(mockQueueId);
+
+        int numberOfTransactions = 20;
+        StoreFuture[] futures = new StoreFuture[numberOfTransactions];
+        for (int i = 0; i < numberOfTransactions; i++)
+        {
+            Transaction txn = getStore().newTransaction();
+            txn.enqueueMessage(mockQueue, createEnqueueableMessage(i + 1));
+            if (i > 0 && i % 2 == 0)
+            {
+                // dequeue a message enqueued by an earlier, possibly still uncommitted, transaction
+                txn.dequeueMessage(mockQueue, createMockEnqueueableMessage(i, null));
+            }
+            futures[i] = txn.commitTranAsync();
+        }
+
+        for (StoreFuture future : futures)
+        {
+            future.waitForCompletion();
+        }
+
+        QueueFilteringMessageInstanceHandler filter = new QueueFilteringMessageInstanceHandler(mockQueueId);
+        getStore().visitMessageInstances(filter);
+        Set<Long> enqueuedIds = filter.getEnqueuedIds();
+
+        // every even message id other than the last has been dequeued
+        Set<Long> expectedIds = new HashSet<Long>();
+        for (long messageId = 1; messageId < numberOfTransactions; messageId += 2)
+        {
+            expectedIds.add(messageId);
+        }
+        expectedIds.add((long) numberOfTransactions);
+        assertEquals("Unexpected enqueued messages", expectedIds, enqueuedIds);
+    }
+
     public void testRollbackTransactionBeforeCommit() throws Exception
     {
         final UUID mockQueueId = UUIDGenerator.generateRandomUUID();
@@ -377,6 +417,7 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         assertEquals("Unexpected retreived message", message.getMessageNumber(), retrievedMessage.getMessageNumber());
 
         retrievedMessage.remove();
+        waitForQueuedWork();
 
         retrievedMessageRef.set(null);
         _store.visitMessages(new MessageHandler()
@@ -392,6 +433,70 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         assertNull(retrievedMessageRef.get());
     }
 
+    public void testFlowToDiskAndReloadContent() throws Exception
+    {
+        byte[] content = "flowToDisk".getBytes();
+        final StoredMessage<TestMessageMetaData> message = _store.addMessage(new TestMessageMetaData(1, content.length));
+        message.addContent(0, ByteBuffer.wrap(content));
+        enqueueMessage(message, "dummyQ");
+
+        if (message.flowToDisk())
+        {
+            assertFalse("Content should have been released from memory", message.isInMemory());
+        }
+        assertContent(content, message);
+
+        message.flowToDisk();
+        message.reloadContent();
+        assertTrue("Content should have been reloaded into memory", message.isInMemory());
+        assertContent(content, message);
+    }
+
+    public void testContentAddedInChunks() throws Exception
+    {
+        byte[] content = "content added in several chunks".getBytes();
+        final StoredMessage<TestMessageMetaData> message = _store.addMessage(new TestMessageMetaData(1, content.length));
+        int offset = 0;
+        for (int chunkSize : new int[] {7, 1, 10, content.length - 18})
+        {
+            message.addContent(offset, ByteBuffer.wrap(content, offset, chunkSize));
+            offset += chunkSize;
+        }
+
+        ByteBuffer view = message.getContent(5, 10);
+        byte[] viewed = new byte[view.remaining()];
+        view.get(viewed);
+        assertTrue("Unexpected content view across chunks",
+                   Arrays.equals(Arrays.copyOfRange(content, 5, 15), viewed));
+
+        ByteBuffer buffer = ByteBuffer.allocate(content.length);
+        assertEquals("Unexpected content length from offset", content.length - 3, message.getContent(3, buffer));
+
+        enqueueMessage(message, "dummyQ");
+        message.flowToDisk();
+        assertContent(content, message);
+    }
+
+    /**
+     * Waits for work the store may have queued, such as the removal of messages, by committing a transaction behind it.
+     */
+    protected void waitForQueuedWork()
+    {
+        _store.newTransaction().commitTran();
+    }
+
+    protected void assertContent(final byte[] expected, final StoredMessage<?> message)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+        assertEquals("Unexpected content length", expected.length, message.getContent(0, buffer));
+        assertTrue("Unexpected content", Arrays.equals(expected, buffer.array()));
+
+        ByteBuffer view = message.getContent(0, expected.length);
+        byte[] viewed = new byte[view.remaining()];
+        view.get(viewed);
+        assertTrue("Unexpected content view", Arrays.equals(expected, viewed));
+    }
+
 
     private TransactionLogResource createTransactionLogResource(UUID queueId)
     {
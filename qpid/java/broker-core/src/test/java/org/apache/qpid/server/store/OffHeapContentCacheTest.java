@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class OffHeapContentCacheTest extends QpidTestCase
+{
+    public void testPutAndGet()
+    {
+        OffHeapContentCache cache = new OffHeapContentCache(100);
+        assertTrue("Content not cached", cache.put(1l, new byte[]{1, 2, 3}));
+
+        ByteBuffer content = cache.get(1l);
+        assertNotNull("Content not found", content);
+        assertEquals("Unexpected content length", 3, content.remaining());
+        assertEquals("Unexpected content", 2, content.get(1));
+
+        content.put(1, (byte) 5);
+        assertEquals("Content read should be a copy", 2, cache.get(1l).get(1));
+
+        assertNull("Unexpected content", cache.get(2l));
+        assertEquals("Unexpected hit count", 2, cache.getHitCount());
+        assertEquals("Unexpected miss count", 1, cache.getMissCount());
+        assertEquals("Unexpected size", 3, cache.getSize());
+    }
+
+    public void testLeastRecentlyUsedContentDiscardedWhenFull()
+    {
+        OffHeapContentCache cache = new OffHeapContentCache(30, 10);
+        cache.put(1l, new byte[10]);
+        cache.put(2l, new byte[10]);
+        cache.put(3l, new byte[10]);
+
+        // make message 1 the most recently used
+        assertNotNull(cache.get(1l));
+
+        cache.put(4l, new byte[10]);
+
+        assertNull("Least recently used content should have been discarded", cache.get(2l));
+        assertNotNull("Content unexpectedly discarded", cache.get(1l));
+        assertNotNull("Content unexpectedly discarded", cache.get(3l));
+        assertNotNull("Content unexpectedly discarded", cache.get(4l));
+        assertEquals("Unexpected size", 30, cache.getSize());
+        assertEquals("Unexpected entry count", 3, cache.getEntryCount());
+    }
+
+    public void testBlocksOfDiscardedContentReused()
+    {
+        OffHeapContentCache cache = new OffHeapContentCache(40, 10);
+        for (long messageId = 0; messageId < 10; messageId++)
+        {
+            assertTrue("Content not cached", cache.put(messageId, createContent(messageId, 15 + (int) messageId)));
+        }
+
+        assertEquals("Unexpected entry count", 1, cache.getEntryCount());
+        assertEquals("Unexpected content", ByteBuffer.wrap(createContent(9l, 24)), cache.get(9l));
+        assertNull("Discarded content should not be found", cache.get(8l));
+
+        cache.put(10l, createContent(10l, 10));
+        assertEquals("Unexpected entry count", 2, cache.getEntryCount());
+        assertEquals("Unexpected content", ByteBuffer.wrap(createContent(9l, 24)), cache.get(9l));
+        assertEquals("Unexpected content", ByteBuffer.wrap(createContent(10l, 10)), cache.get(10l));
+        assertEquals("Unexpected size", 34, cache.getSize());
+    }
+
+    public void testContentLargerThanCapacityNotCached()
+    {
+        OffHeapContentCache cache = new OffHeapContentCache(10);
+        cache.put(1l, new byte[5]);
+
+        assertFalse("Oversized content should not be cached", cache.put(2l, new byte[11]));
+        assertNotNull("Content unexpectedly discarded", cache.get(1l));
+        assertEquals("Unexpected size", 5, cache.getSize());
+    }
+
+    public void testRemoveAndClear()
+    {
+        OffHeapContentCache cache = new OffHeapContentCache(100);
+        cache.put(1l, new byte[10]);
+        cache.put(2l, new byte[20]);
+
+        cache.remove(1l);
+        assertNull("Content not removed", cache.get(1l));
+        assertEquals("Unexpected size", 20, cache.getSize());
+
+        cache.clear();
+        assertNull("Content not cleared", cache.get(2l));
+        assertEquals("Unexpected size", 0, cache.getSize());
+        assertEquals("Unexpected entry count", 0, cache.getEntryCount());
+    }
+
+    private byte[] createContent(final long messageId, final int length)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) (messageId + i);
+        }
+        return content;
+    }
+}
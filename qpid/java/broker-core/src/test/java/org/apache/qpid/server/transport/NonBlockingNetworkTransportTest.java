@@ -0,0 +1,243 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.transport;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.protocol.ProtocolEngineFactory;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.NetworkTransportConfiguration;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.network.NetworkConnection;
+
+public class NonBlockingNetworkTransportTest extends QpidTestCase
+{
+    private NonBlockingNetworkTransport _transport;
+    private final CountDownLatch _closedLatch = new CountDownLatch(1);
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _transport = new NonBlockingNetworkTransport(2);
+        _transport.accept(new TestConfiguration(), new EchoProtocolEngineFactory(), null);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _transport.close();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testDataIsEchoed() throws Exception
+    {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), _transport.getAcceptingPort()))
+        {
+            byte[] data = new byte[100000];
+            for (int i = 0; i < data.length; i++)
+            {
+                data[i] = (byte) i;
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(data);
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            byte[] received = new byte[data.length];
+            int offset = 0;
+            while (offset < received.length)
+            {
+                int read = in.read(received, offset, received.length - offset);
+                assertTrue("Unexpected end of stream after " + offset + " bytes", read != -1);
+                offset += read;
+            }
+
+            for (int i = 0; i < data.length; i++)
+            {
+                assertEquals("Unexpected byte at position " + i, data[i], received[i]);
+            }
+        }
+    }
+
+    public void testEngineNotifiedWhenPeerCloses() throws Exception
+    {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), _transport.getAcceptingPort());
+        socket.getOutputStream().write(1);
+        socket.close();
+
+        assertTrue("Protocol engine was not told of the closure", _closedLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    private class EchoProtocolEngineFactory implements ProtocolEngineFactory
+    {
+        @Override
+        public ProtocolEngine newProtocolEngine(final SocketAddress remoteSocketAddress)
+        {
+            return new EchoProtocolEngine();
+        }
+    }
+
+    private class EchoProtocolEngine implements ProtocolEngine
+    {
+        private NetworkConnection _network;
+        private Sender<ByteBuffer> _sender;
+
+        @Override
+        public void setNetworkConnection(final NetworkConnection network, final Sender<ByteBuffer> sender)
+        {
+            _network = network;
+            _sender = sender;
+        }
+
+        @Override
+        public void received(final ByteBuffer msg)
+        {
+            _sender.send(msg);
+            _sender.flush();
+        }
+
+        @Override
+        public void exception(final Throwable t)
+        {
+        }
+
+        @Override
+        public void closed()
+        {
+            _closedLatch.countDown();
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress()
+        {
+            return _network.getRemoteAddress();
+        }
+
+        @Override
+        public SocketAddress getLocalAddress()
+        {
+            return _network.getLocalAddress();
+        }
+
+        @Override
+        public long getWrittenBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getReadBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public void writerIdle()
+        {
+        }
+
+        @Override
+        public void readerIdle()
+        {
+        }
+
+        @Override
+        public long getLastReadTime()
+        {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long getLastWriteTime()
+        {
+            return System.currentTimeMillis();
+        }
+    }
+
+    private static class TestConfiguration implements NetworkTransportConfiguration
+    {
+        @Override
+        public boolean getTcpNoDelay()
+        {
+            return true;
+        }
+
+        @Override
+        public int getReceiveBufferSize()
+        {
+            return 8192;
+        }
+
+        @Override
+        public int getSendBufferSize()
+        {
+            return 8192;
+        }
+
+        @Override
+        public InetSocketAddress getAddress()
+        {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        }
+
+        @Override
+        public boolean needClientAuth()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean wantClientAuth()
+        {
+            return false;
+        }
+
+        @Override
+        public Collection<String> getEnabledCipherSuites()
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<String> getDisabledCipherSuites()
+        {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -89,8 +89,24 @@ public class TCPandSSLTransportTest extends QpidTestCase
     }
 
 
+    public void testTLSSupportOnSSLOnlyPortWithNonBlockingIo() throws Exception
+    {
+        checkSSLExcluded("TLSv1.2", true, Transport.SSL);
+    }
+
+    public void testTLSSupportOnSharedPortWithNonBlockingIo() throws Exception
+    {
+        checkSSLExcluded("TLSv1.2", true, Transport.TCP, Transport.SSL);
+    }
 
     private void checkSSLExcluded(String clientProtocol, final Transport... transports) throws Exception
+    {
+        checkSSLExcluded(clientProtocol, false, transports);
+    }
+
+    private void checkSSLExcluded(String clientProtocol,
+                                  boolean nonBlockingIo,
+                                  final Transport... transports) throws Exception
     {
         KeyStore keyStore = KeyStore.getInstance("JKS");
         keyStore.load(new ByteArrayInputStream(DatatypeConverter.parseBase64Binary(keystoreString)), "password".toCharArray());
@@ -109,6 +125,8 @@ public class TCPandSSLTransportTest extends QpidTestCase
         when(port.getSendBufferSize()).thenReturn(64*1024);
         when(port.getReceiveBufferSize()).thenReturn(64*1024);
         when(port.canAcceptNewConnection(any(SocketAddress.class))).thenReturn(true);
+        when(port.getContextValue(Boolean.class, AmqpPort.PORT_AMQP_NON_BLOCKING_IO)).thenReturn(nonBlockingIo);
+        when(port.getContextValue(Integer.class, AmqpPort.PORT_AMQP_SELECTOR_THREAD_COUNT)).thenReturn(2);
 
         TCPandSSLTransport transport = new TCPandSSLTransport(new HashSet<>(Arrays.asList(transports)),
                                                               sslContext,
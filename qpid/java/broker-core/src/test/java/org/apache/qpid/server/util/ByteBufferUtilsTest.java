@@ -0,0 +1,56 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.util;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ByteBufferUtilsTest extends QpidTestCase
+{
+    public void testSmallPartOfBufferIsCopied()
+    {
+        ByteBuffer networkBuffer = ByteBuffer.allocate(1024);
+        networkBuffer.position(100);
+        networkBuffer.put(new byte[]{1, 2, 3});
+        networkBuffer.position(100);
+        networkBuffer.limit(103);
+
+        ByteBuffer retained = ByteBufferUtils.retainableSlice(networkBuffer);
+        assertEquals("Unexpected content size", 3, retained.remaining());
+        assertEquals("Copy should not be backed by the network buffer", 3, retained.capacity());
+        assertEquals("Source position should not change", 100, networkBuffer.position());
+
+        networkBuffer.put(100, (byte) 9);
+        assertEquals("Copy should not see later changes to the network buffer", 1, retained.get(0));
+    }
+
+    public void testMostOfBufferIsSliced()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        buffer.position(2);
+
+        ByteBuffer retained = ByteBufferUtils.retainableSlice(buffer);
+        assertEquals("Unexpected content size", 8, retained.remaining());
+        buffer.put(2, (byte) 7);
+        assertEquals("Slice should share the buffer", 7, retained.get(0));
+    }
+}
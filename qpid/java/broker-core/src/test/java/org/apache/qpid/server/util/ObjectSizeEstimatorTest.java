@@ -0,0 +1,66 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.util;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ObjectSizeEstimatorTest extends QpidTestCase
+{
+    public void testEmptyObject()
+    {
+        assertEquals("Unexpected size", align(ObjectSizeEstimator.OBJECT_HEADER_SIZE),
+                     ObjectSizeEstimator.shallowSize(Object.class));
+    }
+
+    public void testInstanceFieldsIncludingInheritedAreCounted()
+    {
+        long baseSize = align(ObjectSizeEstimator.OBJECT_HEADER_SIZE + 8 + 4 + ObjectSizeEstimator.REFERENCE_SIZE);
+        assertEquals("Unexpected size", baseSize, ObjectSizeEstimator.shallowSize(Base.class));
+
+        long derivedSize = align(ObjectSizeEstimator.OBJECT_HEADER_SIZE + 8 + 4 + ObjectSizeEstimator.REFERENCE_SIZE
+                                 + 8 + 1);
+        assertEquals("Unexpected size", derivedSize, ObjectSizeEstimator.shallowSize(Derived.class));
+    }
+
+    public void testSizeIsAligned()
+    {
+        assertEquals("Size should be a multiple of eight", 0, ObjectSizeEstimator.shallowSize(Derived.class) % 8);
+    }
+
+    private static long align(long size)
+    {
+        return ((size + 7) / 8) * 8;
+    }
+
+    private static class Base
+    {
+        private static long STATIC_FIELD;
+        private long _long;
+        private int _int;
+        private Object _reference;
+    }
+
+    private static class Derived extends Base
+    {
+        private double _double;
+        private boolean _boolean;
+    }
+}
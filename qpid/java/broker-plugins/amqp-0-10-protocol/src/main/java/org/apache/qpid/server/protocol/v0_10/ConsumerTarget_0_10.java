@@ -36,7 +36,6 @@ import org.apache.qpid.server.logging.messages.ChannelMessages;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.Exchange;
-import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.protocol.MessageConverterRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.QueueConsumer;
@@ -211,11 +210,7 @@ public class ConsumerTarget_0_10 extends AbstractConsumerTarget implements FlowC
         }
         else
         {
-            MessageConverter converter =
-                    MessageConverterRegistry.getConverter(serverMsg.getClass(), MessageTransferMessage.class);
-
-
-            msg = (MessageTransferMessage) converter.convert(serverMsg, _session.getVirtualHost());
+            msg = MessageConverterRegistry.convert(serverMsg, MessageTransferMessage.class, _session.getVirtualHost());
         }
         DeliveryProperties origDeliveryProps = msg.getHeader() == null ? null : msg.getHeader().getDeliveryProperties();
         messageProps = msg.getHeader() == null ? null : msg.getHeader().getMessageProperties();
@@ -269,6 +264,8 @@ public class ConsumerTarget_0_10 extends AbstractConsumerTarget implements FlowC
             byte[] uncompressed = GZIPUtils.uncompressBufferToArray(body);
             if(uncompressed != null)
             {
+                // the properties belong to the message, which may be shared with other consumers
+                messageProps = copyOf(messageProps);
                 messageProps.setContentEncoding(null);
                 body = ByteBuffer.wrap(uncompressed);
             }
@@ -282,10 +279,7 @@ public class ConsumerTarget_0_10 extends AbstractConsumerTarget implements FlowC
             byte[] compressed = GZIPUtils.compressBufferToArray(body);
             if(compressed != null)
             {
-                if(messageProps == null)
-                {
-                    messageProps = new MessageProperties();
-                }
+                messageProps = messageProps == null ? new MessageProperties() : copyOf(messageProps);
                 messageProps.setContentEncoding(GZIPUtils.GZIP_CONTENT_ENCODING);
                 body = ByteBuffer.wrap(compressed);
             }
@@ -597,6 +591,48 @@ public class ConsumerTarget_0_10 extends AbstractConsumerTarget implements FlowC
         _unacknowledgedCount.decrementAndGet();
     }
 
+    private static MessageProperties copyOf(final MessageProperties properties)
+    {
+        MessageProperties copy = new MessageProperties();
+        if(properties.hasContentLength())
+        {
+            copy.setContentLength(properties.getContentLength());
+        }
+        if(properties.hasMessageId())
+        {
+            copy.setMessageId(properties.getMessageId());
+        }
+        if(properties.hasCorrelationId())
+        {
+            copy.setCorrelationId(properties.getCorrelationId());
+        }
+        if(properties.hasReplyTo())
+        {
+            copy.setReplyTo(properties.getReplyTo());
+        }
+        if(properties.hasContentType())
+        {
+            copy.setContentType(properties.getContentType());
+        }
+        if(properties.hasContentEncoding())
+        {
+            copy.setContentEncoding(properties.getContentEncoding());
+        }
+        if(properties.hasUserId())
+        {
+            copy.setUserId(properties.getUserId());
+        }
+        if(properties.hasAppId())
+        {
+            copy.setAppId(properties.getAppId());
+        }
+        if(properties.hasApplicationHeaders())
+        {
+            copy.setApplicationHeaders(properties.getApplicationHeaders());
+        }
+        return copy;
+    }
+
     public void flush()
     {
         flushCreditState(true);
@@ -117,6 +117,11 @@ public class MessageConverter_Internal_to_v0_10 implements MessageConverter<Inte
                     {
                         return false;
                     }
+
+                    @Override
+                    public void reloadContent()
+                    {
+                    }
         };
     }
 
@@ -117,6 +117,11 @@ public class MessageConverter_v0_10 implements MessageConverter<ServerMessage, M
                     {
                         return false;
                     }
+
+                    @Override
+                    public void reloadContent()
+                    {
+                    }
         };
     }
 
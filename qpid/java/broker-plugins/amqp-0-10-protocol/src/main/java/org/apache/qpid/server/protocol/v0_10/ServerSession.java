@@ -31,15 +31,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -94,6 +91,7 @@ import org.apache.qpid.server.util.Action;
 import org.apache.qpid.server.util.Deletable;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 import org.apache.qpid.transport.Binary;
+import org.apache.qpid.transport.CommandMap;
 import org.apache.qpid.transport.Connection;
 import org.apache.qpid.transport.MessageCreditUnit;
 import org.apache.qpid.transport.MessageFlow;
@@ -150,8 +148,10 @@ public class ServerSession extends Session
 
     }
 
-    private final SortedMap<Integer, MessageDispositionChangeListener> _messageDispositionListenerMap =
-            new ConcurrentSkipListMap<Integer, MessageDispositionChangeListener>();
+    // guarded by itself; the listeners are called without the lock held.  The ids of unsettled transfers may span far
+    // more than their number, in which case the map holds them sparsely rather than in its ring
+    private final CommandMap<MessageDispositionChangeListener> _messageDispositionListenerMap =
+            new CommandMap<MessageDispositionChangeListener>();
 
     private ServerTransaction _transaction;
 
@@ -316,7 +316,47 @@ public class ServerSession extends Session
 
     public void onMessageDispositionChange(MessageTransfer xfr, MessageDispositionChangeListener acceptListener)
     {
-        _messageDispositionListenerMap.put(xfr.getId(), acceptListener);
+        synchronized (_messageDispositionListenerMap)
+        {
+            _messageDispositionListenerMap.put(xfr.getId(), acceptListener);
+        }
+    }
+
+    /**
+     * Returns the lowest id of a transfer with a listener held within the given range from the given id, or the
+     * id following the range if there is none.  The range is visited from one held id to the next, so the lock is
+     * released whilst each listener is called, and ids the range spans but no listener holds are never visited.
+     */
+    private int nextListenedId(int id, Range range)
+    {
+        int upper = range.getUpper();
+        synchronized (_messageDispositionListenerMap)
+        {
+            if (_messageDispositionListenerMap.isEmpty()
+                || gt(id, _messageDispositionListenerMap.getLast())
+                || gt(id, upper))
+            {
+                return upper + 1;
+            }
+            int next = _messageDispositionListenerMap.next(id);
+            return gt(next, upper) ? upper + 1 : next;
+        }
+    }
+
+    private MessageDispositionChangeListener getMessageDispositionListener(int id)
+    {
+        synchronized (_messageDispositionListenerMap)
+        {
+            return _messageDispositionListenerMap.get(id);
+        }
+    }
+
+    private MessageDispositionChangeListener removeMessageDispositionListener(int id)
+    {
+        synchronized (_messageDispositionListenerMap)
+        {
+            return _messageDispositionListenerMap.remove(id);
+        }
     }
 
 
@@ -363,45 +403,17 @@ public class ServerSession extends Session
     {
         RangeSet acquired = RangeSetFactory.createRangeSet();
 
-        if(!_messageDispositionListenerMap.isEmpty())
+        for(Range range : transfers)
         {
-            Iterator<Integer> unacceptedMessages = _messageDispositionListenerMap.keySet().iterator();
-            Iterator<Range> rangeIter = transfers.iterator();
-
-            if(rangeIter.hasNext())
+            int end = range.getUpper() + 1;
+            for(int i = nextListenedId(range.getLower(), range); i != end; i = nextListenedId(i + 1, range))
             {
-                Range range = rangeIter.next();
-
-                while(range != null && unacceptedMessages.hasNext())
+                MessageDispositionChangeListener changeListener = getMessageDispositionListener(i);
+                if(changeListener != null && changeListener.acquire())
                 {
-                    int next = unacceptedMessages.next();
-                    while(gt(next, range.getUpper()))
-                    {
-                        if(rangeIter.hasNext())
-                        {
-                            range = rangeIter.next();
-                        }
-                        else
-                        {
-                            range = null;
-                            break;
-                        }
-                    }
-                    if(range != null && range.includes(next))
-                    {
-                        MessageDispositionChangeListener changeListener = _messageDispositionListenerMap.get(next);
-                        if(changeListener != null && changeListener.acquire())
-                        {
-                            acquired.add(next);
-                        }
-                    }
-
-
+                    acquired.add(i);
                 }
-
             }
-
-
         }
 
         return acquired;
@@ -411,60 +423,25 @@ public class ServerSession extends Session
     {
         if(ranges != null)
         {
-
-            if(ranges.size() == 1)
+            for(Range range : ranges)
             {
-                Range r = ranges.getFirst();
-                for(int i = r.getLower(); i <= r.getUpper(); i++)
+                int end = range.getUpper() + 1;
+                for(int i = nextListenedId(range.getLower(), range); i != end; i = nextListenedId(i + 1, range))
                 {
-                    MessageDispositionChangeListener changeListener = _messageDispositionListenerMap.remove(i);
+                    // only the caller removing the listener performs the action
+                    MessageDispositionChangeListener changeListener = removeMessageDispositionListener(i);
                     if(changeListener != null)
                     {
                         action.performAction(changeListener);
                     }
                 }
             }
-            else if(!_messageDispositionListenerMap.isEmpty())
-            {
-                Iterator<Integer> unacceptedMessages = _messageDispositionListenerMap.keySet().iterator();
-                Iterator<Range> rangeIter = ranges.iterator();
-
-                if(rangeIter.hasNext())
-                {
-                    Range range = rangeIter.next();
-
-                    while(range != null && unacceptedMessages.hasNext())
-                    {
-                        int next = unacceptedMessages.next();
-                        while(gt(next, range.getUpper()))
-                        {
-                            if(rangeIter.hasNext())
-                            {
-                                range = rangeIter.next();
-                            }
-                            else
-                            {
-                                range = null;
-                                break;
-                            }
-                        }
-                        if(range != null && range.includes(next))
-                        {
-                            MessageDispositionChangeListener changeListener = _messageDispositionListenerMap.remove(next);
-                            action.performAction(changeListener);
-                        }
-
-
-                    }
-
-                }
-            }
         }
     }
 
     public void removeDispositionListener(Method method)
     {
-        _messageDispositionListenerMap.remove(method.getId());
+        removeMessageDispositionListener(method.getId());
     }
 
     public void onClose()
@@ -478,11 +455,16 @@ public class ServerSession extends Session
             getVirtualHost().getDtxRegistry().endAssociations(this);
         }
 
-        for(MessageDispositionChangeListener listener : _messageDispositionListenerMap.values())
+        List<MessageDispositionChangeListener> unacknowledged;
+        synchronized (_messageDispositionListenerMap)
+        {
+            unacknowledged = _messageDispositionListenerMap.values();
+            _messageDispositionListenerMap.clear();
+        }
+        for(MessageDispositionChangeListener listener : unacknowledged)
         {
             listener.onRelease(true);
         }
-        _messageDispositionListenerMap.clear();
 
         for (Action<? super ServerSession> task : _taskList)
         {
@@ -959,7 +941,10 @@ public class ServerSession extends Session
 
     public int getUnacknowledgedMessageCount()
     {
-        return _messageDispositionListenerMap.size();
+        synchronized (_messageDispositionListenerMap)
+        {
+            return _messageDispositionListenerMap.size();
+        }
     }
 
     public boolean getBlocking()
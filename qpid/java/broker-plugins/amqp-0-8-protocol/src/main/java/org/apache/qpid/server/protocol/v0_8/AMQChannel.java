@@ -437,7 +437,7 @@ public class AMQChannel
                         for(int i = 0 ; i < bodyCount ; i++)
                         {
                             ContentBody contentChunk = _currentMessage.getContentChunk(i);
-                            handle.addContent((int)bodyLengthReceived, ByteBuffer.wrap(contentChunk.getPayload()));
+                            handle.addContent((int)bodyLengthReceived, contentChunk.getPayloadBuffer());
                             bodyLengthReceived += contentChunk.getSize();
                         }
                     }
@@ -2456,7 +2456,7 @@ public class AMQChannel
     }
 
     @Override
-    public void receiveMessageContent(final byte[] data)
+    public void receiveMessageContent(final ByteBuffer data)
     {
         if(_logger.isDebugEnabled())
         {
@@ -2514,75 +2514,76 @@ public class AMQChannel
             _logger.debug("RECV[" + _channelId + "] BasicNack[" +" deliveryTag: " + deliveryTag + " multiple: " + multiple + " requeue: " + requeue + " ]");
         }
 
-        Map<Long, MessageInstance> nackedMessageMap = new LinkedHashMap<>();
-        _unacknowledgedMessageMap.collect(deliveryTag, multiple, nackedMessageMap);
+        _unacknowledgedMessageMap.visit(deliveryTag, multiple, new UnacknowledgedMessageMap.Visitor()
+        {
+            @Override
+            public boolean callback(final long nackedTag, final MessageInstance message)
+            {
+                nack(nackedTag, message, requeue);
+                return false;
+            }
+
+            @Override
+            public void visitComplete()
+            {
+            }
+        });
+    }
 
-        for(MessageInstance message : nackedMessageMap.values())
+    private void nack(final long deliveryTag, final MessageInstance message, final boolean requeue)
+    {
+        if (message.getMessage() == null)
         {
+            _logger.warn("Message has already been purged, unable to nack.");
+        }
+        else
+        {
+            if (_logger.isDebugEnabled())
+            {
+                _logger.debug("Nack-ing: DT:" + deliveryTag
+                              + "-" + message.getMessage() +
+                              ": Requeue:" + requeue
+                              +
+                              " on channel:" + debugIdentity());
+            }
 
-            if (message == null)
+            if (requeue)
             {
-                _logger.warn("Ignoring nack request as message is null for tag:" + deliveryTag);
+                message.decrementDeliveryCount();
+
+                requeue(deliveryTag);
             }
             else
             {
+                message.reject();
 
-                if (message.getMessage() == null)
+                final boolean maxDeliveryCountEnabled = isMaxDeliveryCountEnabled(deliveryTag);
+                _logger.debug("maxDeliveryCountEnabled: "
+                              + maxDeliveryCountEnabled
+                              + " deliveryTag "
+                              + deliveryTag);
+                if (maxDeliveryCountEnabled)
                 {
-                    _logger.warn("Message has already been purged, unable to nack.");
-                }
-                else
-                {
-                    if (_logger.isDebugEnabled())
-                    {
-                        _logger.debug("Nack-ing: DT:" + deliveryTag
-                                      + "-" + message.getMessage() +
-                                      ": Requeue:" + requeue
-                                      +
-                                      " on channel:" + debugIdentity());
-                    }
-
-                    if (requeue)
+                    final boolean deliveredTooManyTimes = isDeliveredTooManyTimes(deliveryTag);
+                    _logger.debug("deliveredTooManyTimes: "
+                                  + deliveredTooManyTimes
+                                  + " deliveryTag "
+                                  + deliveryTag);
+                    if (deliveredTooManyTimes)
                     {
-                        message.decrementDeliveryCount();
-
-                        requeue(deliveryTag);
+                        deadLetter(deliveryTag);
                     }
                     else
                     {
-                        message.reject();
-
-                        final boolean maxDeliveryCountEnabled = isMaxDeliveryCountEnabled(deliveryTag);
-                        _logger.debug("maxDeliveryCountEnabled: "
-                                      + maxDeliveryCountEnabled
-                                      + " deliveryTag "
-                                      + deliveryTag);
-                        if (maxDeliveryCountEnabled)
-                        {
-                            final boolean deliveredTooManyTimes = isDeliveredTooManyTimes(deliveryTag);
-                            _logger.debug("deliveredTooManyTimes: "
-                                          + deliveredTooManyTimes
-                                          + " deliveryTag "
-                                          + deliveryTag);
-                            if (deliveredTooManyTimes)
-                            {
-                                deadLetter(deliveryTag);
-                            }
-                            else
-                            {
-                                message.incrementDeliveryCount();
-                            }
-                        }
-                        else
-                        {
-                            requeue(deliveryTag);
-                        }
+                        message.incrementDeliveryCount();
                     }
                 }
+                else
+                {
+                    requeue(deliveryTag);
+                }
             }
-
         }
-
     }
 
     @Override
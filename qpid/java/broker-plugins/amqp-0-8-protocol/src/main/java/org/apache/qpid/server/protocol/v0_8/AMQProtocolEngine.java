@@ -111,7 +111,6 @@ public class AMQProtocolEngine implements ServerProtocolEngine,
     // to save boxing the channelId and looking up in a map... cache in an array the low numbered
     // channels.  This value must be of the form 2^x - 1.
     private static final int CHANNEL_CACHE_SIZE = 0xff;
-    private static final int REUSABLE_BYTE_BUFFER_CAPACITY = 65 * 1024;
     public static final String BROKER_DEBUG_BINARY_DATA_LENGTH = "broker.debug.binaryDataLength";
     public static final int DEFAULT_DEBUG_BINARY_DATA_LENGTH = 80;
     private static final long AWAIT_CLOSED_TIMEOUT = 60000;
@@ -494,26 +493,12 @@ public class AMQProtocolEngine implements ServerProtocolEngine,
     }
 
 
-    private final byte[] _reusableBytes = new byte[REUSABLE_BYTE_BUFFER_CAPACITY];
-    private final ByteBuffer _reusableByteBuffer = ByteBuffer.wrap(_reusableBytes);
-    private final BytesDataOutput _reusableDataOutput = new BytesDataOutput(_reusableBytes);
+    private final BytesDataOutput _reusableDataOutput = new BytesDataOutput(new byte[0]);
 
     private ByteBuffer asByteBuffer(AMQDataBlock block)
     {
-        final int size = (int) block.getSize();
-
-        final byte[] data;
-
-
-        if(size > REUSABLE_BYTE_BUFFER_CAPACITY)
-        {
-            data= new byte[size];
-        }
-        else
-        {
-
-            data = _reusableBytes;
-        }
+        // the sender may retain the buffer until it is written, so each frame is encoded into its own array
+        final byte[] data = new byte[(int) block.getSize()];
         _reusableDataOutput.setBuffer(data);
 
         try
@@ -525,20 +510,7 @@ public class AMQProtocolEngine implements ServerProtocolEngine,
             throw new ServerScopedRuntimeException(e);
         }
 
-        final ByteBuffer buf;
-
-        if(size <= REUSABLE_BYTE_BUFFER_CAPACITY)
-        {
-            buf = _reusableByteBuffer;
-            buf.position(0);
-        }
-        else
-        {
-            buf = ByteBuffer.wrap(data);
-        }
-        buf.limit(_reusableDataOutput.length());
-
-        return buf;
+        return ByteBuffer.wrap(data, 0, _reusableDataOutput.length());
     }
 
 
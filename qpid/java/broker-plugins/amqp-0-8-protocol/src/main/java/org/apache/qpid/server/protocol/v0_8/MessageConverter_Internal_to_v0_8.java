@@ -129,6 +129,11 @@ public class MessageConverter_Internal_to_v0_8 implements MessageConverter<Inter
             {
                 return false;
             }
+
+            @Override
+            public void reloadContent()
+            {
+            }
         };
     }
 
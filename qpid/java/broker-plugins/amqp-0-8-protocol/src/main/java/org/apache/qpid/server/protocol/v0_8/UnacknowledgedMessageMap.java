@@ -21,7 +21,6 @@
 package org.apache.qpid.server.protocol.v0_8;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.qpid.AMQException;
@@ -64,7 +63,13 @@ public interface UnacknowledgedMessageMap
     Set<Long> getDeliveryTags();
 
     Collection<MessageInstance> acknowledge(long deliveryTag, boolean multiple);
-    void collect(long key, boolean multiple, Map<Long, MessageInstance> msgs);
+
+    /**
+     * Visits the message with the given delivery tag or, if multiple, each message up to and including it (or all
+     * messages if the tag is zero), in order of delivery tag.  The visitor is called without the map locked, so may
+     * itself remove messages from the map.
+     */
+    void visit(long deliveryTag, boolean multiple, Visitor visitor);
 }
 
 
@@ -22,83 +22,214 @@ package org.apache.qpid.server.protocol.v0_8;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.qpid.server.message.MessageInstance;
 
+/**
+ * Holds the unacknowledged messages of a channel in a ring indexed by delivery tag.
+ * <p>
+ * Delivery tags are assigned in sequence and messages are mostly acknowledged in the order they were delivered, so
+ * the ring need only cover the range from the lowest tag held to the highest, growing when that range outgrows it.
+ * Tags are neither boxed nor hashed, and acknowledging a range of tags walks the slots of that range rather than
+ * copying the entries into an intermediate map.
+ * <p>
+ * Should a message remain unacknowledged long after those delivered around it, the range may come to far exceed the
+ * number of messages held.  Rather than grow the ring with the range, the messages are then moved to a sorted map,
+ * which is used until the channel next holds no unacknowledged messages.
+ */
 public class UnacknowledgedMessageMapImpl implements UnacknowledgedMessageMap
 {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    /** the ring is not grown beyond its initial capacity to cover a range more than this many times the size */
+    private static final int MAX_SPAN_PER_MESSAGE = 8;
+    private static final long NONE_HELD = -1L;
+
     private final Object _lock = new Object();
 
-    private Map<Long, MessageInstance> _map;
+    private MessageInstance[] _entries;
+    private int _mask;
+
+    /** the lowest delivery tag held */
+    private long _first;
+    /** the number of tags in the range from the lowest tag held to the highest */
+    private int _span;
+    private int _size;
 
-    private final int _prefetchLimit;
+    /** the messages by delivery tag once the range has outgrown the ring, otherwise null */
+    private NavigableMap<Long, MessageInstance> _sparseEntries;
 
     public UnacknowledgedMessageMapImpl(int prefetchLimit)
     {
-        _prefetchLimit = prefetchLimit;
-        _map = new LinkedHashMap<>(prefetchLimit);
+        int capacity = MIN_CAPACITY;
+        while (capacity < prefetchLimit && capacity < MAX_INITIAL_CAPACITY)
+        {
+            capacity <<= 1;
+        }
+        _entries = new MessageInstance[capacity];
+        _mask = capacity - 1;
     }
 
-    public void collect(long deliveryTag, boolean multiple, Map<Long, MessageInstance> msgs)
+    public MessageInstance remove(long deliveryTag)
     {
-        if (multiple)
-        {
-            collect(deliveryTag, msgs);
-        }
-        else
+        synchronized (_lock)
         {
-            final MessageInstance entry = get(deliveryTag);
-            if(entry != null)
+            if (_sparseEntries != null)
             {
-                msgs.put(deliveryTag, entry);
+                MessageInstance message = _sparseEntries.remove(deliveryTag);
+                resumeRingIfEmpty();
+                return message;
+            }
+            if (!contains(deliveryTag))
+            {
+                return null;
             }
-        }
 
+            int index = index(deliveryTag);
+            MessageInstance message = _entries[index];
+            if (message != null)
+            {
+                _entries[index] = null;
+                _size--;
+                if (deliveryTag == _first)
+                {
+                    trimFirst();
+                }
+                else if (deliveryTag == getLast())
+                {
+                    trimLast();
+                }
+            }
+            return message;
+        }
     }
 
-    public void remove(Map<Long,MessageInstance> msgs)
+    public void visit(Visitor visitor)
     {
         synchronized (_lock)
         {
-            for (Long deliveryTag : msgs.keySet())
+            if (_sparseEntries != null)
+            {
+                for (Map.Entry<Long, MessageInstance> entry : _sparseEntries.entrySet())
+                {
+                    if (visitor.callback(entry.getKey(), entry.getValue()))
+                    {
+                        break;
+                    }
+                }
+            }
+            else
             {
-                remove(deliveryTag);
+                for (int i = 0; i < _span; i++)
+                {
+                    long deliveryTag = _first + i;
+                    MessageInstance message = _entries[index(deliveryTag)];
+                    if (message != null && visitor.callback(deliveryTag, message))
+                    {
+                        break;
+                    }
+                }
             }
+            visitor.visitComplete();
         }
     }
 
-    public MessageInstance remove(long deliveryTag)
+    public void visit(long deliveryTag, boolean multiple, Visitor visitor)
     {
-        synchronized (_lock)
+        if (multiple)
         {
+            long last;
+            long next;
+            synchronized (_lock)
+            {
+                last = deliveryTag == 0L ? getLastHeld() : deliveryTag;
+                next = Long.MIN_VALUE;
+            }
 
-            MessageInstance message = _map.remove(deliveryTag);
-            return message;
-        }
-    }
+            while (true)
+            {
+                MessageInstance message;
+                synchronized (_lock)
+                {
+                    // the map may have changed whilst the visitor was called
+                    next = nextHeld(next);
+                    if (next == NONE_HELD || next > last)
+                    {
+                        break;
+                    }
+                    message = get(next);
+                }
 
-    public void visit(Visitor visitor)
-    {
-        synchronized (_lock)
+                if (visitor.callback(next, message) || next == last)
+                {
+                    break;
+                }
+                next++;
+            }
+        }
+        else
         {
-            Set<Map.Entry<Long, MessageInstance>> currentEntries = _map.entrySet();
-            for (Map.Entry<Long, MessageInstance> entry : currentEntries)
+            MessageInstance message = get(deliveryTag);
+            if (message != null)
             {
-                visitor.callback(entry.getKey().longValue(), entry.getValue());
+                visitor.callback(deliveryTag, message);
             }
-            visitor.visitComplete();
         }
+        visitor.visitComplete();
     }
 
     public void add(long deliveryTag, MessageInstance message)
     {
         synchronized (_lock)
         {
-            _map.put(deliveryTag, message);
+            if (_sparseEntries != null)
+            {
+                _sparseEntries.put(deliveryTag, message);
+                return;
+            }
+
+            if (_size == 0)
+            {
+                _first = deliveryTag;
+                _span = 1;
+            }
+            else
+            {
+                long offset = deliveryTag - _first;
+                if (offset < 0)
+                {
+                    if (!ensureCapacity(_span - offset))
+                    {
+                        _sparseEntries.put(deliveryTag, message);
+                        return;
+                    }
+                    _first = deliveryTag;
+                    _span -= offset;
+                }
+                else if (offset >= _span)
+                {
+                    if (!ensureCapacity(offset + 1))
+                    {
+                        _sparseEntries.put(deliveryTag, message);
+                        return;
+                    }
+                    _span = (int) offset + 1;
+                }
+            }
+
+            int index = index(deliveryTag);
+            if (_entries[index] == null)
+            {
+                _size++;
+            }
+            _entries[index] = message;
         }
     }
 
@@ -106,8 +237,25 @@ public class UnacknowledgedMessageMapImpl implements UnacknowledgedMessageMap
     {
         synchronized (_lock)
         {
-            Collection<MessageInstance> currentEntries = _map.values();
-            _map = new LinkedHashMap<>(_prefetchLimit);
+            if (_sparseEntries != null)
+            {
+                List<MessageInstance> currentEntries = new ArrayList<>(_sparseEntries.values());
+                _sparseEntries = null;
+                return currentEntries;
+            }
+
+            List<MessageInstance> currentEntries = new ArrayList<>(_size);
+            for (int i = 0; i < _span; i++)
+            {
+                int index = index(_first + i);
+                if (_entries[index] != null)
+                {
+                    currentEntries.add(_entries[index]);
+                    _entries[index] = null;
+                }
+            }
+            _size = 0;
+            _span = 0;
             return currentEntries;
         }
     }
@@ -116,7 +264,7 @@ public class UnacknowledgedMessageMapImpl implements UnacknowledgedMessageMap
     {
         synchronized (_lock)
         {
-            return _map.size();
+            return _sparseEntries == null ? _size : _sparseEntries.size();
         }
     }
 
@@ -124,7 +272,13 @@ public class UnacknowledgedMessageMapImpl implements UnacknowledgedMessageMap
     {
         synchronized (_lock)
         {
-            _map.clear();
+            _sparseEntries = null;
+            for (int i = 0; i < _span; i++)
+            {
+                _entries[index(_first + i)] = null;
+            }
+            _size = 0;
+            _span = 0;
         }
     }
 
@@ -132,7 +286,11 @@ public class UnacknowledgedMessageMapImpl implements UnacknowledgedMessageMap
     {
         synchronized (_lock)
         {
-            return _map.get(key);
+            if (_sparseEntries != null)
+            {
+                return _sparseEntries.get(key);
+            }
+            return contains(key) ? _entries[index(key)] : null;
         }
     }
 
@@ -140,39 +298,229 @@ public class UnacknowledgedMessageMapImpl implements UnacknowledgedMessageMap
     {
         synchronized (_lock)
         {
-            return _map.keySet();
+            if (_sparseEntries != null)
+            {
+                return new LinkedHashSet<>(_sparseEntries.keySet());
+            }
+            Set<Long> deliveryTags = new LinkedHashSet<>();
+            for (int i = 0; i < _span; i++)
+            {
+                long deliveryTag = _first + i;
+                if (_entries[index(deliveryTag)] != null)
+                {
+                    deliveryTags.add(deliveryTag);
+                }
+            }
+            return deliveryTags;
         }
     }
 
     public Collection<MessageInstance> acknowledge(long deliveryTag, boolean multiple)
     {
-        Map<Long, MessageInstance> ackedMessageMap = new LinkedHashMap<Long,MessageInstance>();
-        collect(deliveryTag, multiple, ackedMessageMap);
-        remove(ackedMessageMap);
-        List<MessageInstance> acknowledged = new ArrayList<>();
-        for(MessageInstance instance : ackedMessageMap.values())
+        // the collection returned is cleared once the acknowledgement is complete, so must be modifiable
+        if (!multiple)
         {
-            if(instance.lockAcquisition())
+            MessageInstance message = remove(deliveryTag);
+            List<MessageInstance> acknowledged = new ArrayList<>(1);
+            if (message != null && message.lockAcquisition())
             {
-                acknowledged.add(instance);
+                acknowledged.add(message);
             }
+            return acknowledged;
         }
-        return acknowledged;
-    }
 
-    private void collect(long key, Map<Long, MessageInstance> msgs)
-    {
         synchronized (_lock)
         {
-            for (Map.Entry<Long, MessageInstance> entry : _map.entrySet())
+            if (_sparseEntries != null)
             {
-                msgs.put(entry.getKey(),entry.getValue());
-                if (entry.getKey() == key)
+                Map<Long, MessageInstance> range = deliveryTag == 0L
+                        ? _sparseEntries
+                        : _sparseEntries.headMap(deliveryTag, true);
+                List<MessageInstance> acknowledged = new ArrayList<>(range.size());
+                for (MessageInstance message : range.values())
                 {
-                    break;
+                    if (message.lockAcquisition())
+                    {
+                        acknowledged.add(message);
+                    }
+                }
+                range.clear();
+                resumeRingIfEmpty();
+                return acknowledged;
+            }
+
+            if (_size == 0 || (deliveryTag != 0L && deliveryTag < _first))
+            {
+                return new ArrayList<>(0);
+            }
+
+            long last = deliveryTag == 0L ? getLast() : Math.min(deliveryTag, getLast());
+            int count = (int) (last - _first) + 1;
+            List<MessageInstance> acknowledged = new ArrayList<>(Math.min(count, _size));
+            for (int i = 0; i < count; i++)
+            {
+                int index = index(_first + i);
+                MessageInstance message = _entries[index];
+                if (message != null)
+                {
+                    _entries[index] = null;
+                    _size--;
+                    if (message.lockAcquisition())
+                    {
+                        acknowledged.add(message);
+                    }
                 }
             }
+
+            if (_size == 0)
+            {
+                _span = 0;
+            }
+            else
+            {
+                _first += count;
+                _span -= count;
+                trimFirst();
+            }
+            return acknowledged;
+        }
+    }
+
+    /**
+     * @return the lowest delivery tag held at or above the given tag, or {@link #NONE_HELD} if there is none
+     */
+    private long nextHeld(long deliveryTag)
+    {
+        if (_sparseEntries != null)
+        {
+            Long next = _sparseEntries.ceilingKey(deliveryTag);
+            return next == null ? NONE_HELD : next;
+        }
+        if (_size == 0)
+        {
+            return NONE_HELD;
+        }
+        for (long next = Math.max(deliveryTag, _first); next <= getLast(); next++)
+        {
+            if (_entries[index(next)] != null)
+            {
+                return next;
+            }
+        }
+        return NONE_HELD;
+    }
+
+    private long getLastHeld()
+    {
+        if (_sparseEntries != null)
+        {
+            return _sparseEntries.isEmpty() ? NONE_HELD : _sparseEntries.lastKey();
+        }
+        return _size == 0 ? NONE_HELD : getLast();
+    }
+
+    private void resumeRingIfEmpty()
+    {
+        if (_sparseEntries.isEmpty())
+        {
+            _sparseEntries = null;
+        }
+    }
+
+    private boolean contains(long deliveryTag)
+    {
+        long offset = deliveryTag - _first;
+        return offset >= 0 && offset < _span;
+    }
+
+    private long getLast()
+    {
+        return _first + _span - 1;
+    }
+
+    private int index(long deliveryTag)
+    {
+        return (int) deliveryTag & _mask;
+    }
+
+    /**
+     * Advances the start of the range past the slots no longer holding a message.
+     */
+    private void trimFirst()
+    {
+        if (_size == 0)
+        {
+            _span = 0;
+        }
+        else
+        {
+            while (_entries[index(_first)] == null)
+            {
+                _first++;
+                _span--;
+            }
+        }
+    }
+
+    private void trimLast()
+    {
+        if (_size == 0)
+        {
+            _span = 0;
+        }
+        else
+        {
+            while (_entries[index(getLast())] == null)
+            {
+                _span--;
+            }
         }
     }
 
+    /**
+     * Grows the ring to cover the given range of tags or, should that range far exceed the number of messages held,
+     * moves the messages to a sorted map instead.
+     *
+     * @return true if the ring now covers the range, false if the messages have been moved to a sorted map
+     */
+    private boolean ensureCapacity(long span)
+    {
+        if (span > _entries.length)
+        {
+            if (span > MAX_CAPACITY
+                || (span > MAX_INITIAL_CAPACITY && span / MAX_SPAN_PER_MESSAGE > _size))
+            {
+                _sparseEntries = new TreeMap<>();
+                for (int i = 0; i < _span; i++)
+                {
+                    long deliveryTag = _first + i;
+                    int index = index(deliveryTag);
+                    if (_entries[index] != null)
+                    {
+                        _sparseEntries.put(deliveryTag, _entries[index]);
+                        _entries[index] = null;
+                    }
+                }
+                _size = 0;
+                _span = 0;
+                return false;
+            }
+            int capacity = _entries.length;
+            while (capacity < span)
+            {
+                capacity <<= 1;
+            }
+
+            MessageInstance[] entries = new MessageInstance[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < _span; i++)
+            {
+                long deliveryTag = _first + i;
+                entries[(int) deliveryTag & mask] = _entries[index(deliveryTag)];
+            }
+            _entries = entries;
+            _mask = mask;
+        }
+        return true;
+    }
 }
@@ -118,4 +118,9 @@ public class MockStoredMessage implements StoredMessage<MessageMetaData>
     {
         return false;
     }
+
+    @Override
+    public void reloadContent()
+    {
+    }
 }
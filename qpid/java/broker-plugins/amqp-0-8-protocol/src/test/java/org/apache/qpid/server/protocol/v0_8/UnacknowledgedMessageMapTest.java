@@ -23,7 +23,11 @@ package org.apache.qpid.server.protocol.v0_8;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -64,6 +68,103 @@ public class UnacknowledgedMessageMapTest extends TestCase
 
     }
 
+    public void testMultipleAcknowledgeUpToDeliveryTag()
+    {
+        UnacknowledgedMessageMap map = new UnacknowledgedMessageMapImpl(4);
+        MessageInstance[] msgs = populateMap(map, 100);
+        map.remove(10l);
+
+        Collection<MessageInstance> acknowledged = map.acknowledge(20l, true);
+        assertEquals(20, acknowledged.size());
+        assertFalse(acknowledged.contains(msgs[10]));
+        assertTrue(acknowledged.contains(msgs[20]));
+        assertFalse(acknowledged.contains(msgs[21]));
+        assertEquals(79, map.size());
+        assertNull(map.get(20l));
+        assertSame(msgs[21], map.get(21l));
+
+        acknowledged = map.acknowledge(5l, true);
+        assertTrue("Tags already acknowledged should acknowledge nothing", acknowledged.isEmpty());
+
+        acknowledged = map.acknowledge(0l, true);
+        assertEquals("Multiple acknowledgement of tag zero should acknowledge all", 79, acknowledged.size());
+        assertEquals(0, map.size());
+    }
+
+    public void testDeliveryTagsAddedOutOfOrder()
+    {
+        UnacknowledgedMessageMap map = new UnacknowledgedMessageMapImpl(16);
+        MessageInstance first = createMessageInstance(1);
+        MessageInstance second = createMessageInstance(2);
+        MessageInstance third = createMessageInstance(3);
+        map.add(1000l, second);
+        map.add(1l, first);
+        map.add(1001l, third);
+
+        assertEquals(3, map.size());
+        assertSame(first, map.get(1l));
+        assertSame(second, map.get(1000l));
+        assertEquals(Arrays.asList(1l, 1000l, 1001l), new ArrayList<>(map.getDeliveryTags()));
+
+        Collection<MessageInstance> acknowledged = map.acknowledge(1000l, true);
+        assertEquals(2, acknowledged.size());
+        assertEquals(Collections.singleton(1001l), map.getDeliveryTags());
+    }
+
+    public void testVisitRangeAllowsRemoval()
+    {
+        final UnacknowledgedMessageMap map = new UnacknowledgedMessageMapImpl(100);
+        populateMap(map, 10);
+        final List<Long> visited = new ArrayList<>();
+        map.visit(5l, true, new UnacknowledgedMessageMap.Visitor()
+        {
+            @Override
+            public boolean callback(final long deliveryTag, final MessageInstance message)
+            {
+                visited.add(deliveryTag);
+                map.remove(deliveryTag);
+                return false;
+            }
+
+            @Override
+            public void visitComplete()
+            {
+            }
+        });
+
+        assertEquals(Arrays.asList(0l, 1l, 2l, 3l, 4l, 5l), visited);
+        assertEquals(4, map.size());
+    }
+
+    public void testDeliveryTagsSpanningFarMoreThanHeld()
+    {
+        UnacknowledgedMessageMap map = new UnacknowledgedMessageMapImpl(16);
+        MessageInstance[] msgs = populateMap(map, 10);
+        MessageInstance distant = createMessageInstance(10);
+        MessageInstance furthest = createMessageInstance(11);
+        map.add(1l << 40, distant);
+        map.add(Long.MAX_VALUE, furthest);
+
+        assertEquals(12, map.size());
+        assertSame(distant, map.get(1l << 40));
+        assertSame(msgs[9], map.get(9l));
+        assertNull(map.get(10l));
+        assertEquals(Arrays.asList(8l, 9l, 1l << 40, Long.MAX_VALUE),
+                     new ArrayList<>(map.getDeliveryTags()).subList(8, 12));
+
+        assertSame(msgs[3], map.remove(3l));
+        Collection<MessageInstance> acknowledged = map.acknowledge(1l << 40, true);
+        assertEquals(10, acknowledged.size());
+        assertTrue(acknowledged.contains(distant));
+        assertEquals(Collections.singleton(Long.MAX_VALUE), map.getDeliveryTags());
+
+        assertSame(furthest, map.remove(Long.MAX_VALUE));
+        assertEquals(0, map.size());
+
+        populateMap(map, 5);
+        assertEquals("Map should be usable again once emptied", 5, map.acknowledge(0l, true).size());
+    }
+
     public MessageInstance[] populateMap(final UnacknowledgedMessageMap map, int size)
     {
         MessageInstance[] msgs = new MessageInstance[size];
@@ -21,11 +21,14 @@
 package org.apache.qpid.server.protocol.v1_0;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.qpid.amqp_1_0.codec.ValueHandler;
+import org.apache.qpid.amqp_1_0.framing.PayloadFragments;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
+import org.apache.qpid.amqp_1_0.messaging.SectionScanner;
 import org.apache.qpid.amqp_1_0.transport.SendingLinkEndpoint;
 import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
 import org.apache.qpid.amqp_1_0.type.Binary;
@@ -44,7 +47,6 @@ import org.apache.qpid.server.consumer.AbstractConsumerTarget;
 import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
-import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.protocol.LinkRegistry;
 import org.apache.qpid.server.protocol.MessageConverterRegistry;
@@ -136,86 +138,24 @@ class ConsumerTarget_1_0 extends AbstractConsumerTarget
         }
         else
         {
-            final MessageConverter converter = MessageConverterRegistry.getConverter(serverMessage.getClass(), Message_1_0.class);
-            message = (Message_1_0) converter.convert(serverMessage, _link.getVirtualHost());
+            message = MessageConverterRegistry.convert(serverMessage, Message_1_0.class, _link.getVirtualHost());
         }
 
         Transfer transfer = new Transfer();
         //TODO
 
 
-        List<ByteBuffer> fragments = message.getFragments();
-        ByteBuffer payload;
-        if(fragments.size() == 1)
-        {
-            payload = fragments.get(0);
-        }
-        else
-        {
-            int size = 0;
-            for(ByteBuffer fragment : fragments)
-            {
-                size += fragment.remaining();
-            }
-
-            payload = ByteBuffer.allocate(size);
-
-            for(ByteBuffer fragment : fragments)
-            {
-                payload.put(fragment.duplicate());
-            }
-
-            payload.flip();
-        }
+        // the stored fragments are passed to the frame writer as they are, rather than first being copied into a
+        // single buffer
+        List<ByteBuffer> payload = message.getFragments();
 
         if(queueEntry.getDeliveryCount() != 0)
         {
-            payload = payload.duplicate();
-            ValueHandler valueHandler = new ValueHandler(_typeRegistry);
-
-            Header oldHeader = null;
-            try
-            {
-                ByteBuffer encodedBuf = payload.duplicate();
-                Object value = valueHandler.parse(payload);
-                if(value instanceof Header)
-                {
-                    oldHeader = (Header) value;
-                }
-                else
-                {
-                    payload.position(0);
-                }
-            }
-            catch (AmqpErrorException e)
-            {
-                //TODO
-                throw new ConnectionScopedRuntimeException(e);
-            }
-
-            Header header = new Header();
-            if(oldHeader != null)
-            {
-                header.setDurable(oldHeader.getDurable());
-                header.setPriority(oldHeader.getPriority());
-                header.setTtl(oldHeader.getTtl());
-            }
-            header.setDeliveryCount(UnsignedInteger.valueOf(queueEntry.getDeliveryCount()));
-            _sectionEncoder.reset();
-            _sectionEncoder.encodeObject(header);
-            Binary encodedHeader = _sectionEncoder.getEncoding();
-
-            ByteBuffer oldPayload = payload;
-            payload = ByteBuffer.allocate(oldPayload.remaining() + encodedHeader.getLength());
-            payload.put(encodedHeader.getArray(),encodedHeader.getArrayOffset(),encodedHeader.getLength());
-            payload.put(oldPayload);
-            payload.flip();
+            payload = replaceHeader(payload, queueEntry.getDeliveryCount(), _typeRegistry, _sectionEncoder);
         }
 
-        transfer.setPayload(payload);
-        byte[] data = new byte[8];
-        ByteBuffer.wrap(data).putLong(_deliveryTag++);
-        final Binary tag = new Binary(data);
+        transfer.setPayloadFragments(payload);
+        final Binary tag = createDeliveryTag(_deliveryTag++);
 
         transfer.setDeliveryTag(tag);
 
@@ -280,6 +220,96 @@ class ConsumerTarget_1_0 extends AbstractConsumerTarget
 
     }
 
+    /**
+     * Returns the payload with its header section, if any, replaced by one carrying the delivery count.  The header is
+     * expected to lie within the first fragment; only if the first section does not are the fragments combined to
+     * read it.
+     */
+    static List<ByteBuffer> replaceHeader(final List<ByteBuffer> fragments,
+                                          final int deliveryCount,
+                                          final AMQPDescribedTypeRegistry typeRegistry,
+                                          final SectionEncoder sectionEncoder)
+    {
+        ByteBuffer first = fragments.get(0).duplicate();
+        int headerFragments = 1;
+        Header oldHeader;
+        try
+        {
+            if(fragments.size() > 1 && !containsFirstSection(first))
+            {
+                first = PayloadFragments.concatenate(fragments);
+                headerFragments = fragments.size();
+            }
+            oldHeader = readHeader(first, typeRegistry);
+        }
+        catch (AmqpErrorException e)
+        {
+            //TODO
+            throw new ConnectionScopedRuntimeException(e);
+        }
+
+        Header header = new Header();
+        if(oldHeader != null)
+        {
+            header.setDurable(oldHeader.getDurable());
+            header.setPriority(oldHeader.getPriority());
+            header.setTtl(oldHeader.getTtl());
+        }
+        header.setDeliveryCount(UnsignedInteger.valueOf(deliveryCount));
+        sectionEncoder.reset();
+        sectionEncoder.encodeObject(header);
+        Binary encodedHeader = sectionEncoder.getEncoding();
+
+        List<ByteBuffer> payload = new ArrayList<ByteBuffer>(fragments.size() - headerFragments + 2);
+        payload.add(ByteBuffer.wrap(encodedHeader.getArray(), encodedHeader.getArrayOffset(), encodedHeader.getLength()));
+        if(first.hasRemaining())
+        {
+            payload.add(first);
+        }
+        payload.addAll(fragments.subList(headerFragments, fragments.size()));
+        return payload;
+    }
+
+    private static boolean containsFirstSection(final ByteBuffer fragment)
+    {
+        try
+        {
+            SectionScanner.skipSection(fragment.duplicate());
+            return true;
+        }
+        catch (AmqpErrorException e)
+        {
+            return false;
+        }
+    }
+
+    private static Header readHeader(final ByteBuffer payload, final AMQPDescribedTypeRegistry typeRegistry)
+            throws AmqpErrorException
+    {
+        int position = payload.position();
+        Object value = new ValueHandler(typeRegistry).parse(payload);
+        if(value instanceof Header)
+        {
+            return (Header) value;
+        }
+        else
+        {
+            payload.position(position);
+            return null;
+        }
+    }
+
+    private static Binary createDeliveryTag(long deliveryTag)
+    {
+        byte[] data = new byte[8];
+        for(int i = 7; i >= 0; i--)
+        {
+            data[i] = (byte) deliveryTag;
+            deliveryTag >>>= 8;
+        }
+        return new Binary(data);
+    }
+
     public void queueDeleted()
     {
         //TODO
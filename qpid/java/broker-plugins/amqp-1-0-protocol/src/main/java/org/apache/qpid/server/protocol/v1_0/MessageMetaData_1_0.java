@@ -25,16 +25,13 @@ import java.util.*;
 
 import org.apache.log4j.Logger;
 import org.apache.qpid.amqp_1_0.codec.ValueHandler;
-import org.apache.qpid.amqp_1_0.messaging.SectionDecoder;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
+import org.apache.qpid.amqp_1_0.messaging.SectionScanner;
 import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
 import org.apache.qpid.amqp_1_0.type.Section;
 import org.apache.qpid.amqp_1_0.type.Symbol;
 import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
-import org.apache.qpid.amqp_1_0.type.messaging.AmqpSequence;
-import org.apache.qpid.amqp_1_0.type.messaging.AmqpValue;
 import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
-import org.apache.qpid.amqp_1_0.type.messaging.Data;
 import org.apache.qpid.amqp_1_0.type.messaging.DeliveryAnnotations;
 import org.apache.qpid.amqp_1_0.type.messaging.Footer;
 import org.apache.qpid.amqp_1_0.type.messaging.Header;
@@ -45,42 +42,83 @@ import org.apache.qpid.server.plugin.MessageMetaDataType;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.util.ConnectionScopedRuntimeException;
 
+/**
+ * Meta data of an AMQP 1.0 message.
+ * <p>
+ * The sections of a message received or recovered from the store are not decoded when the meta data is created:
+ * their extent is found by {@link SectionScanner} and each is decoded from its retained encoding when first required.
+ * Single application properties, as used in routing and by selectors, are read from the encoded map without decoding
+ * the rest of it.
+ */
 public class MessageMetaData_1_0 implements StorableMessageMetaData
 {
     private static final Logger _logger = Logger.getLogger(MessageMetaData_1_0.class);
     // TODO move to somewhere more useful
     public static final Symbol JMS_TYPE = Symbol.valueOf("x-opt-jms-type");
+    private static final AMQPDescribedTypeRegistry TYPE_REGISTRY = AMQPDescribedTypeRegistry.newInstance()
+                                                                                           .registerTransportLayer()
+                                                                                           .registerMessagingLayer()
+                                                                                           .registerTransactionLayer()
+                                                                                           .registerSecurityLayer();
+    private static final ValueHandler VALUE_HANDLER = new ValueHandler(TYPE_REGISTRY);
     public static final MessageMetaDataType.Factory<MessageMetaData_1_0> FACTORY = new MetaDataFactory();
     private static final MessageMetaDataType_1_0 TYPE = new MessageMetaDataType_1_0();
 
 
-    private Header _header;
-    private Properties _properties;
-    private Map _deliveryAnnotations;
-    private Map _messageAnnotations;
-    private Map _appProperties;
-    private Map _footer;
+    private EncodedSection<Header> _header;
+    private EncodedSection<DeliveryAnnotations> _deliveryAnnotations;
+    private EncodedSection<MessageAnnotations> _messageAnnotations;
+    private EncodedSection<Properties> _properties;
+    private EncodedSection<ApplicationProperties> _appProperties;
+    private EncodedSection<Footer> _footer;
 
     private List<ByteBuffer> _encodedSections = new ArrayList<ByteBuffer>(3);
 
     private volatile ByteBuffer _encoded;
-    private MessageHeader_1_0 _messageHeader;
+    private final MessageHeader_1_0 _messageHeader = new MessageHeader_1_0();
 
 
     public MessageMetaData_1_0(List<Section> sections, SectionEncoder encoder)
     {
-        this(sections, encodeSections(sections, encoder));
+        _encodedSections = encodeSections(sections, encoder);
+        for(Section section : sections)
+        {
+            if(section instanceof Header)
+            {
+                _header = new EncodedSection<Header>((Header) section);
+            }
+            else if(section instanceof DeliveryAnnotations)
+            {
+                _deliveryAnnotations = new EncodedSection<DeliveryAnnotations>((DeliveryAnnotations) section);
+            }
+            else if(section instanceof MessageAnnotations)
+            {
+                _messageAnnotations = new EncodedSection<MessageAnnotations>((MessageAnnotations) section);
+            }
+            else if(section instanceof Properties)
+            {
+                _properties = new EncodedSection<Properties>((Properties) section);
+            }
+            else if(section instanceof ApplicationProperties)
+            {
+                _appProperties = new EncodedSection<ApplicationProperties>((ApplicationProperties) section);
+            }
+            else if(section instanceof Footer)
+            {
+                _footer = new EncodedSection<Footer>((Footer) section);
+            }
+        }
     }
 
     public Properties getPropertiesSection()
     {
-        return _properties;
+        return _properties == null ? null : _properties.getSection();
     }
 
 
     public Header getHeaderSection()
     {
-        return _header;
+        return _header == null ? null : _header.getSection();
     }
 
     private static ArrayList<ByteBuffer> encodeSections(final List<Section> sections, final SectionEncoder encoder)
@@ -95,203 +133,210 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
         return encodedSections;
     }
 
-    public MessageMetaData_1_0(ByteBuffer[] fragments, SectionDecoder decoder)
+    public MessageMetaData_1_0(ByteBuffer[] fragments)
     {
-        this(fragments, decoder, new ArrayList<ByteBuffer>(3));
+        this(fragments, new ArrayList<ByteBuffer>(3));
     }
 
-    public MessageMetaData_1_0(ByteBuffer[] fragments, SectionDecoder decoder, List<ByteBuffer> immutableSections)
+    /**
+     * Creates the meta data of a message received in the given fragments, which are added to
+     * <code>immutableSections</code>.
+     */
+    public MessageMetaData_1_0(ByteBuffer[] fragments, List<ByteBuffer> immutableSections)
     {
-        this(constructSections(fragments, decoder,immutableSections), immutableSections);
-    }
-
-    private MessageMetaData_1_0(List<Section> sections, List<ByteBuffer> encodedSections)
-    {
-        _encodedSections = encodedSections;
-
-        Iterator<Section> sectIter = sections.iterator();
-
-        Section section = sectIter.hasNext() ? sectIter.next() : null;
-        if(section instanceof Header)
+        _encodedSections = immutableSections;
+        try
         {
-            _header = (Header) section;
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            // the sections preceding the body normally lie within the first fragment, in which case they are
+            // retained as slices of it; otherwise the fragments are combined and the sections copied from them
+            if(!scanSections(fragments[0].duplicate(), false) && fragments.length > 1)
+            {
+                clearSections();
+                scanSections(concatenate(fragments), true);
+            }
         }
-
-        if(section instanceof DeliveryAnnotations)
+        catch (AmqpErrorException e)
         {
-            _deliveryAnnotations = ((DeliveryAnnotations) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            if(fragments.length == 1)
+            {
+                _logger.error("Decoding read section error", e);
+                throw new IllegalArgumentException(e);
+            }
+            try
+            {
+                clearSections();
+                scanSections(concatenate(fragments), true);
+            }
+            catch (AmqpErrorException e2)
+            {
+                _logger.error("Decoding read section error", e2);
+                throw new IllegalArgumentException(e2);
+            }
         }
 
-        if(section instanceof MessageAnnotations)
+        for(ByteBuffer buf : fragments)
         {
-            _messageAnnotations = ((MessageAnnotations) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            immutableSections.add(buf.duplicate());
         }
+    }
 
-        if(section instanceof Properties)
+    private MessageMetaData_1_0(final ByteBuffer buf) throws AmqpErrorException
+    {
+        while(buf.hasRemaining())
         {
-            _properties = (Properties) section;
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            ByteBuffer encodedBuf = buf.duplicate();
+            int code = SectionScanner.skipSection(buf);
+            encodedBuf.limit(buf.position());
+            _encodedSections.add(encodedBuf);
+            setSection(code, encodedBuf.slice());
         }
+    }
 
-        if(section instanceof ApplicationProperties)
+    /**
+     * Finds the sections preceding the body.
+     *
+     * @return true if the body was reached
+     */
+    private boolean scanSections(final ByteBuffer src, final boolean copy) throws AmqpErrorException
+    {
+        while(src.hasRemaining())
         {
-            _appProperties = ((ApplicationProperties) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            ByteBuffer encodedBuf = src.duplicate();
+            int code = SectionScanner.skipSection(src);
+            if(code == SectionScanner.DATA || code == SectionScanner.AMQP_VALUE || code == SectionScanner.AMQP_SEQUENCE)
+            {
+                return true;
+            }
+            encodedBuf.limit(src.position());
+            ByteBuffer section = encodedBuf.slice();
+            if(copy)
+            {
+                ByteBuffer sectionCopy = ByteBuffer.allocate(section.remaining());
+                sectionCopy.put(section);
+                sectionCopy.flip();
+                section = sectionCopy;
+            }
+            setSection(code, section);
         }
+        return false;
+    }
 
-        if(section instanceof Footer)
-        {
-            _footer = ((Footer) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
+    private void setSection(final int code, final ByteBuffer encoded)
+    {
+        switch(code)
+        {
+            case SectionScanner.HEADER:
+                _header = new EncodedSection<Header>(encoded);
+                break;
+            case SectionScanner.DELIVERY_ANNOTATIONS:
+                _deliveryAnnotations = new EncodedSection<DeliveryAnnotations>(encoded);
+                break;
+            case SectionScanner.MESSAGE_ANNOTATIONS:
+                _messageAnnotations = new EncodedSection<MessageAnnotations>(encoded);
+                break;
+            case SectionScanner.PROPERTIES:
+                _properties = new EncodedSection<Properties>(encoded);
+                break;
+            case SectionScanner.APPLICATION_PROPERTIES:
+                _appProperties = new EncodedSection<ApplicationProperties>(encoded);
+                break;
+            case SectionScanner.FOOTER:
+                _footer = new EncodedSection<Footer>(encoded);
+                break;
+            default:
+                // the body sections are not held by the meta data
         }
-
-        _messageHeader = new MessageHeader_1_0();
-
     }
 
-    private static List<Section> constructSections(final ByteBuffer[] fragments, final SectionDecoder decoder, List<ByteBuffer> encodedSections)
+    private void clearSections()
     {
-        List<Section> sections = new ArrayList<Section>(3);
+        _header = null;
+        _deliveryAnnotations = null;
+        _messageAnnotations = null;
+        _properties = null;
+        _appProperties = null;
+        _footer = null;
+    }
 
-        ByteBuffer src;
-        if(fragments.length == 1)
+    private static ByteBuffer concatenate(final ByteBuffer[] fragments)
+    {
+        int size = 0;
+        for(ByteBuffer buf : fragments)
         {
-            src = fragments[0].duplicate();
+            size += buf.remaining();
         }
-        else
+        ByteBuffer src = ByteBuffer.allocate(size);
+        for(ByteBuffer buf : fragments)
         {
-            int size = 0;
-            for(ByteBuffer buf : fragments)
-            {
-                size += buf.remaining();
-            }
-            src = ByteBuffer.allocate(size);
-            for(ByteBuffer buf : fragments)
-            {
-                src.put(buf.duplicate());
-            }
-            src.flip();
-
+            src.put(buf.duplicate());
         }
+        src.flip();
+        return src;
+    }
 
-        try
-        {
-            int startBarePos = -1;
-            int lastPos = src.position();
-            Section s = decoder.readSection(src);
-
-
-
-            if(s instanceof Header)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof DeliveryAnnotations)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof MessageAnnotations)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof Properties)
-            {
-                sections.add(s);
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
+    private Map getMessageAnnotations()
+    {
+        return _messageAnnotations == null ? null : _messageAnnotations.getSection().getValue();
+    }
 
-            if(s instanceof ApplicationProperties)
-            {
-                sections.add(s);
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
+    private Map getApplicationProperties()
+    {
+        return _appProperties == null ? null : _appProperties.getSection().getValue();
+    }
 
-            if(s instanceof AmqpValue)
-            {
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-            else if(s instanceof Data)
+    private Object getApplicationProperty(final String name)
+    {
+        if(_appProperties == null)
+        {
+            return null;
+        }
+        else if(_appProperties.isDecoded())
+        {
+            Map appProperties = getApplicationProperties();
+            return appProperties == null ? null : appProperties.get(name);
+        }
+        else
+        {
+            try
             {
-                if(startBarePos == -1)
+                ByteBuffer encoded = _appProperties.getEncoded();
+                int position = SectionScanner.findMapEntry(encoded, name);
+                if(position < 0)
                 {
-                    startBarePos = lastPos;
+                    return null;
                 }
-                do
-                {
-                    s = src.hasRemaining() ? decoder.readSection(src) : null;
-                } while(s instanceof Data);
+                ByteBuffer value = encoded.duplicate();
+                value.position(position);
+                return VALUE_HANDLER.parse(value);
             }
-            else if(s instanceof AmqpSequence)
+            catch (AmqpErrorException e)
             {
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                do
-                {
-                    s = src.hasRemaining() ? decoder.readSection(src) : null;
-                }
-                while(s instanceof AmqpSequence);
+                throw new ConnectionScopedRuntimeException(e);
             }
+        }
+    }
 
-            if(s instanceof Footer)
+    private boolean containsApplicationProperty(final String name)
+    {
+        if(_appProperties == null)
+        {
+            return false;
+        }
+        else if(_appProperties.isDecoded())
+        {
+            Map appProperties = getApplicationProperties();
+            return appProperties != null && appProperties.containsKey(name);
+        }
+        else
+        {
+            try
             {
-                sections.add(s);
+                return SectionScanner.findMapEntry(_appProperties.getEncoded(), name) >= 0;
             }
-
-
-            int pos = 0;
-            for(ByteBuffer buf : fragments)
+            catch (AmqpErrorException e)
             {
-/*
-                if(pos < startBarePos)
-                {
-                    if(pos + buf.remaining() > startBarePos)
-                    {
-                        ByteBuffer dup = buf.duplicate();
-                        dup.position(dup.position()+startBarePos-pos);
-                        dup.slice();
-                        encodedSections.add(dup);
-                    }
-                }
-                else
-*/
-                {
-                    encodedSections.add(buf.duplicate());
-                }
-                pos += buf.remaining();
+                throw new ConnectionScopedRuntimeException(e);
             }
-
-            return sections;
-        }
-        catch (AmqpErrorException e)
-        {
-            _logger.error("Decoding read section error", e);
-            throw new IllegalArgumentException(e);
         }
     }
 
@@ -362,7 +407,8 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
     public boolean isPersistent()
     {
-        return _header != null && Boolean.TRUE.equals(_header.getDurable());
+        Header header = getHeaderSection();
+        return header != null && Boolean.TRUE.equals(header.getDurable());
     }
 
     public MessageHeader_1_0 getMessageHeader()
@@ -371,48 +417,67 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
     }
 
 
-
-
-    private static class MetaDataFactory implements MessageMetaDataType.Factory<MessageMetaData_1_0>
+    /**
+     * A section of the meta data, decoded from its encoding when first required
+     */
+    private static final class EncodedSection<T extends Section>
     {
-        private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance();
+        private final ByteBuffer _encoded;
+        private volatile T _section;
 
-        private MetaDataFactory()
+        private EncodedSection(final ByteBuffer encoded)
         {
-            _typeRegistry.registerTransportLayer();
-            _typeRegistry.registerMessagingLayer();
-            _typeRegistry.registerTransactionLayer();
-            _typeRegistry.registerSecurityLayer();
+            _encoded = encoded;
         }
 
-        public MessageMetaData_1_0 createMetaData(ByteBuffer buf)
+        private EncodedSection(final T section)
         {
-            ValueHandler valueHandler = new ValueHandler(_typeRegistry);
+            _encoded = null;
+            _section = section;
+        }
 
-            ArrayList<Section> sections = new ArrayList<Section>(3);
-            ArrayList<ByteBuffer> encodedSections = new ArrayList<ByteBuffer>(3);
+        private boolean isDecoded()
+        {
+            return _section != null;
+        }
+
+        private ByteBuffer getEncoded()
+        {
+            return _encoded;
+        }
 
-            while(buf.hasRemaining())
+        private T getSection()
+        {
+            T section = _section;
+            if(section == null)
             {
                 try
                 {
-                    ByteBuffer encodedBuf = buf.duplicate();
-                    Object parse = valueHandler.parse(buf);
-                    sections.add((Section) parse);
-                    encodedBuf.limit(buf.position());
-                    encodedSections.add(encodedBuf);
-
+                    section = (T) VALUE_HANDLER.parse(_encoded.duplicate());
                 }
                 catch (AmqpErrorException e)
                 {
-                    //TODO
                     throw new ConnectionScopedRuntimeException(e);
                 }
-
+                _section = section;
             }
+            return section;
+        }
+    }
 
-            return new MessageMetaData_1_0(sections,encodedSections);
-
+    private static class MetaDataFactory implements MessageMetaDataType.Factory<MessageMetaData_1_0>
+    {
+        public MessageMetaData_1_0 createMetaData(ByteBuffer buf)
+        {
+            try
+            {
+                return new MessageMetaData_1_0(buf);
+            }
+            catch (AmqpErrorException e)
+            {
+                //TODO
+                throw new ConnectionScopedRuntimeException(e);
+            }
         }
     }
 
@@ -421,13 +486,14 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public String getCorrelationId()
         {
-            if(_properties == null || _properties.getCorrelationId() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getCorrelationId() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getCorrelationId().toString();
+                return properties.getCorrelationId().toString();
             }
         }
 
@@ -438,26 +504,27 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public String getMessageId()
         {
-            if(_properties == null || _properties.getMessageId() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getMessageId() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getMessageId().toString();
+                return properties.getMessageId().toString();
             }
         }
 
         public String getMimeType()
         {
-
-            if(_properties == null || _properties.getContentType() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getContentType() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getContentType().toString();
+                return properties.getContentType().toString();
             }
         }
 
@@ -468,51 +535,54 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public byte getPriority()
         {
-            if(_header == null || _header.getPriority() == null)
+            Header header = getHeaderSection();
+            if(header == null || header.getPriority() == null)
             {
                 return 4; //javax.jms.Message.DEFAULT_PRIORITY;
             }
             else
             {
-                return _header.getPriority().byteValue();
+                return header.getPriority().byteValue();
             }
         }
 
         public long getTimestamp()
         {
-            if(_properties == null || _properties.getCreationTime() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getCreationTime() == null)
             {
                 return 0L;
             }
             else
             {
-                return _properties.getCreationTime().getTime();
+                return properties.getCreationTime().getTime();
             }
 
         }
 
         public String getType()
         {
-
-            if(_messageAnnotations == null || _messageAnnotations.get(JMS_TYPE) == null)
+            Map messageAnnotations = getMessageAnnotations();
+            if(messageAnnotations == null || messageAnnotations.get(JMS_TYPE) == null)
             {
                 return null;
             }
             else
             {
-                return _messageAnnotations.get(JMS_TYPE).toString();
+                return messageAnnotations.get(JMS_TYPE).toString();
             }
         }
 
         public String getReplyTo()
         {
-            if(_properties == null || _properties.getReplyTo() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getReplyTo() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getReplyTo().toString();
+                return properties.getReplyTo().toString();
             }
         }
 
@@ -530,7 +600,7 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public Object getHeader(final String name)
         {
-            return _appProperties == null ? null : _appProperties.get(name);
+            return getApplicationProperty(name);
         }
 
         public boolean containsHeaders(final Set<String> names)
@@ -542,7 +612,7 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
             for(String key : names)
             {
-                if(!_appProperties.containsKey(key))
+                if(!containsApplicationProperty(key))
                 {
                     return false;
                 }
@@ -553,31 +623,35 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
         @Override
         public Collection<String> getHeaderNames()
         {
-            if(_appProperties == null)
+            Map appProperties = getApplicationProperties();
+            if(appProperties == null)
             {
                 return Collections.emptySet();
             }
-            return Collections.unmodifiableCollection(_appProperties.keySet());
+            return Collections.unmodifiableCollection(appProperties.keySet());
         }
 
         public boolean containsHeader(final String name)
         {
-            return _appProperties != null && _appProperties.containsKey(name);
+            return containsApplicationProperty(name);
         }
 
         public String getSubject()
         {
-            return _properties == null ? null : _properties.getSubject();
+            Properties properties = getPropertiesSection();
+            return properties == null ? null : properties.getSubject();
         }
 
         public String getTo()
         {
-            return _properties == null ? null : _properties.getTo();
+            Properties properties = getPropertiesSection();
+            return properties == null ? null : properties.getTo();
         }
 
         public Map<String, Object> getHeadersAsMap()
         {
-            return new HashMap<String, Object>(_appProperties);
+            Map appProperties = getApplicationProperties();
+            return appProperties == null ? new HashMap<String, Object>() : new HashMap<String, Object>(appProperties);
         }
     }
 
@@ -26,7 +26,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.qpid.amqp_1_0.messaging.SectionDecoderImpl;
 import org.apache.qpid.amqp_1_0.transport.DeliveryStateHandler;
 import org.apache.qpid.amqp_1_0.transport.LinkEndpoint;
 import org.apache.qpid.amqp_1_0.transport.ReceivingLinkEndpoint;
@@ -52,7 +51,6 @@ public class ReceivingLink_1_0 implements ReceivingLinkListener, Link_1_0, Deliv
     private VirtualHostImpl _vhost;
 
     private ReceivingDestination _destination;
-    private SectionDecoderImpl _sectionDecoder;
     private volatile ReceivingLinkAttachment _attachment;
 
 
@@ -76,10 +74,6 @@ public class ReceivingLink_1_0 implements ReceivingLinkListener, Link_1_0, Deliv
         receivingLinkAttachment.setDeliveryStateHandler(this);
 
         _durability = ((Target)receivingLinkAttachment.getTarget()).getDurable();
-
-        _sectionDecoder = new SectionDecoderImpl(receivingLinkAttachment.getEndpoint().getSession().getConnection().getDescribedTypeRegistry());
-
-
     }
 
     public void messageTransfer(Transfer xfr)
@@ -147,7 +141,6 @@ public class ReceivingLink_1_0 implements ReceivingLinkListener, Link_1_0, Deliv
             MessageMetaData_1_0 mmd = null;
             List<ByteBuffer> immutableSections = new ArrayList<ByteBuffer>(3);
             mmd = new MessageMetaData_1_0(fragments.toArray(new ByteBuffer[fragments.size()]),
-                    _sectionDecoder,
                     immutableSections);
 
             StoredMessage<MessageMetaData_1_0> storedMessage = _vhost.getMessageStore().addMessage(mmd);
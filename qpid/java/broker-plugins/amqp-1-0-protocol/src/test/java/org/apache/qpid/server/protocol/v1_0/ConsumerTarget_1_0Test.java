@@ -0,0 +1,215 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol.v1_0;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.amqp_1_0.codec.ValueHandler;
+import org.apache.qpid.amqp_1_0.framing.PayloadFragments;
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Section;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ConsumerTarget_1_0Test extends QpidTestCase
+{
+    private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance()
+                                                                                      .registerTransportLayer()
+                                                                                      .registerMessagingLayer()
+                                                                                      .registerTransactionLayer()
+                                                                                      .registerSecurityLayer();
+    private final SectionEncoder _sectionEncoder = new SectionEncoderImpl(_typeRegistry);
+
+    public void testReplaceHeaderWithinFirstFragment() throws Exception
+    {
+        List<Binary> encodings = encode(createHeader(), createProperties(), createData());
+        ByteBuffer first = Binary.combine(encodings.subList(0, 2)).asByteBuffer();
+        ByteBuffer second = encodings.get(2).asByteBuffer();
+        List<ByteBuffer> fragments = Arrays.asList(first, second);
+
+        List<ByteBuffer> payload = ConsumerTarget_1_0.replaceHeader(fragments, 3, _typeRegistry, _sectionEncoder);
+
+        assertSame("Fragments after the header should be sent as they are", second, payload.get(payload.size() - 1));
+        assertReplacedHeader(payload, 3, true);
+        assertUnchanged(fragments, encodings);
+    }
+
+    public void testReplaceHeaderSpanningFragments() throws Exception
+    {
+        List<Binary> encodings = encode(createHeader(), createProperties(), createData());
+        ByteBuffer encoded = Binary.combine(encodings).asByteBuffer();
+        int headerLength = encodings.get(0).getLength();
+
+        for (int split = 1; split < headerLength; split++)
+        {
+            // the header spans the first fragment, all of the second and the start of the third
+            List<ByteBuffer> fragments = split(encoded, split, Math.min(split + 2, headerLength), headerLength + 1);
+
+            List<ByteBuffer> payload = ConsumerTarget_1_0.replaceHeader(fragments, 2, _typeRegistry, _sectionEncoder);
+
+            assertReplacedHeader(payload, 2, true);
+            assertUnchanged(fragments, encodings);
+        }
+    }
+
+    public void testReplaceHeaderOfMessageWithoutHeader() throws Exception
+    {
+        List<Binary> encodings = encode(createProperties(), createData());
+        List<ByteBuffer> fragments = Arrays.asList(encodings.get(0).asByteBuffer(), encodings.get(1).asByteBuffer());
+
+        List<ByteBuffer> payload = ConsumerTarget_1_0.replaceHeader(fragments, 1, _typeRegistry, _sectionEncoder);
+
+        assertEquals("Header should be added before the sections held", 3, payload.size());
+        assertSame(fragments.get(1), payload.get(2));
+        assertReplacedHeader(payload, 1, false);
+        assertUnchanged(fragments, encodings);
+    }
+
+    public void testReplaceHeaderOfMessageWithoutHeaderWhoseFirstSectionSpansFragments() throws Exception
+    {
+        List<Binary> encodings = encode(createProperties(), createData());
+        ByteBuffer encoded = Binary.combine(encodings).asByteBuffer();
+        int propertiesLength = encodings.get(0).getLength();
+
+        for (int split = 1; split < propertiesLength; split++)
+        {
+            // the fragments are combined to find that the first section is not a header
+            List<ByteBuffer> fragments = split(encoded, split);
+
+            List<ByteBuffer> payload = ConsumerTarget_1_0.replaceHeader(fragments, 1, _typeRegistry, _sectionEncoder);
+
+            assertReplacedHeader(payload, 1, false);
+            assertUnchanged(fragments, encodings);
+        }
+    }
+
+    private void assertReplacedHeader(List<ByteBuffer> payload, int deliveryCount, boolean hadHeader)
+            throws Exception
+    {
+        List<Object> sections = decode(PayloadFragments.concatenate(payload));
+        assertEquals("Unexpected sections " + sections, 3, sections.size());
+
+        Header header = (Header) sections.get(0);
+        assertEquals(UnsignedInteger.valueOf(deliveryCount), header.getDeliveryCount());
+        if (hadHeader)
+        {
+            assertEquals(Boolean.TRUE, header.getDurable());
+            assertEquals(UnsignedByte.valueOf((byte) 7), header.getPriority());
+            assertEquals(UnsignedInteger.valueOf(1000), header.getTtl());
+        }
+        else
+        {
+            assertNull(header.getDurable());
+            assertNull(header.getPriority());
+            assertNull(header.getTtl());
+        }
+
+        assertEquals("messageId", ((Properties) sections.get(1)).getMessageId());
+        assertEquals(createData().getValue(), ((Data) sections.get(2)).getValue());
+    }
+
+    private void assertUnchanged(List<ByteBuffer> fragments, List<Binary> encodings)
+    {
+        ByteBuffer expected = Binary.combine(encodings).asByteBuffer();
+        assertEquals("Fragments of the stored message should not be modified",
+                     expected, PayloadFragments.concatenate(fragments));
+    }
+
+    private List<Binary> encode(Section... sections)
+    {
+        List<Binary> encodings = new ArrayList<Binary>();
+        for (Section section : sections)
+        {
+            _sectionEncoder.reset();
+            _sectionEncoder.encodeObject(section);
+            encodings.add(_sectionEncoder.getEncoding());
+        }
+        return encodings;
+    }
+
+    private List<Object> decode(ByteBuffer payload) throws Exception
+    {
+        List<Object> sections = new ArrayList<Object>();
+        ByteBuffer buffer = payload.duplicate();
+        ValueHandler valueHandler = new ValueHandler(_typeRegistry);
+        while (buffer.hasRemaining())
+        {
+            sections.add(valueHandler.parse(buffer));
+        }
+        return sections;
+    }
+
+    private List<ByteBuffer> split(ByteBuffer encoded, int... offsets)
+    {
+        List<ByteBuffer> fragments = new ArrayList<ByteBuffer>();
+        int start = 0;
+        for (int offset : offsets)
+        {
+            fragments.add(slice(encoded, start, offset));
+            start = offset;
+        }
+        fragments.add(slice(encoded, start, encoded.remaining()));
+        return fragments;
+    }
+
+    private ByteBuffer slice(ByteBuffer encoded, int start, int end)
+    {
+        ByteBuffer fragment = encoded.duplicate();
+        fragment.position(start);
+        fragment.limit(end);
+        return fragment.slice();
+    }
+
+    private Header createHeader()
+    {
+        Header header = new Header();
+        header.setDurable(true);
+        header.setPriority(UnsignedByte.valueOf((byte) 7));
+        header.setTtl(UnsignedInteger.valueOf(1000));
+        header.setDeliveryCount(UnsignedInteger.valueOf(1));
+        return header;
+    }
+
+    private Properties createProperties()
+    {
+        Properties properties = new Properties();
+        properties.setMessageId("messageId");
+        properties.setSubject("subject");
+        return properties;
+    }
+
+    private Data createData()
+    {
+        byte[] content = new byte[50];
+        Arrays.fill(content, (byte) 'x');
+        return new Data(new Binary(content));
+    }
+}
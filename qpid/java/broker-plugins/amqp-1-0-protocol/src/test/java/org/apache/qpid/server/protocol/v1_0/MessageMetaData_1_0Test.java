@@ -0,0 +1,190 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol.v1_0;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Section;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageMetaData_1_0Test extends QpidTestCase
+{
+    private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance()
+                                                                                      .registerTransportLayer()
+                                                                                      .registerMessagingLayer()
+                                                                                      .registerTransactionLayer()
+                                                                                      .registerSecurityLayer();
+
+    public void testLazyLookupsMatchDecodedSections() throws Exception
+    {
+        List<Section> sections = createSections(true);
+        MessageMetaData_1_0 decoded = new MessageMetaData_1_0(sections, new SectionEncoderImpl(_typeRegistry));
+        MessageMetaData_1_0 scanned = new MessageMetaData_1_0(new ByteBuffer[] { encode(sections) });
+
+        assertSameHeader(decoded, scanned);
+        assertEquals("value", scanned.getMessageHeader().getHeader("string"));
+        assertEquals(42, scanned.getMessageHeader().getHeader("int"));
+        assertNull(scanned.getMessageHeader().getHeader("missing"));
+        assertTrue(scanned.getMessageHeader().containsHeaders(new HashSet<String>(Arrays.asList("string", "int"))));
+        assertFalse(scanned.getMessageHeader().containsHeaders(new HashSet<String>(Arrays.asList("string", "missing"))));
+    }
+
+    public void testLazyLookupsOfMessageWithoutOptionalSections() throws Exception
+    {
+        List<Section> sections = createSections(false);
+        MessageMetaData_1_0 decoded = new MessageMetaData_1_0(sections, new SectionEncoderImpl(_typeRegistry));
+        MessageMetaData_1_0 scanned = new MessageMetaData_1_0(new ByteBuffer[] { encode(sections) });
+
+        assertSameHeader(decoded, scanned);
+        assertNull(scanned.getHeaderSection());
+        assertNull(scanned.getPropertiesSection());
+        assertFalse(scanned.isPersistent());
+        assertEquals(4, scanned.getMessageHeader().getPriority());
+        assertNull(scanned.getMessageHeader().getHeader("string"));
+        assertFalse(scanned.getMessageHeader().containsHeader("string"));
+        assertTrue(scanned.getMessageHeader().getHeaderNames().isEmpty());
+    }
+
+    public void testSectionsSplitAcrossFragments() throws Exception
+    {
+        List<Section> sections = createSections(true);
+        MessageMetaData_1_0 decoded = new MessageMetaData_1_0(sections, new SectionEncoderImpl(_typeRegistry));
+        ByteBuffer encoded = encode(sections);
+
+        for (int split = 1; split < encoded.remaining(); split++)
+        {
+            ByteBuffer first = encoded.duplicate();
+            first.limit(split);
+            ByteBuffer second = encoded.duplicate();
+            second.position(split);
+
+            MessageMetaData_1_0 scanned = new MessageMetaData_1_0(new ByteBuffer[] { first.slice(), second.slice() });
+            assertSameHeader(decoded, scanned);
+            assertEquals("Unexpected storable size when split at " + split,
+                         encoded.remaining(), scanned.getStorableSize());
+        }
+    }
+
+    public void testRecoveredMetaDataMatchesDecodedSections() throws Exception
+    {
+        List<Section> sections = createSections(true);
+        MessageMetaData_1_0 decoded = new MessageMetaData_1_0(sections, new SectionEncoderImpl(_typeRegistry));
+        MessageMetaData_1_0 scanned = new MessageMetaData_1_0(new ByteBuffer[] { encode(sections) });
+
+        ByteBuffer stored = ByteBuffer.allocate(scanned.getStorableSize());
+        scanned.writeToBuffer(stored);
+        stored.flip();
+
+        MessageMetaData_1_0 recovered = MessageMetaData_1_0.FACTORY.createMetaData(stored);
+        assertSameHeader(decoded, recovered);
+    }
+
+    private void assertSameHeader(MessageMetaData_1_0 expected, MessageMetaData_1_0 actual)
+    {
+        MessageMetaData_1_0.MessageHeader_1_0 expectedHeader = expected.getMessageHeader();
+        MessageMetaData_1_0.MessageHeader_1_0 actualHeader = actual.getMessageHeader();
+
+        assertEquals(expected.isPersistent(), actual.isPersistent());
+        assertEquals(expectedHeader.getPriority(), actualHeader.getPriority());
+        assertEquals(expectedHeader.getMessageId(), actualHeader.getMessageId());
+        assertEquals(expectedHeader.getCorrelationId(), actualHeader.getCorrelationId());
+        assertEquals(expectedHeader.getMimeType(), actualHeader.getMimeType());
+        assertEquals(expectedHeader.getTimestamp(), actualHeader.getTimestamp());
+        assertEquals(expectedHeader.getReplyTo(), actualHeader.getReplyTo());
+        assertEquals(expectedHeader.getType(), actualHeader.getType());
+        assertEquals(expectedHeader.getSubject(), actualHeader.getSubject());
+        assertEquals(expectedHeader.getTo(), actualHeader.getTo());
+
+        for (String name : Arrays.asList("string", "int", "symbolKey", "missing"))
+        {
+            assertEquals("Unexpected value of " + name, expectedHeader.getHeader(name), actualHeader.getHeader(name));
+            assertEquals("Unexpected presence of " + name,
+                         expectedHeader.containsHeader(name), actualHeader.containsHeader(name));
+        }
+        assertEquals(new HashSet<String>(expectedHeader.getHeaderNames()),
+                     new HashSet<String>(actualHeader.getHeaderNames()));
+        assertEquals(expectedHeader.getHeadersAsMap(), actualHeader.getHeadersAsMap());
+    }
+
+    private List<Section> createSections(boolean withOptionalSections)
+    {
+        List<Section> sections = new ArrayList<Section>();
+        if (withOptionalSections)
+        {
+            Header header = new Header();
+            header.setDurable(true);
+            header.setPriority(UnsignedByte.valueOf((byte) 7));
+            sections.add(header);
+
+            sections.add(new MessageAnnotations(Collections.singletonMap(MessageMetaData_1_0.JMS_TYPE, "type")));
+
+            Properties properties = new Properties();
+            properties.setMessageId("messageId");
+            properties.setCorrelationId("correlationId");
+            properties.setContentType(Symbol.valueOf("text/plain"));
+            properties.setCreationTime(new Date(1234567l));
+            properties.setReplyTo("replyTo");
+            properties.setSubject("subject");
+            properties.setTo("to");
+            sections.add(properties);
+
+            Map<Object, Object> applicationProperties = new LinkedHashMap<Object, Object>();
+            applicationProperties.put("string", "value");
+            applicationProperties.put("int", 42);
+            applicationProperties.put(Symbol.valueOf("symbolKey"), "symbolValue");
+            sections.add(new ApplicationProperties(applicationProperties));
+        }
+        sections.add(new Data(new Binary(new byte[100])));
+        return sections;
+    }
+
+    private ByteBuffer encode(List<Section> sections)
+    {
+        SectionEncoder encoder = new SectionEncoderImpl(_typeRegistry);
+        List<Binary> encodings = new ArrayList<Binary>();
+        for (Section section : sections)
+        {
+            encoder.encodeObject(section);
+            encodings.add(encoder.getEncoding());
+            encoder.reset();
+        }
+        return Binary.combine(encodings).asByteBuffer();
+    }
+}
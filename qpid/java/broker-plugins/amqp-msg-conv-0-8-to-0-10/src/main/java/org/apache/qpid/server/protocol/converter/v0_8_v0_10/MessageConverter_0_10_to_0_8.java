@@ -226,6 +226,11 @@ public class MessageConverter_0_10_to_0_8 implements MessageConverter<MessageTra
             {
                 return false;
             }
+
+            @Override
+            public void reloadContent()
+            {
+            }
         };
     }
 
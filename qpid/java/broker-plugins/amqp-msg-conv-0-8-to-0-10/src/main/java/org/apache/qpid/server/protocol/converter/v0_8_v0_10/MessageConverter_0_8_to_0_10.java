@@ -115,6 +115,11 @@ public class MessageConverter_0_8_to_0_10  implements MessageConverter<AMQMessag
             {
                 return false;
             }
+
+            @Override
+            public void reloadContent()
+            {
+            }
         };
     }
 
@@ -130,6 +130,11 @@ public class MessageConverter_1_0_to_v0_8 implements MessageConverter<Message_1_
             {
                 return false;
             }
+
+            @Override
+            public void reloadContent()
+            {
+            }
         };
     }
 
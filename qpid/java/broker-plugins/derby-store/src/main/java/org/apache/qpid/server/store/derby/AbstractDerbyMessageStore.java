@@ -67,6 +67,8 @@ public abstract class AbstractDerbyMessageStore extends AbstractJDBCMessageStore
             createOrOpenMessageStoreDatabase();
             setInitialSize();
             setMaximumMessageId();
+            createOffHeapContentCache(parent);
+            startCommitThread(parent.getName());
         }
     }
 
@@ -85,7 +87,15 @@ public abstract class AbstractDerbyMessageStore extends AbstractJDBCMessageStore
     {
         if (_messageStoreOpen.compareAndSet(true,  false))
         {
-            doClose();
+            try
+            {
+                stopCommitThread();
+            }
+            finally
+            {
+                destroyOffHeapContentCache();
+                doClose();
+            }
         }
     }
 
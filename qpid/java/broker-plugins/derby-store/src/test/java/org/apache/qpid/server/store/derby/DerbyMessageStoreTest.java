@@ -22,10 +22,15 @@ package org.apache.qpid.server.store.derby;
 
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.qpid.server.model.VirtualHost;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.MessageStoreTestCase;
+import org.apache.qpid.server.store.OffHeapContentCache;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.TestMessageMetaData;
 import org.apache.qpid.server.virtualhost.derby.DerbyVirtualHost;
 import org.apache.qpid.util.FileUtils;
 
@@ -64,6 +69,66 @@ public class DerbyMessageStoreTest extends MessageStoreTestCase
         assertFalse("Store exists at " + _storeLocation, location.exists());
     }
 
+    public void testFlowedContentServedFromOffHeapContentCache() throws Exception
+    {
+        OffHeapContentCache contentCache = ((DerbyMessageStore) getStore()).getOffHeapContentCache();
+        assertNotNull("Off-heap content cache not created", contentCache);
+
+        byte[] content = "offHeap".getBytes();
+        StoredMessage<TestMessageMetaData> message = getStore().addMessage(new TestMessageMetaData(1, content.length));
+        message.addContent(0, ByteBuffer.wrap(content));
+        enqueueMessage(message, "dummyQ");
+
+        assertTrue("Message not flowed to disk", message.flowToDisk());
+        assertFalse("Content should have been released from the heap", message.isInMemory());
+        assertEquals("Content not moved to the off-heap cache", 1, contentCache.getEntryCount());
+
+        long hits = contentCache.getHitCount();
+        assertContent(content, message);
+        assertTrue("Content should have been served from the off-heap cache", contentCache.getHitCount() > hits);
+
+        message.reloadContent();
+        assertTrue("Content should have been reloaded onto the heap", message.isInMemory());
+        assertEquals("Reloaded content should have left the off-heap cache", 0, contentCache.getEntryCount());
+        assertContent(content, message);
+
+        message.remove();
+        assertEquals("Unexpected off-heap cache size", 0, contentCache.getSize());
+    }
+
+    public void testFlowedContentReadInChunksCopiedFromOffHeapContentCacheOnce() throws Exception
+    {
+        OffHeapContentCache contentCache = ((DerbyMessageStore) getStore()).getOffHeapContentCache();
+
+        byte[] content = new byte[64 * 1024];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) i;
+        }
+        StoredMessage<TestMessageMetaData> message = getStore().addMessage(new TestMessageMetaData(1, content.length));
+        message.addContent(0, ByteBuffer.wrap(content));
+        enqueueMessage(message, "dummyQ");
+        assertTrue("Message not flowed to disk", message.flowToDisk());
+
+        long hits = contentCache.getHitCount();
+        long misses = contentCache.getMissCount();
+        int chunkSize = 1000;
+        ByteBuffer read = ByteBuffer.allocate(content.length);
+        for (int offset = 0; offset < content.length; offset += chunkSize)
+        {
+            ByteBuffer chunk = message.getContent(offset, chunkSize);
+            assertEquals("Unexpected chunk size at offset " + offset,
+                         Math.min(chunkSize, content.length - offset), chunk.remaining());
+            read.put(chunk);
+        }
+
+        assertTrue("Unexpected content", Arrays.equals(content, read.array()));
+        assertEquals("Content should have been copied from the off-heap cache once",
+                     hits + 1, contentCache.getHitCount());
+        assertEquals("Unexpected off-heap cache misses", misses, contentCache.getMissCount());
+        assertTrue("Content should be held on the heap once read", message.isInMemory());
+    }
+
     @Override
     protected VirtualHost createVirtualHost()
     {
@@ -72,6 +137,7 @@ public class DerbyMessageStoreTest extends MessageStoreTestCase
 
         final DerbyVirtualHost parent = mock(DerbyVirtualHost.class);
         when(parent.getStorePath()).thenReturn(_storeLocation);
+        when(parent.getContextValue(Long.class, VirtualHost.OFF_HEAP_CONTENT_CACHE_SIZE)).thenReturn(1024l * 1024l);
         return parent;
     }
 
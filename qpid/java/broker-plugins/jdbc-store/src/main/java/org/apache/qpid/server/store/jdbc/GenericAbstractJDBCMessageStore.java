@@ -46,6 +46,8 @@ public abstract class GenericAbstractJDBCMessageStore extends org.apache.qpid.se
 
             createOrOpenMessageStoreDatabase();
             setMaximumMessageId();
+            createOffHeapContentCache(parent);
+            startCommitThread(parent.getName());
         }
     }
 
@@ -75,7 +77,15 @@ public abstract class GenericAbstractJDBCMessageStore extends org.apache.qpid.se
             }
             finally
             {
-                doClose();
+                try
+                {
+                    stopCommitThread();
+                }
+                finally
+                {
+                    destroyOffHeapContentCache();
+                    doClose();
+                }
             }
 
         }
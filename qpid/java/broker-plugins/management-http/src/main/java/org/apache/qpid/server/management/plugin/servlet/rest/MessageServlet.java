@@ -76,7 +76,11 @@ public class MessageServlet extends AbstractServlet
         Queue queue = getQueueFromRequest(request);
         String path[] = getPathInfoElements(request);
         MessageFinder messageFinder = new MessageFinder(Long.parseLong(path[2]));
-        queue.visit(messageFinder);
+        QueueEntry entry = queue.getMessageOnTheQueue(Long.parseLong(path[2]));
+        if(entry != null)
+        {
+            messageFinder.visit(entry);
+        }
 
         response.setStatus(HttpServletResponse.SC_OK);
 
@@ -93,7 +97,7 @@ public class MessageServlet extends AbstractServlet
 
     private void getMessageList(HttpServletRequest request, HttpServletResponse response) throws IOException
     {
-        Queue queue = getQueueFromRequest(request);
+        Queue<?> queue = getQueueFromRequest(request);
 
         int first = -1;
         int last = -1;
@@ -105,7 +109,15 @@ public class MessageServlet extends AbstractServlet
             last = Integer.parseInt(boundaries[1]);
         }
         final MessageCollector messageCollector = new MessageCollector(first, last);
-        queue.visit(messageCollector);
+        if(range != null)
+        {
+            // positions in the range start from 0, those on the queue from 1
+            messageCollector.collect(queue.getMessagesRangeOnTheQueue(first + 1, last + 1));
+        }
+        else
+        {
+            queue.visit(messageCollector);
+        }
 
         response.setContentType("application/json");
         final List<Map<String, Object>> messages = messageCollector.getMessages();
@@ -169,37 +181,30 @@ public class MessageServlet extends AbstractServlet
 
     private abstract static class QueueEntryTransaction implements VirtualHost.TransactionalOperation
     {
-        private final Queue _sourceQueue;
-        private final List _messageIds;
+        private final Queue<?> _sourceQueue;
+        private final List<Long> _messageIds;
 
         protected QueueEntryTransaction(Queue sourceQueue, List messageIds)
         {
             _sourceQueue = sourceQueue;
-            _messageIds = messageIds;
+            _messageIds = new ArrayList<Long>(messageIds.size());
+            for(Object messageId : messageIds)
+            {
+                // ids posted as JSON are read as integers where they fit
+                _messageIds.add(((Number) messageId).longValue());
+            }
         }
 
         @Override
         public void withinTransaction(final VirtualHost.Transaction txn)
         {
-
-            _sourceQueue.visit(new QueueEntryVisitor()
+            for(QueueEntry entry : _sourceQueue.getMessagesOnTheQueue(_messageIds))
             {
-
-                public boolean visit(final QueueEntry entry)
+                if(entry.getMessage() != null)
                 {
-                    final ServerMessage message = entry.getMessage();
-                    if(message != null)
-                    {
-                        final long messageId = message.getMessageNumber();
-                        if (_messageIds.remove(messageId) || (messageId <= (long) Integer.MAX_VALUE
-                                                              && _messageIds.remove(Integer.valueOf((int)messageId))))
-                        {
-                            updateEntry(entry, txn);
-                        }
-                    }
-                    return _messageIds.isEmpty();
+                    updateEntry(entry, txn);
                 }
-            });
+            }
         }
 
 
@@ -319,6 +324,15 @@ public class MessageServlet extends AbstractServlet
             return _last != -1 && _position > _last;
         }
 
+        private void collect(List<? extends QueueEntry> entries)
+        {
+            _position = Math.max(_first, 0) - 1;
+            for(QueueEntry entry : entries)
+            {
+                visit(entry);
+            }
+        }
+
         public List<Map<String, Object>> getMessages()
         {
             return _messages;
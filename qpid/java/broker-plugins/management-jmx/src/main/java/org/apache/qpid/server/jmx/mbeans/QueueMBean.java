@@ -23,7 +23,6 @@ package org.apache.qpid.server.jmx.mbeans;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -339,7 +338,7 @@ public class QueueMBean extends AMQManagedObject implements ManagedQueue, QueueN
         }
 
 
-        List<QueueEntry> messages = getMessages(startPosition, endPosition);
+        List<? extends QueueEntry> messages = getMessages(startPosition, endPosition);
 
         TabularDataSupport messageTable = new TabularDataSupport(MSG_LIST_DATA_TYPE);
 
@@ -429,9 +428,7 @@ public class QueueMBean extends AMQManagedObject implements ManagedQueue, QueueN
 
     private QueueEntry getMessage(long messageId)
     {
-        GetMessageVisitor visitor = new GetMessageVisitor(messageId);
-        _queue.visit(visitor);
-        return visitor.getEntry();
+        return _queue.getMessageOnTheQueue(messageId);
     }
 
     public void deleteMessageFromTop() throws IOException, JMException
@@ -509,27 +506,14 @@ public class QueueMBean extends AMQManagedObject implements ManagedQueue, QueueN
         {
             public void withinTransaction(final VirtualHost.Transaction txn)
             {
-                _queue.visit(new QueueEntryVisitor()
+                for(QueueEntry entry : _queue.getMessagesOnTheQueue(fromMessageId, toMessageId))
                 {
-
-                    public boolean visit(final QueueEntry entry)
+                    final ServerMessage message = entry.getMessage();
+                    if(message != null && !(message.isReferenced((TransactionLogResource)destinationQueue)))
                     {
-                        final ServerMessage message = entry.getMessage();
-                        if(message != null)
-                        {
-                            final long messageId = message.getMessageNumber();
-
-                            if ((messageId >= fromMessageId)
-                                && (messageId <= toMessageId)
-                                && !(message.isReferenced((TransactionLogResource)destinationQueue)))
-                            {
-                                txn.move(entry, destinationQueue);
-                            }
-
-                        }
-                        return false;
+                        txn.move(entry, destinationQueue);
                     }
-                });
+                }
             }
         });
     }
@@ -542,24 +526,13 @@ public class QueueMBean extends AMQManagedObject implements ManagedQueue, QueueN
         {
             public void withinTransaction(final VirtualHost.Transaction txn)
             {
-                _queue.visit(new QueueEntryVisitor()
+                for(QueueEntry entry : _queue.getMessagesOnTheQueue(fromMessageId, toMessageId))
                 {
-                    public boolean visit(final QueueEntry entry)
+                    if(entry.getMessage() != null)
                     {
-                        final ServerMessage message = entry.getMessage();
-                        if(message != null)
-                        {
-                            final long messageId = message.getMessageNumber();
-
-                            if ((messageId >= fromMessageId)
-                                && (messageId <= toMessageId))
-                            {
-                                txn.dequeue(entry);
-                            }
-                        }
-                        return false;
+                        txn.dequeue(entry);
                     }
-                });
+                }
             }
         });
     }
@@ -582,77 +555,21 @@ public class QueueMBean extends AMQManagedObject implements ManagedQueue, QueueN
         {
             public void withinTransaction(final VirtualHost.Transaction txn)
             {
-                _queue.visit(new QueueEntryVisitor()
+                for(QueueEntry entry : _queue.getMessagesOnTheQueue(fromMessageId, toMessageId))
                 {
-
-                    public boolean visit(final QueueEntry entry)
+                    final ServerMessage message = entry.getMessage();
+                    if(message != null && !(message.isReferenced((TransactionLogResource)destinationQueue)))
                     {
-                        final ServerMessage message = entry.getMessage();
-                        if(message != null)
-                        {
-                            final long messageId = message.getMessageNumber();
-
-                            if ((messageId >= fromMessageId)
-                                && (messageId <= toMessageId)
-                                && !(message.isReferenced((TransactionLogResource)destinationQueue)))
-                            {
-                                txn.copy(entry, destinationQueue);
-                            }
-
-                        }
-                        return false;
+                        txn.copy(entry, destinationQueue);
                     }
-                });
-            }
-        });
-    }
-
-    private List<QueueEntry> getMessages(final long first, final long last)
-    {
-        final List<QueueEntry> messages = new ArrayList<QueueEntry>((int)(last-first)+1);
-        _queue.visit(new QueueEntryVisitor()
-        {
-            private long position = 1;
-
-            public boolean visit(QueueEntry entry)
-            {
-                if(position >= first && position <= last)
-                {
-                    messages.add(entry);
                 }
-                position++;
-                return position > last;
             }
         });
-        return messages;
     }
 
-
-    protected static class GetMessageVisitor implements QueueEntryVisitor
+    private List<? extends QueueEntry> getMessages(final long first, final long last)
     {
-
-        private final long _messageNumber;
-        private QueueEntry _entry;
-
-        public GetMessageVisitor(long messageId)
-        {
-            _messageNumber = messageId;
-        }
-
-        public boolean visit(QueueEntry entry)
-        {
-            if(entry.getMessage().getMessageNumber() == _messageNumber)
-            {
-                _entry = entry;
-                return true;
-            }
-            return false;
-        }
-
-        public QueueEntry getEntry()
-        {
-            return _entry;
-        }
+        return _queue.getMessagesRangeOnTheQueue(first, last);
     }
 
     @Override
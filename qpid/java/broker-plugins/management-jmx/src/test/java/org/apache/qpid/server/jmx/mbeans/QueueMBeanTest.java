@@ -44,7 +44,6 @@ import org.mockito.stubbing.Answer;
 
 import org.apache.qpid.management.common.mbeans.ManagedQueue;
 import org.apache.qpid.server.jmx.ManagedObjectRegistry;
-import org.apache.qpid.server.jmx.mbeans.QueueMBean.GetMessageVisitor;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.Exchange;
 import org.apache.qpid.server.model.ExclusivityPolicy;
@@ -461,17 +460,7 @@ public class QueueMBeanTest extends QpidTestCase
         final QueueEntry entry = mock(QueueEntry.class);
         when(entry.getMessage()).thenReturn(serverMessage);
 
-        //mock the queue.visit() method to ensure we match the mock message
-        doAnswer(new Answer<Object>()
-        {
-            public Object answer(InvocationOnMock invocation)
-            {
-                Object[] args = invocation.getArguments();
-                GetMessageVisitor visitor = (GetMessageVisitor) args[0];
-                visitor.visit(entry);
-                return null;
-            }
-        }).when(_mockQueue).visit(Matchers.any(GetMessageVisitor.class));
+        when(_mockQueue.getMessageOnTheQueue(messageNumber)).thenReturn(entry);
 
         //now retrieve the content and verify its size
         CompositeDataSupport comp = (CompositeDataSupport) _queueMBean.viewMessageContent(messageNumber);
@@ -605,27 +605,12 @@ public class AMQProtocolHandler implements ProtocolEngine
 
     }
 
-    private static final int REUSABLE_BYTE_BUFFER_CAPACITY = 65 * 1024;
-    private final byte[] _reusableBytes = new byte[REUSABLE_BYTE_BUFFER_CAPACITY];
-    private final ByteBuffer _reusableByteBuffer = ByteBuffer.wrap(_reusableBytes);
-    private final BytesDataOutput _reusableDataOutput = new BytesDataOutput(_reusableBytes);
+    private final BytesDataOutput _reusableDataOutput = new BytesDataOutput(new byte[0]);
 
     private ByteBuffer asByteBuffer(AMQDataBlock block)
     {
-        final int size = (int) block.getSize();
-
-        final byte[] data;
-
-
-        if(size > REUSABLE_BYTE_BUFFER_CAPACITY)
-        {
-            data= new byte[size];
-        }
-        else
-        {
-
-            data = _reusableBytes;
-        }
+        // the sender may retain the buffer until it is written, so each frame is encoded into its own array
+        final byte[] data = new byte[(int) block.getSize()];
         _reusableDataOutput.setBuffer(data);
 
         try
@@ -637,20 +622,7 @@ public class AMQProtocolHandler implements ProtocolEngine
             throw new RuntimeException(e);
         }
 
-        final ByteBuffer buf;
-
-        if(size < REUSABLE_BYTE_BUFFER_CAPACITY)
-        {
-            buf = _reusableByteBuffer;
-            buf.position(0);
-        }
-        else
-        {
-            buf = ByteBuffer.wrap(data);
-        }
-        buf.limit(_reusableDataOutput.length());
-
-        return buf;
+        return ByteBuffer.wrap(data, 0, _reusableDataOutput.length());
     }
 
 
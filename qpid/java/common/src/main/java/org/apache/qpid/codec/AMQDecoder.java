@@ -20,15 +20,8 @@
  */
 package org.apache.qpid.codec;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
 
 import org.apache.qpid.framing.*;
 import org.apache.qpid.protocol.AMQConstant;
@@ -38,6 +31,11 @@ import org.apache.qpid.protocol.AMQConstant;
  * protocol initiation decoder. It is a cumulative decoder, which means that it can accumulate data to decode in the
  * buffer until there is enough data to decode.
  *
+ * <p>Frames are decoded in place from the buffers given, and the content of body frames is passed on as a slice of
+ * the buffer it was received in rather than a copy, so the buffers given must not be modified afterwards.  Only the
+ * part of a frame split between buffers is copied, into a buffer that is reused for subsequent partial frames unless
+ * content has been sliced from it.
+ *
  * <p>One instance of this class is created per session, so any changes or configuration done at run time to the
  * decoder will only affect decoding of the protocol session data to which is it bound.
  *
@@ -47,7 +45,12 @@ import org.apache.qpid.protocol.AMQConstant;
  */
 public abstract class AMQDecoder<T extends MethodProcessor>
 {
-    private static final int MAX_BUFFERS_LIMIT = 10;
+    /** type, channel and body length */
+    private static final int FRAME_HEADER_SIZE = 1 + 2 + 4;
+    private static final int FRAME_END_SIZE = 1;
+    private static final int PROTOCOL_INITIATION_SIZE = 8;
+    private static final int MIN_PARTIAL_FRAME_CAPACITY = 256;
+
     private final T _methodProcessor;
 
     /** Holds the protocol initiation decoder. */
@@ -61,7 +64,8 @@ public abstract class AMQDecoder<T extends MethodProcessor>
 
     private int _maxFrameSize = AMQConstant.FRAME_MIN_SIZE.getCode();
 
-    private List<ByteArrayInputStream> _remainingBufs = new ArrayList<ByteArrayInputStream>();
+    /** Accumulates the start of a frame received in an earlier buffer until the rest of it is received */
+    private ByteBuffer _partialFrame;
 
     /**
      * Creates a new AMQP decoder.
@@ -98,227 +102,149 @@ public abstract class AMQDecoder<T extends MethodProcessor>
         return _methodProcessor;
     }
 
-    private class RemainingByteArrayInputStream extends InputStream
+    public void decodeBuffer(ByteBuffer buf) throws AMQFrameDecodingException, AMQProtocolVersionException, IOException
     {
-        private int _currentListPos;
-        private int _markPos;
+        ByteBuffer in = buf.duplicate();
 
-
-        @Override
-        public int read() throws IOException
+        // If this is the first read then we may be getting a protocol initiation back if we tried to negotiate
+        // an unsupported version
+        if(_firstRead && in.hasRemaining())
         {
-            ByteArrayInputStream currentStream = _remainingBufs.get(_currentListPos);
-            if(currentStream.available() > 0)
-            {
-                return currentStream.read();
-            }
-            else if((_currentListPos == _remainingBufs.size())
-                    || (++_currentListPos == _remainingBufs.size()))
+            _firstRead = false;
+            if(!_expectProtocolInitiation && in.get(in.position()) > 8)
             {
-                return -1;
+                _expectProtocolInitiation = true;
             }
-            else
-            {
+        }
 
-                ByteArrayInputStream stream = _remainingBufs.get(_currentListPos);
-                stream.mark(0);
-                return stream.read();
+        if(hasPartialFrame())
+        {
+            appendToPartialFrame(in);
+            if(hasPartialFrame())
+            {
+                return;
             }
         }
 
-        @Override
-        public int read(final byte[] b, final int off, final int len) throws IOException
+        MarkableDataInput msg = new ByteBufferDataInput(in);
+        boolean enoughData = true;
+        while (enoughData)
         {
+            enoughData = decodeFrame(msg);
+        }
 
-            if(_currentListPos == _remainingBufs.size())
-            {
-                return -1;
-            }
-            else
-            {
-                ByteArrayInputStream currentStream = _remainingBufs.get(_currentListPos);
-                final int available = currentStream.available();
-                int read = currentStream.read(b, off, len > available ? available : len);
-                if(read < len)
-                {
-                    if(_currentListPos++ != _remainingBufs.size())
-                    {
-                        _remainingBufs.get(_currentListPos).mark(0);
-                    }
-                    int correctRead = read == -1 ? 0 : read;
-                    int subRead = read(b, off+correctRead, len-correctRead);
-                    if(subRead == -1)
-                    {
-                        return read;
-                    }
-                    else
-                    {
-                        return correctRead+subRead;
-                    }
-                }
-                else
-                {
-                    return len;
-                }
-            }
+        if(msg.available() != 0)
+        {
+            in.position(in.limit() - msg.available());
+            appendToPartialFrame(in);
         }
+    }
 
-        @Override
-        public int available() throws IOException
+    /**
+     * Decodes the next frame, if the whole of it is available.
+     *
+     * @return true if a frame was decoded
+     */
+    private boolean decodeFrame(final MarkableDataInput msg)
+            throws AMQFrameDecodingException, AMQProtocolVersionException, IOException
+    {
+        if(!_expectProtocolInitiation)
         {
-            int total = 0;
-            for(int i = _currentListPos; i < _remainingBufs.size(); i++)
+            if (decodable(msg))
             {
-                total += _remainingBufs.get(i).available();
+                processInput(msg);
+                return true;
             }
-            return total;
         }
+        else if (_piDecoder.decodable(msg))
+        {
+            _methodProcessor.receiveProtocolHeader(new ProtocolInitiation(msg));
+            return true;
+        }
+        return false;
+    }
 
-        @Override
-        public void mark(final int readlimit)
+    private boolean hasPartialFrame()
+    {
+        return _partialFrame != null && _partialFrame.position() != 0;
+    }
+
+    /**
+     * Copies into the partial frame as much of the given buffer as belongs to the frame, decoding the frame once
+     * complete.
+     */
+    private void appendToPartialFrame(final ByteBuffer in)
+            throws AMQFrameDecodingException, AMQProtocolVersionException, IOException
+    {
+        int required;
+        // the length required is known only once the frame header is complete
+        while ((required = getRequiredPartialFrameLength()) > getPartialFrameLength())
         {
-            _markPos = _currentListPos;
-            final ByteArrayInputStream stream = _remainingBufs.get(_currentListPos);
-            if(stream != null)
+            if (!in.hasRemaining())
             {
-                stream.mark(readlimit);
+                return;
             }
+            ensurePartialFrameCapacity(required);
+            int length = Math.min(required - _partialFrame.position(), in.remaining());
+            ByteBuffer src = in.duplicate();
+            src.limit(src.position() + length);
+            _partialFrame.put(src);
+            in.position(in.position() + length);
         }
 
-        @Override
-        public void reset() throws IOException
+        _partialFrame.flip();
+        final boolean contentSliced = !_expectProtocolInitiation && _partialFrame.get(0) == ContentBody.TYPE;
+        try
+        {
+            decodeFrame(new ByteBufferDataInput(_partialFrame));
+        }
+        finally
         {
-            _currentListPos = _markPos;
-            final int size = _remainingBufs.size();
-            if(_currentListPos < size)
+            if (contentSliced)
             {
-                _remainingBufs.get(_currentListPos).reset();
+                // the content passed on shares the buffer, so it cannot be reused
+                _partialFrame = null;
             }
-            for(int i = _currentListPos+1; i<size; i++)
+            else
             {
-                _remainingBufs.get(i).reset();
+                _partialFrame.clear();
             }
         }
     }
 
-    private static class SimpleDataInputStream extends DataInputStream implements MarkableDataInput
+    private int getPartialFrameLength()
     {
-        public SimpleDataInputStream(InputStream in)
-        {
-            super(in);
-        }
-
-        public AMQShortString readAMQShortString() throws IOException
-        {
-            return EncodingUtils.readAMQShortString(this);
-        }
-
+        return _partialFrame == null ? 0 : _partialFrame.position();
     }
 
-
-    public void decodeBuffer(ByteBuffer buf) throws AMQFrameDecodingException, AMQProtocolVersionException, IOException
+    private int getRequiredPartialFrameLength() throws AMQFrameDecodingException
     {
-
-        MarkableDataInput msg;
-
-
-        // get prior remaining data from accumulator
-        ByteArrayInputStream bais;
-        DataInput di;
-        if(!_remainingBufs.isEmpty())
+        if (_expectProtocolInitiation)
+        {
+            return PROTOCOL_INITIATION_SIZE;
+        }
+        else if (getPartialFrameLength() < FRAME_HEADER_SIZE)
         {
-             bais = new ByteArrayInputStream(buf.array(),buf.arrayOffset()+buf.position(), buf.remaining());
-            _remainingBufs.add(bais);
-            msg = new SimpleDataInputStream(new RemainingByteArrayInputStream());
+            return FRAME_HEADER_SIZE;
         }
         else
         {
-            bais = null;
-            msg = new ByteArrayDataInput(buf.array(),buf.arrayOffset()+buf.position(), buf.remaining());
+            return FRAME_HEADER_SIZE + (int) checkBodySize(_partialFrame.getInt(1 + 2) & 0xffffffffL) + FRAME_END_SIZE;
         }
+    }
 
-        // If this is the first read then we may be getting a protocol initiation back if we tried to negotiate
-        // an unsupported version
-        if(_firstRead && buf.hasRemaining())
+    private void ensurePartialFrameCapacity(final int required)
+    {
+        if (_partialFrame == null)
         {
-            _firstRead = false;
-            if(!_expectProtocolInitiation && buf.get(buf.position()) > 8)
-            {
-                _expectProtocolInitiation = true;
-            }
+            _partialFrame = ByteBuffer.allocate(Math.max(required, MIN_PARTIAL_FRAME_CAPACITY));
         }
-
-        boolean enoughData = true;
-        while (enoughData)
+        else if (_partialFrame.capacity() < required)
         {
-            if(!_expectProtocolInitiation)
-            {
-                enoughData = decodable(msg);
-                if (enoughData)
-                {
-                    processInput(msg);
-                }
-            }
-            else
-            {
-                enoughData = _piDecoder.decodable(msg);
-                if (enoughData)
-                {
-                    _methodProcessor.receiveProtocolHeader(new ProtocolInitiation(msg));
-                }
-
-            }
-
-            if(!enoughData)
-            {
-                if(!_remainingBufs.isEmpty())
-                {
-                    _remainingBufs.remove(_remainingBufs.size()-1);
-                    ListIterator<ByteArrayInputStream> iterator = _remainingBufs.listIterator();
-                    while(iterator.hasNext() && iterator.next().available() == 0)
-                    {
-                        iterator.remove();
-                    }
-                }
-
-                if(bais == null)
-                {
-                    if(msg.available()!=0)
-                    {
-                        byte[] remaining = new byte[msg.available()];
-                        msg.read(remaining);
-                        _remainingBufs.add(new ByteArrayInputStream(remaining));
-                    }
-                }
-                else
-                {
-                    if(bais.available()!=0)
-                    {
-                        byte[] remaining = new byte[bais.available()];
-                        bais.read(remaining);
-                        _remainingBufs.add(new ByteArrayInputStream(remaining));
-                    }
-                }
-
-                if(_remainingBufs.size() > MAX_BUFFERS_LIMIT)
-                {
-                    int totalSize = 0;
-                    for(ByteArrayInputStream stream : _remainingBufs)
-                    {
-                        totalSize += stream.available();
-                    }
-
-                    byte[] completeBuffer = new byte[totalSize];
-                    int pos = 0;
-                    for(ByteArrayInputStream stream : _remainingBufs)
-                    {
-                        pos += stream.read(completeBuffer, pos, stream.available());
-                    }
-
-                    _remainingBufs.clear();
-                    _remainingBufs.add(new ByteArrayInputStream(completeBuffer));
-                }
-            }
+            ByteBuffer partialFrame = ByteBuffer.allocate(required);
+            _partialFrame.flip();
+            partialFrame.put(_partialFrame);
+            _partialFrame = partialFrame;
         }
     }
 
@@ -336,7 +262,15 @@ public abstract class AMQDecoder<T extends MethodProcessor>
 
 
         // Get an unsigned int, lifted from MINA ByteBuffer getUnsignedInt()
-        final long bodySize = in.readInt() & 0xffffffffL;
+        final long bodySize = checkBodySize(in.readInt() & 0xffffffffL);
+        in.reset();
+
+        return (remainingAfterAttributes >= bodySize);
+
+    }
+
+    private long checkBodySize(final long bodySize) throws AMQFrameDecodingException
+    {
         if (bodySize > _maxFrameSize)
         {
             throw new AMQFrameDecodingException(AMQConstant.FRAME_ERROR,
@@ -345,10 +279,7 @@ public abstract class AMQDecoder<T extends MethodProcessor>
                                                 + " is larger than negotiated maximum of  "
                                                 + _maxFrameSize);
         }
-        in.reset();
-
-        return (remainingAfterAttributes >= bodySize);
-
+        return bodySize;
     }
 
     private void processInput(final MarkableDataInput in)
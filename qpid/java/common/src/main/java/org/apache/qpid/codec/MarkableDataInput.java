@@ -24,6 +24,7 @@ import org.apache.qpid.framing.AMQShortString;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface MarkableDataInput extends DataInput
 {
@@ -38,4 +39,9 @@ public interface MarkableDataInput extends DataInput
 
     public AMQShortString readAMQShortString() throws IOException;
 
+    /**
+     * Returns the next <code>length</code> bytes as a buffer, sharing rather than copying the data where possible.
+     */
+    ByteBuffer readBuffer(int length) throws IOException;
+
 }
@@ -378,19 +378,33 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
 
     public Object evaluate(FilterableMessage message)
     {
-        Comparable lv = (Comparable) getLeft().evaluate(message);
+        Object lv = getLeft().evaluate(message);
         if (lv == null)
         {
             return null;
         }
 
-        Comparable rv = (Comparable) getRight().evaluate(message);
+        Object rv = getRight().evaluate(message);
         if (rv == null)
         {
             return null;
         }
 
-        return compare(lv, rv);
+        return evaluate(lv, rv);
+    }
+
+    /**
+     * Compares the values of the operands, either of which may be null.  Values which cannot be compared, such as
+     * byte arrays, make the comparison unknown.
+     */
+    protected Object evaluate(Object lv, Object rv)
+    {
+        if (!(lv instanceof Comparable) || !(rv instanceof Comparable))
+        {
+            return null;
+        }
+
+        return compare((Comparable) lv, (Comparable) rv);
     }
 
     protected Boolean compare(Comparable lv, Comparable rv)
@@ -554,9 +568,11 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
 
         public Object evaluate(FilterableMessage message)
         {
-            Object lv = getLeft().evaluate(message);
-            Object rv = getRight().evaluate(message);
+            return evaluate(getLeft().evaluate(message), getRight().evaluate(message));
+        }
 
+        protected Object evaluate(Object lv, Object rv)
+        {
             // Iff one of the values is null
             if ((lv == null) ^ (rv == null))
             {
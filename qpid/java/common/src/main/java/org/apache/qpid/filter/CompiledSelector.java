@@ -0,0 +1,573 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A selector compiled from the expression tree produced by the parser into a program specialised for evaluation.
+ * <p>
+ * The parsed tree evaluates each node to a boxed value and reads a property from the message each time the property is
+ * named.  The compiled program:
+ * <ul>
+ * <li>gives each property named by the selector a slot, read from the message at most once per evaluation through the
+ * accessor resolved when the selector was parsed;</li>
+ * <li>evaluates its conditions to a three valued int rather than a boxed Boolean;</li>
+ * <li>flattens chains of AND and OR into a single node and, where only whether the result is true matters, tests their
+ * operands cheapest first;</li>
+ * <li>folds comparisons of constants.</li>
+ * </ul>
+ * Expressions without a specialised form (LIKE, IN, arithmetic) are evaluated by their own tree, reading properties
+ * through the slots of the program.  Only operands which cannot fail are moved ahead of others, so a selector fails
+ * on a message only where its parsed tree would.
+ */
+public final class CompiledSelector
+{
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int UNKNOWN = 2;
+
+    private static final int CONSTANT_COST = 0;
+    private static final int PROPERTY_COST = 1;
+    private static final int COMPARISON_COST = 1;
+    private static final int IN_COST = 2;
+    private static final int LIKE_COST = 4;
+    /** the cost of an expression evaluated by its own tree, which may fail; operands costing this are never moved */
+    private static final int INTERPRETED_COST = 8;
+
+    private static final Object UNRESOLVED = new Object();
+
+    private static final Comparator<Condition> COST_ORDER = new Comparator<Condition>()
+    {
+        @Override
+        public int compare(final Condition c1, final Condition c2)
+        {
+            return Integer.compare(Math.min(c1._cost, INTERPRETED_COST), Math.min(c2._cost, INTERPRETED_COST));
+        }
+    };
+
+    /** the properties given a slot while compiling */
+    private final List<PropertyExpression> _propertyList = new ArrayList<PropertyExpression>();
+    private final Map<String, Integer> _slots = new HashMap<String, Integer>();
+
+    private final Condition _condition;
+    private final PropertyExpression[] _properties;
+    /** the names of the properties read with {@link FilterableMessage#getHeader(String)}, by slot */
+    private final String[] _headerNames;
+
+    private CompiledSelector(BooleanExpression expression)
+    {
+        _condition = compileCondition(expression, true);
+        _properties = _propertyList.toArray(new PropertyExpression[_propertyList.size()]);
+        _headerNames = new String[_properties.length];
+        for (int slot = 0; slot < _properties.length; slot++)
+        {
+            if (!_properties[slot].isJMSHeaderField())
+            {
+                _headerNames[slot] = _properties[slot].getName();
+            }
+        }
+    }
+
+    public static CompiledSelector compile(BooleanExpression expression)
+    {
+        return new CompiledSelector(expression);
+    }
+
+    public boolean matches(FilterableMessage message)
+    {
+        return _condition.test(new Evaluation(message)) == TRUE;
+    }
+
+    /**
+     * Compiles a condition.  Where only whether the condition is true matters, rather than whether it is false or
+     * unknown, the operands of AND and OR may be reordered: the results then differ only in false against unknown.
+     */
+    private Condition compileCondition(Expression expression, boolean onlyTruthMatters)
+    {
+        if (expression instanceof LogicExpression)
+        {
+            String symbol = ((LogicExpression) expression).getExpressionSymbol();
+            List<Condition> operands = new ArrayList<Condition>();
+            addOperands(expression, symbol, onlyTruthMatters, operands);
+            if (onlyTruthMatters)
+            {
+                Collections.sort(operands, COST_ORDER);
+            }
+            Condition[] conditions = operands.toArray(new Condition[operands.size()]);
+            return "AND".equals(symbol) ? new And(conditions) : new Or(conditions);
+        }
+        else if (expression instanceof ComparisonExpression)
+        {
+            ComparisonExpression comparison = (ComparisonExpression) expression;
+            Value left = compileValue(comparison.getLeft());
+            Value right = compileValue(comparison.getRight());
+            Condition condition = new Comparison(comparison, left, right);
+            if (left instanceof Constant && right instanceof Constant)
+            {
+                return new ConstantCondition(condition.test(null));
+            }
+            return condition;
+        }
+        else if (expression instanceof UnaryExpression
+                 && "NOT".equals(((UnaryExpression) expression).getExpressionSymbol()))
+        {
+            return new Not(compileCondition(((UnaryExpression) expression).getRight(), false));
+        }
+        else if (expression instanceof ConstantExpression)
+        {
+            return new ConstantCondition(toState(((ConstantExpression) expression).getValue()));
+        }
+        else
+        {
+            return new InterpretedCondition(expression, getInterpretedCost(expression));
+        }
+    }
+
+    private void addOperands(Expression expression, String symbol, boolean onlyTruthMatters, List<Condition> operands)
+    {
+        if (expression instanceof LogicExpression
+            && symbol.equals(((LogicExpression) expression).getExpressionSymbol()))
+        {
+            addOperands(((LogicExpression) expression).getLeft(), symbol, onlyTruthMatters, operands);
+            addOperands(((LogicExpression) expression).getRight(), symbol, onlyTruthMatters, operands);
+        }
+        else
+        {
+            operands.add(compileCondition(expression, onlyTruthMatters));
+        }
+    }
+
+    private Value compileValue(Expression expression)
+    {
+        if (expression instanceof PropertyExpression)
+        {
+            PropertyExpression property = (PropertyExpression) expression;
+            Integer slot = _slots.get(property.getName());
+            if (slot == null)
+            {
+                slot = _propertyList.size();
+                _propertyList.add(property);
+                _slots.put(property.getName(), slot);
+            }
+            return new Property(slot);
+        }
+        else if (expression instanceof ConstantExpression)
+        {
+            return new Constant(((ConstantExpression) expression).getValue());
+        }
+        else
+        {
+            return new InterpretedValue(expression);
+        }
+    }
+
+    private static int getInterpretedCost(Expression expression)
+    {
+        if (expression instanceof ComparisonExpression.LikeExpression)
+        {
+            return LIKE_COST;
+        }
+        else if (expression instanceof UnaryExpression)
+        {
+            String symbol = ((UnaryExpression) expression).getExpressionSymbol();
+            if ("IN".equals(symbol) || "NOT IN".equals(symbol))
+            {
+                return IN_COST;
+            }
+            else if ("".equals(symbol) && ((UnaryExpression) expression).getRight() instanceof PropertyExpression)
+            {
+                // a property used as a condition
+                return PROPERTY_COST;
+            }
+        }
+        return INTERPRETED_COST;
+    }
+
+    private static int toState(Object value)
+    {
+        if (value == null)
+        {
+            return UNKNOWN;
+        }
+        return ((Boolean) value) ? TRUE : FALSE;
+    }
+
+    private static Boolean toBoolean(int state)
+    {
+        return state == UNKNOWN ? null : state == TRUE ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _condition.toString();
+    }
+
+    /**
+     * The state of one evaluation of the program: the values of the properties read from the message so far.  It is
+     * also the message seen by expressions evaluated by their own tree, so that they read properties through the same
+     * slots.
+     */
+    private final class Evaluation implements FilterableMessage
+    {
+        private final FilterableMessage _message;
+        private final Object[] _values;
+
+        private Evaluation(final FilterableMessage message)
+        {
+            _message = message;
+            _values = new Object[_properties.length];
+            Arrays.fill(_values, UNRESOLVED);
+        }
+
+        private Object getValue(int slot)
+        {
+            Object value = _values[slot];
+            if (value == UNRESOLVED)
+            {
+                value = _properties[slot].evaluate(_message);
+                _values[slot] = value;
+            }
+            return value;
+        }
+
+        public Object getHeader(String name)
+        {
+            for (int slot = 0; slot < _headerNames.length; slot++)
+            {
+                if (name.equals(_headerNames[slot]))
+                {
+                    return getValue(slot);
+                }
+            }
+            return _message.getHeader(name);
+        }
+
+        public boolean isPersistent()
+        {
+            return _message.isPersistent();
+        }
+
+        public boolean isRedelivered()
+        {
+            return _message.isRedelivered();
+        }
+
+        public String getReplyTo()
+        {
+            return _message.getReplyTo();
+        }
+
+        public String getType()
+        {
+            return _message.getType();
+        }
+
+        public byte getPriority()
+        {
+            return _message.getPriority();
+        }
+
+        public String getMessageId()
+        {
+            return _message.getMessageId();
+        }
+
+        public long getTimestamp()
+        {
+            return _message.getTimestamp();
+        }
+
+        public String getCorrelationId()
+        {
+            return _message.getCorrelationId();
+        }
+
+        public long getExpiration()
+        {
+            return _message.getExpiration();
+        }
+    }
+
+    private abstract static class Condition
+    {
+        private final int _cost;
+
+        Condition(final int cost)
+        {
+            _cost = cost;
+        }
+
+        abstract int test(Evaluation evaluation);
+    }
+
+    private abstract static class Value
+    {
+        private final int _cost;
+
+        Value(final int cost)
+        {
+            _cost = cost;
+        }
+
+        abstract Object value(Evaluation evaluation);
+    }
+
+    private static final class And extends Condition
+    {
+        private final Condition[] _operands;
+
+        private And(final Condition[] operands)
+        {
+            super(sumCosts(operands));
+            _operands = operands;
+        }
+
+        int test(Evaluation evaluation)
+        {
+            for (Condition operand : _operands)
+            {
+                int state = operand.test(evaluation);
+                if (state != TRUE)
+                {
+                    return state;
+                }
+            }
+            return TRUE;
+        }
+
+        @Override
+        public String toString()
+        {
+            return join(_operands, " AND ");
+        }
+    }
+
+    private static final class Or extends Condition
+    {
+        private final Condition[] _operands;
+
+        private Or(final Condition[] operands)
+        {
+            super(sumCosts(operands));
+            _operands = operands;
+        }
+
+        int test(Evaluation evaluation)
+        {
+            int last = _operands.length - 1;
+            for (int i = 0; i < last; i++)
+            {
+                if (_operands[i].test(evaluation) == TRUE)
+                {
+                    return TRUE;
+                }
+            }
+            return _operands[last].test(evaluation);
+        }
+
+        @Override
+        public String toString()
+        {
+            return join(_operands, " OR ");
+        }
+    }
+
+    private static final class Not extends Condition
+    {
+        private final Condition _operand;
+
+        private Not(final Condition operand)
+        {
+            super(operand._cost);
+            _operand = operand;
+        }
+
+        int test(Evaluation evaluation)
+        {
+            int state = _operand.test(evaluation);
+            return state == UNKNOWN ? UNKNOWN : state == TRUE ? FALSE : TRUE;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "(NOT " + _operand + ")";
+        }
+    }
+
+    private static final class Comparison extends Condition
+    {
+        private final ComparisonExpression _expression;
+        private final Value _left;
+        private final Value _right;
+        /** true if the comparison is evaluated even if the left operand is null, as an equality is */
+        private final boolean _nullSafe;
+
+        private Comparison(final ComparisonExpression expression, final Value left, final Value right)
+        {
+            super(left._cost + right._cost + COMPARISON_COST);
+            _expression = expression;
+            _left = left;
+            _right = right;
+            _nullSafe = "=".equals(expression.getExpressionSymbol());
+        }
+
+        int test(Evaluation evaluation)
+        {
+            Object lv = _left.value(evaluation);
+            if (lv == null && !_nullSafe)
+            {
+                return UNKNOWN;
+            }
+            return toState(_expression.evaluate(lv, _right.value(evaluation)));
+        }
+
+        @Override
+        public String toString()
+        {
+            return _expression.toString();
+        }
+    }
+
+    private static final class ConstantCondition extends Condition
+    {
+        private final int _state;
+
+        private ConstantCondition(final int state)
+        {
+            super(CONSTANT_COST);
+            _state = state;
+        }
+
+        int test(Evaluation evaluation)
+        {
+            return _state;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.valueOf(toBoolean(_state)).toUpperCase();
+        }
+    }
+
+    private static final class InterpretedCondition extends Condition
+    {
+        private final Expression _expression;
+
+        private InterpretedCondition(final Expression expression, final int cost)
+        {
+            super(cost);
+            _expression = expression;
+        }
+
+        int test(Evaluation evaluation)
+        {
+            return toState(_expression.evaluate(evaluation));
+        }
+
+        @Override
+        public String toString()
+        {
+            return _expression.toString();
+        }
+    }
+
+    private static final class Property extends Value
+    {
+        private final int _slot;
+
+        private Property(final int slot)
+        {
+            super(PROPERTY_COST);
+            _slot = slot;
+        }
+
+        Object value(Evaluation evaluation)
+        {
+            return evaluation.getValue(_slot);
+        }
+    }
+
+    private static final class Constant extends Value
+    {
+        private final Object _value;
+
+        private Constant(final Object value)
+        {
+            super(CONSTANT_COST);
+            _value = value;
+        }
+
+        Object value(Evaluation evaluation)
+        {
+            return _value;
+        }
+    }
+
+    private static final class InterpretedValue extends Value
+    {
+        private final Expression _expression;
+
+        private InterpretedValue(final Expression expression)
+        {
+            super(INTERPRETED_COST);
+            _expression = expression;
+        }
+
+        Object value(Evaluation evaluation)
+        {
+            return _expression.evaluate(evaluation);
+        }
+    }
+
+    private static int sumCosts(Condition[] conditions)
+    {
+        int cost = 0;
+        for (Condition condition : conditions)
+        {
+            cost += condition._cost;
+        }
+        return cost;
+    }
+
+    private static String join(Condition[] conditions, String separator)
+    {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < conditions.length; i++)
+        {
+            if (i != 0)
+            {
+                builder.append(separator);
+            }
+            builder.append(conditions[i]);
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -43,6 +43,7 @@ public class PropertyExpression implements Expression
 
     private static final HashMap<String, Expression> JMS_PROPERTY_EXPRESSIONS = new HashMap<String, Expression>();
 
+    static
     {
         JMS_PROPERTY_EXPRESSIONS.put("JMSDestination", new Expression()
                                      {
@@ -114,6 +115,15 @@ public class PropertyExpression implements Expression
         return name;
     }
 
+    /**
+     * Returns true if this expression names a JMS header field, such as <code>JMSType</code>, rather than a property
+     * of the message.
+     */
+    public boolean isJMSHeaderField()
+    {
+        return jmsPropertyExpression != null;
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.framing;
 
+import java.nio.ByteBuffer;
+
 import org.apache.qpid.codec.MarkableDataInput;
 
 public class ByteArrayDataInput implements ExtendedDataInput, MarkableDataInput
@@ -56,6 +58,13 @@ public class ByteArrayDataInput implements ExtendedDataInput, MarkableDataInput
         _offset+=len;
     }
 
+    public ByteBuffer readBuffer(int length)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(_data, _offset, length).slice();
+        _offset+=length;
+        return buffer;
+    }
+
     public int skipBytes(int n)
     {
         return _offset+=n;
@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.framing;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.codec.MarkableDataInput;
+
+/**
+ * Reads the remaining bytes of a buffer in place.  The buffer given is never modified; a duplicate is read.
+ */
+public class ByteBufferDataInput implements ExtendedDataInput, MarkableDataInput
+{
+    private final ByteBuffer _data;
+    private final int _origin;
+    private int _mark;
+
+    public ByteBufferDataInput(ByteBuffer data)
+    {
+        _data = data.duplicate();
+        _origin = _data.position();
+        _mark = _origin;
+    }
+
+    public void readFully(byte[] b)
+    {
+        _data.get(b);
+    }
+
+    public void readFully(byte[] b, int off, int len)
+    {
+        _data.get(b, off, len);
+    }
+
+    /**
+     * Returns the next <code>length</code> bytes as a buffer sharing the data read, advancing past them.
+     */
+    public ByteBuffer readBuffer(int length)
+    {
+        ByteBuffer buffer = _data.slice();
+        buffer.limit(length);
+        _data.position(_data.position() + length);
+        return buffer;
+    }
+
+    public int skipBytes(int n)
+    {
+        _data.position(_data.position() + n);
+        return n;
+    }
+
+    public boolean readBoolean()
+    {
+        return _data.get() != 0;
+    }
+
+    public byte readByte()
+    {
+        return _data.get();
+    }
+
+    public int readUnsignedByte()
+    {
+        return ((int) _data.get()) & 0xFF;
+    }
+
+    public short readShort()
+    {
+        return _data.getShort();
+    }
+
+    public int readUnsignedShort()
+    {
+        return ((int) _data.getShort()) & 0xFFFF;
+    }
+
+    public char readChar()
+    {
+        return _data.getChar();
+    }
+
+    public int readInt()
+    {
+        return _data.getInt();
+    }
+
+    public long readLong()
+    {
+        return _data.getLong();
+    }
+
+    public float readFloat()
+    {
+        return _data.getFloat();
+    }
+
+    public double readDouble()
+    {
+        return _data.getDouble();
+    }
+
+    public AMQShortString readAMQShortString()
+    {
+        int length = _data.get() & 0xff;
+        if(length == 0)
+        {
+            return null;
+        }
+        else if(_data.hasArray())
+        {
+            final AMQShortString amqShortString =
+                    new AMQShortString(_data.array(), _data.arrayOffset() + _data.position(), length);
+            _data.position(_data.position() + length);
+            return amqShortString;
+        }
+        else
+        {
+            byte[] data = new byte[length];
+            _data.get(data);
+            return new AMQShortString(data, 0, length);
+        }
+    }
+
+    public String readLine()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public String readUTF()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public int available()
+    {
+        return _data.remaining();
+    }
+
+
+    public long skip(long i)
+    {
+        _data.position(_data.position() + (int) i);
+        return i;
+    }
+
+    public int read(byte[] b)
+    {
+        readFully(b);
+        return b.length;
+    }
+
+    public int position()
+    {
+        return _data.position() - _origin;
+    }
+
+    public void position(int position)
+    {
+        _data.position(position + _origin);
+    }
+
+    public int length()
+    {
+        return _data.limit() - _origin;
+    }
+
+
+    public void mark(int readAhead)
+    {
+        _mark = _data.position();
+    }
+
+    public void reset()
+    {
+        _data.position(_mark);
+    }
+}
@@ -33,7 +33,7 @@ public class ContentBody implements AMQBody
 {
     public static final byte TYPE = 3;
 
-    private byte[] _payload;
+    private ByteBuffer _payload;
 
     public ContentBody()
     {
@@ -41,12 +41,18 @@ public class ContentBody implements AMQBody
 
     public ContentBody(DataInput buffer, long size) throws AMQFrameDecodingException, IOException
     {
-        _payload = new byte[(int)size];
-        buffer.readFully(getPayload());
+        byte[] payload = new byte[(int)size];
+        buffer.readFully(payload);
+        _payload = ByteBuffer.wrap(payload);
     }
 
 
     public ContentBody(byte[] payload)
+    {
+        _payload = payload == null ? null : ByteBuffer.wrap(payload);
+    }
+
+    public ContentBody(ByteBuffer payload)
     {
         _payload = payload;
     }
@@ -58,12 +64,19 @@ public class ContentBody implements AMQBody
 
     public int getSize()
     {
-        return getPayload() == null ? 0 : getPayload().length;
+        return _payload == null ? 0 : _payload.remaining();
     }
 
     public void writePayload(DataOutput buffer) throws IOException
     {
-        buffer.write(getPayload());
+        if(_payload.hasArray())
+        {
+            buffer.write(_payload.array(), _payload.arrayOffset() + _payload.position(), _payload.remaining());
+        }
+        else
+        {
+            buffer.write(getPayload());
+        }
     }
 
     public void handle(final int channelId, final AMQVersionAwareProtocolSession session)
@@ -72,9 +85,36 @@ public class ContentBody implements AMQBody
         session.contentBodyReceived(channelId, this);
     }
 
+    /**
+     * Returns the payload as an array, which is copied unless the payload is held in the whole of an array.
+     */
     public byte[] getPayload()
     {
-        return _payload;
+        if(_payload == null)
+        {
+            return null;
+        }
+        else if(_payload.hasArray()
+                && _payload.arrayOffset() == 0
+                && _payload.position() == 0
+                && _payload.remaining() == _payload.array().length)
+        {
+            return _payload.array();
+        }
+        else
+        {
+            byte[] payload = new byte[_payload.remaining()];
+            _payload.duplicate().get(payload);
+            return payload;
+        }
+    }
+
+    /**
+     * Returns the payload as a buffer sharing its data.
+     */
+    public ByteBuffer getPayloadBuffer()
+    {
+        return _payload == null ? null : _payload.duplicate();
     }
 
     public static void process(final MarkableDataInput in,
@@ -82,8 +122,7 @@ public class ContentBody implements AMQBody
             throws IOException
     {
 
-        byte[] payload = new byte[(int)bodySize];
-        in.readFully(payload);
+        ByteBuffer payload = in.readBuffer((int) bodySize);
 
         if(!methodProcessor.ignoreAllButCloseOk())
         {
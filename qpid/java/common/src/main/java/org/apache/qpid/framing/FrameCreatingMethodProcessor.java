@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.framing;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -603,9 +604,13 @@ public class FrameCreatingMethodProcessor implements MethodProcessor<FrameCreati
         }
 
         @Override
-        public void receiveMessageContent(final byte[] data)
+        public void receiveMessageContent(final ByteBuffer data)
         {
-            _processedMethods.add(new AMQFrame(_channelId, new ContentBody(data)));
+            // the content is copied, as the frames created may be held for as long as the message is unconsumed,
+            // which would otherwise keep the whole of the network buffer it was read from
+            byte[] payload = new byte[data.remaining()];
+            data.duplicate().get(payload);
+            _processedMethods.add(new AMQFrame(_channelId, new ContentBody(payload)));
         }
 
         @Override
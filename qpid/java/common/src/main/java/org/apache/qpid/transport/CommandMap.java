@@ -0,0 +1,351 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport;
+
+import static org.apache.qpid.util.Serial.max;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.qpid.util.Serial;
+
+/**
+ * A map from command ids to values, held in a ring indexed by the command id.
+ * <p>
+ * Command ids are assigned in sequence and commands are mostly completed in the order they were sent, so the ids held
+ * at any time fall within a short range.  The ring covers that range, from the first id held to the last, growing
+ * when necessary, so that ids are neither boxed nor hashed and no node is allocated per entry.  Ids are compared as
+ * serial numbers, so the range may span the wraparound of the id.
+ * <p>
+ * Should an id remain held long after those around it, the range may come to far exceed the number of values held.
+ * Rather than grow the ring with the range, the values are then moved to a sorted map, which is used until the map
+ * next holds nothing.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class CommandMap<V>
+{
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_DENSE_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    /** the ring is not grown beyond {@link #MAX_DENSE_CAPACITY} to cover a range more than this many times the size */
+    private static final int MAX_SPAN_PER_ENTRY = 8;
+
+    private Object[] _entries = new Object[INITIAL_CAPACITY];
+    private int _mask = INITIAL_CAPACITY - 1;
+
+    /** the first id of the range covered */
+    private int _first;
+    /** the number of ids in the range covered, from the first held to the last */
+    private int _span;
+    private int _size;
+
+    /** the values by id once the range has outgrown the ring, otherwise null */
+    private NavigableMap<Integer, V> _sparseEntries;
+
+    public void put(int id, V value)
+    {
+        if (value == null)
+        {
+            throw new IllegalArgumentException("Command map values cannot be null");
+        }
+
+        if (_sparseEntries != null)
+        {
+            _sparseEntries.put(id, value);
+            return;
+        }
+
+        if (_size == 0)
+        {
+            _first = id;
+            _span = 1;
+        }
+        else
+        {
+            int offset = id - _first;
+            if (offset < 0)
+            {
+                if (!ensureCapacity((long) _span - offset))
+                {
+                    _sparseEntries.put(id, value);
+                    return;
+                }
+                _first = id;
+                _span -= offset;
+            }
+            else if (offset >= _span)
+            {
+                if (!ensureCapacity((long) offset + 1))
+                {
+                    _sparseEntries.put(id, value);
+                    return;
+                }
+                _span = offset + 1;
+            }
+        }
+
+        int index = id & _mask;
+        if (_entries[index] == null)
+        {
+            _size++;
+        }
+        _entries[index] = value;
+    }
+
+    public V get(int id)
+    {
+        if (_sparseEntries != null)
+        {
+            return _sparseEntries.get(id);
+        }
+        return contains(id) ? entry(id) : null;
+    }
+
+    public V remove(int id)
+    {
+        if (_sparseEntries != null)
+        {
+            V value = _sparseEntries.remove(id);
+            if (_sparseEntries.isEmpty())
+            {
+                _sparseEntries = null;
+            }
+            return value;
+        }
+
+        if (!contains(id))
+        {
+            return null;
+        }
+
+        int index = id & _mask;
+        V value = (V) _entries[index];
+        if (value != null)
+        {
+            _entries[index] = null;
+            if (--_size == 0)
+            {
+                _span = 0;
+            }
+            else if (id == _first)
+            {
+                do
+                {
+                    _first++;
+                    _span--;
+                }
+                while (_entries[_first & _mask] == null);
+            }
+            else if (id == getLast())
+            {
+                do
+                {
+                    _span--;
+                }
+                while (_entries[getLast() & _mask] == null);
+            }
+        }
+        return value;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public int size()
+    {
+        return _sparseEntries == null ? _size : _sparseEntries.size();
+    }
+
+    /**
+     * Returns the lowest id held; the map must not be empty.
+     */
+    public int getFirst()
+    {
+        return _sparseEntries == null ? _first : _sparseEntries.firstKey();
+    }
+
+    /**
+     * Returns the highest id held; the map must not be empty.
+     */
+    public int getLast()
+    {
+        return _sparseEntries == null ? _first + _span - 1 : _sparseEntries.lastKey();
+    }
+
+    /**
+     * Returns the lowest id held at or after the given id, which must not be after the last id held.
+     * <p>
+     * Visiting a range of ids from one held to the next, rather than id by id, takes time in proportion to the number
+     * of ids held within it however the ids are spread.
+     */
+    public int next(int id)
+    {
+        if (_sparseEntries != null)
+        {
+            return _sparseEntries.ceilingKey(id);
+        }
+        int next = max(id, _first);
+        while (_entries[next & _mask] == null)
+        {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Returns the values held, in the order of their ids.
+     */
+    public List<V> values()
+    {
+        if (_sparseEntries != null)
+        {
+            return new ArrayList<V>(_sparseEntries.values());
+        }
+        List<V> values = new ArrayList<V>(_size);
+        for (int i = 0; i < _span; i++)
+        {
+            V value = entry(_first + i);
+            if (value != null)
+            {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    public void clear()
+    {
+        _sparseEntries = null;
+        for (int i = 0; i < _span; i++)
+        {
+            _entries[(_first + i) & _mask] = null;
+        }
+        _size = 0;
+        _span = 0;
+    }
+
+    /**
+     * Returns true if the values are held in a sorted map rather than the ring.
+     */
+    boolean isSparse()
+    {
+        return _sparseEntries != null;
+    }
+
+    private boolean contains(int id)
+    {
+        int offset = id - _first;
+        return offset >= 0 && offset < _span;
+    }
+
+    private V entry(int id)
+    {
+        return (V) _entries[id & _mask];
+    }
+
+    /**
+     * Grows the ring to cover the given range of ids or, should that range far exceed the number of values held, moves
+     * the values to a sorted map instead.
+     *
+     * @return true if the ring now covers the range, false if the values have been moved to a sorted map
+     */
+    private boolean ensureCapacity(long span)
+    {
+        if (span > _entries.length)
+        {
+            if (span > MAX_CAPACITY || (span > MAX_DENSE_CAPACITY && span / MAX_SPAN_PER_ENTRY > _size))
+            {
+                // the ids held remain within half the id space of one another, so compare consistently as serials
+                _sparseEntries = new TreeMap<Integer, V>(Serial.COMPARATOR);
+                for (int i = 0; i < _span; i++)
+                {
+                    int id = _first + i;
+                    V value = entry(id);
+                    if (value != null)
+                    {
+                        _sparseEntries.put(id, value);
+                        _entries[id & _mask] = null;
+                    }
+                }
+                _size = 0;
+                _span = 0;
+                return false;
+            }
+
+            int capacity = _entries.length;
+            while (capacity < span)
+            {
+                capacity <<= 1;
+            }
+
+            Object[] entries = new Object[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < _span; i++)
+            {
+                int id = _first + i;
+                entries[id & mask] = _entries[id & _mask];
+            }
+            _entries = entries;
+            _mask = mask;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder("{");
+        if (_sparseEntries != null)
+        {
+            for (Map.Entry<Integer, V> entry : _sparseEntries.entrySet())
+            {
+                if (buf.length() > 1)
+                {
+                    buf.append(", ");
+                }
+                buf.append(entry.getKey()).append('=').append(entry.getValue());
+            }
+        }
+        else
+        {
+            for (int i = 0; i < _span; i++)
+            {
+                int id = _first + i;
+                V value = entry(id);
+                if (value != null)
+                {
+                    if (buf.length() > 1)
+                    {
+                        buf.append(", ");
+                    }
+                    buf.append(id).append('=').append(value);
+                }
+            }
+        }
+        return buf.append('}').toString();
+    }
+}
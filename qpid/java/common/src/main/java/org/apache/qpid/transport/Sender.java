@@ -23,7 +23,9 @@ package org.apache.qpid.transport;
 
 /**
  * Sender
- *
+ * <p>
+ * Implementations may retain a reference to the data passed to {@link #send(Object)} until it has been written, so
+ * once a buffer has been sent the caller must not modify its content.
  */
 
 public interface Sender<T>
@@ -39,12 +39,12 @@ import static org.apache.qpid.util.Serial.gt;
 import static org.apache.qpid.util.Serial.le;
 import static org.apache.qpid.util.Serial.lt;
 import static org.apache.qpid.util.Serial.max;
+import static org.apache.qpid.util.Serial.min;
 import static org.apache.qpid.util.Strings.toUTF8;
 
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -112,7 +112,7 @@ public class Session extends SessionInvoker
     // outgoing command count
     private int commandsOut = 0;
     private final int commandLimit = Integer.getInteger("qpid.session.command_limit", 64 * 1024);
-    private Map<Integer,Method> commands = new HashMap<Integer, Method>();
+    private final CommandMap<Method> commands = new CommandMap<Method>();
     private final Object commandsLock = new Object();
     private int commandBytes = 0;
     private int byteLimit = Integer.getInteger("qpid.session.byte_limit", 1024*1024);
@@ -374,13 +374,9 @@ public class Session extends SessionInvoker
     {
         synchronized (commandsLock)
         {
-            TreeMap<Integer, Method> ordered = new TreeMap<Integer, Method>(commands);
-            for (Method m : ordered.values())
+            for (Method m : commands.values())
             {
-                if (m != null)
-                {
-                    log.debug("%s", m);
-                }
+                log.debug("%s", m);
             }
         }
     }
@@ -567,13 +563,24 @@ public class Session extends SessionInvoker
         synchronized (commandsLock)
         {
             int old = maxComplete;
-            for (int id = max(maxComplete, lower); le(id, upper); id++)
+            if (!commands.isEmpty())
             {
-                Method m = removeCommand(id);
-                if (m != null)
+                // only the ids held need be visited, however wide the completed range
+                int id = max(max(maxComplete, lower), commands.getFirst());
+                while (!commands.isEmpty() && le(id, min(upper, commands.getLast())))
                 {
-                    commandBytes -= m.getBodySize();
-                    m.complete();
+                    id = commands.next(id);
+                    if (gt(id, upper))
+                    {
+                        break;
+                    }
+                    Method m = removeCommand(id);
+                    if (m != null)
+                    {
+                        commandBytes -= m.getBodySize();
+                        m.complete();
+                    }
+                    id++;
                 }
             }
             if (le(lower, maxComplete + 1))
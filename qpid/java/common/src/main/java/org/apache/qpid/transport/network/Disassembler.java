@@ -89,35 +89,26 @@ public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelega
         }
     }
 
-    private final ByteBuffer _frameHeader = ByteBuffer.allocate(HEADER_SIZE);
-
-    {
-        _frameHeader.order(ByteOrder.BIG_ENDIAN);
-    }
-
     private void frame(byte flags, byte type, byte track, int channel, int size, ByteBuffer buf)
     {
         synchronized (sendlock)
         {
-            ByteBuffer data = _frameHeader;
-            _frameHeader.rewind();
+            // the sender may retain both buffers until they are written, so neither can be reused
+            ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE);
+            data.order(ByteOrder.BIG_ENDIAN);
 
-            
             data.put(0, flags);
             data.put(1, type);
             data.putShort(2, (short) (size + HEADER_SIZE));
             data.put(5, track);
             data.putShort(6, (short) channel);
 
+            ByteBuffer payload = buf.duplicate();
+            payload.limit(buf.position() + size);
+            buf.position(buf.position() + size);
 
-            int limit = buf.limit();
-            buf.limit(buf.position() + size);
-
-            data.rewind();
             sender.send(data);
-            sender.send(buf);
-            buf.limit(limit);
-
+            sender.send(payload);
         }
     }
 
@@ -226,8 +217,7 @@ public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelega
 
         synchronized (sendlock)
         {
-            ByteBuffer buf = enc.underlyingBuffer();
-            buf.position(0);
+            ByteBuffer buf = copyOf(enc.underlyingBuffer(), Math.max(methodLimit, headerLimit));
             buf.limit(methodLimit);
 
             fragment(flags, type, method, buf);
@@ -246,6 +236,17 @@ public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelega
         }
     }
 
+    private static ByteBuffer copyOf(ByteBuffer encoded, int length)
+    {
+        ByteBuffer source = encoded.duplicate();
+        source.position(0);
+        source.limit(length);
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(source);
+        copy.flip();
+        return copy;
+    }
+
     public void error(Void v, ProtocolError error)
     {
         throw new IllegalArgumentException(String.valueOf(error));
@@ -133,6 +133,22 @@ public class IoNetworkConnection implements NetworkConnection
         }
     }
 
+    /**
+     * @return the number of bytes queued for writing which have not yet reached the socket
+     */
+    public long getQueuedBytes()
+    {
+        return _ioSender.getQueuedBytes();
+    }
+
+    /**
+     * @return the number of times a sender has had to wait for the writer thread to drain the outbound queue
+     */
+    public long getWriteStallCount()
+    {
+        return _ioSender.getStallCount();
+    }
+
     @Override
     public int getMaxReadIdle()
     {
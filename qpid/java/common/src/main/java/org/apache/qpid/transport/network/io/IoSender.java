@@ -18,13 +18,15 @@
  */
 package org.apache.qpid.transport.network.io;
 
-import static org.apache.qpid.transport.util.Functions.mod;
-
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.net.ssl.SSLSocket;
 
@@ -36,27 +38,31 @@ import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.transport.util.Logger;
 import org.apache.qpid.util.SystemUtils;
 
-
+/**
+ * Writes buffers to a socket from a dedicated thread.
+ * <p>
+ * Buffers passed to {@link #send(ByteBuffer)} are queued by reference on a lock-free queue and are consumed from the
+ * caller's point of view as soon as send returns; their content must not be modified afterwards.  Senders only
+ * block (by parking) when more than the configured number of bytes are awaiting the writer thread.  Small buffers
+ * are coalesced into a staging array before being written, larger ones are written directly.
+ */
 public final class IoSender implements Runnable, Sender<ByteBuffer>
 {
 
     private static final Logger log = Logger.get(IoSender.class);
 
-    // by starting here, we ensure that we always test the wraparound
-    // case, we should probably make this configurable somehow so that
-    // we can test other cases as well
-    private final static int START = Integer.MAX_VALUE - 10;
-
     private final long timeout;
     private final Socket socket;
     private final OutputStream out;
 
-    private final byte[] buffer;
-    private volatile int head = START;
-    private volatile int tail = START;
+    private final int _capacity;
+    private final byte[] _stagingBuffer;
+    private final ConcurrentLinkedQueue<ByteBuffer> _queue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final ConcurrentLinkedQueue<Thread> _waitingSenders = new ConcurrentLinkedQueue<Thread>();
+    private final AtomicLong _queuedBytes = new AtomicLong();
+    private final AtomicLong _stallCount = new AtomicLong();
+    private final AtomicLong _stallTimeNanos = new AtomicLong();
     private volatile boolean idle = true;
-    private final Object notFull = new Object();
-    private final Object notEmpty = new Object();
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final Thread senderThread;
     private IoReceiver _receiver;
@@ -73,7 +79,8 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
     public IoSender(Socket socket, int bufferSize, long timeout)
     {
         this.socket = socket;
-        this.buffer = new byte[pof2(bufferSize)]; // buffer size must be a power of 2
+        this._capacity = bufferSize;
+        this._stagingBuffer = new byte[Math.max(1, bufferSize / 2)];
         this.timeout = timeout;
         _remoteSocketAddress = socket.getRemoteSocketAddress().toString();
 
@@ -105,16 +112,6 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
         senderThread.start();
     }
 
-    private static final int pof2(int n)
-    {
-        int result = 1;
-        while (result < n)
-        {
-            result *= 2;
-        }
-        return result;
-    }
-
     public void send(ByteBuffer buf)
     {
         checkNotAlreadyClosed();
@@ -124,68 +121,61 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
             throw new SenderException(String.format("sender thread for socket %s is not alive", _remoteSocketAddress));
         }
 
-        final int size = buffer.length;
-        int remaining = buf.remaining();
+        final int remaining = buf.remaining();
+        if (remaining == 0)
+        {
+            return;
+        }
 
-        while (remaining > 0)
+        if (_queuedBytes.get() >= _capacity)
         {
-            final int hd = head;
-            final int tl = tail;
+            awaitCapacity();
+        }
 
-            if (hd - tl >= size)
+        final ByteBuffer queued = buf.duplicate();
+        buf.position(buf.limit());
+        _queuedBytes.addAndGet(remaining);
+        _queue.add(queued);
+    }
+
+    private void awaitCapacity()
+    {
+        flush();
+
+        final Thread currentThread = Thread.currentThread();
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        _stallCount.incrementAndGet();
+        _waitingSenders.add(currentThread);
+        try
+        {
+            long now = start;
+            while (!closed.get() && _queuedBytes.get() >= _capacity && now < deadline)
             {
-                flush();
-                synchronized (notFull)
-                {
-                    final long start = System.currentTimeMillis();
-                    long elapsed = 0;
-                    while (!closed.get() && head - tail >= size && elapsed < timeout)
-                    {
-                        try
-                        {
-                            notFull.wait(timeout - elapsed);
-                        }
-                        catch (InterruptedException e)
-                        {
-                            // pass
-                        }
-                        elapsed = System.currentTimeMillis() - start;
-                    }
-
-                    checkNotAlreadyClosed();
-
-                    if (head - tail >= size)
-                    {
-                        try
-                        {
-                            log.error("write timed out for socket %s: head %d, tail %d", _remoteSocketAddress, head, tail);
-                            throw new SenderException(String.format("write timed out for socket %s: head %d, tail %d",  _remoteSocketAddress, head, tail));
-                        }
-                        finally
-                        {
-                            close(false, false);
-                        }
-                    }
-                }
-                continue;
+                LockSupport.parkNanos(this, deadline - now);
+                now = System.nanoTime();
             }
+        }
+        finally
+        {
+            _waitingSenders.remove(currentThread);
+            _stallTimeNanos.addAndGet(System.nanoTime() - start);
+        }
 
-            final int hd_idx = mod(hd, size);
-            final int tl_idx = mod(tl, size);
-            final int length;
+        checkNotAlreadyClosed();
 
-            if (tl_idx > hd_idx)
+        if (_queuedBytes.get() >= _capacity)
+        {
+            try
             {
-                length = Math.min(tl_idx - hd_idx, remaining);
+                log.error("write timed out for socket %s: queued bytes %d", _remoteSocketAddress, _queuedBytes.get());
+                throw new SenderException(String.format("write timed out for socket %s: queued bytes %d",
+                                                        _remoteSocketAddress, _queuedBytes.get()));
             }
-            else
+            finally
             {
-                length = Math.min(size - hd_idx, remaining);
+                close(false, false);
             }
-
-            buf.get(buffer, hd_idx, length);
-            head += length;
-            remaining -= length;
         }
     }
 
@@ -193,10 +183,7 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
     {
         if (idle)
         {
-            synchronized (notEmpty)
-            {
-                notEmpty.notify();
-            }
+            LockSupport.unpark(senderThread);
         }
     }
 
@@ -209,15 +196,8 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
     {
         if (!closed.getAndSet(true))
         {
-            synchronized (notFull)
-            {
-                notFull.notify();
-            }
-
-            synchronized (notEmpty)
-            {
-                notEmpty.notify();
-            }
+            LockSupport.unpark(senderThread);
+            wakeWaitingSenders();
 
             try
             {
@@ -237,6 +217,14 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
         }
     }
 
+    private void wakeWaitingSenders()
+    {
+        for (Thread waiter : _waitingSenders)
+        {
+            LockSupport.unpark(waiter);
+        }
+    }
+
     private void closeReceiver()
     {
         if(_receiver != null)
@@ -255,13 +243,11 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
 
     public void run()
     {
-        final int size = buffer.length;
         while (true)
         {
-            final int hd = head;
-            final int tl = tail;
+            ByteBuffer buf = _queue.poll();
 
-            if (hd == tl)
+            if (buf == null)
             {
                 if (closed.get())
                 {
@@ -270,19 +256,9 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
 
                 idle = true;
 
-                synchronized (notEmpty)
+                while (_queue.isEmpty() && !closed.get())
                 {
-                    while (head == tail && !closed.get())
-                    {
-                        try
-                        {
-                            notEmpty.wait();
-                        }
-                        catch (InterruptedException e)
-                        {
-                            // pass
-                        }
-                    }
+                    LockSupport.park(this);
                 }
 
                 idle = false;
@@ -290,22 +266,9 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
                 continue;
             }
 
-            final int hd_idx = mod(hd, size);
-            final int tl_idx = mod(tl, size);
-
-            final int length;
-            if (tl_idx < hd_idx)
-            {
-                length = hd_idx - tl_idx;
-            }
-            else
-            {
-                length = size - tl_idx;
-            }
-
             try
             {
-                out.write(buffer, tl_idx, length);
+                write(buf);
             }
             catch (IOException e)
             {
@@ -314,14 +277,6 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
                 close(false, false);
                 break;
             }
-            tail += length;
-            if (head - tl >= size)
-            {
-                synchronized (notFull)
-                {
-                    notFull.notify();
-                }
-            }
         }
 
         if (!shutdownBroken && !(socket instanceof SSLSocket))
@@ -337,6 +292,93 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
         }
     }
 
+    /**
+     * Writes the given buffer and any others already queued behind it, staging small buffers so that they reach the
+     * socket in as few writes as possible.
+     */
+    private void write(ByteBuffer buf) throws IOException
+    {
+        final byte[] staging = _stagingBuffer;
+        int staged = 0;
+        do
+        {
+            final int length = buf.remaining();
+            if (length > staging.length - staged)
+            {
+                if (staged > 0)
+                {
+                    writeAndRelease(staging, 0, staged);
+                    staged = 0;
+                }
+                if (length > staging.length)
+                {
+                    writeDirect(buf);
+                    continue;
+                }
+            }
+            buf.get(staging, staged, length);
+            staged += length;
+        }
+        while ((buf = _queue.poll()) != null);
+
+        if (staged > 0)
+        {
+            writeAndRelease(staging, 0, staged);
+        }
+    }
+
+    private void writeDirect(ByteBuffer buf) throws IOException
+    {
+        final int length = buf.remaining();
+        if (buf.hasArray())
+        {
+            writeAndRelease(buf.array(), buf.arrayOffset() + buf.position(), length);
+            buf.position(buf.limit());
+        }
+        else
+        {
+            while (buf.hasRemaining())
+            {
+                final int chunk = Math.min(buf.remaining(), _stagingBuffer.length);
+                buf.get(_stagingBuffer, 0, chunk);
+                writeAndRelease(_stagingBuffer, 0, chunk);
+            }
+        }
+    }
+
+    private void writeAndRelease(byte[] data, int offset, int length) throws IOException
+    {
+        out.write(data, offset, length);
+        if (_queuedBytes.addAndGet(-length) < _capacity && !_waitingSenders.isEmpty())
+        {
+            wakeWaitingSenders();
+        }
+    }
+
+    /**
+     * @return the number of bytes accepted by {@link #send(ByteBuffer)} which have not yet been written to the socket
+     */
+    public long getQueuedBytes()
+    {
+        return _queuedBytes.get();
+    }
+
+    /**
+     * @return the number of times a caller of {@link #send(ByteBuffer)} had to wait for the writer to catch up
+     */
+    public long getStallCount()
+    {
+        return _stallCount.get();
+    }
+
+    /**
+     * @return the total time in nanoseconds that callers of {@link #send(ByteBuffer)} have waited for the writer
+     */
+    public long getStallTimeNanos()
+    {
+        return _stallTimeNanos.get();
+    }
+
     public void setIdleTimeout(int i)
     {
         try
@@ -39,7 +39,7 @@ public class SSLBufferingSender implements Sender<ByteBuffer>
     private final Sender<ByteBuffer> delegate;
     private final SSLEngine engine;
     private final int sslBufSize;
-    private final ByteBuffer netData;
+    private ByteBuffer netData;
     private final SSLStatus _sslStatus;
 
     private String _hostname;
@@ -111,7 +111,8 @@ public class SSLBufferingSender implements Sender<ByteBuffer>
         {
             if (status == Status.BUFFER_OVERFLOW)
             {
-                netData.clear();
+                // slices of the old buffer may still be queued by the delegate, so it cannot be reused
+                netData = ByteBuffer.allocate(sslBufSize);
             }
             if(read > 0)
             {
@@ -217,7 +218,8 @@ public class SSLBufferingSender implements Sender<ByteBuffer>
                     throw new SenderException("SSLEngine is closed");
 
                 case BUFFER_OVERFLOW:
-                    netData.clear();
+                    // slices of the old buffer may still be queued by the delegate, so it cannot be reused
+                    netData = ByteBuffer.allocate(sslBufSize);
                     continue;
 
                 case OK:
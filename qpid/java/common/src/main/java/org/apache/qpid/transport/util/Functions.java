@@ -122,4 +122,22 @@ public final class Functions
         return sb.toString();
     }
 
+    public static String hex(ByteBuffer buf, int limit)
+    {
+        int remaining = buf == null ? 0 : buf.remaining();
+        limit = Math.min(limit, remaining);
+        StringBuilder sb = new StringBuilder(3 + limit*2);
+        for(int i = 0; i < limit; i++)
+        {
+            byte b = buf.get(buf.position() + i);
+            sb.append(HEX_CHARACTERS[(((int)b) & 0xf0)>>4]);
+            sb.append(HEX_CHARACTERS[(((int)b) & 0x0f)]);
+        }
+        if(remaining > limit)
+        {
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+
 }
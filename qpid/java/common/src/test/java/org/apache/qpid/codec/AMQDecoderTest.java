@@ -107,6 +107,41 @@ public class AMQDecoderTest extends TestCase
         }
     }
     
+    public void testContentFramesSplitAcrossBuffers() throws AMQProtocolVersionException, AMQFrameDecodingException, IOException
+    {
+        Random random = new Random();
+        final byte[] payloadA = new byte[1024];
+        final byte[] payloadB = new byte[512];
+        final byte[] payloadC = new byte[300];
+        random.nextBytes(payloadA);
+        random.nextBytes(payloadB);
+        random.nextBytes(payloadC);
+
+        byte[] outputBuf = new byte[4096];
+        BytesDataOutput dataOutput = new BytesDataOutput(outputBuf);
+        new AMQFrame(1, new ContentBody(payloadA)).writePayload(dataOutput);
+        new AMQFrame(1, new ContentBody(payloadB)).writePayload(dataOutput);
+        new AMQFrame(1, new ContentBody(payloadC)).writePayload(dataOutput);
+
+        int split = 500;
+        _decoder.decodeBuffer(ByteBuffer.wrap(outputBuf, 0, split));
+        List<AMQDataBlock> frames = _methodProcessor.getProcessedMethods();
+        assertEquals(0, frames.size());
+
+        _decoder.decodeBuffer(ByteBuffer.wrap(outputBuf, split, dataOutput.length() - split - 10));
+        assertEquals(2, frames.size());
+
+        _decoder.decodeBuffer(ByteBuffer.wrap(outputBuf, dataOutput.length() - 10, 10));
+        assertEquals(3, frames.size());
+
+        byte[][] payloads = { payloadA, payloadB, payloadC };
+        for (int i = 0; i < payloads.length; i++)
+        {
+            ContentBody decodedBody = (ContentBody) ((AMQFrame) frames.get(i)).getBodyFrame();
+            assertTrue("Body " + i + " was corrupted", Arrays.equals(payloads[i], decodedBody.getPayload()));
+        }
+    }
+
     public void testPartialFrameDecode() throws AMQProtocolVersionException, AMQFrameDecodingException, IOException
     {
         ByteBuffer msg = getHeartbeatBodyBuffer();
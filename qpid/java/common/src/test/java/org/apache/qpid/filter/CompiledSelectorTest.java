@@ -0,0 +1,203 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.filter.selector.SelectorParser;
+
+public class CompiledSelectorTest extends TestCase
+{
+    private static final List<String> SELECTORS = Arrays.asList(
+            "colour = 'red'",
+            "'red' = colour",
+            "colour <> 'red'",
+            "colour IS NULL",
+            "colour IS NOT NULL",
+            "size > 3",
+            "size > 3 AND colour = 'red'",
+            "colour LIKE 'r%' AND size = 5",
+            "colour IN ('red', 'blue') OR size < 2",
+            "NOT (size > 3 AND colour = 'red')",
+            "NOT (colour LIKE 'b%' OR size <= 2)",
+            "size + 1 = 6 OR colour = 'green'",
+            "size BETWEEN 2 AND 6",
+            "size NOT BETWEEN 2 AND 6",
+            "flag",
+            "flag AND size = 5",
+            "NOT flag",
+            "1 = 1 AND colour = 'red'",
+            "1 = 2 OR colour = 'blue'",
+            "colour = 'red' AND size > 1 AND weight < 2.5 AND flag",
+            "JMSType = 'order' OR JMSPriority > 5",
+            "NOT (JMSType = 'order' AND colour = 'red')");
+
+    public void testCompiledSelectorsMatchAsParsed() throws Exception
+    {
+        List<TestMessage> messages = Arrays.asList(
+                new TestMessage(),
+                new TestMessage().with("colour", "red"),
+                new TestMessage().with("colour", "blue").with("size", 5),
+                new TestMessage().with("colour", "red").with("size", 5).with("weight", 1.0).with("flag", true),
+                new TestMessage().with("colour", "red").with("size", 2L).with("flag", false),
+                new TestMessage().with("colour", 7).with("size", "large"),
+                new TestMessage().with("size", 1).withType("order"),
+                new TestMessage().with("colour", "green").withType("invoice").withPriority(7));
+
+        for (String selector : SELECTORS)
+        {
+            BooleanExpression parsed = new SelectorParser().parse(selector);
+            CompiledSelector compiled = CompiledSelector.compile(parsed);
+            for (TestMessage message : messages)
+            {
+                assertEquals("Selector " + selector + " on " + message,
+                             parsed.matches(message), compiled.matches(message));
+            }
+        }
+    }
+
+    public void testPropertyReadOncePerEvaluation() throws Exception
+    {
+        CompiledSelector compiled =
+                CompiledSelector.compile(new SelectorParser().parse("size = 1 OR size = 2 OR size = 3 OR size > 10"));
+
+        TestMessage message = new TestMessage().with("size", 3);
+        assertTrue(compiled.matches(message));
+        assertEquals(1, message.getHeaderReads());
+    }
+
+    public void testCheapestOperandsTestedFirst() throws Exception
+    {
+        CompiledSelector compiled =
+                CompiledSelector.compile(new SelectorParser().parse("colour LIKE 'r%' AND size = 5"));
+
+        TestMessage message = new TestMessage().with("colour", "red").with("size", 4);
+        assertFalse(compiled.matches(message));
+        assertEquals("Comparison should be tested before the LIKE", 1, message.getHeaderReads());
+    }
+
+    public void testNotIsNotReordered() throws Exception
+    {
+        // with no size the comparison is unknown, and the NOT of an unknown AND is unknown even though colour is not red
+        String selector = "NOT (size > 3 AND colour = 'red')";
+        CompiledSelector compiled = CompiledSelector.compile(new SelectorParser().parse(selector));
+        assertFalse(compiled.matches(new TestMessage().with("colour", "blue")));
+    }
+
+    public void testComparisonOfValuesWhichCannotBeCompared() throws Exception
+    {
+        CompiledSelector compiled = CompiledSelector.compile(new SelectorParser().parse("data > 3"));
+        assertFalse(compiled.matches(new TestMessage().with("data", new byte[] {1, 2})));
+    }
+
+    private static class TestMessage implements FilterableMessage
+    {
+        private final Map<String, Object> _headers = new HashMap<String, Object>();
+        private String _type;
+        private byte _priority = 4;
+        private int _headerReads;
+
+        TestMessage with(String name, Object value)
+        {
+            _headers.put(name, value);
+            return this;
+        }
+
+        TestMessage withType(String type)
+        {
+            _type = type;
+            return this;
+        }
+
+        TestMessage withPriority(int priority)
+        {
+            _priority = (byte) priority;
+            return this;
+        }
+
+        int getHeaderReads()
+        {
+            return _headerReads;
+        }
+
+        public boolean isPersistent()
+        {
+            return false;
+        }
+
+        public boolean isRedelivered()
+        {
+            return false;
+        }
+
+        public Object getHeader(String name)
+        {
+            _headerReads++;
+            return _headers.get(name);
+        }
+
+        public String getReplyTo()
+        {
+            return null;
+        }
+
+        public String getType()
+        {
+            return _type;
+        }
+
+        public byte getPriority()
+        {
+            return _priority;
+        }
+
+        public String getMessageId()
+        {
+            return null;
+        }
+
+        public long getTimestamp()
+        {
+            return 0;
+        }
+
+        public String getCorrelationId()
+        {
+            return null;
+        }
+
+        public long getExpiration()
+        {
+            return 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _headers + " type=" + _type + " priority=" + _priority;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class CommandMapTest extends TestCase
+{
+    private final CommandMap<String> _map = new CommandMap<String>();
+
+    public void testPutGetRemove()
+    {
+        assertTrue(_map.isEmpty());
+        _map.put(5, "five");
+        _map.put(6, "six");
+        _map.put(8, "eight");
+
+        assertEquals(3, _map.size());
+        assertEquals("five", _map.get(5));
+        assertEquals("six", _map.get(6));
+        assertNull(_map.get(7));
+        assertEquals("eight", _map.get(8));
+        assertNull(_map.get(4));
+        assertNull(_map.get(9));
+        assertEquals(5, _map.getFirst());
+        assertEquals(8, _map.getLast());
+
+        assertEquals("five", _map.remove(5));
+        assertNull(_map.remove(5));
+        assertEquals("Range should skip ids no longer held", 6, _map.getFirst());
+
+        assertEquals("eight", _map.remove(8));
+        assertEquals(6, _map.getLast());
+
+        assertEquals("six", _map.remove(6));
+        assertTrue(_map.isEmpty());
+    }
+
+    public void testGrowthPreservesEntries()
+    {
+        int count = 1000;
+        for (int i = 0; i < count; i++)
+        {
+            _map.put(i, String.valueOf(i));
+        }
+        assertEquals(count, _map.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(String.valueOf(i), _map.get(i));
+        }
+    }
+
+    public void testCompletionInOrderDoesNotRetainIds()
+    {
+        for (int i = 0; i < 100000; i++)
+        {
+            _map.put(i, "value");
+            if (i >= 10)
+            {
+                assertEquals("value", _map.remove(i - 10));
+            }
+        }
+        assertEquals(10, _map.size());
+        assertEquals(99990, _map.getFirst());
+        assertEquals(99999, _map.getLast());
+    }
+
+    public void testPutBeforeFirst()
+    {
+        _map.put(20, "twenty");
+        _map.put(3, "three");
+        assertEquals(3, _map.getFirst());
+        assertEquals("three", _map.get(3));
+        assertEquals("twenty", _map.get(20));
+        assertEquals(Arrays.asList("three", "twenty"), _map.values());
+    }
+
+    public void testIdWraparound()
+    {
+        int first = Integer.MAX_VALUE - 1;
+        for (int i = 0; i < 4; i++)
+        {
+            _map.put(first + i, String.valueOf(i));
+        }
+        assertEquals(first, _map.getFirst());
+        assertEquals(Integer.MIN_VALUE + 1, _map.getLast());
+        assertEquals("2", _map.get(Integer.MIN_VALUE));
+        assertEquals(Arrays.asList("0", "1", "2", "3"), _map.values());
+    }
+
+    public void testClear()
+    {
+        _map.put(1, "one");
+        _map.put(2, "two");
+        _map.clear();
+        assertTrue(_map.isEmpty());
+        assertNull(_map.get(1));
+        assertEquals(Collections.emptyList(), _map.values());
+
+        _map.put(40, "forty");
+        assertEquals(40, _map.getFirst());
+        assertEquals("{40=forty}", _map.toString());
+    }
+
+    public void testNextSkipsIdsNotHeld()
+    {
+        _map.put(10, "ten");
+        _map.put(14, "fourteen");
+        _map.put(15, "fifteen");
+        assertEquals(10, _map.next(3));
+        assertEquals(10, _map.next(10));
+        assertEquals(14, _map.next(11));
+        assertEquals(15, _map.next(15));
+    }
+
+    public void testWideSpanHeldSparsely()
+    {
+        _map.put(0, "zero");
+        for (int i = 1 << 20; i < (1 << 20) + 10; i++)
+        {
+            _map.put(i, String.valueOf(i));
+        }
+        assertTrue("Map should hold a range far wider than its size sparsely", _map.isSparse());
+        assertEquals(11, _map.size());
+        assertEquals(0, _map.getFirst());
+        assertEquals((1 << 20) + 9, _map.getLast());
+        assertEquals("zero", _map.get(0));
+        assertNull(_map.get(1));
+        assertEquals(String.valueOf(1 << 20), _map.get(1 << 20));
+        assertEquals(1 << 20, _map.next(1));
+
+        assertEquals("zero", _map.remove(0));
+        for (int i = 1 << 20; i < (1 << 20) + 10; i++)
+        {
+            assertEquals(String.valueOf(i), _map.remove(i));
+        }
+        assertTrue(_map.isEmpty());
+        assertFalse("Map should return to the ring once empty", _map.isSparse());
+
+        _map.put(5, "five");
+        assertEquals("five", _map.get(5));
+        assertEquals(5, _map.getFirst());
+        assertEquals(5, _map.getLast());
+    }
+
+    public void testSparseIdWraparound()
+    {
+        _map.put(Integer.MAX_VALUE - (1 << 20), "before");
+        _map.put(Integer.MIN_VALUE + 1, "after");
+        assertTrue(_map.isSparse());
+        assertEquals(Integer.MAX_VALUE - (1 << 20), _map.getFirst());
+        assertEquals(Integer.MIN_VALUE + 1, _map.getLast());
+        assertEquals(Integer.MIN_VALUE + 1, _map.next(Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("before", "after"), _map.values());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class IoSenderTest extends QpidTestCase
+{
+    private ServerSocket _serverSocket;
+    private Socket _clientSocket;
+    private Socket _acceptedSocket;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        _clientSocket = new Socket(InetAddress.getLoopbackAddress(), _serverSocket.getLocalPort());
+        _acceptedSocket = _serverSocket.accept();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _clientSocket.close();
+            _acceptedSocket.close();
+            _serverSocket.close();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testBuffersWrittenInOrder() throws Exception
+    {
+        IoSender sender = new IoSender(_clientSocket, 1024, 10000);
+        sender.initiate();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++)
+        {
+            // mix buffers which are staged with those written directly
+            byte[] data = new byte[i % 2 == 0 ? 7 : 700];
+            for (int j = 0; j < data.length; j++)
+            {
+                data[j] = (byte) (i + j);
+            }
+            expected.write(data);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            sender.send(buffer);
+            assertFalse("Sent buffer should be consumed", buffer.hasRemaining());
+        }
+        sender.flush();
+
+        byte[] received = readFully(_acceptedSocket.getInputStream(), expected.size());
+        assertTrue("Unexpected data received", Arrays.equals(expected.toByteArray(), received));
+
+        sender.close();
+        assertEquals("Unexpected queued bytes after close", 0, sender.getQueuedBytes());
+    }
+
+    public void testSenderStallsWhenQueueFull() throws Exception
+    {
+        final IoSender sender = new IoSender(_clientSocket, 1024, 10000);
+        sender.initiate();
+
+        final int total = 4 * 1024 * 1024;
+        final CountDownLatch sent = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < total / 512; i++)
+                {
+                    sender.send(ByteBuffer.allocate(512));
+                }
+                sender.flush();
+                sent.countDown();
+            }
+        });
+        producer.start();
+
+        // Nothing is read until the socket buffers have filled, so the producer must wait for the writer
+        Thread.sleep(200);
+        readFully(_acceptedSocket.getInputStream(), total);
+
+        assertTrue("Producer did not complete", sent.await(10, TimeUnit.SECONDS));
+        assertTrue("Expected the producer to have stalled", sender.getStallCount() > 0);
+        sender.close();
+    }
+
+    private byte[] readFully(final InputStream inputStream, final int length) throws Exception
+    {
+        byte[] received = new byte[length];
+        int offset = 0;
+        while (offset < length)
+        {
+            int read = inputStream.read(received, offset, length - offset);
+            assertTrue("Unexpected end of stream", read != -1);
+            offset += read;
+        }
+        return received;
+    }
+}